@@ -0,0 +1,576 @@
+package exmo.cy.backup;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import exmo.cy.config.Constants;
+import exmo.cy.util.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 增量去重备份引擎
+ * 备份目录结构：chunks/ 中是按内容寻址的文件块，manifests/&lt;服务器名&gt;/&lt;备份ID&gt;.json.gz 是每次备份的清单，
+ * staging/ 中是热备份期间变化文件的临时副本。
+ * 备份时与该服务器上一次的清单比较，大小和修改时间都没变的文件直接沿用原来的块列表，不读取内容；
+ * 有变化的文件按内容分块（见 {@link ContentChunker}）并计算哈希，只有块存储中没有的块才写入磁盘。
+ * 因此备份耗时与变化的数据量成正比，占用的空间随修改量增长，而不是每次增加整个服务器目录的大小。
+ * 删除备份只删除清单，不再被任何清单引用的块由 {@link #collectGarbage()} 回收。
+ */
+public class BackupEngine {
+
+    static final String MANIFEST_SUFFIX = ".json.gz";
+    private static final String CHUNKS_DIR = "chunks";
+    private static final String MANIFESTS_DIR = "manifests";
+    // 热备份时变化文件的暂存副本，备份结束后删除
+    private static final String STAGING_DIR = "staging";
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path manifestsDir;
+    private final Path stagingDir;
+    private final ChunkStore chunks;
+    private final ContentChunker chunker;
+    private final Gson gson = new GsonBuilder().create();
+    // 备份和恢复持有读锁，垃圾回收持有写锁，避免正在写入的备份引用的块被回收
+    private final ReadWriteLock storeLock = new ReentrantReadWriteLock();
+
+    /**
+     * @param root 备份根目录
+     * @throws IOException 如果目录无法创建
+     */
+    public BackupEngine(Path root) throws IOException {
+        this.manifestsDir = root.resolve(MANIFESTS_DIR);
+        this.chunks = new ChunkStore(root.resolve(CHUNKS_DIR));
+        this.chunker = new ContentChunker(Constants.BACKUP_CHUNK_MIN_BYTES,
+            Constants.BACKUP_CHUNK_AVG_BYTES, Constants.BACKUP_CHUNK_MAX_BYTES);
+        Files.createDirectories(manifestsDir);
+        // 上次进程中途退出时留下的暂存副本
+        this.stagingDir = root.resolve(STAGING_DIR);
+        deleteTree(stagingDir);
+        Files.createDirectories(stagingDir);
+    }
+
+    /**
+     * 备份一个服务器目录
+     * 无法读取的文件（例如被其他进程独占锁定）记录警告后跳过，不影响其余文件。
+     * @param server 服务器名称
+     * @param sourceDir 服务器目录
+     * @return 新备份的清单
+     * @throws IOException 如果目录无法遍历或块、清单无法写入
+     */
+    public BackupManifest backup(String server, Path sourceDir) throws IOException {
+        try (Snapshot snapshot = snapshot(server, sourceDir, false)) {
+            return backup(snapshot);
+        }
+    }
+
+    /**
+     * 记录服务器目录当前的状态，是备份中唯一需要目录保持不变的阶段
+     * 与上一次备份相比大小和修改时间都没变的文件只记录原来的块列表；
+     * stage为true时把其余文件复制到暂存目录，之后即使服务器继续写入，{@link #backup(Snapshot)}读到的仍是此刻的内容。
+     * 耗时与变化文件的大小成正比，不计算哈希也不写入块存储。
+     * @param server 服务器名称
+     * @param sourceDir 服务器目录
+     * @param stage 是否把变化的文件复制到暂存目录；为false时备份直接读取服务器目录
+     * @return 快照，用完后必须关闭以删除暂存目录
+     * @throws IOException 如果目录无法遍历或暂存目录无法创建
+     */
+    public Snapshot snapshot(String server, Path sourceDir, boolean stage) throws IOException {
+        long start = System.currentTimeMillis();
+        Map<String, BackupManifest.FileEntry> previous = new HashMap<>();
+        latest(server).ifPresent(manifest -> {
+            for (BackupManifest.FileEntry entry : manifest.getFiles()) {
+                previous.put(entry.getPath(), entry);
+            }
+        });
+
+        Snapshot snapshot = new Snapshot(server, start, stage ? Files.createTempDirectory(stagingDir, server + "-") : null);
+        try {
+            List<Path> paths;
+            try (Stream<Path> walk = Files.walk(sourceDir)) {
+                paths = walk.sorted().collect(Collectors.toList());
+            }
+            for (Path path : paths) {
+                String relative = relativize(sourceDir, path);
+                if (relative.isEmpty()) {
+                    continue;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    // 遍历后被删除的文件
+                    continue;
+                }
+                if (attributes.isDirectory()) {
+                    snapshot.directories.add(relative);
+                } else if (attributes.isRegularFile()) {
+                    snapshot.addFile(path, relative, attributes, previous.get(relative));
+                }
+            }
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            snapshot.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 把快照中变化的文件分块写入块存储，并保存清单
+     * @param snapshot 由 {@link #snapshot} 创建的快照
+     * @return 新备份的清单
+     * @throws IOException 如果块或清单无法写入
+     */
+    public BackupManifest backup(Snapshot snapshot) throws IOException {
+        storeLock.readLock().lock();
+        try {
+            Path serverManifests = manifestsDir.resolve(snapshot.server);
+            Files.createDirectories(serverManifests);
+            String id = newId(serverManifests, snapshot.start);
+            BackupManifest manifest = new BackupManifest(snapshot.server, id, snapshot.start);
+            MessageDigest digest = sha256();
+
+            for (String directory : snapshot.directories) {
+                manifest.addDirectory(directory);
+            }
+            for (int i = 0; i < snapshot.skippedFiles; i++) {
+                manifest.recordSkippedFile();
+            }
+            for (SnapshotFile file : snapshot.files) {
+                BackupManifest.FileEntry entry = file.chunks != null
+                    ? new BackupManifest.FileEntry(file.relative, file.size, file.recordedModified, file.chunks)
+                    : backupFile(manifest, digest, file);
+                if (entry != null) {
+                    manifest.addFile(entry);
+                }
+            }
+
+            manifest.setDurationMs(System.currentTimeMillis() - snapshot.start);
+            writeManifest(serverManifests.resolve(id + MANIFEST_SUFFIX), manifest);
+            return manifest;
+        } finally {
+            storeLock.readLock().unlock();
+        }
+    }
+
+    private BackupManifest.FileEntry backupFile(BackupManifest manifest, MessageDigest digest, SnapshotFile file) {
+        List<String> hashes = new ArrayList<>();
+        long[] length = new long[1];
+        try (InputStream in = Files.newInputStream(file.source)) {
+            chunker.split(in, (data, offset, count) -> {
+                digest.update(data, offset, count);
+                String hash = HEX.formatHex(digest.digest());
+                if (chunks.put(hash, data, offset, count)) {
+                    manifest.recordNewChunk(count);
+                }
+                hashes.add(hash);
+                length[0] += count;
+            });
+        } catch (IOException e) {
+            digest.reset();
+            manifest.recordSkippedFile();
+            Logger.warn("备份时无法读取文件，已跳过: " + file.source + " (" + e.getMessage() + ")");
+            return null;
+        }
+        manifest.recordHashedFile();
+        // 读取期间文件被追加时以实际读到的长度为准，修改时间记为-1让下次备份重新读取
+        if (length[0] != file.size) {
+            return new BackupManifest.FileEntry(file.relative, length[0], -1, hashes);
+        }
+        return new BackupManifest.FileEntry(file.relative, file.size, file.recordedModified, hashes);
+    }
+
+    /**
+     * 备份某一时刻的服务器目录：目录列表、未变化文件的块列表，以及变化文件的位置（暂存副本或原文件）
+     */
+    public static final class Snapshot implements AutoCloseable {
+        private final String server;
+        private final long start;
+        private final Path staging;
+        private final List<String> directories = new ArrayList<>();
+        private final List<SnapshotFile> files = new ArrayList<>();
+        private int skippedFiles;
+        private long stagedBytes;
+
+        private Snapshot(String server, long start, Path staging) {
+            this.server = server;
+            this.start = start;
+            this.staging = staging;
+        }
+
+        private void addFile(Path path, String relative, BasicFileAttributes attributes,
+                BackupManifest.FileEntry previous) {
+            long size = attributes.size();
+            long modified = attributes.lastModifiedTime().toMillis();
+            // 修改时间离备份开始太近的文件，之后在同一时间粒度内再被修改时修改时间可能不变
+            long recordedModified = modified >= start - Constants.BACKUP_RACY_WINDOW_MS ? -1 : modified;
+            if (previous != null && previous.getModified() >= 0
+                    && previous.getSize() == size && previous.getModified() == modified) {
+                files.add(new SnapshotFile(relative, size, recordedModified, previous.getChunks(), null));
+                return;
+            }
+            if (staging == null) {
+                files.add(new SnapshotFile(relative, size, recordedModified, null, path));
+                return;
+            }
+            Path copy = staging.resolve(relative);
+            try {
+                Files.createDirectories(copy.getParent());
+                Files.copy(path, copy, StandardCopyOption.REPLACE_EXISTING);
+                long copied = Files.size(copy);
+                stagedBytes += copied;
+                // 复制期间文件大小变化时修改时间记为-1，让下次备份重新读取
+                files.add(new SnapshotFile(relative, copied, copied == size ? recordedModified : -1, null, copy));
+            } catch (IOException e) {
+                skippedFiles++;
+                Logger.warn("备份时无法复制文件，已跳过: " + path + " (" + e.getMessage() + ")");
+            }
+        }
+
+        public String getServer() {
+            return server;
+        }
+
+        public int getFileCount() {
+            return files.size();
+        }
+
+        /**
+         * 复制到暂存目录的字节数
+         */
+        public long getStagedBytes() {
+            return stagedBytes;
+        }
+
+        /**
+         * 删除暂存目录
+         */
+        @Override
+        public void close() {
+            if (staging != null) {
+                deleteTree(staging);
+            }
+        }
+    }
+
+    private static final class SnapshotFile {
+        final String relative;
+        final long size;
+        final long recordedModified;
+        // 未变化的文件沿用上一次备份的块列表，否则为null
+        final List<String> chunks;
+        // 需要读取的文件（暂存副本或服务器目录中的原文件）
+        final Path source;
+
+        SnapshotFile(String relative, long size, long recordedModified, List<String> chunks, Path source) {
+            this.relative = relative;
+            this.size = size;
+            this.recordedModified = recordedModified;
+            this.chunks = chunks;
+            this.source = source;
+        }
+    }
+
+    /**
+     * 删除目录树，无法删除的项记录警告
+     */
+    private static void deleteTree(Path root) {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            Logger.warn("删除备份暂存目录失败: " + root + " (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * 把备份恢复到目录
+     * 目录中大小和修改时间与清单一致的文件保留不动，其余文件从块存储重新写出，清单中没有的文件和目录被删除。
+     * 调用方需保证恢复期间没有进程在使用该目录。
+     * @param server 服务器名称
+     * @param id 备份ID
+     * @param targetDir 目标目录，不存在时创建
+     * @return 恢复的清单
+     * @throws IOException 如果备份不存在、块缺失或文件无法写入
+     */
+    public BackupManifest restore(String server, String id, Path targetDir) throws IOException {
+        BackupManifest manifest = load(server, id)
+            .orElseThrow(() -> new IOException("备份不存在: " + server + "/" + id));
+        Path root = targetDir.toAbsolutePath().normalize();
+
+        storeLock.readLock().lock();
+        try {
+            Files.createDirectories(root);
+            Set<Path> keep = new HashSet<>();
+            keep.add(root);
+            for (String directory : manifest.getDirectories()) {
+                Path path = resolveInside(root, directory);
+                Files.createDirectories(path);
+                keep.add(path);
+            }
+            for (BackupManifest.FileEntry entry : manifest.getFiles()) {
+                Path path = resolveInside(root, entry.getPath());
+                keep.add(path);
+                if (isUnchanged(path, entry)) {
+                    continue;
+                }
+                Files.createDirectories(path.getParent());
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+                    for (String hash : entry.getChunks()) {
+                        chunks.copyTo(hash, out);
+                    }
+                }
+                if (entry.getModified() >= 0) {
+                    Files.setLastModifiedTime(path, FileTime.fromMillis(entry.getModified()));
+                }
+            }
+
+            List<Path> extra;
+            try (Stream<Path> walk = Files.walk(root)) {
+                extra = walk.filter(path -> !keep.contains(path))
+                    .sorted(Comparator.reverseOrder())
+                    .collect(Collectors.toList());
+            }
+            for (Path path : extra) {
+                Files.deleteIfExists(path);
+            }
+            return manifest;
+        } finally {
+            storeLock.readLock().unlock();
+        }
+    }
+
+    private static boolean isUnchanged(Path path, BackupManifest.FileEntry entry) {
+        if (entry.getModified() < 0) {
+            return false;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return attributes.isRegularFile() && attributes.size() == entry.getSize()
+                && attributes.lastModifiedTime().toMillis() == entry.getModified();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 列出服务器的所有备份，按创建时间从新到旧排列；无法读取的清单记录警告后忽略
+     */
+    public List<BackupManifest> list(String server) {
+        List<BackupManifest> result = new ArrayList<>();
+        for (String id : listIds(server)) {
+            load(server, id).ifPresent(result::add);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * 列出有备份的服务器名称
+     */
+    public List<String> listServers() {
+        List<String> servers = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(manifestsDir, Files::isDirectory)) {
+            for (Path path : stream) {
+                servers.add(path.getFileName().toString());
+            }
+        } catch (IOException e) {
+            Logger.error("列出备份失败: " + manifestsDir, e);
+        }
+        Collections.sort(servers);
+        return servers;
+    }
+
+    /**
+     * 读取一个备份的清单
+     */
+    public Optional<BackupManifest> load(String server, String id) {
+        Path file = manifestsDir.resolve(server).resolve(id + MANIFEST_SUFFIX);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)),
+                StandardCharsets.UTF_8)) {
+            return Optional.ofNullable(gson.fromJson(reader, BackupManifest.class));
+        } catch (IOException | JsonParseException e) {
+            Logger.warn("无法读取备份清单: " + file + " (" + e.getMessage() + ")");
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 删除一个备份的清单，块在下次垃圾回收时释放
+     * @return 如果备份存在并被删除返回true
+     */
+    public boolean delete(String server, String id) throws IOException {
+        return Files.deleteIfExists(manifestsDir.resolve(server).resolve(id + MANIFEST_SUFFIX));
+    }
+
+    /**
+     * 删除创建时间早于指定时间的备份（每个服务器至少保留最新的一个），并回收不再被引用的块
+     * @param cutoffMillis 时间（毫秒）
+     * @return 删除的备份数
+     */
+    public int prune(long cutoffMillis) throws IOException {
+        int removed = 0;
+        for (String server : listServers()) {
+            List<String> ids = listIds(server);
+            for (int i = 0; i < ids.size() - 1; i++) {
+                Optional<BackupManifest> manifest = load(server, ids.get(i));
+                if (manifest.isPresent() && manifest.get().getCreatedAt() < cutoffMillis && delete(server, ids.get(i))) {
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            collectGarbage();
+        }
+        return removed;
+    }
+
+    /**
+     * 删除不被任何清单引用的块
+     * @return 释放的字节数
+     * @throws IOException 如果有清单无法读取（此时不删除任何块）或块无法删除
+     */
+    public long collectGarbage() throws IOException {
+        storeLock.writeLock().lock();
+        try {
+            Set<String> live = new HashSet<>();
+            for (String server : listServers()) {
+                for (String id : listIds(server)) {
+                    BackupManifest manifest = load(server, id)
+                        .orElseThrow(() -> new IOException("备份清单无法读取，停止回收: " + server + "/" + id));
+                    for (BackupManifest.FileEntry entry : manifest.getFiles()) {
+                        live.addAll(entry.getChunks());
+                    }
+                }
+            }
+            long freed = chunks.sweep(live);
+            Logger.info("备份块回收完成，释放 " + freed / 1024 / 1024 + " MB");
+            return freed;
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    private Optional<BackupManifest> latest(String server) {
+        List<String> ids = listIds(server);
+        for (int i = ids.size() - 1; i >= 0; i--) {
+            Optional<BackupManifest> manifest = load(server, ids.get(i));
+            if (manifest.isPresent()) {
+                return manifest;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * 服务器的备份ID，按时间从旧到新
+     */
+    private List<String> listIds(String server) {
+        Path dir = manifestsDir.resolve(server);
+        if (!Files.isDirectory(dir)) {
+            return Collections.emptyList();
+        }
+        List<String> ids = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + MANIFEST_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                ids.add(name.substring(0, name.length() - MANIFEST_SUFFIX.length()));
+            }
+        } catch (IOException e) {
+            Logger.error("列出备份失败: " + dir, e);
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private static String newId(Path dir, long time) {
+        String base = new SimpleDateFormat(Constants.TIMESTAMP_FORMAT).format(new Date(time));
+        String id = base;
+        for (int i = 2; Files.exists(dir.resolve(id + MANIFEST_SUFFIX)); i++) {
+            id = base + "_" + i;
+        }
+        return id;
+    }
+
+    private void writeManifest(Path target, BackupManifest manifest) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(temp)),
+                    StandardCharsets.UTF_8)) {
+                gson.toJson(manifest, writer);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String relativize(Path root, Path path) {
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+
+    /**
+     * 解析清单中的相对路径，防止被篡改的清单写到目标目录之外
+     */
+    private static Path resolveInside(Path root, String relative) throws IOException {
+        Path path = root.resolve(relative).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new IOException("备份清单包含非法路径: " + relative);
+        }
+        return path;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM不支持SHA-256", e);
+        }
+    }
+}
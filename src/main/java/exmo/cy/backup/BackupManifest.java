@@ -0,0 +1,157 @@
+package exmo.cy.backup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一次备份的清单
+ * 记录服务器目录中每个文件的相对路径、大小、修改时间和按顺序排列的块哈希，文件内容保存在块存储中。
+ * 清单以gzip压缩的JSON保存，大小只与文件数和块数有关。
+ */
+public final class BackupManifest {
+
+    private String server;
+    private String id;
+    private long createdAt;
+    private long durationMs;
+    private long totalBytes;
+    private long newBytes;
+    private int newChunks;
+    private int hashedFiles;
+    private int skippedFiles;
+    private List<String> directories = new ArrayList<>();
+    private List<FileEntry> files = new ArrayList<>();
+
+    /**
+     * 清单中的一个文件
+     */
+    public static final class FileEntry {
+        private String path;
+        private long size;
+        // 毫秒；-1表示修改时间离备份太近，下次备份时不能据此判断文件未变
+        private long modified;
+        private List<String> chunks;
+
+        FileEntry(String path, long size, long modified, List<String> chunks) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.chunks = chunks;
+        }
+
+        /**
+         * 相对于服务器目录的路径，分隔符为 /
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getModified() {
+            return modified;
+        }
+
+        public List<String> getChunks() {
+            return chunks == null ? Collections.emptyList() : chunks;
+        }
+    }
+
+    BackupManifest(String server, String id, long createdAt) {
+        this.server = server;
+        this.id = id;
+        this.createdAt = createdAt;
+    }
+
+    public String getServer() {
+        return server;
+    }
+
+    /**
+     * 备份ID（创建时间，格式与 {@link exmo.cy.config.Constants#TIMESTAMP_FORMAT} 相同）
+     */
+    public String getId() {
+        return id;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    /**
+     * 备份时服务器目录中所有文件的总大小
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * 本次备份新写入块存储的字节数
+     */
+    public long getNewBytes() {
+        return newBytes;
+    }
+
+    public int getNewChunks() {
+        return newChunks;
+    }
+
+    /**
+     * 与上一次备份相比有变化、重新计算了哈希的文件数
+     */
+    public int getHashedFiles() {
+        return hashedFiles;
+    }
+
+    /**
+     * 因无法读取而未备份的文件数
+     */
+    public int getSkippedFiles() {
+        return skippedFiles;
+    }
+
+    public int getFileCount() {
+        return files.size();
+    }
+
+    public List<String> getDirectories() {
+        return directories;
+    }
+
+    public List<FileEntry> getFiles() {
+        return files;
+    }
+
+    void addDirectory(String path) {
+        directories.add(path);
+    }
+
+    void addFile(FileEntry entry) {
+        files.add(entry);
+        totalBytes += entry.size;
+    }
+
+    void recordNewChunk(int length) {
+        newChunks++;
+        newBytes += length;
+    }
+
+    void recordHashedFile() {
+        hashedFiles++;
+    }
+
+    void recordSkippedFile() {
+        skippedFiles++;
+    }
+
+    void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+}
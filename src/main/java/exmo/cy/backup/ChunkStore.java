@@ -0,0 +1,95 @@
+package exmo.cy.backup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+
+/**
+ * 按内容寻址的块存储
+ * 每块保存为 chunks/&lt;哈希前两位&gt;/&lt;SHA-256哈希&gt;，内容相同的块只保存一份。
+ * 块先写入临时文件再原子重命名，中途退出不会留下不完整的块；已存在的块不会被重写。
+ */
+final class ChunkStore {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+
+    ChunkStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    private Path path(String hash) {
+        return directory.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    boolean contains(String hash) {
+        return Files.exists(path(hash));
+    }
+
+    /**
+     * 保存一块
+     * @return 如果是新块返回true，已存在返回false
+     */
+    boolean put(String hash, byte[] data, int offset, int length) throws IOException {
+        Path target = path(hash);
+        if (Files.exists(target)) {
+            return false;
+        }
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), hash, TEMP_SUFFIX);
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                out.write(data, offset, length);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            // 另一个备份同时写入了相同的块
+            return false;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 把一块的内容写入输出流
+     * @throws IOException 如果块不存在或读取失败
+     */
+    void copyTo(String hash, OutputStream out) throws IOException {
+        Files.copy(path(hash), out);
+    }
+
+    /**
+     * 删除不在live中的块和遗留的临时文件，调用方保证期间没有备份在写入
+     * @return 释放的字节数
+     */
+    long sweep(Set<String> live) throws IOException {
+        long freed = 0;
+        try (DirectoryStream<Path> prefixes = Files.newDirectoryStream(directory)) {
+            for (Path prefix : prefixes) {
+                if (!Files.isDirectory(prefix)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> chunks = Files.newDirectoryStream(prefix)) {
+                    for (Path chunk : chunks) {
+                        String name = chunk.getFileName().toString();
+                        if (name.endsWith(TEMP_SUFFIX) || !live.contains(name)) {
+                            long size = Files.size(chunk);
+                            if (Files.deleteIfExists(chunk)) {
+                                freed += size;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return freed;
+    }
+}
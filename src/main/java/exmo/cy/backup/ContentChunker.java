@@ -0,0 +1,99 @@
+package exmo.cy.backup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.SplittableRandom;
+
+/**
+ * 按内容定义边界的分块器（Gear滚动哈希，与FastCDC相同的判定方式）
+ * 块边界只取决于边界前几十个字节的内容，文件中间插入或修改数据后，修改处之外的块仍然切在原来的位置，
+ * 因此区域文件中一个区块被改写只会产生少量新块。每块的长度在最小值和最大值之间，平均约为指定的平均值。
+ */
+final class ContentChunker {
+
+    /**
+     * 接收切出的块，数据只在调用期间有效
+     */
+    interface Sink {
+        void accept(byte[] data, int offset, int length) throws IOException;
+    }
+
+    // 固定种子，保证不同版本切出的边界一致，否则升级后的第一次备份无法复用旧块
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x43594D4353L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final int minBytes;
+    private final int maxBytes;
+    private final long mask;
+
+    /**
+     * @param minBytes 最小块长度
+     * @param avgBytes 平均块长度，必须是2的幂
+     * @param maxBytes 最大块长度
+     */
+    ContentChunker(int minBytes, int avgBytes, int maxBytes) {
+        if (Integer.bitCount(avgBytes) != 1 || minBytes <= 0 || minBytes > avgBytes || avgBytes > maxBytes) {
+            throw new IllegalArgumentException("无效的分块参数: " + minBytes + "/" + avgBytes + "/" + maxBytes);
+        }
+        this.minBytes = minBytes;
+        this.maxBytes = maxBytes;
+        // 左移的哈希中高位包含更多字节的信息，用高位判定边界
+        int bits = Integer.numberOfTrailingZeros(avgBytes);
+        this.mask = -1L << (64 - bits);
+    }
+
+    /**
+     * 读取整个输入流并按顺序输出每一块
+     */
+    void split(InputStream in, Sink sink) throws IOException {
+        byte[] buffer = new byte[maxBytes * 2];
+        int start = 0;
+        int end = 0;
+        boolean eof = false;
+        while (true) {
+            if (!eof && end - start < maxBytes) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+                while (end < buffer.length) {
+                    int n = in.read(buffer, end, buffer.length - end);
+                    if (n < 0) {
+                        eof = true;
+                        break;
+                    }
+                    end += n;
+                }
+            }
+            if (start == end) {
+                return;
+            }
+            int length = cut(buffer, start, end - start);
+            sink.accept(buffer, start, length);
+            start += length;
+        }
+    }
+
+    /**
+     * 返回从offset开始的第一块的长度
+     */
+    private int cut(byte[] data, int offset, int length) {
+        if (length <= minBytes) {
+            return length;
+        }
+        int limit = Math.min(length, maxBytes);
+        long hash = 0;
+        for (int i = minBytes; i < limit; i++) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xFF];
+            if ((hash & mask) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+}
@@ -72,7 +72,11 @@ public class CommandManager {
         registerCommand(new EStopCommand(serverService));
         registerCommand(new ForceStopCommand(serverService));
         registerCommand(new ResourceMonitorCommand(serverService));
+        registerCommand(new LogCommand(serverService));
+        registerCommand(new SearchCommand(serverService));
         registerCommand(new BatchCommand(serverService));
+        registerCommand(new AdmissionCommand(serverService));
+        registerCommand(new AutoRestartCommand(serverService));
         registerCommand(new ConfigManageCommand(serverService));
         registerCommand(new BackupRestoreCommand(serverService));
         registerCommand(new StatsCommand(serverService));
@@ -0,0 +1,105 @@
+package exmo.cy.command.impl;
+
+import exmo.cy.command.AnnotatedCommand;
+import exmo.cy.command.CommandAnnotation;
+import exmo.cy.service.AdmissionController;
+import exmo.cy.service.ServerService;
+import exmo.cy.util.Logger;
+
+@CommandAnnotation(
+    name = "admission",
+    aliases = {"queue", "startqueue"},
+    description = "查看和调整服务器启动准入队列"
+)
+public class AdmissionCommand extends AnnotatedCommand {
+    private final ServerService serverService;
+
+    public AdmissionCommand(ServerService serverService) {
+        this.serverService = serverService;
+    }
+
+    @Override
+    public boolean execute(String[] args) {
+        AdmissionController admission = serverService.getAdmissionController();
+        if (args.length == 0 || "status".equalsIgnoreCase(args[0])) {
+            showStatus(admission);
+            return true;
+        }
+
+        switch (args[0].toLowerCase()) {
+            case "ratio":
+                if (args.length < 2) {
+                    Logger.println("当前超量分配比例: " + admission.getOvercommitRatio());
+                    return true;
+                }
+                try {
+                    admission.setOvercommitRatio(Double.parseDouble(args[1]));
+                    Logger.println("超量分配比例已设置为: " + admission.getOvercommitRatio());
+                } catch (IllegalArgumentException e) {
+                    Logger.println("错误: 无效的比例 " + args[1] + "，必须是大于0的数字");
+                }
+                return true;
+            case "cancel":
+                if (args.length < 2) {
+                    Logger.println("错误: 请指定服务器名称");
+                    return true;
+                }
+                if (admission.cancel(args[1])) {
+                    Logger.println("已取消服务器 " + args[1] + " 的启动请求");
+                } else {
+                    Logger.println("服务器 " + args[1] + " 不在启动队列中");
+                }
+                return true;
+            default:
+                showUsage();
+                return true;
+        }
+    }
+
+    private void showStatus(AdmissionController admission) {
+        AdmissionController.Status status = admission.getStatus();
+        long now = System.currentTimeMillis();
+
+        Logger.println("=== 启动准入状态 ===");
+        Logger.println("  物理内存: " + (status.getPhysicalMemory() > 0
+            ? AdmissionController.formatMemory(status.getPhysicalMemory()) : "未知"));
+        Logger.println("  CPU 核心数: " + status.getCpuCount());
+        Logger.println("  超量分配比例: " + status.getOvercommitRatio());
+        Logger.println("  已承诺堆内存: " + AdmissionController.formatMemory(status.getCommittedMemory())
+            + " / " + AdmissionController.formatMemory(status.getMemoryCapacity()));
+        Logger.println("  运行中服务器: " + status.getAdmitted().size() + " / " + status.getInstanceLimit());
+        for (AdmissionController.Ticket ticket : status.getAdmitted()) {
+            Logger.println("    - " + ticket.getServerName() + " ("
+                + AdmissionController.formatMemory(ticket.getMemoryBytes()) + ")");
+        }
+
+        if (status.getWaiting().isEmpty()) {
+            Logger.println("  启动队列为空");
+            return;
+        }
+        Logger.println("  启动队列:");
+        int position = 1;
+        for (AdmissionController.Ticket ticket : status.getWaiting()) {
+            Logger.println("    " + position++ + ". " + ticket.getServerName() + " ("
+                + AdmissionController.formatMemory(ticket.getMemoryBytes()) + "，已等待 "
+                + (now - ticket.getRequestedAt()) / 1000 + " 秒)");
+        }
+    }
+
+    private void showUsage() {
+        Logger.println("启动准入命令用法:");
+        Logger.println("  admission                 - 查看已承诺资源和启动队列");
+        Logger.println("  admission ratio [比例]    - 查看或设置超量分配比例（例如 1.5）");
+        Logger.println("  admission cancel <服务器> - 取消排队中的启动请求");
+    }
+
+    @Override
+    public String getDescription() {
+        return "查看和调整服务器启动准入队列";
+    }
+
+    @Override
+    public CommandAnnotation getAnnotation() {
+        return getClass().getAnnotation(CommandAnnotation.class);
+    }
+}
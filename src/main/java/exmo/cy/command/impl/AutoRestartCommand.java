@@ -0,0 +1,152 @@
+package exmo.cy.command.impl;
+
+import exmo.cy.command.AnnotatedCommand;
+import exmo.cy.command.CommandAnnotation;
+import exmo.cy.exception.ConfigurationException;
+import exmo.cy.model.RestartPolicy;
+import exmo.cy.model.Server;
+import exmo.cy.model.ServerRun;
+import exmo.cy.service.ServerService;
+import exmo.cy.service.ServerSupervisor;
+import exmo.cy.util.Logger;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+@CommandAnnotation(
+    name = "autorestart",
+    aliases = {"supervise", "runs"},
+    description = "设置服务器崩溃后的自动重启策略并查看运行记录"
+)
+public class AutoRestartCommand extends AnnotatedCommand {
+    private final ServerService serverService;
+
+    public AutoRestartCommand(ServerService serverService) {
+        this.serverService = serverService;
+    }
+
+    @Override
+    public boolean execute(String[] args) {
+        try {
+            if (args.length == 0 || "status".equalsIgnoreCase(args[0])) {
+                showStatus();
+                return true;
+            }
+            switch (args[0].toLowerCase()) {
+                case "set":
+                    setPolicy(args);
+                    return true;
+                case "history":
+                    showHistory(args);
+                    return true;
+                case "cancel":
+                    if (args.length < 2) {
+                        Logger.println("错误: 请指定服务器名称");
+                        return true;
+                    }
+                    if (serverService.getSupervisor().cancelRestart(args[1])) {
+                        Logger.println("已取消服务器 " + args[1] + " 的自动重启");
+                    } else {
+                        Logger.println("服务器 " + args[1] + " 没有等待中的自动重启");
+                    }
+                    return true;
+                default:
+                    showUsage();
+                    return true;
+            }
+        } catch (ConfigurationException e) {
+            Logger.error("读取服务器配置失败: " + e.getMessage(), e);
+            return true;
+        }
+    }
+
+    private void showStatus() throws ConfigurationException {
+        ServerSupervisor supervisor = serverService.getSupervisor();
+        long now = System.currentTimeMillis();
+        Logger.println("=== 自动重启状态 ===");
+        for (Server server : serverService.getConfigManager().loadServers()) {
+            String name = server.getName();
+            StringBuilder line = new StringBuilder("  - " + name + ": " + server.getRestartPolicy());
+            long restartAt = supervisor.getPendingRestartAt(name);
+            if (restartAt > 0) {
+                line.append("，").append(Math.max(0, restartAt - now) / 1000).append(" 秒后重启");
+            }
+            if (supervisor.isCrashLoop(name)) {
+                line.append("，崩溃循环，已停止自动重启");
+            }
+            List<ServerRun> runs = supervisor.getRunHistory(name);
+            if (!runs.isEmpty()) {
+                ServerRun last = runs.get(runs.size() - 1);
+                line.append("，上次退出: ").append(last.getExit().getDescription())
+                    .append("（").append(last.getExitCode()).append("）");
+            }
+            Logger.println(line.toString());
+        }
+    }
+
+    private void setPolicy(String[] args) throws ConfigurationException {
+        if (args.length < 3) {
+            Logger.println("错误: 请指定服务器名称和重启策略");
+            showUsage();
+            return;
+        }
+        RestartPolicy policy = RestartPolicy.parse(args[2]);
+        if (policy == null) {
+            Logger.println("错误: 无效的重启策略 " + args[2] + "，可选 never、on-crash、always");
+            return;
+        }
+        Optional<Server> serverOpt = serverService.getConfigManager().findServerByName(args[1]);
+        if (!serverOpt.isPresent()) {
+            Logger.println("错误: 服务器 " + args[1] + " 不存在");
+            return;
+        }
+        Server server = serverOpt.get();
+        server.setRestartPolicy(policy);
+        serverService.getConfigManager().saveServer(server);
+        if (policy == RestartPolicy.NEVER) {
+            serverService.getSupervisor().cancelRestart(server.getName());
+        }
+        Logger.println("服务器 " + server.getName() + " 的重启策略已设置为: " + policy);
+    }
+
+    private void showHistory(String[] args) {
+        if (args.length < 2) {
+            Logger.println("错误: 请指定服务器名称");
+            return;
+        }
+        List<ServerRun> runs = serverService.getSupervisor().getRunHistory(args[1]);
+        if (runs.isEmpty()) {
+            Logger.println("服务器 " + args[1] + " 没有运行记录");
+            return;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        Logger.println("=== " + args[1] + " 的运行记录 ===");
+        for (ServerRun run : runs) {
+            Logger.println("  " + format.format(new Date(run.getStartTime())) + " 运行 "
+                + run.getDurationMillis() / 1000 + " 秒，" + run.getExit().getDescription()
+                + "，退出代码 " + run.getExitCode()
+                + (run.getRestartAttempt() > 0 ? "，自动重启第 " + run.getRestartAttempt() + " 次" : "")
+                + (run.getRestartDelayMillis() >= 0 ? "，" + run.getRestartDelayMillis() / 1000 + " 秒后重启" : ""));
+        }
+    }
+
+    private void showUsage() {
+        Logger.println("自动重启命令用法:");
+        Logger.println("  autorestart                            - 查看各服务器的重启策略和等待中的重启");
+        Logger.println("  autorestart set <服务器> <never|on-crash|always> - 设置重启策略");
+        Logger.println("  autorestart history <服务器>           - 查看最近的运行记录和退出原因");
+        Logger.println("  autorestart cancel <服务器>            - 取消等待中的自动重启");
+    }
+
+    @Override
+    public String getDescription() {
+        return "设置服务器崩溃后的自动重启策略并查看运行记录";
+    }
+
+    @Override
+    public CommandAnnotation getAnnotation() {
+        return getClass().getAnnotation(CommandAnnotation.class);
+    }
+}
@@ -1,11 +1,15 @@
 package exmo.cy.command.impl;
 
 import exmo.cy.command.AnnotatedCommand;
+import exmo.cy.backup.BackupEngine;
+import exmo.cy.backup.BackupManifest;
 import exmo.cy.command.CommandAnnotation;
 import exmo.cy.service.ServerService;
 import exmo.cy.util.Logger;
 
-import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
 
 @CommandAnnotation(
     name = "backuprestore",
@@ -35,7 +39,11 @@ public class BackupRestoreCommand extends AnnotatedCommand {
             case "restore":
                 return restoreBackup(args);
             case "list":
-                return listBackups();
+                return listBackups(args);
+            case "delete":
+                return deleteBackup(args);
+            case "gc":
+                return collectGarbage();
             default:
                 Logger.println("未知的备份操作: " + operation);
                 showUsage();
@@ -46,10 +54,14 @@ public class BackupRestoreCommand extends AnnotatedCommand {
     private void showUsage() {
         Logger.println("备份恢复命令用法:");
         Logger.println("  backuprestore create <服务器名>                - 创建服务器备份");
-        Logger.println("  backuprestore list                           - 列出所有备份");
+        Logger.println("  backuprestore list [服务器名]                  - 列出备份");
+        Logger.println("  backuprestore restore <服务器名> <备份ID>       - 把已停止的服务器恢复到指定备份");
+        Logger.println("  backuprestore delete <服务器名> <备份ID>        - 删除备份");
+        Logger.println("  backuprestore gc                             - 回收不再被任何备份引用的数据块");
         Logger.println("  示例:");
         Logger.println("    backuprestore create myserver");
-        Logger.println("    backuprestore list");
+        Logger.println("    backuprestore list myserver");
+        Logger.println("    backuprestore restore myserver 20231225_020000");
     }
     
     private boolean createBackup(String[] args) {
@@ -61,8 +73,14 @@ public class BackupRestoreCommand extends AnnotatedCommand {
         String serverName = args[1];
         
         try {
-            Path backupPath = serverService.createBackup(serverName);
-            Logger.println("服务器 '" + serverName + "' 的备份已创建: " + backupPath.toString());
+            BackupManifest manifest = serverService.createBackup(serverName);
+            Logger.println("服务器 '" + serverName + "' 的备份已创建: " + manifest.getId());
+            Logger.println("  文件: " + manifest.getFileCount() + "，有变化: " + manifest.getHashedFiles()
+                + "，总大小: " + formatSize(manifest.getTotalBytes()) + "，新增数据: " + formatSize(manifest.getNewBytes())
+                + "，耗时: " + manifest.getDurationMs() + " ms");
+            if (manifest.getSkippedFiles() > 0) {
+                Logger.println("  警告: " + manifest.getSkippedFiles() + " 个文件无法读取，未包含在备份中");
+            }
         } catch (Exception e) {
             Logger.println("创建备份失败: " + e.getMessage());
             Logger.error("创建备份失败", e);
@@ -71,19 +89,82 @@ public class BackupRestoreCommand extends AnnotatedCommand {
         return true;
     }
     
-    private boolean listBackups() {
-        Logger.println("注意: 当前备份列表功能需要在ServerService中实现");
-        Logger.println("备份目录位于: backups/");
-        Logger.println("您可以直接查看该目录以浏览现有备份");
+    private boolean listBackups(String[] args) {
+        try {
+            BackupEngine engine = serverService.getBackupEngine();
+            List<String> servers = args.length > 1 ? List.of(args[1]) : engine.listServers();
+            if (servers.isEmpty()) {
+                Logger.println("没有备份");
+                return true;
+            }
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+            for (String server : servers) {
+                List<BackupManifest> backups = engine.list(server);
+                Logger.println("服务器 '" + server + "' 的备份 (" + backups.size() + "):");
+                for (BackupManifest manifest : backups) {
+                    Logger.println("  " + manifest.getId() + "  " + format.format(new Date(manifest.getCreatedAt()))
+                        + "  " + manifest.getFileCount() + " 个文件  " + formatSize(manifest.getTotalBytes())
+                        + "  新增 " + formatSize(manifest.getNewBytes()));
+                }
+            }
+        } catch (Exception e) {
+            Logger.println("列出备份失败: " + e.getMessage());
+        }
         return true;
     }
     
     private boolean restoreBackup(String[] args) {
-        Logger.println("恢复功能尚未完全实现。当前版本只支持备份创建。");
-        Logger.println("要恢复备份，请手动从backups目录复制备份文件到相应的服务器目录。");
+        if (args.length < 3) {
+            Logger.println("错误: 请指定服务器名称和备份ID。用法: backuprestore restore <服务器名> <备份ID>");
+            return true;
+        }
+        
+        try {
+            BackupManifest manifest = serverService.restoreBackup(args[1], args[2]);
+            Logger.println("服务器 '" + args[1] + "' 已恢复到备份 " + manifest.getId()
+                + "（" + manifest.getFileCount() + " 个文件）");
+        } catch (Exception e) {
+            Logger.println("恢复备份失败: " + e.getMessage());
+            Logger.error("恢复备份失败", e);
+        }
+        return true;
+    }
+    
+    private boolean deleteBackup(String[] args) {
+        if (args.length < 3) {
+            Logger.println("错误: 请指定服务器名称和备份ID。用法: backuprestore delete <服务器名> <备份ID>");
+            return true;
+        }
+        
+        try {
+            if (serverService.getBackupEngine().delete(args[1], args[2])) {
+                Logger.println("已删除备份 " + args[1] + "/" + args[2] + "，执行 backuprestore gc 释放磁盘空间");
+            } else {
+                Logger.println("备份不存在: " + args[1] + "/" + args[2]);
+            }
+        } catch (Exception e) {
+            Logger.println("删除备份失败: " + e.getMessage());
+        }
+        return true;
+    }
+    
+    private boolean collectGarbage() {
+        try {
+            long freed = serverService.getBackupEngine().collectGarbage();
+            Logger.println("回收完成，释放 " + formatSize(freed));
+        } catch (Exception e) {
+            Logger.println("回收备份数据块失败: " + e.getMessage());
+        }
         return true;
     }
     
+    private static String formatSize(long bytes) {
+        if (bytes >= 1024L * 1024 * 1024) {
+            return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+    
     @Override
     public String getDescription() {
         return "备份和恢复服务器";
@@ -2,12 +2,16 @@ package exmo.cy.command.impl;
 
 import exmo.cy.command.AnnotatedCommand;
 import exmo.cy.command.CommandAnnotation;
+import exmo.cy.model.Server;
+import exmo.cy.model.ServerInstance;
 import exmo.cy.service.ServerService;
 import exmo.cy.util.Logger;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @CommandAnnotation(
     name = "batch",
@@ -69,14 +73,31 @@ public class BatchCommand extends AnnotatedCommand {
         for (int i = 1; i < args.length; i++) {
             String serverName = args[i];
             try {
-                // 尝试启动服务器（使用默认设置）
+                // 尝试启动服务器（使用默认设置），主机资源不足时进入启动队列而不是同时启动
                 var serverOpt = serverService.getConfigManager().findServerByName(serverName);
                 if (serverOpt.isPresent()) {
-                    serverService.startServerWithDefaults(serverOpt.get(), 1, null);
-                    Logger.println("  - 服务器 " + serverName + " 启动命令已发送");
+                    Server server = serverOpt.get();
+                    CompletableFuture<ServerInstance> future = serverService.submitStart(server, 1, null,
+                        server.getDefaultJvmArgs(), server.getDefaultServerArgs());
+                    if (future.isDone()) {
+                        future.join();
+                        Logger.println("  - 服务器 " + serverName + " 启动命令已发送");
+                    } else {
+                        Logger.println("  - 服务器 " + serverName + " 已加入启动队列，位置 "
+                            + serverService.getAdmissionController().getQueuePosition(serverName));
+                        future.whenComplete((instance, error) -> {
+                            if (error != null) {
+                                Logger.println("服务器 " + serverName + " 启动失败: " + unwrap(error).getMessage());
+                            } else {
+                                Logger.println("服务器 " + serverName + " 已出队并启动");
+                            }
+                        });
+                    }
                 } else {
                     Logger.println("  - 服务器 " + serverName + " 不存在");
                 }
+            } catch (CompletionException e) {
+                Logger.println("  - 服务器 " + serverName + " 启动失败: " + unwrap(e).getMessage());
             } catch (Exception e) {
                 Logger.println("  - 服务器 " + serverName + " 启动失败: " + e.getMessage());
             }
@@ -85,6 +106,13 @@ public class BatchCommand extends AnnotatedCommand {
         return true;
     }
     
+    private static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+    
     private boolean batchStop(String[] args) {
         if (args.length < 2) {
             Logger.println("错误: 请指定至少一个服务器名称");
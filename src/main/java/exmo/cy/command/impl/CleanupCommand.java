@@ -3,9 +3,9 @@ package exmo.cy.command.impl;
 import exmo.cy.command.AnnotatedCommand;
 import exmo.cy.command.CommandAnnotation;
 import exmo.cy.service.ServerService;
+import exmo.cy.util.FileUtils;
 import exmo.cy.util.Logger;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -40,7 +40,7 @@ public class CleanupCommand extends AnnotatedCommand {
             case "backups":
                 return cleanupOldBackups(args);
             case "logs":
-                return cleanupOldLogs();
+                return cleanupOldLogs(args);
             case "temp":
                 return cleanupTempFiles();
             case "all":
@@ -106,7 +106,7 @@ public class CleanupCommand extends AnnotatedCommand {
                 })
                 .forEach(dir -> {
                     try {
-                        deleteDirectory(dir.toFile());
+                        FileUtils.deleteDirectory(dir);
                         Logger.println("已删除备份目录: " + dir.toString());
                         cleanedCount.getAndIncrement();
                     } catch (Exception e) {
@@ -119,12 +119,32 @@ public class CleanupCommand extends AnnotatedCommand {
             Logger.println("清理备份时发生错误: " + e.getMessage());
         }
         
+        // 增量备份：删除旧清单后回收不再被引用的数据块，每个服务器至少保留最新的一个备份
+        try {
+            int pruned = serverService.getBackupEngine().prune(System.currentTimeMillis() - (long) days * 24 * 60 * 60 * 1000);
+            Logger.println("共删除 " + pruned + " 个增量备份");
+        } catch (Exception e) {
+            Logger.println("清理增量备份时发生错误: " + e.getMessage());
+        }
+        
         return true;
     }
     
-    private boolean cleanupOldLogs() {
-        Logger.println("日志清理功能需要根据实际日志系统实现");
-        Logger.println("此功能将在日志系统完善后启用");
+    private boolean cleanupOldLogs(String[] args) {
+        int days = 7; // 默认7天
+        
+        if (args.length > 1) {
+            try {
+                days = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                Logger.println("错误: 天数必须是数字");
+                return true;
+            }
+        }
+        
+        Logger.println("正在清理 " + days + " 天前的日志段...");
+        int cleaned = serverService.getLogFileService().cleanOldLogs(days);
+        Logger.println("完成清理，共删除 " + cleaned + " 个日志段（正在写入的日志段不会被删除）");
         return true;
     }
     
@@ -137,24 +157,12 @@ public class CleanupCommand extends AnnotatedCommand {
     private boolean cleanupAll() {
         Logger.println("执行全面清理...");
         cleanupOldBackups(new String[]{"backups", "7"});
-        cleanupOldLogs();
+        cleanupOldLogs(new String[]{"logs", "7"});
         cleanupTempFiles();
         Logger.println("全面清理完成");
         return true;
     }
     
-    private void deleteDirectory(File directory) throws IOException {
-        if (directory.isDirectory()) {
-            File[] files = directory.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    deleteDirectory(file);
-                }
-            }
-        }
-        Files.deleteIfExists(directory.toPath());
-    }
-    
     @Override
     public String getDescription() {
         return "清理旧文件和缓存";
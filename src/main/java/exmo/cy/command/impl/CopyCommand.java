@@ -114,7 +114,9 @@ public class CopyCommand extends AnnotatedCommand {
         }
         
         try {
-            FileUtils.copyDirectory(sourcePath, targetPath);
+            // 核心、模组和依赖库JAR不会被原地改写，同一文件系统上直接硬链接
+            FileUtils.copyDirectory(sourcePath, targetPath, true, (files, bytes) ->
+                Logger.println("  已复制 " + files + " 个文件，" + bytes / 1024 / 1024 + " MB"));
         } catch (ServerOperationException e) {
             Logger.error("复制服务器目录失败: " + e.getMessage(), e);
             return;
@@ -4,6 +4,7 @@ import exmo.cy.command.AnnotatedCommand;
 import exmo.cy.command.CommandAnnotation;
 import exmo.cy.model.ServerInstance;
 import exmo.cy.service.ServerService;
+import exmo.cy.service.ShutdownReport;
 import exmo.cy.util.ConsoleColor;
 import exmo.cy.util.Logger;
 
@@ -34,23 +35,64 @@ public class EStopCommand extends AnnotatedCommand {
         }
         
         List<ServerInstance> serverList = new ArrayList<>(activeServers.values());
-        System.out.println(ConsoleColor.colorize(ConsoleColor.BRIGHT_GREEN, "运行中的服务器："));
-        for (int i = 0; i < serverList.size(); i++) {
-            String serverInfo = (i + 1) + ". " + ConsoleColor.colorize(ConsoleColor.BRIGHT_CYAN, serverList.get(i).getServer().getName());
-            System.out.println(serverInfo);
+        String input;
+        if (args.length > 0) {
+            input = String.join(",", args);
+        } else {
+            System.out.println(ConsoleColor.colorize(ConsoleColor.BRIGHT_GREEN, "运行中的服务器："));
+            for (int i = 0; i < serverList.size(); i++) {
+                String serverInfo = (i + 1) + ". " + ConsoleColor.colorize(ConsoleColor.BRIGHT_CYAN, serverList.get(i).getServer().getName());
+                System.out.println(serverInfo);
+            }
+            System.out.print(ConsoleColor.colorize(ConsoleColor.BRIGHT_BLUE, "输入要紧急停止的服务器序号（多个用逗号分隔，all 表示全部）: "));
+            input = scanner.nextLine();
         }
         
-        System.out.print(ConsoleColor.colorize(ConsoleColor.BRIGHT_BLUE, "输入要紧急停止的服务器序号: "));
+        List<String> targets = new ArrayList<>();
+        for (String token : input.split("[,\\s]+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            if ("all".equalsIgnoreCase(token)) {
+                targets.clear();
+                for (ServerInstance instance : serverList) {
+                    targets.add(instance.getServer().getName());
+                }
+                break;
+            }
+            try {
+                int choice = Integer.parseInt(token) - 1;
+                if (choice < 0 || choice >= serverList.size()) {
+                    System.out.println(ConsoleColor.colorize(ConsoleColor.RED, "错误: 无效的选择 " + token));
+                    return true;
+                }
+                targets.add(serverList.get(choice).getServer().getName());
+            } catch (NumberFormatException e) {
+                // 也可以直接输入服务器名称
+                if (!activeServers.containsKey(token)) {
+                    System.out.println(ConsoleColor.colorize(ConsoleColor.RED, "错误: 服务器 " + token + " 未运行"));
+                    return true;
+                }
+                targets.add(token);
+            }
+        }
+        if (targets.isEmpty()) {
+            System.out.println(ConsoleColor.colorize(ConsoleColor.RED, "错误: 无效的选择"));
+            return true;
+        }
+        
+        // 所有选中的服务器同时强制终止并并行等待退出
         try {
-            int choice = Integer.parseInt(scanner.nextLine()) - 1;
-            if (choice < 0 || choice >= serverList.size()) {
-                System.out.println(ConsoleColor.colorize(ConsoleColor.RED, "错误: 无效的选择"));
-                return true;
+            ShutdownReport report = serverService.stopServers(targets, false).join();
+            for (String line : report.toLines()) {
+                Logger.println(line);
+            }
+            int failed = report.count(ShutdownReport.Status.FAILED);
+            if (failed == 0) {
+                System.out.println(ConsoleColor.colorize(ConsoleColor.GREEN, "已强制终止 " + report.getEntries().size() + " 个服务器"));
+            } else {
+                System.out.println(ConsoleColor.colorize(ConsoleColor.RED, failed + " 个服务器的进程在强制终止后仍未退出"));
             }
-            
-            ServerInstance instance = serverList.get(choice);
-            serverService.forceStopServer(instance.getServer().getName());
-            System.out.println(ConsoleColor.colorize(ConsoleColor.GREEN, "已强制终止服务器 " + instance.getServer().getName()));
         } catch (Exception e) {
             System.out.println(ConsoleColor.colorize(ConsoleColor.RED, "强制终止服务器时出错: " + e.getMessage()));
         }
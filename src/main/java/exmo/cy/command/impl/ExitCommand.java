@@ -24,16 +24,9 @@ public class ExitCommand extends AnnotatedCommand {
     public boolean execute(String[] args) {
         System.out.println(ConsoleColor.colorize(ConsoleColor.YELLOW, "正在关闭CyMc Server Manager..."));
         
-        // 关闭所有服务器
+        // 并行关闭所有服务器，返回时所有进程都已退出
         serverService.shutdownAllServers();
         
-        // 延迟退出，确保所有服务器都已关闭
-        try {
-            Thread.sleep(2000); // 等待2秒让服务器关闭
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-        
         System.out.println(ConsoleColor.colorize(ConsoleColor.RED, "CyMc Server Manager已关闭"));
         System.exit(0);
         return false; // 返回false以停止命令循环
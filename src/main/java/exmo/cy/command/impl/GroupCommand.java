@@ -56,6 +56,16 @@ public class GroupCommand extends AnnotatedCommand {
                 return stopGroup(args);
             case "next":
                 return startNextServer(args);
+            case "ready":
+                return configureReadiness(args);
+            case "depend":
+                return addDependency(args);
+            case "undepend":
+                return removeDependency(args);
+            case "parallel":
+                return setMaxParallelStarts(args);
+            case "report":
+                return showStartupReport(args);
             default:
                 Logger.println("未知的操作: " + action);
                 showUsage();
@@ -72,16 +82,169 @@ public class GroupCommand extends AnnotatedCommand {
         Logger.println("  group remove <群组名> <服务器名>              - 从群组中移除服务器");
         Logger.println("  group list                                  - 列出所有群组");
         Logger.println("  group info <群组名>                          - 查看群组信息");
-        Logger.println("  group start concurrent <群组名>              - 同时启动群组中的所有服务器");
+        Logger.println("  group start concurrent <群组名>              - 按依赖关系并行启动群组中的服务器");
         Logger.println("  group start ordered <群组名>                 - 按顺序启动群组中的服务器");
         Logger.println("  group stop <群组名>                          - 停止群组中的所有服务器");
         Logger.println("  group next <群组名>                          - 手动启动队列中的下一个服务器");
+        Logger.println("  group ready <群组名> keyword <关键词>         - 设置顺序启动的就绪关键词，多个用 | 分隔");
+        Logger.println("  group ready <群组名> regex <正则表达式>       - 设置顺序启动的就绪正则表达式");
+        Logger.println("  group ready <群组名> timeout <秒>             - 设置等待就绪的超时时间");
+        Logger.println("  group depend <群组名> <服务器> <依赖的服务器...>  - 依赖的服务器就绪后才启动该服务器");
+        Logger.println("  group undepend <群组名> <服务器> <依赖的服务器>  - 移除启动依赖");
+        Logger.println("  group parallel <群组名> <数量>                - 设置并行启动上限，0表示按CPU数量决定");
+        Logger.println("  group report <群组名>                        - 查看最近一次并行启动的报告");
         Logger.println("示例:");
         Logger.println("  group create mygroup");
         Logger.println("  group create mygroup 1 \"-Xms1G -Xmx4G\" \"nogui\"");
         Logger.println("  group add mygroup server1");
         Logger.println("  group add mygroup server2");
         Logger.println("  group start concurrent mygroup");
+        Logger.println("  group ready mygroup regex \"Done \\(\\d+\\.\\d+s\\)!\"");
+    }
+    
+    private boolean addDependency(String[] args) {
+        if (args.length < 4) {
+            Logger.println("错误: 参数不足。用法: group depend <群组名> <服务器> <依赖的服务器...>");
+            return true;
+        }
+        
+        ServerGroup group = serverGroupService.getGroup(args[1]);
+        if (group == null) {
+            Logger.println("错误: 群组 " + args[1] + " 不存在");
+            return true;
+        }
+        
+        String serverName = args[2];
+        for (int i = 3; i < args.length; i++) {
+            String dependsOn = args[i];
+            if (!group.containsServer(serverName) || !group.containsServer(dependsOn)) {
+                Logger.println("错误: " + serverName + " 和 " + dependsOn + " 都必须是群组中的服务器");
+                return true;
+            }
+            if (!serverGroupService.addDependency(args[1], serverName, dependsOn)) {
+                Logger.println("错误: 添加依赖 " + serverName + " -> " + dependsOn + " 会形成循环");
+                return true;
+            }
+            Logger.println("已添加依赖: " + serverName + " 在 " + dependsOn + " 就绪后启动");
+        }
+        return true;
+    }
+    
+    private boolean removeDependency(String[] args) {
+        if (args.length < 4) {
+            Logger.println("错误: 参数不足。用法: group undepend <群组名> <服务器> <依赖的服务器>");
+            return true;
+        }
+        
+        ServerGroup group = serverGroupService.getGroup(args[1]);
+        if (group == null) {
+            Logger.println("错误: 群组 " + args[1] + " 不存在");
+            return true;
+        }
+        
+        if (group.removeDependency(args[2], args[3])) {
+            serverGroupService.saveGroups();
+            Logger.println("已移除依赖: " + args[2] + " -> " + args[3]);
+        } else {
+            Logger.println("未找到依赖: " + args[2] + " -> " + args[3]);
+        }
+        return true;
+    }
+    
+    private boolean setMaxParallelStarts(String[] args) {
+        if (args.length < 3) {
+            Logger.println("错误: 参数不足。用法: group parallel <群组名> <数量>");
+            return true;
+        }
+        
+        ServerGroup group = serverGroupService.getGroup(args[1]);
+        if (group == null) {
+            Logger.println("错误: 群组 " + args[1] + " 不存在");
+            return true;
+        }
+        
+        try {
+            int limit = Integer.parseInt(args[2]);
+            if (limit < 0) {
+                Logger.println("错误: 并行启动上限不能为负数");
+                return true;
+            }
+            group.setMaxParallelStarts(limit);
+            serverGroupService.saveGroups();
+            Logger.println("群组 " + args[1] + " 的并行启动上限已设置为: " + (limit == 0 ? "自动" : limit));
+        } catch (NumberFormatException e) {
+            Logger.println("错误: 并行启动上限必须是整数");
+        }
+        return true;
+    }
+    
+    private boolean showStartupReport(String[] args) {
+        if (args.length < 2) {
+            Logger.println("错误: 请指定群组名称");
+            return true;
+        }
+        
+        Optional<exmo.cy.service.GroupStartupReport> report = serverGroupService.getStartupReport(args[1]);
+        if (!report.isPresent()) {
+            Logger.println("群组 " + args[1] + " 还没有并行启动记录");
+            return true;
+        }
+        for (String line : report.get().toLines()) {
+            Logger.println(line);
+        }
+        return true;
+    }
+    
+    private boolean configureReadiness(String[] args) {
+        if (args.length < 4) {
+            Logger.println("错误: 参数不足。用法: group ready <群组名> <keyword|regex|timeout> <值>");
+            return true;
+        }
+        
+        String groupName = args[1];
+        ServerGroup group = serverGroupService.getGroup(groupName);
+        if (group == null) {
+            Logger.println("错误: 群组 " + groupName + " 不存在");
+            return true;
+        }
+        
+        String value = args[3];
+        switch (args[2].toLowerCase()) {
+            case "keyword":
+                group.setTriggerKeyword(value);
+                Logger.println("群组 " + groupName + " 的就绪关键词已设置为: " + value);
+                break;
+            case "regex":
+                try {
+                    java.util.regex.Pattern.compile(value);
+                } catch (java.util.regex.PatternSyntaxException e) {
+                    Logger.println("错误: 正则表达式无效: " + e.getDescription());
+                    return true;
+                }
+                group.setReadyPattern(value);
+                Logger.println("群组 " + groupName + " 的就绪正则表达式已设置为: " + value);
+                break;
+            case "timeout":
+                try {
+                    int seconds = Integer.parseInt(value);
+                    if (seconds <= 0) {
+                        Logger.println("错误: 超时时间必须大于0");
+                        return true;
+                    }
+                    group.setReadyTimeoutSeconds(seconds);
+                    Logger.println("群组 " + groupName + " 的就绪超时已设置为: " + seconds + "秒");
+                } catch (NumberFormatException e) {
+                    Logger.println("错误: 超时时间必须是整数秒");
+                    return true;
+                }
+                break;
+            default:
+                Logger.println("错误: 未知的就绪设置: " + args[2] + "，可选 keyword、regex、timeout");
+                return true;
+        }
+        
+        serverGroupService.saveGroups();
+        return true;
     }
     
     private boolean createGroup(String[] args) {
@@ -238,13 +401,19 @@ public class GroupCommand extends AnnotatedCommand {
         Logger.println("  服务器数量: " + group.getServerCount());
         Logger.println("  顺序启动: " + (group.isOrderedStartup() ? "是" : "否"));
         Logger.println("  触发关键词: " + group.getTriggerKeyword());
+        Logger.println("  就绪正则: " + (group.getReadyPattern() != null ? group.getReadyPattern() : "无"));
+        Logger.println("  就绪超时: " + group.getReadyTimeoutSeconds() + "秒");
         Logger.println("  启动延迟: " + group.getStartupDelay() + "ms");
         Logger.println("  启动模式: " + group.getLaunchMode());
         Logger.println("  预设JVM参数: " + (group.getPresetJvmArgs() != null ? group.getPresetJvmArgs() : "无"));
         Logger.println("  预设服务器参数: " + (group.getPresetServerArgs() != null ? group.getPresetServerArgs() : "无"));
         Logger.println("  服务器列表:");
         for (String serverName : group.getServerNames()) {
-            Logger.println("    - " + serverName);
+            Optional<Long> latency = serverGroupService.getStartupLatency(serverName);
+            List<String> deps = group.getDependencies(serverName);
+            Logger.println("    - " + serverName
+                + (deps.isEmpty() ? "" : " (依赖: " + String.join(", ", deps) + ")")
+                + latency.map(ms -> " (上次启动耗时 " + ms + "ms)").orElse(""));
         }
         
         return true;
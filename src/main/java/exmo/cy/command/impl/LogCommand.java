@@ -0,0 +1,115 @@
+package exmo.cy.command.impl;
+
+import exmo.cy.command.AnnotatedCommand;
+import exmo.cy.command.CommandAnnotation;
+import exmo.cy.log.LogSlice;
+import exmo.cy.service.LogFileService;
+import exmo.cy.service.ServerService;
+import exmo.cy.util.Logger;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+
+@CommandAnnotation(
+    name = "log",
+    aliases = {"logs"},
+    description = "查看服务器的持久化日志"
+)
+public class LogCommand extends AnnotatedCommand {
+    private final ServerService serverService;
+
+    public LogCommand(ServerService serverService) {
+        this.serverService = serverService;
+    }
+
+    @Override
+    public boolean execute(String[] args) {
+        if (args.length == 0) {
+            showUsage();
+            return true;
+        }
+
+        LogFileService logs = serverService.getLogFileService();
+        String serverName = args[0];
+        Optional<LogSlice> slice;
+        try {
+            if (args.length > 1 && "from".equalsIgnoreCase(args[1])) {
+                // log <服务器> from <行号> [行数]
+                if (args.length < 3) {
+                    showUsage();
+                    return true;
+                }
+                slice = logs.readServerLines(serverName, Long.parseLong(args[2]),
+                    args.length > 3 ? Integer.parseInt(args[3]) : 100);
+            } else if (args.length > 1 && "since".equalsIgnoreCase(args[1])) {
+                // log <服务器> since <时间> [until <时间>]
+                if (args.length < 3) {
+                    showUsage();
+                    return true;
+                }
+                long since = parseTime(args[2]);
+                long until = args.length > 4 && "until".equalsIgnoreCase(args[3])
+                    ? parseTime(args[4]) : Long.MAX_VALUE;
+                slice = logs.readServerLogBetween(serverName, since, until, 0);
+            } else {
+                // log <服务器> [行数]
+                slice = logs.tailServerLog(serverName, args.length > 1 ? Integer.parseInt(args[1]) : 50);
+            }
+        } catch (NumberFormatException e) {
+            Logger.println("错误: 无效的数字 " + e.getMessage());
+            return true;
+        } catch (DateTimeParseException e) {
+            Logger.println("错误: 无效的时间 " + e.getParsedString() + "，格式为 HH:mm[:ss] 或 yyyy-MM-ddTHH:mm[:ss]");
+            return true;
+        }
+
+        if (!slice.isPresent()) {
+            Logger.println("服务器 " + serverName + " 没有日志");
+            return true;
+        }
+        LogSlice result = slice.get();
+        Logger.println("=== " + serverName + " 日志 第 " + result.getFirstLine() + " - "
+            + (result.getNextLine() - 1) + " 行（共 " + result.getTotalLines() + " 行）===");
+        for (String line : result.getLines()) {
+            Logger.println(line);
+        }
+        if (result.getLines().isEmpty()) {
+            Logger.println("（没有符合条件的日志）");
+        }
+        return true;
+    }
+
+    /**
+     * 解析时间，只有时分（秒）时表示今天
+     */
+    static long parseTime(String text) {
+        LocalDateTime time = text.contains("T")
+            ? LocalDateTime.parse(text)
+            : LocalDateTime.of(LocalDate.now(), LocalTime.parse(text));
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private void showUsage() {
+        Logger.println("日志命令用法:");
+        Logger.println("  log <服务器> [行数]                       - 显示日志末尾若干行（默认50行）");
+        Logger.println("  log <服务器> from <行号> [行数]           - 从指定行号开始显示（默认100行）");
+        Logger.println("  log <服务器> since <时间> [until <时间>]  - 显示时间范围内的日志");
+        Logger.println("  时间格式: HH:mm[:ss]（今天）或 yyyy-MM-ddTHH:mm[:ss]");
+        Logger.println("  示例:");
+        Logger.println("    log survival since 14:00 until 14:30");
+    }
+
+    @Override
+    public String getDescription() {
+        return "查看服务器的持久化日志";
+    }
+
+    @Override
+    public CommandAnnotation getAnnotation() {
+        return getClass().getAnnotation(CommandAnnotation.class);
+    }
+}
@@ -5,6 +5,8 @@ import exmo.cy.command.CommandAnnotation;
 import exmo.cy.service.ServerService;
 import exmo.cy.util.Logger;
 
+import java.util.List;
+
 @CommandAnnotation(
     name = "map",
     aliases = {},
@@ -19,7 +21,69 @@ public class MapCommand extends AnnotatedCommand {
     
     @Override
     public boolean execute(String[] args) {
-        Logger.println("地图切换功能正在实现中...");
+        if (args.length == 0) {
+            showUsage();
+            return true;
+        }
+        
+        String operation = args[0].toLowerCase();
+        
+        switch (operation) {
+            case "list":
+                return listMaps();
+            case "switch":
+            case "import":
+                return switchMap(args);
+            default:
+                Logger.println("未知的地图操作: " + operation);
+                showUsage();
+                return true;
+        }
+    }
+    
+    private void showUsage() {
+        Logger.println("地图命令用法:");
+        Logger.println("  map list                                 - 列出maps目录中的地图（ZIP或目录）");
+        Logger.println("  map switch <服务器名> <地图名>              - 把地图导入服务器并替换世界");
+        Logger.println("  服务器正在运行时，新世界在下次启动时生效；原世界保留为 <世界名>.previous");
+        Logger.println("  示例:");
+        Logger.println("    map switch myserver skyblock.zip");
+    }
+    
+    private boolean listMaps() {
+        List<String> maps = serverService.getMapService().listMaps();
+        if (maps.isEmpty()) {
+            Logger.println("maps目录中没有地图");
+            return true;
+        }
+        Logger.println("可用地图:");
+        for (String map : maps) {
+            Logger.println("  " + map);
+        }
+        return true;
+    }
+    
+    private boolean switchMap(String[] args) {
+        if (args.length < 3) {
+            Logger.println("错误: 请指定服务器名称和地图名。用法: map switch <服务器名> <地图名>");
+            return true;
+        }
+        
+        String serverName = args[1];
+        String mapName = args[2];
+        Logger.println("正在导入地图 " + mapName + " ...");
+        try {
+            boolean swapped = serverService.switchMap(serverName, mapName, (files, bytes) ->
+                Logger.println("  已导入 " + files + " 个文件，" + bytes / 1024 / 1024 + " MB"));
+            if (swapped) {
+                Logger.println("服务器 '" + serverName + "' 已切换到地图 " + mapName);
+            } else {
+                Logger.println("服务器 '" + serverName + "' 正在运行，地图 " + mapName + " 已准备好，将在下次启动时生效");
+            }
+        } catch (Exception e) {
+            Logger.println("切换地图失败: " + e.getMessage());
+            Logger.error("切换地图失败", e);
+        }
         return true;
     }
     
@@ -3,6 +3,8 @@ package exmo.cy.command.impl;
 import exmo.cy.command.AnnotatedCommand;
 import exmo.cy.command.CommandAnnotation;
 import exmo.cy.model.Server;
+import exmo.cy.monitor.ResourceSampler;
+import exmo.cy.monitor.ResourceTimeSeries;
 import exmo.cy.service.ServerService;
 import exmo.cy.util.Logger;
 
@@ -10,8 +12,13 @@ import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.MemoryUsage;
 import java.lang.management.OperatingSystemMXBean;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @CommandAnnotation(
     name = "resource",
@@ -27,6 +34,21 @@ public class ResourceMonitorCommand extends AnnotatedCommand {
     
     @Override
     public boolean execute(String[] args) {
+        if (args.length > 0) {
+            // resource <服务器名> [分钟数]
+            int minutes = 10;
+            if (args.length > 1) {
+                try {
+                    minutes = Math.max(1, Math.min(Integer.parseInt(args[1]), 24 * 60));
+                } catch (NumberFormatException e) {
+                    Logger.println("错误: 无效的分钟数 " + args[1]);
+                    return true;
+                }
+            }
+            displayServerHistory(args[0], minutes);
+            return true;
+        }
+        
         Logger.println("=== 系统资源使用情况 ===");
         
         // 显示系统资源
@@ -64,10 +86,71 @@ public class ResourceMonitorCommand extends AnnotatedCommand {
             return;
         }
         
-        Logger.println("活跃服务器:");
-        for (Object serverNameObj : activeServers.keySet()) {
-            String serverName = (String) serverNameObj;
-            Logger.println("  - " + serverName + " (运行中)");
+        ResourceSampler sampler = serverService.getResourceSampler();
+        if (!sampler.isRunning()) {
+            Logger.println("活跃服务器（当前系统不支持进程资源采样）:");
+        } else {
+            Logger.println("活跃服务器（按CPU占用排序，含子进程）:");
+        }
+        
+        // 按最新的CPU占用从高到低排列，便于找到占用资源最多的服务器
+        List<String> names = new ArrayList<>(activeServers.keySet());
+        names.sort(Comparator.comparingLong((String name) ->
+            sampler.getLatest(name).map(v -> v[ResourceTimeSeries.CPU]).orElse(-1L)).reversed());
+        
+        for (String serverName : names) {
+            Optional<long[]> latest = sampler.getLatest(serverName);
+            if (latest.isPresent()) {
+                long[] v = latest.get();
+                Logger.println("  - " + serverName + ": CPU " + String.format("%.1f%%", v[ResourceTimeSeries.CPU] / 100.0)
+                    + ", 内存 " + formatBytes(v[ResourceTimeSeries.RSS])
+                    + ", 线程 " + v[ResourceTimeSeries.THREADS]
+                    + ", 文件描述符 " + v[ResourceTimeSeries.FDS]
+                    + ", 进程 " + v[ResourceTimeSeries.PROCESSES]);
+            } else {
+                Logger.println("  - " + serverName + " (运行中)");
+            }
+            serverService.getConsoleStats(serverName).ifPresent(stats ->
+                Logger.println("    控制台输出: " + stats.getTotalLines() + " 行 / " + formatBytes(stats.getTotalBytes())
+                    + ", 当前 " + String.format("%.1f", stats.getLinesPerSecond()) + " 行/秒"
+                    + ", 峰值 " + String.format("%.1f", stats.getPeakLinesPerSecond()) + " 行/秒"));
+        }
+        Logger.println("使用 resource <服务器名> [分钟数] 查看资源历史");
+    }
+    
+    private void displayServerHistory(String serverName, int minutes) {
+        Optional<ResourceTimeSeries> series = serverService.getResourceSampler().getSeries(serverName);
+        if (!series.isPresent()) {
+            Logger.println("没有服务器 " + serverName + " 的资源采样数据");
+            return;
+        }
+        
+        ResourceTimeSeries.Range range = series.get().since(System.currentTimeMillis() - minutes * 60_000L);
+        if (range.size() == 0) {
+            Logger.println("服务器 " + serverName + " 最近 " + minutes + " 分钟没有采样数据");
+            return;
+        }
+        
+        Logger.println("=== " + serverName + " 最近 " + minutes + " 分钟资源使用 ("
+            + (range.getResolutionMillis() >= 60_000L ? "每分钟平均" : "每秒") + "，" + range.size() + " 个采样点) ===");
+        Logger.println("  CPU: 平均 " + String.format("%.1f%%", range.average(ResourceTimeSeries.CPU) / 100.0)
+            + ", 峰值 " + String.format("%.1f%%", range.max(ResourceTimeSeries.CPU) / 100.0));
+        Logger.println("  内存: 平均 " + formatBytes(range.average(ResourceTimeSeries.RSS))
+            + ", 峰值 " + formatBytes(range.max(ResourceTimeSeries.RSS)));
+        Logger.println("  线程: 平均 " + range.average(ResourceTimeSeries.THREADS)
+            + ", 峰值 " + range.max(ResourceTimeSeries.THREADS));
+        Logger.println("  文件描述符: 平均 " + range.average(ResourceTimeSeries.FDS)
+            + ", 峰值 " + range.max(ResourceTimeSeries.FDS));
+        
+        // 最多列出最近10个采样点
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss");
+        Logger.println("  最近采样:");
+        for (int i = Math.max(0, range.size() - 10); i < range.size(); i++) {
+            Logger.println("    " + format.format(new Date(range.getTimestamp(i)))
+                + "  CPU " + String.format("%6.1f%%", range.getValue(i, ResourceTimeSeries.CPU) / 100.0)
+                + "  内存 " + formatBytes(range.getValue(i, ResourceTimeSeries.RSS))
+                + "  线程 " + range.getValue(i, ResourceTimeSeries.THREADS)
+                + "  FD " + range.getValue(i, ResourceTimeSeries.FDS));
         }
     }
     
@@ -57,6 +57,9 @@ public class ScheduleCommand extends AnnotatedCommand {
                 return scheduleBackupTask(args);
             case "restart":
                 return scheduleRestartTask(args);
+            case "cron":
+            case "every":
+                return addCronTask(args);
             default:
                 Logger.println("未知的计划任务操作: " + operation);
                 showUsage();
@@ -73,13 +76,17 @@ public class ScheduleCommand extends AnnotatedCommand {
         Logger.println("  schedule command <服务器名> <时间> <命令>          - 计划发送命令");
         Logger.println("  schedule backup <服务器名> <时间>                 - 计划创建备份");
         Logger.println("  schedule restart <服务器名> <时间>                - 计划重启服务器");
+        Logger.println("  schedule cron <任务名> <服务器名> <类型> <cron表达式> [选项] [命令] - 添加重复任务");
         Logger.println("  schedule remove <任务ID>                          - 删除计划任务");
         Logger.println("时间格式: yyyy-MM-dd HH:mm:ss (例如: 2023-12-25 10:30:00)");
         Logger.println("任务类型: start, stop, command, backup, restart");
+        Logger.println("cron表达式: 分 时 日 月 周 (例如: \"0 4 * * *\" 每天4点)，也支持 @hourly、@daily、@weekly");
+        Logger.println("重复任务选项: --jitter=<秒> 随机延迟执行，--catch-up 停机期间错过时启动后补执行一次");
         Logger.println("示例:");
         Logger.println("  schedule start myserver \"2023-12-25 09:00:00\"");
         Logger.println("  schedule command myserver \"2023-12-25 12:00:00\" \"say 服务器将在30分钟后重启\"");
         Logger.println("  schedule backup myserver \"2023-12-25 02:00:00\"");
+        Logger.println("  schedule cron 夜间备份 myserver backup \"0 3 * * *\" --jitter=300 --catch-up");
     }
     
     private boolean addTask(String[] args) {
@@ -120,6 +127,63 @@ public class ScheduleCommand extends AnnotatedCommand {
         return true;
     }
     
+    private boolean addCronTask(String[] args) {
+        if (args.length < 5) {
+            Logger.println("错误: 参数不足。用法: schedule cron <任务名> <服务器名> <类型> <cron表达式> [选项] [命令]");
+            return true;
+        }
+        
+        String taskName = args[1];
+        String serverName = args[2];
+        String taskTypeStr = args[3];
+        String cronExpression = args[4];
+        int jitterSeconds = 0;
+        ScheduledTask.MissedFirePolicy policy = ScheduledTask.MissedFirePolicy.SKIP;
+        StringBuilder command = new StringBuilder();
+        
+        try {
+            for (int i = 5; i < args.length; i++) {
+                if (args[i].startsWith("--jitter=")) {
+                    jitterSeconds = Integer.parseInt(args[i].substring("--jitter=".length()));
+                } else if (args[i].equals("--catch-up")) {
+                    policy = ScheduledTask.MissedFirePolicy.FIRE_ONCE;
+                } else {
+                    if (command.length() > 0) {
+                        command.append(' ');
+                    }
+                    command.append(args[i]);
+                }
+            }
+            
+            ScheduledTask.TaskType taskType = parseTaskType(taskTypeStr);
+            ScheduledTask task = new ScheduledTask(null, taskName, serverName, command.toString(), null,
+                    true, cronExpression, taskType);
+            task.setJitterSeconds(jitterSeconds);
+            task.setMissedFirePolicy(policy);
+            String taskId = taskScheduler.scheduleTask(task);
+            
+            Logger.println("已添加重复任务:");
+            Logger.println("  任务ID: " + taskId);
+            Logger.println("  任务名称: " + taskName);
+            Logger.println("  服务器: " + serverName);
+            Logger.println("  类型: " + taskType);
+            Logger.println("  cron表达式: " + cronExpression);
+            Logger.println("  下次执行: " + task.getScheduledTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+            if (jitterSeconds > 0) {
+                Logger.println("  随机延迟: 0~" + jitterSeconds + " 秒");
+            }
+            if (command.length() > 0) {
+                Logger.println("  命令: " + command);
+            }
+        } catch (NumberFormatException e) {
+            Logger.println("错误: --jitter 需要一个整数秒数");
+        } catch (IllegalArgumentException e) {
+            Logger.println("错误: " + e.getMessage());
+        }
+        
+        return true;
+    }
+    
     private boolean scheduleStartTask(String[] args) {
         if (args.length < 3) {
             Logger.println("错误: 请指定服务器名称和时间。用法: schedule start <服务器名> <时间>");
@@ -296,7 +360,12 @@ public class ScheduleCommand extends AnnotatedCommand {
             Logger.println("    名称: " + task.getTaskName());
             Logger.println("    服务器: " + task.getServerName());
             Logger.println("    类型: " + task.getTaskType());
-            Logger.println("    时间: " + task.getScheduledTime().format(formatter));
+            if (task.isRecurring()) {
+                Logger.println("    cron表达式: " + task.getCronExpression());
+                Logger.println("    下次执行: " + (task.getScheduledTime() != null ? task.getScheduledTime().format(formatter) : "无"));
+            } else {
+                Logger.println("    时间: " + task.getScheduledTime().format(formatter));
+            }
             Logger.println("    状态: " + status);
             if (task.getCommand() != null && !task.getCommand().isEmpty()) {
                 Logger.println("    命令: " + task.getCommand());
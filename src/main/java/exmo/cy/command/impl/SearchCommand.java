@@ -0,0 +1,119 @@
+package exmo.cy.command.impl;
+
+import exmo.cy.command.AnnotatedCommand;
+import exmo.cy.command.CommandAnnotation;
+import exmo.cy.log.LogMatch;
+import exmo.cy.log.LogQuery;
+import exmo.cy.service.LogFileService;
+import exmo.cy.service.ServerService;
+import exmo.cy.util.Logger;
+
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+@CommandAnnotation(
+    name = "search",
+    aliases = {"grep"},
+    description = "全文搜索服务器日志"
+)
+public class SearchCommand extends AnnotatedCommand {
+    private final ServerService serverService;
+
+    public SearchCommand(ServerService serverService) {
+        this.serverService = serverService;
+    }
+
+    @Override
+    public boolean execute(String[] args) {
+        if (args.length == 0) {
+            showUsage();
+            return true;
+        }
+
+        LogFileService logs = serverService.getLogFileService();
+        if ("rebuild".equalsIgnoreCase(args[0])) {
+            int rebuilt = logs.rebuildSearchIndex(args.length > 1 ? args[1] : null);
+            Logger.println("已开始在后台重建 " + rebuilt + " 个日志的搜索索引");
+            return true;
+        }
+
+        // server:、since:、until:、limit: 由命令处理，其余部分作为查询文本
+        String serverName = null;
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        int limit = 20;
+        StringBuilder text = new StringBuilder();
+        try {
+            for (String arg : args) {
+                String lower = arg.toLowerCase();
+                if (lower.startsWith("server:")) {
+                    serverName = arg.substring(7);
+                } else if (lower.startsWith("since:")) {
+                    since = LogCommand.parseTime(arg.substring(6));
+                } else if (lower.startsWith("until:")) {
+                    until = LogCommand.parseTime(arg.substring(6));
+                } else if (lower.startsWith("limit:")) {
+                    limit = Integer.parseInt(arg.substring(6));
+                } else {
+                    text.append(arg).append(' ');
+                }
+            }
+        } catch (NumberFormatException e) {
+            Logger.println("错误: 无效的数字 " + e.getMessage());
+            return true;
+        } catch (DateTimeParseException e) {
+            Logger.println("错误: 无效的时间 " + e.getParsedString() + "，格式为 HH:mm[:ss] 或 yyyy-MM-ddTHH:mm[:ss]");
+            return true;
+        }
+
+        LogQuery query;
+        try {
+            query = LogQuery.parse(text.toString()).between(since, until);
+        } catch (IllegalArgumentException e) {
+            Logger.println("错误: " + e.getMessage());
+            showUsage();
+            return true;
+        }
+
+        long startTime = System.nanoTime();
+        List<LogMatch> matches = logs.searchLogs(serverName, query, limit);
+        long elapsed = (System.nanoTime() - startTime) / 1_000_000;
+
+        Logger.println("=== 搜索 " + query + " 找到 " + matches.size() + " 行（耗时 " + elapsed + " ms）===");
+        // 按时间顺序显示，最新的在最后
+        for (int i = matches.size() - 1; i >= 0; i--) {
+            LogMatch match = matches.get(i);
+            Logger.println("[" + match.getLog() + " #" + match.getLine() + "] " + match.getText());
+        }
+        long backlog = logs.getSearchBacklog(serverName);
+        if (backlog > 0) {
+            Logger.println("（还有 " + backlog + " 行正在建立索引，结果可能不完整）");
+        }
+        return true;
+    }
+
+    private void showUsage() {
+        Logger.println("搜索命令用法:");
+        Logger.println("  search <条件...>              - 搜索所有日志，显示最近的匹配行（默认20行）");
+        Logger.println("  search rebuild [服务器]       - 在后台重建搜索索引");
+        Logger.println("  条件:");
+        Logger.println("    词                          - 包含该词（不区分大小写），多个词须同时包含");
+        Logger.println("    \"短语\"                      - 包含该短语");
+        Logger.println("    level:<级别>                - 日志级别，例如 level:error");
+        Logger.println("    server:<服务器>             - 只搜索该服务器的日志");
+        Logger.println("    since:<时间> until:<时间>   - 时间范围，格式为 HH:mm[:ss]（今天）或 yyyy-MM-ddTHH:mm[:ss]");
+        Logger.println("    limit:<行数>                - 最多显示的行数");
+        Logger.println("  示例:");
+        Logger.println("    search Steve \"left the game\" server:survival since:14:00");
+    }
+
+    @Override
+    public String getDescription() {
+        return "全文搜索服务器日志";
+    }
+
+    @Override
+    public CommandAnnotation getAnnotation() {
+        return getClass().getAnnotation(CommandAnnotation.class);
+    }
+}
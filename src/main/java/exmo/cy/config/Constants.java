@@ -48,6 +48,116 @@ public final class Constants {
     // 时间格式
     public static final String TIMESTAMP_FORMAT = "yyyyMMdd_HHmmss";
     
+    // 控制台历史缓冲区（字节），可通过系统属性覆盖
+    public static final int DEFAULT_CONSOLE_HISTORY_BYTES = 1024 * 1024;
+    public static final String CONSOLE_HISTORY_BYTES_PROPERTY = "cymc.console.historyBytes";
+    
+    // 服务器配置写回延迟（毫秒），同一时间窗口内的多次修改只写一次文件
+    public static final long CONFIG_WRITE_DELAY_MS = 200;
+    // 计划任务配置写回延迟（毫秒），重复任务触发时更新的下次执行时间在该窗口内合并为一次写入
+    public static final long SCHEDULER_WRITE_DELAY_MS = 1000;
+    // 检测到配置文件被外部修改后，等待编辑器写完再重新加载（毫秒）
+    public static final long CONFIG_RELOAD_DEBOUNCE_MS = 100;
+
+    // 启动准入控制：堆内存和服务器数量相对主机资源的超量分配比例，可通过系统属性覆盖
+    public static final double DEFAULT_ADMISSION_OVERCOMMIT_RATIO = 1.0;
+    public static final String ADMISSION_OVERCOMMIT_PROPERTY = "cymc.admission.overcommit";
+    // 为操作系统和管理器自身保留、不分配给服务器的内存（MB）
+    public static final long ADMISSION_RESERVED_MEMORY_MB = 1024;
+    // 同步启动时等待主机资源的最长时间（秒），超时后取消排队
+    public static final long ADMISSION_WAIT_TIMEOUT_SECONDS = 600;
+
+    // 服务器进程资源采样间隔（毫秒）
+    public static final long RESOURCE_SAMPLE_INTERVAL_MS = 1000;
+    // /proc/<pid>/stat 中CPU时间的单位（USER_HZ），Linux上固定为100
+    public static final int PROC_CLOCK_TICKS = 100;
+
+    // TCP API：最大连接数、空闲超时、单个连接同时处理的请求数、单条命令（帧）的最大字节数
+    public static final int TCP_MAX_CONNECTIONS = 256;
+    public static final long TCP_IDLE_TIMEOUT_MS = 300_000;
+    public static final int TCP_MAX_PIPELINED_REQUESTS = 32;
+    public static final int TCP_MAX_FRAME_BYTES = 1024 * 1024;
+    // TCP API推送订阅：每个控制台订阅最多缓存的消息数，客户端读取太慢时丢弃新消息并通知丢弃数量
+    public static final int TCP_SUBSCRIPTION_QUEUE_SIZE = 1024;
+    // 单个连接最多同时存在的订阅数
+    public static final int TCP_MAX_SUBSCRIPTIONS = 16;
+
+    // 日志存储：单个日志段的大小上限、稀疏索引的检查点间隔（行数或字节数，先到者为准）、
+    // 读取时每次映射的文件窗口大小，以及单次查询最多返回的行数
+    public static final long LOG_SEGMENT_BYTES = 64L * 1024 * 1024;
+    public static final int LOG_INDEX_INTERVAL_LINES = 256;
+    public static final int LOG_INDEX_INTERVAL_BYTES = 64 * 1024;
+    public static final int LOG_MAP_WINDOW_BYTES = 8 * 1024 * 1024;
+    public static final int LOG_MAX_READ_LINES = 10_000;
+
+    // 日志写入：每个日志的写缓冲区大小、触发写入的缓冲字节数和最长间隔，
+    // 持久性模式的系统属性（line 每行写入，batch 批量写入，默认batch）
+    public static final int LOG_BUFFER_BYTES = 1024 * 1024;
+    public static final int LOG_FLUSH_BYTES = 64 * 1024;
+    public static final long LOG_FLUSH_INTERVAL_MS = 100;
+    public static final String LOG_DURABILITY_PROPERTY = "cymc.log.durability";
+
+    // 日志保留：每个日志（系统日志或一个服务器的日志）占用磁盘空间的上限，封存的日志段压缩后计算
+    public static final long DEFAULT_LOG_RETENTION_BYTES = 1024L * 1024 * 1024;
+    public static final String LOG_RETENTION_BYTES_PROPERTY = "cymc.log.retentionBytes";
+
+    // 日志搜索：内存中的索引达到倒排项数或词数上限后写入索引块文件；后台每批索引的行数和每次任务的批数；
+    // 搜索时未索引的行不超过该数量才先补齐索引；单次搜索的默认和最多返回行数
+    public static final int LOG_SEARCH_CHUNK_POSTINGS = 2_000_000;
+    public static final int LOG_SEARCH_CHUNK_TERMS = 250_000;
+    public static final int LOG_SEARCH_BATCH_LINES = 4096;
+    public static final int LOG_SEARCH_BATCHES_PER_TASK = 16;
+    public static final int LOG_SEARCH_CATCHUP_LINES = 50_000;
+    public static final int LOG_SEARCH_DEFAULT_RESULTS = 100;
+    public static final int LOG_SEARCH_MAX_RESULTS = 1000;
+
+    // 备份：按内容分块的最小、平均和最大字节数（平均值必须是2的幂），
+    // 修改时间距备份开始不足该时长（毫秒）的文件下次备份时重新计算哈希，避免同一时间粒度内的修改被漏掉
+    public static final int BACKUP_CHUNK_MIN_BYTES = 64 * 1024;
+    public static final int BACKUP_CHUNK_AVG_BYTES = 256 * 1024;
+    public static final int BACKUP_CHUNK_MAX_BYTES = 1024 * 1024;
+    public static final long BACKUP_RACY_WINDOW_MS = 2000;
+    // 运行中服务器的热备份：等待保存完成的最长时间（秒）
+    public static final long BACKUP_SAVE_TIMEOUT_SECONDS = 60;
+
+    // 命令输出捕获：默认等待时间、没有新输出即视为结束的静默时间、命令没有任何输出时的最短等待时间、
+    // 探测服务器是否支持结束标记的等待时间（毫秒），每条命令最多保留的输出行数，每个服务器最多同时等待输出的命令数
+    public static final long COMMAND_TIMEOUT_MS = 5000;
+    public static final long COMMAND_QUIET_MS = 50;
+    public static final long COMMAND_QUIET_FIRST_MS = 250;
+    public static final long COMMAND_PROBE_TIMEOUT_MS = 2000;
+    public static final int COMMAND_MAX_OUTPUT_LINES = 1000;
+    public static final int COMMAND_MAX_PENDING = 1024;
+
+    // RCON：每个服务器最多同时打开的连接数、连接和认证的超时时间（毫秒）、
+    // 连接失败后改用标准输入并在该时间（毫秒）后重试，每个服务器最多排队的请求数，检查超时的间隔（毫秒）
+    public static final int RCON_POOL_SIZE = 4;
+    public static final long RCON_CONNECT_TIMEOUT_MS = 3000;
+    public static final long RCON_RETRY_MS = 10_000;
+    public static final int RCON_MAX_QUEUED = 8192;
+    public static final long RCON_SWEEP_INTERVAL_MS = 50;
+    public static final int RCON_DEFAULT_PORT = 25575;
+
+    // 自动重启：第一次重启前的等待时间和指数退避的上限（毫秒），连续运行超过该时长（毫秒）后退避重新计算，
+    // 在该时间窗口（毫秒）内异常退出达到该次数视为崩溃循环并停止自动重启，每个服务器保留的运行记录数，
+    // 进程退出后等待控制台剩余输出读完再判断退出原因的时间（毫秒）
+    public static final long RESTART_BACKOFF_BASE_MS = 5000;
+    public static final long RESTART_BACKOFF_MAX_MS = 300_000;
+    public static final long RESTART_STABLE_MS = 600_000;
+    public static final long RESTART_CRASH_LOOP_WINDOW_MS = 600_000;
+    public static final int RESTART_CRASH_LOOP_COUNT = 5;
+    public static final int RUN_HISTORY_SIZE = 50;
+    public static final long EXIT_DRAIN_MS = 200;
+
+    // 停止服务器：发送stop后等待退出的时间，超时后发送SIGTERM再等待的时间，最后SIGKILL后等待的时间（秒）
+    public static final long SHUTDOWN_STOP_TIMEOUT_SECONDS = 60;
+    public static final long SHUTDOWN_TERM_TIMEOUT_SECONDS = 30;
+    public static final long SHUTDOWN_KILL_TIMEOUT_SECONDS = 10;
+
+    // 目录复制和删除：同时进行文件I/O的线程数，以及进度回调的最小间隔（毫秒）
+    public static final int FILE_IO_PARALLELISM = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    public static final long FILE_PROGRESS_INTERVAL_MS = 1000;
+
     // 默认值
     public static final String DEFAULT_JAVA_PATH = "java";
     public static final int INVALID_CHOICE = -1;
@@ -0,0 +1,156 @@
+package exmo.cy.console;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick多模式匹配器
+ * 构造时把所有关键词编译成按字节转移的自动机，匹配时对输入只扫描一遍，
+ * 耗时与关键词数量无关。匹配直接作用于控制台行的字节，不需要解码成字符串。
+ * 构造完成后只读，可被多个线程同时使用。
+ */
+public final class AhoCorasickMatcher {
+
+    private static final int ALPHABET = 256;
+
+    private final int[] transitions;   // 状态 * 256 + 字节 -> 下一状态
+    private final int[] outputs;       // 状态 -> 在此状态结束的关键词下标，-1表示无
+    private final String[] patterns;
+    private final boolean ignoreCase;
+
+    /**
+     * 构造函数
+     * @param patterns 关键词列表，空字符串会被忽略
+     * @param ignoreCase 是否忽略ASCII字母的大小写
+     */
+    public AhoCorasickMatcher(Collection<String> patterns, boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+        this.patterns = patterns.toArray(new String[0]);
+
+        // 构建字典树
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> terminal = new ArrayList<>();
+        trie.add(newRow());
+        terminal.add(-1);
+        for (int p = 0; p < this.patterns.length; p++) {
+            byte[] bytes = this.patterns[p].getBytes(StandardCharsets.UTF_8);
+            if (bytes.length == 0) {
+                continue;
+            }
+            int state = 0;
+            for (byte b : bytes) {
+                int c = fold(b);
+                int next = trie.get(state)[c];
+                if (next < 0) {
+                    next = trie.size();
+                    trie.get(state)[c] = next;
+                    trie.add(newRow());
+                    terminal.add(-1);
+                }
+                state = next;
+            }
+            if (terminal.get(state) < 0) {
+                terminal.set(state, p);
+            }
+        }
+
+        // 按广度优先计算失败链接，并把转移表补全为确定自动机
+        int stateCount = trie.size();
+        int[] fail = new int[stateCount];
+        this.transitions = new int[stateCount * ALPHABET];
+        this.outputs = new int[stateCount];
+        for (int s = 0; s < stateCount; s++) {
+            outputs[s] = terminal.get(s);
+        }
+
+        Queue<Integer> queue = new ArrayDeque<>();
+        int[] root = trie.get(0);
+        for (int c = 0; c < ALPHABET; c++) {
+            if (root[c] > 0) {
+                transitions[c] = root[c];
+                fail[root[c]] = 0;
+                queue.add(root[c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            if (outputs[state] < 0) {
+                outputs[state] = outputs[fail[state]];
+            }
+            int[] row = trie.get(state);
+            for (int c = 0; c < ALPHABET; c++) {
+                int next = row[c];
+                if (next > 0) {
+                    fail[next] = transitions[fail[state] * ALPHABET + c];
+                    transitions[state * ALPHABET + c] = next;
+                    queue.add(next);
+                } else {
+                    transitions[state * ALPHABET + c] = transitions[fail[state] * ALPHABET + c];
+                }
+            }
+        }
+    }
+
+    private static int[] newRow() {
+        int[] row = new int[ALPHABET];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    private int fold(byte b) {
+        int c = b & 0xFF;
+        if (ignoreCase && c >= 'A' && c <= 'Z') {
+            return c + ('a' - 'A');
+        }
+        return c;
+    }
+
+    /**
+     * 在字节数组中查找任意关键词
+     * @param data 数据
+     * @param offset 起始偏移
+     * @param length 长度
+     * @return 最先匹配到的关键词下标，没有匹配返回-1
+     */
+    public int match(byte[] data, int offset, int length) {
+        int state = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            state = transitions[state * ALPHABET + fold(data[i])];
+            if (outputs[state] >= 0) {
+                return outputs[state];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 在控制台行中查找任意关键词
+     * @param line 控制台行
+     * @return 最先匹配到的关键词下标，没有匹配返回-1
+     */
+    public int match(ConsoleLine line) {
+        return match(line.getData(), line.getOffset(), line.getLength());
+    }
+
+    /**
+     * 获取关键词
+     * @param index 关键词下标
+     * @return 关键词
+     */
+    public String getPattern(int index) {
+        return patterns[index];
+    }
+
+    /**
+     * 获取关键词数量
+     */
+    public int getPatternCount() {
+        return patterns.length;
+    }
+}
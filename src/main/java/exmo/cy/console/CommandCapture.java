@@ -0,0 +1,431 @@
+package exmo.cy.console;
+
+import exmo.cy.config.Constants;
+import exmo.cy.exception.ServerOperationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 命令输出捕获器
+ * 订阅一个服务器的控制台输出，把发送命令之后的输出行归属到该命令，确定输出结束后返回结果。判断结束有两种方式：
+ * <ul>
+ *   <li>MARKER：在命令后紧接着发送一个不存在的标记命令。原版命令系统（Vanilla/Forge/Fabric）按顺序执行命令，
+ *       并在未知命令的报错中原样输出命令文本（"cymc-end-1&lt;--[HERE]"），看到标记即说明之前的命令已输出完毕。
+ *       每条命令有自己的标记，多条命令可以同时在途，按标记切分输出，互不交错。</li>
+ *   <li>QUIET：Bukkit系服务器（Spigot/Paper）的未知命令提示不包含命令文本，无法使用标记，
+ *       改为逐条发送命令，命令之后一段时间内没有新输出即视为结束。</li>
+ * </ul>
+ * 第一次执行命令时先单独发送一个标记探测服务器支持哪种方式；探测超时且服务器没有任何响应时（例如还在启动），
+ * 本批命令按QUIET处理，之后再重新探测。
+ * 命令执行期间其他来源的输出（玩家聊天、插件日志等）也会被归入当前命令。
+ * 控制台输出先经过{@link #filter}，标记命令产生的输出不会交给控制台历史和其他订阅者。
+ */
+public class CommandCapture {
+
+    /**
+     * 判断命令输出结束的方式
+     */
+    public enum Mode {
+        UNKNOWN,
+        MARKER,
+        QUIET,
+        // 命令通过RCON执行，输出即RCON响应（见 exmo.cy.rcon.RconClient），不经过本类
+        RCON
+    }
+
+    /**
+     * 把命令写入服务器的标准输入
+     */
+    @FunctionalInterface
+    public interface Sender {
+        /**
+         * @param command 命令，为null时只发送标记
+         * @param marker 紧跟在命令后发送的标记行，为null时不发送；不应回显给用户
+         */
+        void send(String command, String marker) throws ServerOperationException;
+    }
+
+    private static final String MARKER_PREFIX = "cymc-end-";
+    // 原版命令系统在标记行之前输出的未知命令提示，不属于命令的输出
+    private static final String UNKNOWN_COMMAND = "Unknown or incomplete command";
+    // Bukkit系服务器对未知命令的提示，探测时看到它说明服务器在响应但不支持标记
+    private static final String BUKKIT_UNKNOWN_COMMAND = "Unknown command";
+    // 原版命令系统在出错的命令文本之后输出的位置提示
+    private static final String ERROR_CONTEXT = "<--[HERE]";
+    private static final byte[] MARKER_PREFIX_BYTES = MARKER_PREFIX.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] UNKNOWN_COMMAND_BYTES = UNKNOWN_COMMAND.getBytes(StandardCharsets.US_ASCII);
+    private static final AtomicLong NEXT_MARKER = new AtomicLong();
+
+    // 所有服务器共用的计时线程，也用于完成Future，避免在控制台泵线程上执行调用方的回调
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "command-capture");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String serverName;
+    private final Sender sender;
+
+    // 以下状态受this保护
+    private Mode mode = Mode.UNKNOWN;
+    // 已发送、等待输出结束的命令，按发送顺序；QUIET和探测时最多一个
+    private final Deque<Pending> inFlight = new ArrayDeque<>();
+    // 尚未发送的命令（探测中或QUIET模式下排队）
+    private final Deque<Pending> waiting = new ArrayDeque<>();
+    // 本批命令的探测没有得到响应，按QUIET处理直到队列清空
+    private boolean probeFailed;
+    private boolean closed;
+    // 暂存的未知命令提示行，下一行是标记时一起丢弃，否则在下一行之前交给下游
+    private ConsoleLine heldLine;
+    private ConsoleListener heldDownstream;
+    // 超时后仍可能到达回复的探测标记，收到回复后移除
+    private final Deque<String> lateMarkers = new ArrayDeque<>();
+    // 有在途命令、暂存行或迟到标记时为true；为false时filter不加锁也不解码，直接交给下游
+    private volatile boolean active;
+
+    /**
+     * 一条等待输出的命令，command为null表示探测
+     */
+    private final class Pending {
+        final String command;
+        final String marker;
+        final long timeoutMs;
+        final CompletableFuture<CommandResult> future = new CompletableFuture<>();
+        final List<String> lines = new ArrayList<>();
+        long sentNanos;
+        long lastLineNanos;
+        Mode sentMode;
+
+        Pending(String command, boolean withMarker, long timeoutMs) {
+            this.command = command;
+            this.marker = withMarker ? MARKER_PREFIX + NEXT_MARKER.incrementAndGet() : null;
+            this.timeoutMs = timeoutMs;
+        }
+    }
+
+    /**
+     * @param serverName 服务器名称
+     * @param sender 写入标准输入的方式，调用时持有本对象的锁，应尽快返回
+     */
+    public CommandCapture(String serverName, Sender sender) {
+        this.serverName = serverName;
+        this.sender = sender;
+    }
+
+    /**
+     * 执行命令并捕获输出
+     * @param command 命令
+     * @param timeoutMs 最长等待时间（毫秒），超时后以不完整的结果完成
+     * @return 命令输出结束后完成；服务器停止或命令发送失败时异常完成
+     */
+    public CompletableFuture<CommandResult> execute(String command, long timeoutMs) {
+        Pending pending = new Pending(command, true, timeoutMs);
+        synchronized (this) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new ServerOperationException("服务器未运行: " + serverName));
+            }
+            if (inFlight.size() + waiting.size() >= Constants.COMMAND_MAX_PENDING) {
+                return CompletableFuture.failedFuture(new ServerOperationException("等待输出的命令过多: " + serverName));
+            }
+            waiting.add(pending);
+            pump();
+        }
+        return pending.future;
+    }
+
+    /**
+     * 当前判断输出结束的方式
+     */
+    public synchronized Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * 服务器停止，所有未完成的命令以异常结束
+     */
+    public void close() {
+        List<Pending> remaining = new ArrayList<>();
+        ConsoleLine released;
+        ConsoleListener downstream;
+        synchronized (this) {
+            closed = true;
+            released = heldLine;
+            downstream = heldDownstream;
+            heldLine = null;
+            heldDownstream = null;
+            remaining.addAll(inFlight);
+            remaining.addAll(waiting);
+            inFlight.clear();
+            waiting.clear();
+            lateMarkers.clear();
+            active = false;
+        }
+        if (released != null) {
+            downstream.onLine(released);
+        }
+        ServerOperationException cause = new ServerOperationException("服务器已停止: " + serverName);
+        for (Pending pending : remaining) {
+            pending.future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * 处理服务器的一行输出：归属到当前命令，并把不属于标记命令的行交给下游。
+     * 标记的回显和未知命令回复（提示行及"cymc-end-N&lt;--[HERE]"行）不交给下游，
+     * 不会出现在控制台历史、WebSocket、日志和TCP订阅中。
+     * 在控制台泵线程上调用，下游在锁外调用。由于提示行要等下一行才能确定是否属于标记，会晚一行交给下游。
+     * 没有在途命令时直接交给下游，不加锁也不解码；有在途命令时先按字节查找标记和提示，只有归属命令输出时才解码。
+     * @param line 输出行
+     * @param downstream 接收其余输出的监听器
+     */
+    public void filter(ConsoleLine line, ConsoleListener downstream) {
+        if (!active) {
+            downstream.onLine(line);
+            return;
+        }
+        ConsoleLine released;
+        boolean deliver = false;
+        synchronized (this) {
+            released = heldLine;
+            heldLine = null;
+            heldDownstream = null;
+            boolean marker = line.contains(MARKER_PREFIX_BYTES) && isMarkerLine(line.toString());
+            if (marker) {
+                // 标记之前的提示行同属标记的回复
+                released = null;
+            } else if (line.contains(UNKNOWN_COMMAND_BYTES)) {
+                heldLine = line.copy();
+                heldDownstream = downstream;
+            } else {
+                deliver = true;
+            }
+            if (!inFlight.isEmpty()) {
+                attribute(line.toString(), marker);
+            }
+            updateActive();
+        }
+        if (released != null) {
+            downstream.onLine(released);
+        }
+        if (deliver) {
+            downstream.onLine(line);
+        }
+    }
+
+    /**
+     * 判断一行是否是标记的回显或回复，包括超时后才到达的探测回复
+     */
+    private boolean isMarkerLine(String text) {
+        if (!text.contains(MARKER_PREFIX)) {
+            return false;
+        }
+        if (text.contains(ERROR_CONTEXT)) {
+            lateMarkers.removeIf(marker -> containsMarker(text, marker));
+            return true;
+        }
+        for (String marker : lateMarkers) {
+            if (containsMarker(text, marker)) {
+                return true;
+            }
+        }
+        for (Pending pending : inFlight) {
+            if (pending.marker != null && containsMarker(text, pending.marker)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 重新计算是否需要检查输出，调用时持有锁
+     */
+    private void updateActive() {
+        active = !inFlight.isEmpty() || heldLine != null || !lateMarkers.isEmpty();
+    }
+
+    /**
+     * 查找完整的标记，避免cymc-end-1匹配到cymc-end-12
+     */
+    private static boolean containsMarker(String text, String marker) {
+        int index = text.indexOf(marker);
+        while (index >= 0) {
+            int end = index + marker.length();
+            if (end == text.length() || !Character.isDigit(text.charAt(end))) {
+                return true;
+            }
+            index = text.indexOf(marker, end);
+        }
+        return false;
+    }
+
+    /**
+     * 把输出行归属到当前命令，调用时持有锁
+     * @param marker 是否是标记的回显或回复，标记行本身不属于命令输出
+     */
+    private void attribute(String text, boolean marker) {
+        if (inFlight.isEmpty()) {
+            return;
+        }
+        if (marker && completeByMarker(text)) {
+            pump();
+            return;
+        }
+        Pending head = inFlight.peek();
+        if (head.command == null && text.contains(BUKKIT_UNKNOWN_COMMAND)) {
+            // Bukkit系服务器已回复探测，不必等到超时
+            inFlight.poll();
+            mode = Mode.QUIET;
+            pump();
+            return;
+        }
+        if (!marker && head.lines.size() < Constants.COMMAND_MAX_OUTPUT_LINES) {
+            head.lines.add(text);
+        }
+        head.lastLineNanos = System.nanoTime();
+    }
+
+    /**
+     * 标记行到达：该标记之前的命令（包括标记丢失的更早命令）全部结束
+     * @return 如果标记属于在途的命令返回true
+     */
+    private boolean completeByMarker(String text) {
+        boolean found = false;
+        for (Pending pending : inFlight) {
+            if (pending.marker != null && text.contains(pending.marker + "<")) {
+                found = true;
+                break;
+            }
+        }
+        if (!found) {
+            return false;
+        }
+        while (true) {
+            Pending pending = inFlight.poll();
+            boolean matched = text.contains(pending.marker + "<");
+            List<String> lines = pending.lines;
+            if (matched && !lines.isEmpty() && lines.get(lines.size() - 1).contains(UNKNOWN_COMMAND)) {
+                lines.remove(lines.size() - 1);
+            }
+            if (pending.command == null) {
+                mode = Mode.MARKER;
+            } else {
+                complete(pending, matched);
+            }
+            if (matched) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 按当前模式发送排队的命令，调用时持有锁
+     */
+    private void pump() {
+        if (inFlight.isEmpty() && waiting.isEmpty()) {
+            probeFailed = false;
+            return;
+        }
+        if (mode == Mode.MARKER) {
+            while (!waiting.isEmpty()) {
+                send(waiting.poll(), Mode.MARKER);
+            }
+            return;
+        }
+        if (!inFlight.isEmpty() || waiting.isEmpty()) {
+            return;
+        }
+        if (mode == Mode.UNKNOWN && !probeFailed) {
+            send(new Pending(null, true, Constants.COMMAND_PROBE_TIMEOUT_MS), Mode.UNKNOWN);
+            return;
+        }
+        send(waiting.poll(), Mode.QUIET);
+    }
+
+    private void send(Pending pending, Mode sendMode) {
+        pending.sentMode = sendMode;
+        pending.sentNanos = System.nanoTime();
+        pending.lastLineNanos = pending.sentNanos;
+        // 在发送之前开启检查，以免错过很快到达的输出
+        active = true;
+        try {
+            sender.send(pending.command, sendMode == Mode.QUIET ? null : pending.marker);
+        } catch (ServerOperationException | RuntimeException e) {
+            pending.future.completeExceptionally(e);
+            if (pending.command == null) {
+                // 探测发送失败，本批命令也无法发送
+                probeFailed = true;
+            }
+            pump();
+            updateActive();
+            return;
+        }
+        inFlight.add(pending);
+        TIMER.schedule(() -> onTimer(pending), sendMode == Mode.QUIET ? Constants.COMMAND_QUIET_MS : pending.timeoutMs,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * QUIET模式下检查输出是否已停止，其他模式下处理超时
+     */
+    private void onTimer(Pending pending) {
+        synchronized (this) {
+            if (!inFlight.contains(pending)) {
+                return;
+            }
+            long now = System.nanoTime();
+            long elapsedMs = (now - pending.sentNanos) / 1_000_000L;
+            if (pending.sentMode == Mode.QUIET) {
+                long quietMs = (now - pending.lastLineNanos) / 1_000_000L;
+                // 没有任何输出时多等一会儿，命令可能还没开始执行
+                long required = pending.lines.isEmpty() ? Constants.COMMAND_QUIET_FIRST_MS : Constants.COMMAND_QUIET_MS;
+                boolean quiet = quietMs >= Constants.COMMAND_QUIET_MS && elapsedMs >= required;
+                if (quiet || elapsedMs >= pending.timeoutMs) {
+                    inFlight.remove(pending);
+                    complete(pending, quiet);
+                    pump();
+                    updateActive();
+                } else {
+                    long delay = Math.max(Constants.COMMAND_QUIET_MS - quietMs, required - elapsedMs);
+                    TIMER.schedule(() -> onTimer(pending), Math.max(1, delay), TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+            if (pending.command == null) {
+                // 探测超时：服务器没有回复，可能还没准备好
+                inFlight.remove(pending);
+                probeFailed = true;
+                // 服务器之后仍可能回复探测，回复不应出现在控制台中
+                if (lateMarkers.size() >= Constants.COMMAND_MAX_PENDING) {
+                    lateMarkers.poll();
+                }
+                lateMarkers.add(pending.marker);
+                pump();
+                updateActive();
+                return;
+            }
+            // MARKER模式超时：先返回已有的输出，命令留在队列中直到它的标记到达，以免后面命令的输出错位
+            complete(pending, false);
+        }
+    }
+
+    private void complete(Pending pending, boolean complete) {
+        if (pending.future.isDone()) {
+            return;
+        }
+        long latencyMs = (System.nanoTime() - pending.sentNanos) / 1_000_000L;
+        CommandResult result = new CommandResult(pending.command, Collections.unmodifiableList(new ArrayList<>(pending.lines)),
+            latencyMs, pending.sentMode, complete);
+        TIMER.execute(() -> pending.future.complete(result));
+    }
+
+}
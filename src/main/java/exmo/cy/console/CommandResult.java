@@ -0,0 +1,55 @@
+package exmo.cy.console;
+
+import java.util.List;
+
+/**
+ * 一条命令的执行结果：发送命令后属于该命令的控制台输出行
+ */
+public final class CommandResult {
+
+    private final String command;
+    private final List<String> lines;
+    private final long latencyMs;
+    private final CommandCapture.Mode mode;
+    private final boolean complete;
+
+    public CommandResult(String command, List<String> lines, long latencyMs, CommandCapture.Mode mode, boolean complete) {
+        this.command = command;
+        this.lines = lines;
+        this.latencyMs = latencyMs;
+        this.mode = mode;
+        this.complete = complete;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * 命令的输出行：从控制台捕获时为原始控制台行，包含服务器的时间和级别前缀；通过RCON执行时为响应文本按行拆分
+     */
+    public List<String> getLines() {
+        return lines;
+    }
+
+    /**
+     * 从发送命令到确定输出结束的毫秒数
+     */
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    /**
+     * 判断输出结束的方式
+     */
+    public CommandCapture.Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * 是否确定输出已经结束；超时返回的结果为false，输出可能不完整
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+}
@@ -0,0 +1,160 @@
+package exmo.cy.console;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 解析后的控制台行
+ * 由 {@link ConsoleEventParser} 填充并在每一行上复用，只在 {@link ConsoleEventListener#onEvent} 回调期间有效，
+ * 需要保留内容的监听器应调用相应的get方法取得字符串。各字段以行内字节偏移表示，不存在时开始和结束偏移都为-1。
+ */
+public final class ConsoleEvent {
+
+    /**
+     * 事件类型
+     */
+    public enum Type {
+        // 没有识别出的普通行
+        OTHER,
+        // 启动完成（Done (3.456s)! For help, type "help"）
+        READY,
+        // 玩家加入（Steve joined the game）
+        PLAYER_JOIN,
+        // 玩家离开（Steve left the game）
+        PLAYER_LEAVE,
+        // 服务器跟不上tick（Can't keep up! Is the server overloaded? Running 2034ms or 40 ticks behind）
+        LAG,
+        // 世界保存完成（save-all的回复 Saved the game / Saved the world）
+        WORLD_SAVED,
+        // 崩溃报告或服务器线程中未捕获的异常
+        CRASH,
+        // 异常堆栈的第一行（java.lang.IllegalStateException: ...）
+        EXCEPTION,
+        // 看门狗检测到主线程卡死（A single server tick took 60.00 seconds / The server has stopped responding!）
+        WATCHDOG
+    }
+
+    /**
+     * 日志级别
+     */
+    public enum Level {
+        UNKNOWN,
+        TRACE,
+        DEBUG,
+        INFO,
+        WARN,
+        ERROR,
+        FATAL
+    }
+
+    private ConsoleLine line;
+    Type type;
+    Level level;
+    int timestampStart;
+    int timestampEnd;
+    int threadStart;
+    int threadEnd;
+    int levelStart;
+    int levelEnd;
+    int loggerStart;
+    int loggerEnd;
+    int messageStart;
+    int messageEnd;
+    int playerStart;
+    int playerEnd;
+    long lagMillis;
+
+    /**
+     * 清空字段并指向新的一行
+     */
+    void reset(ConsoleLine line) {
+        this.line = line;
+        type = Type.OTHER;
+        level = Level.UNKNOWN;
+        timestampStart = timestampEnd = -1;
+        threadStart = threadEnd = -1;
+        levelStart = levelEnd = -1;
+        loggerStart = loggerEnd = -1;
+        messageStart = 0;
+        messageEnd = line.getLength();
+        playerStart = playerEnd = -1;
+        lagMillis = -1;
+    }
+
+    public ConsoleLine getLine() {
+        return line;
+    }
+
+    public String getServerName() {
+        return line.getServerName();
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * 行首的时间（例如 12:34:56 或 20Jun2023 12:34:56.789），不存在时返回null
+     */
+    public String getTimestamp() {
+        return text(timestampStart, timestampEnd);
+    }
+
+    /**
+     * 输出日志的线程（例如 Server thread），Paper/Spigot的控制台格式中没有线程
+     */
+    public String getThread() {
+        return text(threadStart, threadEnd);
+    }
+
+    /**
+     * 日志记录器名称（Forge的 [minecraft/DedicatedServer]、Fabric的 (Minecraft)），不存在时返回null
+     */
+    public String getLogger() {
+        return text(loggerStart, loggerEnd);
+    }
+
+    /**
+     * 去掉时间、线程、级别和记录器前缀后的消息；无法识别格式的行为整行
+     */
+    public String getMessage() {
+        return text(messageStart, messageEnd);
+    }
+
+    public int getMessageStart() {
+        return messageStart;
+    }
+
+    public int getMessageEnd() {
+        return messageEnd;
+    }
+
+    /**
+     * PLAYER_JOIN和PLAYER_LEAVE事件的玩家名，其他事件返回null
+     */
+    public String getPlayer() {
+        return text(playerStart, playerEnd);
+    }
+
+    /**
+     * LAG事件中服务器落后的毫秒数，其他事件或无法解析时返回-1
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    private String text(int start, int end) {
+        if (start < 0) {
+            return null;
+        }
+        return new String(line.getData(), line.getOffset() + start, end - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + line;
+    }
+}
@@ -0,0 +1,15 @@
+package exmo.cy.console;
+
+/**
+ * 控制台事件监听器
+ * 在控制台泵的工作线程上被调用，实现应尽快返回，不能阻塞
+ */
+@FunctionalInterface
+public interface ConsoleEventListener {
+
+    /**
+     * 收到一个订阅类型的事件
+     * @param event 解析后的行（复用对象，回调返回后失效）
+     */
+    void onEvent(ConsoleEvent event);
+}
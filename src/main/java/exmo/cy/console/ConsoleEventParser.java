@@ -0,0 +1,430 @@
+package exmo.cy.console;
+
+import exmo.cy.util.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 控制台事件解析器
+ * 每个服务器一个，对每一行只扫描一遍字节，识别以下格式的前缀并记录各字段的偏移：
+ * <ul>
+ *   <li>原版/Fabric/Forge：[12:34:56] [Server thread/INFO]: 消息</li>
+ *   <li>Fabric：[12:34:56] [Server thread/INFO] (Minecraft) 消息</li>
+ *   <li>Forge：[12:34:56] [Server thread/INFO] [minecraft/DedicatedServer]: 消息</li>
+ *   <li>Forge 1.17+：[20Jun2023 12:34:56.789] [Server thread/INFO] [net.minecraft.server.dedicated.DedicatedServer/]: 消息</li>
+ *   <li>Paper/Spigot：[12:34:56 INFO]: 消息</li>
+ * </ul>
+ * 然后按消息的开头和结尾识别事件类型，不使用正则表达式，除了按需解码的字符串外不分配对象。
+ * 监听器按事件类型订阅，只收到订阅类型的事件；没有监听器的类型只计数。
+ */
+public class ConsoleEventParser implements ConsoleListener {
+
+    private static final byte[] DONE = bytes("Done (");
+    private static final byte[] DONE_END = bytes(")!");
+    private static final byte[] CANT_KEEP_UP = bytes("Can't keep up!");
+    private static final byte[] RUNNING = bytes("Running ");
+    private static final byte[] JOINED = bytes(" joined the game");
+    private static final byte[] LEFT = bytes(" left the game");
+    private static final byte[] SAVED_GAME = bytes("Saved the game");
+    private static final byte[] SAVED_WORLD = bytes("Saved the world");
+    private static final byte[] TICK_TOOK = bytes("A single server tick took");
+    private static final byte[] STOPPED_RESPONDING = bytes("The server has stopped responding!");
+    private static final byte[][] CRASH_PREFIXES = {
+        bytes("---- Minecraft Crash Report ----"),
+        bytes("Encountered an unexpected exception"),
+        bytes("This crash report has been saved to"),
+        bytes("Preparing crash report with UUID"),
+        bytes("Exception in thread \"")
+    };
+    private static final byte[][] EXCEPTION_SUFFIXES = {bytes("Exception"), bytes("Error"), bytes("Throwable")};
+
+    private static final ConsoleEvent.Type[] TYPES = ConsoleEvent.Type.values();
+
+    private final String serverName;
+    private final Map<ConsoleEvent.Type, List<ConsoleEventListener>> listeners = new EnumMap<>(ConsoleEvent.Type.class);
+    // 每种类型是否有监听器的位掩码，没有监听器时不查表
+    private volatile int subscribedMask;
+    private final AtomicLongArray counts = new AtomicLongArray(TYPES.length);
+    // stdout和stderr可能由不同的泵线程读取，各用一个事件对象
+    private final ConsoleEvent stdoutEvent = new ConsoleEvent();
+    private final ConsoleEvent stderrEvent = new ConsoleEvent();
+
+    public ConsoleEventParser(String serverName) {
+        this.serverName = serverName;
+        for (ConsoleEvent.Type type : TYPES) {
+            listeners.put(type, new CopyOnWriteArrayList<>());
+        }
+    }
+
+    /**
+     * 订阅事件
+     * @param types 订阅的事件类型
+     * @param listener 监听器
+     */
+    public synchronized void subscribe(Set<ConsoleEvent.Type> types, ConsoleEventListener listener) {
+        for (ConsoleEvent.Type type : types) {
+            listeners.get(type).add(listener);
+        }
+        updateMask();
+    }
+
+    /**
+     * 取消监听器的所有订阅
+     */
+    public synchronized void unsubscribe(ConsoleEventListener listener) {
+        for (List<ConsoleEventListener> list : listeners.values()) {
+            list.remove(listener);
+        }
+        updateMask();
+    }
+
+    /**
+     * 获取某类事件自创建以来的次数
+     */
+    public long getCount(ConsoleEvent.Type type) {
+        return counts.get(type.ordinal());
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    @Override
+    public void onLine(ConsoleLine line) {
+        ConsoleEvent event = line.isError() ? stderrEvent : stdoutEvent;
+        parse(line, event);
+        counts.incrementAndGet(event.type.ordinal());
+        if ((subscribedMask & (1 << event.type.ordinal())) == 0) {
+            return;
+        }
+        for (ConsoleEventListener listener : listeners.get(event.type)) {
+            try {
+                listener.onEvent(event);
+            } catch (RuntimeException e) {
+                Logger.debug("控制台事件监听器出错: " + e.getMessage());
+            }
+        }
+    }
+
+    private void updateMask() {
+        int mask = 0;
+        for (ConsoleEvent.Type type : TYPES) {
+            if (!listeners.get(type).isEmpty()) {
+                mask |= 1 << type.ordinal();
+            }
+        }
+        subscribedMask = mask;
+    }
+
+    /**
+     * 解析一行并填充事件对象
+     */
+    static void parse(ConsoleLine line, ConsoleEvent event) {
+        event.reset(line);
+        byte[] d = line.getData();
+        int o = line.getOffset();
+        int n = line.getLength();
+        parsePrefix(event, d, o, n);
+        classify(event, d, o);
+    }
+
+    private static void parsePrefix(ConsoleEvent e, byte[] d, int o, int n) {
+        // 时间必须以数字开头，排除 [Rcon: ...] 等以方括号开头的普通消息
+        if (n < 4 || d[o] != '[' || !isDigit(d[o + 1])) {
+            return;
+        }
+        int close = indexOf(d, o, n, (byte) ']', 1);
+        if (close < 0) {
+            return;
+        }
+        int i;
+        int space = lastIndexOf(d, o, (byte) ' ', 1, close);
+        ConsoleEvent.Level level = space > 0 ? parseLevel(d, o + space + 1, close - space - 1) : ConsoleEvent.Level.UNKNOWN;
+        if (level != ConsoleEvent.Level.UNKNOWN) {
+            // Paper/Spigot：[时间 级别]
+            e.timestampStart = 1;
+            e.timestampEnd = space;
+            e.levelStart = space + 1;
+            e.levelEnd = close;
+            i = close + 1;
+        } else {
+            // [时间] [线程/级别]
+            int open = close + 2;
+            if (open >= n || d[o + close + 1] != ' ' || d[o + open] != '[') {
+                return;
+            }
+            int close2 = indexOf(d, o, n, (byte) ']', open + 1);
+            int slash = close2 < 0 ? -1 : lastIndexOf(d, o, (byte) '/', open + 1, close2);
+            if (slash < 0) {
+                return;
+            }
+            level = parseLevel(d, o + slash + 1, close2 - slash - 1);
+            if (level == ConsoleEvent.Level.UNKNOWN) {
+                return;
+            }
+            e.timestampStart = 1;
+            e.timestampEnd = close;
+            e.threadStart = open + 1;
+            e.threadEnd = slash;
+            e.levelStart = slash + 1;
+            e.levelEnd = close2;
+            i = close2 + 1;
+            // Forge的 [记录器] 或Fabric的 (记录器)
+            if (i + 1 < n && d[o + i] == ' ' && (d[o + i + 1] == '[' || d[o + i + 1] == '(')) {
+                byte end = d[o + i + 1] == '[' ? (byte) ']' : (byte) ')';
+                int close3 = indexOf(d, o, n, end, i + 2);
+                if (close3 > 0) {
+                    e.loggerStart = i + 2;
+                    // Forge 1.17+ 的记录器名以 / 结尾
+                    e.loggerEnd = d[o + close3 - 1] == '/' ? close3 - 1 : close3;
+                    i = close3 + 1;
+                }
+            }
+        }
+        e.level = level;
+        if (i < n && d[o + i] == ':') {
+            i++;
+        }
+        if (i < n && d[o + i] == ' ') {
+            i++;
+        }
+        e.messageStart = i;
+    }
+
+    private static void classify(ConsoleEvent e, byte[] d, int o) {
+        int start = e.messageStart;
+        int end = e.messageEnd;
+        if (end <= start) {
+            return;
+        }
+        switch (d[o + start]) {
+            case 'D':
+                if (startsWith(d, o, start, end, DONE) && indexOf(d, o, end, DONE_END, start + DONE.length) > 0) {
+                    e.type = ConsoleEvent.Type.READY;
+                    return;
+                }
+                break;
+            case 'C':
+                if (startsWith(d, o, start, end, CANT_KEEP_UP)) {
+                    e.type = ConsoleEvent.Type.LAG;
+                    e.lagMillis = parseLagMillis(d, o, start + CANT_KEEP_UP.length, end);
+                    return;
+                }
+                break;
+            case 'S':
+                if (startsWith(d, o, start, end, SAVED_GAME) || startsWith(d, o, start, end, SAVED_WORLD)) {
+                    e.type = ConsoleEvent.Type.WORLD_SAVED;
+                    return;
+                }
+                break;
+            case 'A':
+                // 原版的ServerWatchdog
+                if (startsWith(d, o, start, end, TICK_TOOK)) {
+                    e.type = ConsoleEvent.Type.WATCHDOG;
+                    return;
+                }
+                break;
+            case 'T':
+                // Spigot/Paper的WatchdogThread
+                if (startsWith(d, o, start, end, STOPPED_RESPONDING)) {
+                    e.type = ConsoleEvent.Type.WATCHDOG;
+                    return;
+                }
+                break;
+            case '[':
+                // 其他来源执行命令的回复被包装为 [Rcon: Saved the game]
+                int colon = indexOf(d, o, end, (byte) ':', start + 1);
+                if (colon > 0 && colon + 2 < end && d[o + end - 1] == ']'
+                        && (startsWith(d, o, colon + 2, end, SAVED_GAME) || startsWith(d, o, colon + 2, end, SAVED_WORLD))) {
+                    e.type = ConsoleEvent.Type.WORLD_SAVED;
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        if (endsWithPlayer(e, d, o, start, end, JOINED)) {
+            e.type = ConsoleEvent.Type.PLAYER_JOIN;
+            return;
+        }
+        if (endsWithPlayer(e, d, o, start, end, LEFT)) {
+            e.type = ConsoleEvent.Type.PLAYER_LEAVE;
+            return;
+        }
+        for (byte[] prefix : CRASH_PREFIXES) {
+            if (startsWith(d, o, start, end, prefix)) {
+                e.type = ConsoleEvent.Type.CRASH;
+                return;
+            }
+        }
+        if (e.level == ConsoleEvent.Level.UNKNOWN && isExceptionHeader(d, o, start, end)) {
+            e.type = ConsoleEvent.Type.EXCEPTION;
+        }
+    }
+
+    /**
+     * 消息为 "玩家名 + 后缀"，玩家名不含空格（排除 &lt;Bob&gt; Alice joined the game 这样的聊天消息）
+     */
+    private static boolean endsWithPlayer(ConsoleEvent e, byte[] d, int o, int start, int end, byte[] suffix) {
+        int playerEnd = end - suffix.length;
+        if (playerEnd <= start || !startsWith(d, o, playerEnd, end, suffix)) {
+            return false;
+        }
+        for (int i = start; i < playerEnd; i++) {
+            if (d[o + i] == ' ') {
+                return false;
+            }
+        }
+        e.playerStart = start;
+        e.playerEnd = playerEnd;
+        return true;
+    }
+
+    /**
+     * 异常堆栈的第一行：没有日志前缀，以包含 . 且以Exception/Error/Throwable结尾的类名开头，后面是 : 或行尾
+     */
+    private static boolean isExceptionHeader(byte[] d, int o, int start, int end) {
+        int i = start;
+        boolean dotted = false;
+        while (i < end) {
+            byte b = d[o + i];
+            if (b == '.') {
+                dotted = true;
+            } else if (!(isDigit(b) || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_' || b == '$')) {
+                break;
+            }
+            i++;
+        }
+        if (!dotted || (i < end && d[o + i] != ':')) {
+            return false;
+        }
+        for (byte[] suffix : EXCEPTION_SUFFIXES) {
+            if (i - start >= suffix.length && startsWith(d, o, i - suffix.length, i, suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 从 "... Running 2034ms or 40 ticks behind" 中取出毫秒数
+     */
+    private static long parseLagMillis(byte[] d, int o, int from, int end) {
+        int i = indexOf(d, o, end, RUNNING, from);
+        if (i < 0) {
+            return -1;
+        }
+        i += RUNNING.length;
+        long value = 0;
+        int digits = 0;
+        while (i < end && isDigit(d[o + i]) && digits < 18) {
+            value = value * 10 + (d[o + i] - '0');
+            i++;
+            digits++;
+        }
+        return digits == 0 ? -1 : value;
+    }
+
+    private static ConsoleEvent.Level parseLevel(byte[] d, int from, int length) {
+        switch (length) {
+            case 4:
+                if (equals(d, from, "INFO")) {
+                    return ConsoleEvent.Level.INFO;
+                }
+                if (equals(d, from, "WARN")) {
+                    return ConsoleEvent.Level.WARN;
+                }
+                break;
+            case 5:
+                if (equals(d, from, "ERROR")) {
+                    return ConsoleEvent.Level.ERROR;
+                }
+                if (equals(d, from, "DEBUG")) {
+                    return ConsoleEvent.Level.DEBUG;
+                }
+                if (equals(d, from, "TRACE")) {
+                    return ConsoleEvent.Level.TRACE;
+                }
+                if (equals(d, from, "FATAL")) {
+                    return ConsoleEvent.Level.FATAL;
+                }
+                break;
+            case 6:
+                // 旧版Spigot使用java.util.logging的级别名
+                if (equals(d, from, "SEVERE")) {
+                    return ConsoleEvent.Level.ERROR;
+                }
+                break;
+            case 7:
+                if (equals(d, from, "WARNING")) {
+                    return ConsoleEvent.Level.WARN;
+                }
+                break;
+            default:
+                break;
+        }
+        return ConsoleEvent.Level.UNKNOWN;
+    }
+
+    private static boolean equals(byte[] d, int from, String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            if (d[from + i] != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(byte[] d, int o, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (d[o + start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] d, int o, int end, byte b, int from) {
+        for (int i = from; i < end; i++) {
+            if (d[o + i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] d, int o, int end, byte[] target, int from) {
+        for (int i = from; i <= end - target.length; i++) {
+            if (startsWith(d, o, i, end, target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] d, int o, byte b, int from, int end) {
+        for (int i = end - 1; i >= from; i--) {
+            if (d[o + i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static byte[] bytes(String ascii) {
+        return ascii.getBytes(StandardCharsets.US_ASCII);
+    }
+}
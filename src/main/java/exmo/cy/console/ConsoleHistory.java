@@ -0,0 +1,259 @@
+package exmo.cy.console;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 控制台历史环形缓冲区
+ * 按字节容量保存服务器最近的输出行，数据存放在预分配的字节数组中，
+ * 行元数据存放在基本类型数组中，写入时不产生任何对象。
+ * 每一行分配一个单调递增的序列号，客户端可以据此只获取断线期间错过的内容。
+ * 同一服务器重新启动时新的历史从上次的序列号之后继续编号，已连接的客户端不会把新输出误认为已收到的行。
+ */
+public class ConsoleHistory {
+
+    private static final int AVERAGE_LINE_BYTES = 64; // 用于估算行元数据槽位数量
+    private static final int MIN_LINE_SLOTS = 256;
+    private static final byte FLAG_ERROR = 1;
+
+    private final byte[] data;
+    private final int[] starts;
+    private final int[] lengths;
+    private final byte[] flags;
+
+    private int head;           // 最旧一行所在的槽位
+    private int count;          // 当前保存的行数
+    private int writePos;       // 下一次写入的字节偏移
+    private int usedBytes;
+    private long firstSeq;      // 最旧一行的序列号
+    private long nextSeq;
+
+    /**
+     * 构造函数
+     * @param capacityBytes 字节容量
+     */
+    public ConsoleHistory(int capacityBytes) {
+        this(capacityBytes, 1);
+    }
+
+    /**
+     * 构造函数
+     * @param capacityBytes 字节容量
+     * @param firstSeq 第一行的序列号，服务器重启时传入上次运行的最后序列号加1
+     */
+    public ConsoleHistory(int capacityBytes, long firstSeq) {
+        if (capacityBytes <= 0) {
+            throw new IllegalArgumentException("历史缓冲区容量必须大于0");
+        }
+        int slots = Math.max(MIN_LINE_SLOTS, capacityBytes / AVERAGE_LINE_BYTES);
+        this.data = new byte[capacityBytes];
+        this.starts = new int[slots];
+        this.lengths = new int[slots];
+        this.flags = new byte[slots];
+        this.firstSeq = Math.max(1, firstSeq);
+        this.nextSeq = this.firstSeq;
+    }
+
+    /**
+     * 追加一行控制台输出
+     * @param line 输出行
+     * @return 该行的序列号
+     */
+    public long append(ConsoleLine line) {
+        return append(line.getData(), line.getOffset(), line.getLength(), line.isError());
+    }
+
+    /**
+     * 追加一行文本
+     * @param text 文本
+     * @param error 是否为错误输出
+     * @return 该行的序列号
+     */
+    public long append(String text, boolean error) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return append(bytes, 0, bytes.length, error);
+    }
+
+    /**
+     * 追加一行字节数据，空间不足时淘汰最旧的行
+     * @param src 源数组
+     * @param offset 起始偏移
+     * @param length 长度
+     * @param error 是否为错误输出
+     * @return 该行的序列号
+     */
+    public synchronized long append(byte[] src, int offset, int length, boolean error) {
+        int len = Math.min(length, data.length); // 超过总容量的行只保留开头部分
+        while (count > 0 && (data.length - usedBytes < len || count == starts.length)) {
+            evictOldest();
+        }
+
+        int slot = (head + count) % starts.length;
+        starts[slot] = writePos;
+        lengths[slot] = len;
+        flags[slot] = error ? FLAG_ERROR : 0;
+
+        int firstPart = Math.min(len, data.length - writePos);
+        System.arraycopy(src, offset, data, writePos, firstPart);
+        if (firstPart < len) {
+            System.arraycopy(src, offset + firstPart, data, 0, len - firstPart);
+        }
+        writePos = (writePos + len) % data.length;
+        usedBytes += len;
+        count++;
+        return nextSeq++;
+    }
+
+    private void evictOldest() {
+        usedBytes -= lengths[head];
+        head = (head + 1) % starts.length;
+        count--;
+        firstSeq++;
+    }
+
+    /**
+     * 读取指定序列号之后的所有行
+     * 客户端的序列号大于最后一行时（管理器重启后序列号重新开始）返回全部历史并标记为重置，客户端应清除自己的序列号
+     * @param afterSeq 客户端已收到的最后一个序列号，0表示读取全部
+     * @return 历史快照
+     */
+    public synchronized Snapshot readSince(long afterSeq) {
+        long lastSeq = nextSeq - 1;
+        boolean reset = afterSeq > lastSeq;
+        if (reset) {
+            afterSeq = 0;
+        }
+        long fromSeq = Math.max(afterSeq + 1, firstSeq);
+        // 客户端期望的行已被淘汰时，报告丢失的行数
+        long missed = afterSeq > 0 && afterSeq + 1 < firstSeq ? firstSeq - afterSeq - 1 : 0;
+        if (fromSeq > lastSeq) {
+            return new Snapshot(Collections.emptyList(), lastSeq, missed, reset);
+        }
+
+        List<Entry> entries = new ArrayList<>((int) (lastSeq - fromSeq + 1));
+        for (long seq = fromSeq; seq <= lastSeq; seq++) {
+            int slot = (int) ((head + (seq - firstSeq)) % starts.length);
+            entries.add(new Entry(seq, decode(slot), flags[slot] == FLAG_ERROR));
+        }
+        return new Snapshot(entries, lastSeq, missed, reset);
+    }
+
+    private String decode(int slot) {
+        int start = starts[slot];
+        int len = lengths[slot];
+        if (start + len <= data.length) {
+            return new String(data, start, len, StandardCharsets.UTF_8);
+        }
+        byte[] joined = new byte[len];
+        int firstPart = data.length - start;
+        System.arraycopy(data, start, joined, 0, firstPart);
+        System.arraycopy(data, 0, joined, firstPart, len - firstPart);
+        return new String(joined, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 获取最后一行的序列号，没有任何输出时为0
+     */
+    public synchronized long getLastSeq() {
+        return nextSeq - 1;
+    }
+
+    /**
+     * 获取当前保存的最旧一行的序列号
+     */
+    public synchronized long getFirstSeq() {
+        return firstSeq;
+    }
+
+    /**
+     * 获取当前保存的行数
+     */
+    public synchronized int getLineCount() {
+        return count;
+    }
+
+    /**
+     * 获取已使用的字节数
+     */
+    public synchronized int getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * 获取字节容量
+     */
+    public int getCapacityBytes() {
+        return data.length;
+    }
+
+    /**
+     * 历史记录中的一行
+     */
+    public static final class Entry {
+        private final long seq;
+        private final String text;
+        private final boolean error;
+
+        Entry(long seq, String text, boolean error) {
+            this.seq = seq;
+            this.text = text;
+            this.error = error;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public boolean isError() {
+            return error;
+        }
+    }
+
+    /**
+     * 历史快照
+     */
+    public static final class Snapshot {
+        private final List<Entry> entries;
+        private final long lastSeq;
+        private final long missed;
+        private final boolean reset;
+
+        Snapshot(List<Entry> entries, long lastSeq, long missed, boolean reset) {
+            this.entries = entries;
+            this.lastSeq = lastSeq;
+            this.missed = missed;
+            this.reset = reset;
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * 快照时最后一行的序列号，客户端应从此处续传
+         */
+        public long getLastSeq() {
+            return lastSeq;
+        }
+
+        /**
+         * 因缓冲区容量不足而无法补发的行数
+         */
+        public long getMissed() {
+            return missed;
+        }
+
+        /**
+         * 客户端的序列号不属于当前的历史（大于最后一行），快照从头开始，客户端应丢弃原来的序列号
+         */
+        public boolean isReset() {
+            return reset;
+        }
+    }
+}
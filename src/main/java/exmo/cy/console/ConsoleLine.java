@@ -0,0 +1,143 @@
+package exmo.cy.console;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 控制台输出行
+ * 直接引用控制台泵的字节缓冲区，只有在调用toString()时才解码为字符串。
+ * 同一个对象会在每一行之间复用：回调返回后内容即失效，
+ * 需要保留内容的消费者应调用toString()或copyBytes()。
+ */
+public final class ConsoleLine {
+
+    /**
+     * 输出流类型
+     */
+    public enum Stream {
+        STDOUT,
+        STDERR
+    }
+
+    private final String serverName;
+    private final Stream stream;
+    private byte[] data;
+    private int offset;
+    private int length;
+    private String text; // 解码后的缓存，同一行内多个消费者共享
+
+    ConsoleLine(String serverName, Stream stream) {
+        this.serverName = serverName;
+        this.stream = stream;
+    }
+
+    /**
+     * 指向新的一行数据
+     */
+    void reset(byte[] data, int offset, int length) {
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+        this.text = null;
+    }
+
+    /**
+     * 复制当前行，副本不引用控制台泵的缓冲区，可以在回调返回后继续持有
+     */
+    ConsoleLine copy() {
+        ConsoleLine copy = new ConsoleLine(serverName, stream);
+        byte[] bytes = copyBytes();
+        copy.reset(bytes, 0, bytes.length);
+        return copy;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    public Stream getStream() {
+        return stream;
+    }
+
+    /**
+     * 是否来自标准错误流
+     * @return 如果是stderr返回true
+     */
+    public boolean isError() {
+        return stream == Stream.STDERR;
+    }
+
+    /**
+     * 获取底层缓冲区（只读，回调返回后失效）
+     * @return 字节缓冲区
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * 获取行内指定位置的字节
+     * @param index 行内索引
+     * @return 字节值
+     */
+    public byte byteAt(int index) {
+        return data[offset + index];
+    }
+
+    /**
+     * 检查当前行是否包含指定的字节序列，不解码
+     * @param needle 要查找的字节序列
+     * @return 如果包含返回true
+     */
+    public boolean contains(byte[] needle) {
+        int last = offset + length - needle.length;
+        outer:
+        for (int i = offset; i <= last; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (data[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 复制当前行的字节
+     * @return 新的字节数组
+     */
+    public byte[] copyBytes() {
+        return Arrays.copyOfRange(data, offset, offset + length);
+    }
+
+    /**
+     * 将原始字节写入输出流，不经过字符串转换
+     * @param out 输出流
+     * @throws IOException 如果写入失败
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(data, offset, length);
+    }
+
+    /**
+     * 按UTF-8解码当前行，结果在本行内缓存
+     */
+    @Override
+    public String toString() {
+        if (text == null) {
+            text = new String(data, offset, length, StandardCharsets.UTF_8);
+        }
+        return text;
+    }
+}
@@ -0,0 +1,15 @@
+package exmo.cy.console;
+
+/**
+ * 控制台输出监听器
+ * 在控制台泵的工作线程上被调用，实现应尽快返回，不能阻塞
+ */
+@FunctionalInterface
+public interface ConsoleListener {
+
+    /**
+     * 收到一行输出
+     * @param line 输出行（复用对象，回调返回后失效）
+     */
+    void onLine(ConsoleLine line);
+}
@@ -0,0 +1,380 @@
+package exmo.cy.console;
+
+import exmo.cy.util.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 控制台泵
+ * 用固定数量的工作线程轮询所有服务器进程的stdout/stderr，
+ * 取代每个流一个阻塞在readLine()上的线程。
+ * 每个流持有可复用的读缓冲区和行缓冲区，按字节切分行，
+ * 只有消费者调用ConsoleLine.toString()时才产生字符串。
+ */
+public class ConsolePump {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int INITIAL_LINE_BUFFER_SIZE = 512;
+    private static final int MAX_LINE_LENGTH = 64 * 1024; // 超过此长度的行会被截断输出
+    private static final long MIN_IDLE_NANOS = 1_000_000L;   // 1ms
+    private static final long MAX_IDLE_NANOS = 20_000_000L;  // 20ms
+
+    private final Worker[] workers;
+    private final Map<String, ConsoleStats> statsByServer = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    /**
+     * 构造函数，工作线程数按CPU数量决定（1~4个）
+     */
+    public ConsolePump() {
+        this(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+    }
+
+    /**
+     * 构造函数
+     * @param workerCount 工作线程数量
+     */
+    public ConsolePump(int workerCount) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("工作线程数量必须大于0");
+        }
+        this.workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker("console-pump-" + i);
+        }
+    }
+
+    /**
+     * 开始读取进程的stdout和stderr
+     * 同名服务器重新启动时会替换旧的统计信息
+     * @param serverName 服务器名称
+     * @param process 服务器进程
+     * @param listener 行监听器
+     * @return 该进程的吞吐量统计
+     */
+    public ConsoleStats attach(String serverName, Process process, ConsoleListener listener) {
+        if (!running) {
+            throw new IllegalStateException("控制台泵已关闭");
+        }
+        ConsoleStats stats = new ConsoleStats(serverName);
+        statsByServer.put(serverName, stats);
+
+        leastLoadedWorker().add(new Channel(serverName, ConsoleLine.Stream.STDOUT,
+                process.getInputStream(), process, listener, stats));
+        leastLoadedWorker().add(new Channel(serverName, ConsoleLine.Stream.STDERR,
+                process.getErrorStream(), process, listener, stats));
+
+        Logger.debug("控制台泵已接管服务器输出: " + serverName);
+        return stats;
+    }
+
+    /**
+     * 获取服务器的吞吐量统计
+     * @param serverName 服务器名称
+     * @return 统计信息，如果不存在返回Optional.empty()
+     */
+    public Optional<ConsoleStats> getStats(String serverName) {
+        return Optional.ofNullable(statsByServer.get(serverName));
+    }
+
+    /**
+     * 获取所有服务器的吞吐量统计
+     * @return 服务器名称到统计信息的映射
+     */
+    public Map<String, ConsoleStats> getAllStats() {
+        return Collections.unmodifiableMap(new HashMap<>(statsByServer));
+    }
+
+    /**
+     * 获取工作线程数量
+     */
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * 获取当前正在读取的流数量
+     */
+    public int getChannelCount() {
+        int count = 0;
+        for (Worker worker : workers) {
+            count += worker.load.get();
+        }
+        return count;
+    }
+
+    /**
+     * 关闭控制台泵，停止所有工作线程
+     */
+    public void shutdown() {
+        running = false;
+        for (Worker worker : workers) {
+            worker.wakeUp();
+        }
+    }
+
+    private Worker leastLoadedWorker() {
+        Worker best = workers[0];
+        for (Worker worker : workers) {
+            if (worker.load.get() < best.load.get()) {
+                best = worker;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 工作线程
+     * 轮询自己负责的所有流，有数据时立即读取，空闲时指数退避休眠
+     */
+    private final class Worker implements Runnable {
+        private final String name;
+        private final Queue<Channel> pending = new ConcurrentLinkedQueue<>();
+        private final List<Channel> channels = new ArrayList<>();
+        private final AtomicInteger load = new AtomicInteger();
+        private volatile Thread thread;
+
+        Worker(String name) {
+            this.name = name;
+        }
+
+        void add(Channel channel) {
+            load.incrementAndGet();
+            pending.add(channel);
+            ensureStarted();
+            wakeUp();
+        }
+
+        private synchronized void ensureStarted() {
+            if (thread == null) {
+                Thread t = new Thread(this, name);
+                t.setDaemon(true);
+                thread = t;
+                t.start();
+            }
+        }
+
+        void wakeUp() {
+            Thread t = thread;
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+        }
+
+        @Override
+        public void run() {
+            long idleNanos = MIN_IDLE_NANOS;
+            while (running) {
+                Channel added;
+                while ((added = pending.poll()) != null) {
+                    channels.add(added);
+                }
+
+                if (channels.isEmpty()) {
+                    LockSupport.park(this);
+                    continue;
+                }
+
+                boolean progress = false;
+                long now = System.nanoTime();
+                for (int i = channels.size() - 1; i >= 0; i--) {
+                    Channel channel = channels.get(i);
+                    int result = channel.pump(now);
+                    if (result > 0) {
+                        progress = true;
+                    } else if (result < 0) {
+                        channels.remove(i);
+                        load.decrementAndGet();
+                    }
+                }
+                Logger.clearServerNameContext();
+
+                if (progress) {
+                    idleNanos = MIN_IDLE_NANOS;
+                } else {
+                    LockSupport.parkNanos(this, idleNanos);
+                    idleNanos = Math.min(idleNanos * 2, MAX_IDLE_NANOS);
+                }
+            }
+
+            for (Channel channel : channels) {
+                channel.close();
+            }
+            channels.clear();
+        }
+    }
+
+    /**
+     * 单个进程输出流的读取状态
+     */
+    private static final class Channel {
+        private final String serverName;
+        private final InputStream in;
+        private final Process process;
+        private final ConsoleListener listener;
+        private final ConsoleStats stats;
+        private final ConsoleLine line;
+        private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+        private byte[] lineBuffer = new byte[INITIAL_LINE_BUFFER_SIZE];
+        private int lineLength;
+
+        Channel(String serverName, ConsoleLine.Stream stream, InputStream in, Process process,
+                ConsoleListener listener, ConsoleStats stats) {
+            this.serverName = serverName;
+            this.in = in;
+            this.process = process;
+            this.listener = listener;
+            this.stats = stats;
+            this.line = new ConsoleLine(serverName, stream);
+        }
+
+        /**
+         * 读取当前可用的数据，不会阻塞
+         * @return 读取的字节数；0表示暂无数据；-1表示流已结束（进程退出后剩余的输出由单独的线程读完）
+         */
+        int pump(long now) {
+            try {
+                stats.sampleIfDue(now);
+                int available = in.available();
+                if (available <= 0) {
+                    if (process.isAlive()) {
+                        return 0;
+                    }
+                    // 进程已退出：在检查可用数据和判断存活之间写入的输出（例如崩溃时的堆栈）仍在管道中，
+                    // 改为阻塞读取到流结束；放到单独的虚拟线程中，以免管道被子进程继承时阻塞同一线程上的其他服务器
+                    Thread.ofVirtual().name("console-drain-" + serverName).start(this::drain);
+                    return -1;
+                }
+
+                int n = in.read(readBuffer, 0, Math.min(available, readBuffer.length));
+                if (n < 0) {
+                    finish();
+                    return -1;
+                }
+                Logger.setServerNameContext(serverName);
+                split(n);
+                return n;
+            } catch (IOException e) {
+                Logger.debug("读取进程输出时出错: " + e.getMessage());
+                finish();
+                return -1;
+            }
+        }
+
+        /**
+         * 按换行符切分读缓冲区中的数据
+         * 行未跨越读缓冲区时直接引用读缓冲区，避免复制
+         */
+        private void split(int n) {
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                if (readBuffer[i] != '\n') {
+                    continue;
+                }
+                if (lineLength == 0) {
+                    emit(readBuffer, start, i - start);
+                } else {
+                    append(start, i - start);
+                    emit(lineBuffer, 0, lineLength);
+                    lineLength = 0;
+                }
+                start = i + 1;
+            }
+            if (start < n) {
+                append(start, n - start);
+            }
+        }
+
+        private void append(int from, int len) {
+            int required = lineLength + len;
+            if (required > lineBuffer.length) {
+                if (required > MAX_LINE_LENGTH) {
+                    // 超长行：先输出已累积的部分，避免无限增长
+                    stats.recordTruncated();
+                    if (lineLength > 0) {
+                        emit(lineBuffer, 0, lineLength);
+                        lineLength = 0;
+                    }
+                    if (len > lineBuffer.length) {
+                        emit(readBuffer, from, len);
+                        return;
+                    }
+                } else {
+                    int newSize = lineBuffer.length;
+                    while (newSize < required) {
+                        newSize <<= 1;
+                    }
+                    byte[] grown = new byte[Math.min(newSize, MAX_LINE_LENGTH)];
+                    System.arraycopy(lineBuffer, 0, grown, 0, lineLength);
+                    lineBuffer = grown;
+                }
+            }
+            System.arraycopy(readBuffer, from, lineBuffer, lineLength, len);
+            lineLength += len;
+        }
+
+        private void emit(byte[] buffer, int offset, int length) {
+            // 去掉Windows风格换行的\r
+            if (length > 0 && buffer[offset + length - 1] == '\r') {
+                length--;
+            }
+            line.reset(buffer, offset, length);
+            stats.record(line.getStream(), length);
+            try {
+                listener.onLine(line);
+            } catch (RuntimeException e) {
+                Logger.debug("处理控制台输出时出错: " + e.getMessage());
+            }
+        }
+
+        /**
+         * 输出残留的不完整行并关闭流
+         */
+        /**
+         * 进程退出后阻塞读取剩余输出直到流结束
+         */
+        private void drain() {
+            try {
+                int n;
+                while ((n = in.read(readBuffer, 0, readBuffer.length)) >= 0) {
+                    Logger.setServerNameContext(serverName);
+                    split(n);
+                }
+            } catch (IOException e) {
+                Logger.debug("读取进程输出时出错: " + e.getMessage());
+            } finally {
+                finish();
+                Logger.clearServerNameContext();
+            }
+        }
+
+        private void finish() {
+            if (lineLength > 0) {
+                Logger.setServerNameContext(serverName);
+                emit(lineBuffer, 0, lineLength);
+                lineLength = 0;
+            }
+            close();
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // 忽略关闭错误
+            }
+        }
+    }
+}
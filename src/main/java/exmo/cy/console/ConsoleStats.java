@@ -0,0 +1,149 @@
+package exmo.cy.console;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个服务器的控制台吞吐量统计
+ * 由控制台泵在读取时更新，速率按秒采样
+ */
+public class ConsoleStats {
+
+    private static final long SAMPLE_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final String serverName;
+    private final long startTime;
+    private final AtomicLong stdoutLines = new AtomicLong();
+    private final AtomicLong stderrLines = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong truncatedLines = new AtomicLong();
+
+    // 速率采样状态，仅在采样时加锁
+    private volatile long nextSampleNanos;
+    private long lastSampleNanos;
+    private long lastSampleLines;
+    private long lastSampleBytes;
+    private volatile double linesPerSecond;
+    private volatile double bytesPerSecond;
+    private volatile double peakLinesPerSecond;
+
+    public ConsoleStats(String serverName) {
+        this.serverName = serverName;
+        this.startTime = System.currentTimeMillis();
+        this.lastSampleNanos = System.nanoTime();
+        this.nextSampleNanos = lastSampleNanos + SAMPLE_INTERVAL_NANOS;
+    }
+
+    /**
+     * 记录一行输出
+     */
+    void record(ConsoleLine.Stream stream, int lineBytes) {
+        if (stream == ConsoleLine.Stream.STDERR) {
+            stderrLines.incrementAndGet();
+        } else {
+            stdoutLines.incrementAndGet();
+        }
+        bytes.addAndGet(lineBytes + 1L); // 包含换行符
+    }
+
+    /**
+     * 记录一次超长行截断
+     */
+    void recordTruncated() {
+        truncatedLines.incrementAndGet();
+    }
+
+    /**
+     * 到达采样间隔时更新速率
+     * @param now 当前System.nanoTime()
+     */
+    void sampleIfDue(long now) {
+        if (now < nextSampleNanos) {
+            return;
+        }
+        synchronized (this) {
+            if (now < nextSampleNanos) {
+                return;
+            }
+            long lines = getTotalLines();
+            long totalBytes = bytes.get();
+            double seconds = (now - lastSampleNanos) / 1_000_000_000.0;
+            linesPerSecond = (lines - lastSampleLines) / seconds;
+            bytesPerSecond = (totalBytes - lastSampleBytes) / seconds;
+            if (linesPerSecond > peakLinesPerSecond) {
+                peakLinesPerSecond = linesPerSecond;
+            }
+            lastSampleNanos = now;
+            lastSampleLines = lines;
+            lastSampleBytes = totalBytes;
+            nextSampleNanos = now + SAMPLE_INTERVAL_NANOS;
+        }
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getStdoutLines() {
+        return stdoutLines.get();
+    }
+
+    public long getStderrLines() {
+        return stderrLines.get();
+    }
+
+    public long getTotalLines() {
+        return stdoutLines.get() + stderrLines.get();
+    }
+
+    public long getTotalBytes() {
+        return bytes.get();
+    }
+
+    public long getTruncatedLines() {
+        return truncatedLines.get();
+    }
+
+    public double getLinesPerSecond() {
+        return linesPerSecond;
+    }
+
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public double getPeakLinesPerSecond() {
+        return peakLinesPerSecond;
+    }
+
+    /**
+     * 转换为Map，便于REST接口输出
+     * @return 统计信息
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("stdoutLines", getStdoutLines());
+        map.put("stderrLines", getStderrLines());
+        map.put("totalBytes", getTotalBytes());
+        map.put("truncatedLines", getTruncatedLines());
+        map.put("linesPerSecond", Math.round(linesPerSecond * 10) / 10.0);
+        map.put("bytesPerSecond", Math.round(bytesPerSecond));
+        map.put("peakLinesPerSecond", Math.round(peakLinesPerSecond * 10) / 10.0);
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "ConsoleStats{" +
+                "server='" + serverName + '\'' +
+                ", lines=" + getTotalLines() +
+                ", bytes=" + getTotalBytes() +
+                ", linesPerSecond=" + String.format("%.1f", linesPerSecond) +
+                '}';
+    }
+}
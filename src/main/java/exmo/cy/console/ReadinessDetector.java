@@ -0,0 +1,100 @@
+package exmo.cy.console;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 服务器启动就绪检测器
+ * 订阅服务器控制台输出，逐行匹配就绪关键词（Aho-Corasick）或正则表达式，
+ * 匹配成功后完成getFuture()返回的Future，结果为从创建检测器到就绪的毫秒数。
+ * 每行独立匹配，不缓存任何输出；匹配成功后后续行直接忽略。
+ */
+public class ReadinessDetector implements ConsoleListener {
+
+    private final String serverName;
+    private final AhoCorasickMatcher matcher;
+    private final Pattern pattern;
+    private final long startNanos = System.nanoTime();
+    private final CompletableFuture<Long> future = new CompletableFuture<>();
+    private volatile String matchedLine;
+
+    /**
+     * 构造函数
+     * @param serverName 服务器名称
+     * @param keywords 就绪关键词，多个关键词之间用 | 分隔，任意一个出现即视为就绪，可为null
+     * @param regex 就绪正则表达式（例如 Done \(\d+\.\d+s\)!），可为null
+     * @throws IllegalArgumentException 如果关键词和正则都为空，或正则表达式无效
+     */
+    public ReadinessDetector(String serverName, String keywords, String regex) {
+        this.serverName = serverName;
+
+        List<String> keywordList = new ArrayList<>();
+        if (keywords != null) {
+            for (String keyword : keywords.split("\\|")) {
+                if (!keyword.trim().isEmpty()) {
+                    keywordList.add(keyword.trim());
+                }
+            }
+        }
+        this.matcher = keywordList.isEmpty() ? null : new AhoCorasickMatcher(keywordList, false);
+
+        if (regex != null && !regex.trim().isEmpty()) {
+            try {
+                this.pattern = Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("就绪正则表达式无效: " + e.getMessage(), e);
+            }
+        } else {
+            this.pattern = null;
+        }
+
+        if (matcher == null && pattern == null) {
+            throw new IllegalArgumentException("至少需要一个就绪关键词或正则表达式");
+        }
+    }
+
+    @Override
+    public void onLine(ConsoleLine line) {
+        if (future.isDone()) {
+            return;
+        }
+        boolean ready = matcher != null && matcher.match(line) >= 0;
+        if (!ready && pattern != null) {
+            // 按UTF-8解码后再匹配，非ASCII的就绪正则才能生效；就绪前才会走到这里，解码开销可以忽略
+            ready = pattern.matcher(line.toString()).find();
+        }
+        if (ready) {
+            matchedLine = line.toString();
+            future.complete((System.nanoTime() - startNanos) / 1_000_000L);
+        }
+    }
+
+    /**
+     * 在服务器就绪前以异常结束检测（例如进程已退出）
+     * @param cause 原因
+     */
+    public void fail(Throwable cause) {
+        future.completeExceptionally(cause);
+    }
+
+    /**
+     * 获取就绪结果，完成值为启动耗时（毫秒）
+     */
+    public CompletableFuture<Long> getFuture() {
+        return future;
+    }
+
+    /**
+     * 获取触发就绪的输出行，未就绪时返回null
+     */
+    public String getMatchedLine() {
+        return matchedLine;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+}
@@ -6,6 +6,8 @@ package exmo.cy.exception;
  */
 public class ConfigurationException extends ServerManagerException {
     
+    private static final long serialVersionUID = 1L;
+    
     /**
      * 构造函数
      * @param message 异常消息
@@ -0,0 +1,328 @@
+package exmo.cy.log;
+
+import exmo.cy.config.Constants;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 日志追加器
+ * 把 "[时间] [级别] 消息" 格式的行直接编码进预先分配的缓冲区，由每个日志自己的写入线程（虚拟线程）
+ * 批量写入 {@link LogStore}：缓冲区达到 {@link Constants#LOG_FLUSH_BYTES} 或距上次写入超过
+ * {@link Constants#LOG_FLUSH_INTERVAL_MS} 时整批写入一次（组提交），两个缓冲区交替使用，
+ * 写入期间追加不受影响。缓冲区写满而写入线程跟不上时，追加会等待，不会丢失日志。
+ * 时间前缀每秒只格式化一次，控制台输出可以直接以字节追加，不经过字符串。
+ * {@link Durability#LINE} 模式下每次追加在调用线程中立即写入，不启动写入线程。
+ */
+public class LogAppender implements Closeable {
+
+    /**
+     * 持久性模式
+     */
+    public enum Durability {
+        /** 每行在追加返回前写入文件 */
+        LINE,
+        /** 按大小或时间批量写入，异常退出时可能丢失最后一个刷新间隔内的日志 */
+        BATCH;
+
+        /**
+         * 从系统属性读取持久性模式，未设置或无效时为BATCH
+         */
+        public static Durability fromSystemProperty() {
+            String value = System.getProperty(Constants.LOG_DURABILITY_PROPERTY);
+            return "line".equalsIgnoreCase(value) ? LINE : BATCH;
+        }
+    }
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final LogStore store;
+    private final Durability durability;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushNeeded = lock.newCondition();
+    private final Condition writeDone = lock.newCondition();
+    private final Thread writer;
+
+    // 以下状态受lock保护
+    private byte[] active = new byte[Constants.LOG_BUFFER_BYTES];
+    private byte[] spare = new byte[Constants.LOG_BUFFER_BYTES];
+    private int activeLength;
+    private long activeFirstTime;
+    private boolean writing;
+    private boolean closed;
+    private long cachedSecond = Long.MIN_VALUE;
+    private final byte[] timePrefix = new byte[22];
+    private final Map<String, byte[]> levelPrefixes = new HashMap<>();
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * 构造函数
+     * @param store 日志存储
+     * @param durability 持久性模式
+     */
+    public LogAppender(LogStore store, Durability durability) {
+        this.store = store;
+        this.durability = durability;
+        if (durability == Durability.BATCH) {
+            writer = Thread.ofVirtual()
+                .name("log-writer-" + store.getDirectory().getFileName())
+                .start(this::runWriter);
+        } else {
+            writer = null;
+        }
+    }
+
+    /**
+     * 追加一条日志
+     * @param time 时间（毫秒）
+     * @param level 日志级别
+     * @param message 消息
+     */
+    public void append(long time, String level, String message) throws IOException {
+        lock.lock();
+        try {
+            // UTF-8下每个char最多3字节
+            int maxLength = 22 + level.length() + 3 + message.length() * 3 + 1;
+            if (!reserve(maxLength)) {
+                appendOversized(time, level, message.getBytes(StandardCharsets.UTF_8), 0, -1);
+                return;
+            }
+            int start = activeLength;
+            writePrefix(time, level);
+            ByteBuffer out = ByteBuffer.wrap(active, activeLength, active.length - activeLength);
+            encoder.reset();
+            CoderResult result = encoder.encode(CharBuffer.wrap(message), out, true);
+            if (result.isOverflow()) {
+                // 已按最大长度预留空间，不会发生
+                activeLength = start;
+                throw new IOException("日志缓冲区溢出");
+            }
+            encoder.flush(out);
+            activeLength = out.position();
+            active[activeLength++] = '\n';
+            committed(time);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 追加一条UTF-8编码的日志，例如直接来自控制台输出的字节
+     * @param time 时间（毫秒）
+     * @param level 日志级别
+     * @param data 消息数据，不含换行符
+     */
+    public void append(long time, String level, byte[] data, int offset, int length) throws IOException {
+        lock.lock();
+        try {
+            int total = 22 + level.length() + 3 + length + 1;
+            if (!reserve(total)) {
+                appendOversized(time, level, data, offset, length);
+                return;
+            }
+            writePrefix(time, level);
+            System.arraycopy(data, offset, active, activeLength, length);
+            activeLength += length;
+            active[activeLength++] = '\n';
+            committed(time);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 确保当前缓冲区有足够空间，必要时等待或自己写入上一批
+     * @return 单条日志超过缓冲区大小时返回false
+     */
+    private boolean reserve(int length) throws IOException {
+        if (closed) {
+            throw new IOException("日志已关闭: " + store.getDirectory());
+        }
+        if (length > active.length) {
+            return false;
+        }
+        while (active.length - activeLength < length) {
+            if (writing) {
+                writeDone.awaitUninterruptibly();
+            } else {
+                writeBatch();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 超过缓冲区大小的日志：先写入已缓冲的日志，再单独写入这一条
+     */
+    private void appendOversized(long time, String level, byte[] data, int offset, int length) throws IOException {
+        if (length < 0) {
+            length = data.length - offset;
+        }
+        flushLocked();
+        byte[] levelBytes = levelPrefix(level);
+        byte[] line = new byte[timePrefix.length + levelBytes.length + length + 1];
+        updateTimePrefix(time);
+        System.arraycopy(timePrefix, 0, line, 0, timePrefix.length);
+        System.arraycopy(levelBytes, 0, line, timePrefix.length, levelBytes.length);
+        System.arraycopy(data, offset, line, timePrefix.length + levelBytes.length, length);
+        line[line.length - 1] = '\n';
+        store.append(time, line, 0, line.length);
+    }
+
+    private void writePrefix(long time, String level) {
+        updateTimePrefix(time);
+        System.arraycopy(timePrefix, 0, active, activeLength, timePrefix.length);
+        activeLength += timePrefix.length;
+        byte[] levelBytes = levelPrefix(level);
+        System.arraycopy(levelBytes, 0, active, activeLength, levelBytes.length);
+        activeLength += levelBytes.length;
+    }
+
+    /**
+     * 更新缓存的 "[yyyy-MM-dd HH:mm:ss] " 前缀，同一秒内不重复格式化
+     */
+    private void updateTimePrefix(long time) {
+        long second = Math.floorDiv(time, 1000L);
+        if (second != cachedSecond) {
+            String text = "[" + Instant.ofEpochSecond(second).atZone(ZONE).format(TIME_FORMATTER) + "] ";
+            byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(bytes, 0, timePrefix, 0, timePrefix.length);
+            cachedSecond = second;
+        }
+    }
+
+    private byte[] levelPrefix(String level) {
+        return levelPrefixes.computeIfAbsent(level, l -> ("[" + l + "] ").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 一条日志已放入缓冲区
+     */
+    private void committed(long time) throws IOException {
+        if (activeFirstTime == 0) {
+            activeFirstTime = time;
+        }
+        if (durability == Durability.LINE) {
+            // 等待其他线程正在写入的批次，保证行的顺序
+            flushLocked();
+        } else if (activeLength >= Constants.LOG_FLUSH_BYTES) {
+            flushNeeded.signal();
+        }
+    }
+
+    /**
+     * 交换缓冲区并把当前这一批写入日志存储，写入期间释放锁，调用前必须持有锁且没有其他写入在进行
+     */
+    private void writeBatch() throws IOException {
+        byte[] batch = active;
+        int length = activeLength;
+        long time = activeFirstTime;
+        active = spare;
+        spare = null;
+        activeLength = 0;
+        activeFirstTime = 0;
+        writing = true;
+        lock.unlock();
+        try {
+            store.append(time, batch, 0, length);
+        } finally {
+            lock.lock();
+            spare = batch;
+            writing = false;
+            writeDone.signalAll();
+        }
+    }
+
+    /**
+     * 把已缓冲的日志全部写入日志存储，返回后之前追加的日志都可以读到
+     */
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            flushLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLocked() throws IOException {
+        while (writing) {
+            writeDone.awaitUninterruptibly();
+        }
+        if (activeLength > 0) {
+            writeBatch();
+        }
+    }
+
+    private void runWriter() {
+        lock.lock();
+        try {
+            while (!closed) {
+                try {
+                    flushNeeded.await(Constants.LOG_FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // 关闭时被中断，继续写入剩余日志后退出
+                }
+                try {
+                    flushLocked();
+                } catch (IOException e) {
+                    // 丢弃这一批，避免日志写入失败影响服务器
+                    System.err.println("写入日志文件失败: " + store.getDirectory() + " - " + e.getMessage());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public LogStore getStore() {
+        return store;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * 写入剩余的日志后关闭日志存储
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flushNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (writer != null) {
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        store.close();
+    }
+}
@@ -0,0 +1,520 @@
+package exmo.cy.log;
+
+import exmo.cy.config.Constants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 日志倒排索引
+ * 按行号顺序增量索引日志存储中的行：词的哈希 -> 包含该词的行号。最新的若干行的索引保存在内存中，
+ * 倒排项数或词数达到上限后写入一个不可变的索引块文件（.tix），因此内存占用有上限。
+ * 索引块文件是哈希表加变长编码的行号增量，搜索时内存映射后按词的哈希直接定位，不需要加载整个索引。
+ * 索引只是加速用的缓存，可以随时删除后从日志原文重建；对应的日志段被删除后索引块也随之删除。
+ */
+final class LogIndex implements Closeable {
+
+    static final String INDEX_SUFFIX = ".tix";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x43594C49;
+    private static final int VERSION = 1;
+    // 文件头：魔数、版本、哈希表槽数、保留各4字节，第一行、结束行各8字节
+    private static final int HEADER_BYTES = 32;
+    // 哈希表槽：词的哈希、倒排表偏移各8字节，行数、字节数各4字节
+    private static final int SLOT_BYTES = 24;
+    private static final long[] EMPTY = new long[0];
+
+    private final LogStore store;
+    private final Path directory;
+    private final String name;
+
+    // 以下状态受this保护
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final Map<Long, PostingList> pending = new HashMap<>();
+    private long pendingFirst = -1;
+    private long pendingPostings;
+    private long nextLine;
+    private boolean closed;
+
+    /**
+     * 已写入文件的索引块，覆盖 [firstLine, endLine) 之间的行
+     */
+    private static final class Chunk {
+        final long firstLine;
+        final long endLine;
+        final Path file;
+
+        Chunk(long firstLine, long endLine, Path file) {
+            this.firstLine = firstLine;
+            this.endLine = endLine;
+            this.file = file;
+        }
+    }
+
+    /**
+     * 内存中一个词的倒排表，行号相对于pendingFirst，递增且不重复
+     */
+    private static final class PostingList {
+        int[] lines = new int[4];
+        int size;
+
+        void add(int line) {
+            if (size > 0 && lines[size - 1] == line) {
+                return;
+            }
+            if (size == lines.length) {
+                lines = Arrays.copyOf(lines, size * 2);
+            }
+            lines[size++] = line;
+        }
+    }
+
+    /**
+     * 打开日志存储目录中的索引，找到已索引到的行，之后的行由 {@link #indexNextBatch()} 补齐
+     */
+    LogIndex(LogStore store, Path directory) throws IOException {
+        this.store = store;
+        this.directory = directory;
+        this.name = directory.getFileName().toString();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + INDEX_SUFFIX)) {
+            for (Path path : stream) {
+                Chunk chunk = readHeader(path);
+                if (chunk == null) {
+                    Files.deleteIfExists(path);
+                } else {
+                    chunks.add(chunk);
+                }
+            }
+        }
+        chunks.sort(Comparator.comparingLong(chunk -> chunk.firstLine));
+        nextLine = chunks.isEmpty() ? store.getFirstLine() : chunks.get(chunks.size() - 1).endLine;
+        if (nextLine > store.getLineCount()) {
+            // 索引比日志还新（日志被替换过），重建
+            deleteChunks();
+            nextLine = store.getFirstLine();
+        } else if (!chunks.isEmpty() && Files.size(chunks.get(chunks.size() - 1).file) < Constants.LOG_SEARCH_CHUNK_POSTINGS) {
+            // 上次关闭时写入的较小的索引块重新载入内存继续追加，避免每次重启都留下一个小索引块
+            loadPending(chunks.remove(chunks.size() - 1));
+        }
+    }
+
+    private static Chunk readHeader(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // 读满文件头
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            header.position(16);
+            return new Chunk(header.getLong(), header.getLong(), path);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void loadPending(Chunk chunk) throws IOException {
+        ByteBuffer map = map(chunk.file);
+        int tableSize = map.getInt(8);
+        for (int slot = 0; slot < tableSize; slot++) {
+            int position = HEADER_BYTES + slot * SLOT_BYTES;
+            long hash = map.getLong(position);
+            if (hash == 0) {
+                continue;
+            }
+            PostingList list = new PostingList();
+            for (long line : decode(map, tableSize, position, 0)) {
+                list.add((int) line);
+            }
+            pending.put(hash, list);
+            pendingPostings += list.size;
+        }
+        pendingFirst = chunk.firstLine;
+        Files.deleteIfExists(chunk.file);
+    }
+
+    /**
+     * 索引下一批行
+     * @return 是否还有未索引的行
+     */
+    synchronized boolean indexNextBatch() throws IOException {
+        if (closed) {
+            return false;
+        }
+        prune();
+        long first = store.getFirstLine();
+        if (nextLine < first) {
+            // 之前的日志段已被删除
+            flushPending();
+            nextLine = first;
+        }
+        if (nextLine >= store.getLineCount()) {
+            return false;
+        }
+        LogSlice slice = store.read(nextLine, Constants.LOG_SEARCH_BATCH_LINES);
+        if (slice.getLines().isEmpty()) {
+            return false;
+        }
+        if (pendingFirst < 0) {
+            pendingFirst = slice.getFirstLine();
+        }
+        long line = slice.getFirstLine();
+        for (String text : slice.getLines()) {
+            int offset = (int) (line - pendingFirst);
+            LogTokenizer.tokenizeLine(text, token -> {
+                pending.computeIfAbsent(LogTokenizer.hash(token), hash -> new PostingList()).add(offset);
+                pendingPostings++;
+            });
+            line++;
+        }
+        nextLine = slice.getNextLine();
+        if (pendingPostings >= Constants.LOG_SEARCH_CHUNK_POSTINGS || pending.size() >= Constants.LOG_SEARCH_CHUNK_TERMS) {
+            flushPending();
+        }
+        return nextLine < store.getLineCount();
+    }
+
+    /**
+     * 索引所有尚未索引的行
+     */
+    void catchUp() throws IOException {
+        while (indexNextBatch()) {
+            // 继续下一批
+        }
+    }
+
+    /**
+     * 尚未索引的行数
+     */
+    synchronized long getBacklog() {
+        return Math.max(0, store.getLineCount() - Math.max(nextLine, store.getFirstLine()));
+    }
+
+    /**
+     * 把内存中的索引写成一个索引块文件
+     */
+    private void flushPending() throws IOException {
+        if (pending.isEmpty()) {
+            pendingFirst = -1;
+            pendingPostings = 0;
+            return;
+        }
+        int tableSize = 2;
+        while (tableSize < pending.size() * 2) {
+            tableSize <<= 1;
+        }
+        ByteBuffer table = ByteBuffer.allocate(HEADER_BYTES + tableSize * SLOT_BYTES).order(ByteOrder.BIG_ENDIAN);
+        table.putInt(MAGIC).putInt(VERSION).putInt(tableSize).putInt(0).putLong(pendingFirst).putLong(nextLine);
+        ByteArrayOutputStream postings = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE / 2, pendingPostings * 2));
+        for (Map.Entry<Long, PostingList> entry : pending.entrySet()) {
+            long hash = entry.getKey();
+            PostingList list = entry.getValue();
+            int offset = postings.size();
+            int previous = 0;
+            for (int i = 0; i < list.size; i++) {
+                writeVarint(postings, list.lines[i] - previous);
+                previous = list.lines[i];
+            }
+            int slot = (int) (hash & (tableSize - 1));
+            while (table.getLong(HEADER_BYTES + slot * SLOT_BYTES) != 0) {
+                slot = (slot + 1) & (tableSize - 1);
+            }
+            int position = HEADER_BYTES + slot * SLOT_BYTES;
+            table.putLong(position, hash);
+            table.putLong(position + 8, offset);
+            table.putInt(position + 16, list.size);
+            table.putInt(position + 20, postings.size() - offset);
+        }
+
+        Path file = directory.resolve(LogSegment.fileBaseName(pendingFirst) + INDEX_SUFFIX);
+        Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            table.clear();
+            ByteBuffer data = ByteBuffer.wrap(postings.toByteArray());
+            while (table.hasRemaining() || data.hasRemaining()) {
+                out.write(new ByteBuffer[] {table, data});
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        chunks.add(new Chunk(pendingFirst, nextLine, file));
+        pending.clear();
+        pendingFirst = -1;
+        pendingPostings = 0;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * 删除对应日志段已被删除的索引块
+     */
+    private void prune() throws IOException {
+        long first = store.getFirstLine();
+        while (!chunks.isEmpty() && chunks.get(0).endLine <= first) {
+            Files.deleteIfExists(chunks.remove(0).file);
+        }
+    }
+
+    /**
+     * 删除全部索引，之后从日志原文重新建立
+     */
+    synchronized void rebuild() throws IOException {
+        deleteChunks();
+        pending.clear();
+        pendingFirst = -1;
+        pendingPostings = 0;
+        nextLine = store.getFirstLine();
+    }
+
+    private void deleteChunks() throws IOException {
+        for (Chunk chunk : chunks) {
+            Files.deleteIfExists(chunk.file);
+        }
+        chunks.clear();
+    }
+
+    /**
+     * 搜索 [fromLine, toLine) 之间的行，从最新的行开始
+     * 未索引的行不多时先补齐索引，否则只搜索已索引的部分（后台仍在建立索引）
+     */
+    synchronized List<LogMatch> search(LogQuery query, long fromLine, long toLine, int limit) throws IOException {
+        if (getBacklog() <= Constants.LOG_SEARCH_CATCHUP_LINES) {
+            catchUp();
+        }
+        long from = Math.max(fromLine, store.getFirstLine());
+        long[] hashes = query.tokenHashes();
+        List<LogMatch> matches = new ArrayList<>();
+        if (pendingFirst >= 0 && pendingFirst < toLine && nextLine > from) {
+            long[][] postings = new long[hashes.length][];
+            for (int i = 0; i < hashes.length; i++) {
+                PostingList list = pending.get(hashes[i]);
+                postings[i] = list == null ? EMPTY : toLines(list, pendingFirst);
+            }
+            collectNewest(postings, query, from, toLine, limit, matches);
+        }
+        for (int c = chunks.size() - 1; c >= 0 && matches.size() < limit; c--) {
+            Chunk chunk = chunks.get(c);
+            if (chunk.firstLine >= toLine || chunk.endLine <= from) {
+                continue;
+            }
+            ByteBuffer map = map(chunk.file);
+            int tableSize = map.getInt(8);
+            long[][] postings = new long[hashes.length][];
+            for (int i = 0; i < hashes.length; i++) {
+                postings[i] = lookup(map, tableSize, hashes[i], chunk.firstLine);
+            }
+            collectNewest(postings, query, from, toLine, limit, matches);
+        }
+        return matches;
+    }
+
+    private static long[] toLines(PostingList list, long base) {
+        long[] lines = new long[list.size];
+        for (int i = 0; i < list.size; i++) {
+            lines[i] = base + list.lines[i];
+        }
+        return lines;
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * 在索引块的哈希表中查找词的倒排表
+     */
+    private static long[] lookup(ByteBuffer map, int tableSize, long hash, long base) {
+        int slot = (int) (hash & (tableSize - 1));
+        while (true) {
+            int position = HEADER_BYTES + slot * SLOT_BYTES;
+            long stored = map.getLong(position);
+            if (stored == 0) {
+                return EMPTY;
+            }
+            if (stored == hash) {
+                return decode(map, tableSize, position, base);
+            }
+            slot = (slot + 1) & (tableSize - 1);
+        }
+    }
+
+    private static long[] decode(ByteBuffer map, int tableSize, int slotPosition, long base) {
+        int position = HEADER_BYTES + tableSize * SLOT_BYTES + (int) map.getLong(slotPosition + 8);
+        long[] lines = new long[map.getInt(slotPosition + 16)];
+        long line = base;
+        for (int i = 0; i < lines.length; i++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = map.get(position++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            line += value;
+            lines[i] = line;
+        }
+        return lines;
+    }
+
+    /**
+     * 从后向前求多个递增行号列表的交集，只取小于before的最后max个公共行号，从最短的列表开始
+     * @return 递增排列的行号
+     */
+    private static long[] intersectBefore(long[][] postings, long before, int max) {
+        if (postings.length == 0) {
+            return EMPTY;
+        }
+        long[][] sorted = postings.clone();
+        Arrays.sort(sorted, Comparator.comparingInt(lines -> lines.length));
+        int[] cursors = new int[sorted.length];
+        for (int k = 0; k < sorted.length; k++) {
+            int i = Arrays.binarySearch(sorted[k], before);
+            cursors[k] = (i >= 0 ? i : -i - 1) - 1;
+        }
+        long[] found = new long[max];
+        int count = 0;
+        long[] shortest = sorted[0];
+        candidates:
+        for (int i = cursors[0]; i >= 0 && count < max; i--) {
+            long line = shortest[i];
+            for (int k = 1; k < sorted.length; k++) {
+                int c = retreat(sorted[k], cursors[k], line);
+                cursors[k] = c;
+                if (c < 0) {
+                    break candidates;
+                }
+                if (sorted[k][c] != line) {
+                    continue candidates;
+                }
+            }
+            found[count++] = line;
+        }
+        long[] result = new long[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = found[count - 1 - i];
+        }
+        return result;
+    }
+
+    /**
+     * 从from开始向前找到最后一个不大于line的位置，不存在时返回-1：
+     * 先线性后退几步（行号密集时更快），再按指数步长跳跃后二分
+     */
+    private static int retreat(long[] lines, int from, long line) {
+        int linearEnd = Math.max(-1, from - 8);
+        while (from > linearEnd && lines[from] > line) {
+            from--;
+        }
+        if (from > linearEnd || from < 0) {
+            return from;
+        }
+        int hi = from;
+        int lo = from;
+        int step = 1;
+        // 结束时 lines[hi + 1] > line，且 lo 越界或 lines[lo] <= line
+        while (lo >= 0 && lines[lo] > line) {
+            hi = lo - 1;
+            lo = from - step;
+            step <<= 1;
+        }
+        int i = Arrays.binarySearch(lines, Math.max(lo, 0), hi + 1, line);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /**
+     * 从最新的行开始分批求交集并确认匹配，匹配的行足够后不再处理更早的行
+     */
+    private void collectNewest(long[][] postings, LogQuery query, long from, long to, int limit,
+                               List<LogMatch> matches) throws IOException {
+        long before = to;
+        while (matches.size() < limit && before > from) {
+            long[] candidates = intersectBefore(postings, before, Math.max(64, (limit - matches.size()) * 2));
+            if (candidates.length == 0) {
+                return;
+            }
+            collect(candidates, query, from, before, limit, matches);
+            before = candidates[0];
+        }
+    }
+
+    /**
+     * 从最新的候选行开始读取原文并确认匹配
+     * 相距不远的候选行一次读取，避免逐行重复定位（压缩的日志段每次定位都要从检查点开始解压）
+     */
+    private void collect(long[] candidates, LogQuery query, long from, long to, int limit,
+                         List<LogMatch> matches) throws IOException {
+        int i = candidates.length - 1;
+        while (i >= 0 && candidates[i] >= to) {
+            i--;
+        }
+        while (i >= 0 && candidates[i] >= from && matches.size() < limit) {
+            long last = candidates[i];
+            int j = i;
+            while (j > 0 && candidates[j - 1] >= from && last - candidates[j - 1] < Constants.LOG_INDEX_INTERVAL_LINES
+                    && i - j + 1 < limit - matches.size()) {
+                j--;
+            }
+            LogSlice slice = store.read(candidates[j], (int) (last - candidates[j] + 1));
+            List<String> lines = slice.getLines();
+            for (int k = i; k >= j && matches.size() < limit; k--) {
+                int index = (int) (candidates[k] - slice.getFirstLine());
+                if (index < 0 || index >= lines.size()) {
+                    continue;
+                }
+                String text = lines.get(index);
+                if (query.matches(text)) {
+                    matches.add(new LogMatch(name, candidates[k], lineTime(text), text));
+                }
+            }
+            i = j - 1;
+        }
+    }
+
+    private static long lineTime(String text) {
+        if (text.length() < 21) {
+            return 0;
+        }
+        byte[] prefix = text.substring(0, 21).getBytes(StandardCharsets.ISO_8859_1);
+        return Math.max(0, LogSegment.parseTime(ByteBuffer.wrap(prefix), 0, 21));
+    }
+
+    /**
+     * 把内存中的索引写入文件，下次打开时不需要重新索引
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flushPending();
+    }
+}
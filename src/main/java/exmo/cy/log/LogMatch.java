@@ -0,0 +1,44 @@
+package exmo.cy.log;
+
+/**
+ * 搜索命中的一行日志
+ */
+public final class LogMatch {
+
+    private final String log;
+    private final long line;
+    private final long time;
+    private final String text;
+
+    LogMatch(String log, long line, long time, String text) {
+        this.log = log;
+        this.line = line;
+        this.time = time;
+        this.text = text;
+    }
+
+    /**
+     * 所在日志的名称（服务器名称或system）
+     */
+    public String getLog() {
+        return log;
+    }
+
+    /**
+     * 行号，可用于按行号读取上下文
+     */
+    public long getLine() {
+        return line;
+    }
+
+    /**
+     * 行首的时间（毫秒，精确到秒），没有时间时为0
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public String getText() {
+        return text;
+    }
+}
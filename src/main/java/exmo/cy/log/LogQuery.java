@@ -0,0 +1,158 @@
+package exmo.cy.log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 日志搜索条件
+ * 所有条件同时满足才算匹配：每个词都作为完整的词出现（不区分大小写），每个短语都原样出现
+ * （不区分大小写），级别相同，时间在 [from, until) 之间。
+ */
+public final class LogQuery {
+
+    private final Set<String> terms = new LinkedHashSet<>();
+    private final List<String> phrases = new ArrayList<>();
+    private String level;
+    private long fromMillis = Long.MIN_VALUE;
+    private long untilMillis = Long.MAX_VALUE;
+
+    /**
+     * 解析查询文本：双引号括起的部分为短语，level:&lt;级别&gt; 为级别条件，其余为词
+     * 例如 {@code level:error "can't keep up" Steve}
+     * @throws IllegalArgumentException 如果没有任何词、短语或级别
+     */
+    public static LogQuery parse(String text) {
+        LogQuery query = new LogQuery();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                int end = text.indexOf('"', i + 1);
+                if (end < 0) {
+                    end = text.length();
+                }
+                query.phrase(text.substring(i + 1, end));
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+                    end++;
+                }
+                String word = text.substring(i, end);
+                if (word.regionMatches(true, 0, "level:", 0, 6) && word.length() > 6) {
+                    query.level(word.substring(6));
+                } else {
+                    query.term(word);
+                }
+                i = end;
+            }
+        }
+        if (query.terms.isEmpty() && query.level == null) {
+            throw new IllegalArgumentException("搜索条件不能为空");
+        }
+        return query;
+    }
+
+    /**
+     * 添加一个词，包含分隔符时拆分为多个词
+     */
+    public LogQuery term(String term) {
+        LogTokenizer.tokenize(term, terms::add);
+        return this;
+    }
+
+    /**
+     * 添加一个短语，短语中的词同时作为索引条件
+     */
+    public LogQuery phrase(String phrase) {
+        String normalized = phrase.trim().toLowerCase(Locale.ROOT);
+        if (!normalized.isEmpty()) {
+            phrases.add(normalized);
+            LogTokenizer.tokenize(normalized, terms::add);
+        }
+        return this;
+    }
+
+    public LogQuery level(String level) {
+        this.level = level == null || level.isEmpty() ? null : level.toUpperCase(Locale.ROOT);
+        return this;
+    }
+
+    /**
+     * 时间范围，精确到秒
+     * @param fromMillis 起始时间（包含）
+     * @param untilMillis 结束时间（不包含）
+     */
+    public LogQuery between(long fromMillis, long untilMillis) {
+        this.fromMillis = fromMillis;
+        this.untilMillis = untilMillis;
+        return this;
+    }
+
+    public long getFromMillis() {
+        return fromMillis;
+    }
+
+    public long getUntilMillis() {
+        return untilMillis;
+    }
+
+    /**
+     * 在索引中查找的词（含级别的特殊词）的哈希
+     */
+    long[] tokenHashes() {
+        List<String> tokens = new ArrayList<>(terms);
+        if (level != null) {
+            tokens.add(LogTokenizer.levelToken(level));
+        }
+        long[] hashes = new long[tokens.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = LogTokenizer.hash(tokens.get(i));
+        }
+        return hashes;
+    }
+
+    /**
+     * 用日志行的原文检查是否匹配，排除哈希冲突和短语中词的顺序不符的行
+     */
+    boolean matches(String line) {
+        if (level != null && !level.equalsIgnoreCase(LogTokenizer.level(line))) {
+            return false;
+        }
+        if (!phrases.isEmpty()) {
+            String lower = line.toLowerCase(Locale.ROOT);
+            for (String phrase : phrases) {
+                if (!lower.contains(phrase)) {
+                    return false;
+                }
+            }
+        }
+        if (!terms.isEmpty()) {
+            Set<String> tokens = new HashSet<>();
+            LogTokenizer.tokenizeLine(line, tokens::add);
+            return tokens.containsAll(terms);
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (String term : terms) {
+            builder.append(term).append(' ');
+        }
+        for (String phrase : phrases) {
+            builder.append('"').append(phrase).append("\" ");
+        }
+        if (level != null) {
+            builder.append("level:").append(level);
+        }
+        return builder.toString().trim();
+    }
+}
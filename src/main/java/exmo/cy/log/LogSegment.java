@@ -0,0 +1,879 @@
+package exmo.cy.log;
+
+import exmo.cy.config.Constants;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 日志段
+ * 一个只追加的文本文件加上它的稀疏索引。每隔一定行数或字节数记录一个检查点（行号、字节偏移、时间），
+ * 按行号或时间查找时先在检查点中二分查找，再从检查点向后扫描不超过一个间隔；取末尾若干行时
+ * 从文件末尾向前扫描换行符。读取通过内存映射分窗口进行，不会把整个文件读入堆中。
+ * 索引文件为定长记录，只是加速用的缓存：缺失或落后时打开日志段会从最后一个有效检查点重新扫描补齐。
+ * 封存后的日志段可以压缩为 .log.gz：每个检查点开始一个独立的gzip成员，.gzi 记录各成员在压缩文件中的偏移，
+ * 读取时从不晚于起点的检查点所在成员开始解压，索引和行号与压缩前相同。
+ */
+final class LogSegment {
+
+    static final String LOG_SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".idx";
+    static final String COMPRESSED_SUFFIX = ".log.gz";
+    static final String BLOCK_INDEX_SUFFIX = ".gzi";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // 读取压缩日志段时每次解压的窗口大小，以及压缩时的读写缓冲区大小
+    private static final int COMPRESSED_WINDOW_BYTES = 256 * 1024;
+    private static final int COMPRESS_BUFFER_BYTES = 64 * 1024;
+    // 索引记录：行号、字节偏移、时间戳各8字节
+    private static final int RECORD_BYTES = 24;
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final long firstLine;
+    private final Path file;
+    private final Path indexFile;
+    private final Path compressedFile;
+    private final Path blockIndexFile;
+
+    // 以下状态受this保护
+    private long[] cpLines = new long[64];
+    private long[] cpOffsets = new long[64];
+    private long[] cpTimes = new long[64];
+    private int cpCount;
+    private long lineCount;               // 已写入的完整行数
+    private long bytes;                   // 已写入的完整行的字节数
+    private int linesSinceCheckpoint;
+    private long bytesSinceCheckpoint;
+    private long lastTime;
+    private FileChannel channel;          // 第一次追加时才打开
+    private FileChannel indexChannel;
+    private boolean sealed;
+    private boolean deleted;
+    private long[] blockOffsets;          // 已压缩时每个检查点对应的gzip成员偏移，未压缩时为null
+    private long compressedBytes;
+
+    private LogSegment(Path directory, long firstLine) {
+        this.firstLine = firstLine;
+        String base = fileBaseName(firstLine);
+        this.file = directory.resolve(base + LOG_SUFFIX);
+        this.indexFile = directory.resolve(base + INDEX_SUFFIX);
+        this.compressedFile = directory.resolve(base + COMPRESSED_SUFFIX);
+        this.blockIndexFile = directory.resolve(base + BLOCK_INDEX_SUFFIX);
+    }
+
+    /**
+     * 日志段文件名（不含扩展名）：补齐到20位的第一行行号，按文件名排序即按行号排序
+     */
+    static String fileBaseName(long firstLine) {
+        return String.format("%020d", firstLine);
+    }
+
+    /**
+     * 新建一个空日志段，文件在第一次追加时创建
+     */
+    static LogSegment create(Path directory, long firstLine) throws IOException {
+        LogSegment segment = new LogSegment(directory, firstLine);
+        Files.deleteIfExists(segment.file);
+        Files.deleteIfExists(segment.indexFile);
+        segment.deleteCompressedFiles();
+        return segment;
+    }
+
+    /**
+     * 打开已有的日志段，加载索引并补齐索引之后写入的行
+     * 未压缩的文件仍然存在时（压缩中途退出）以它为准，丢弃不完整的压缩文件
+     */
+    static LogSegment open(Path directory, long firstLine) throws IOException {
+        LogSegment segment = new LogSegment(directory, firstLine);
+        if (Files.exists(segment.file)) {
+            segment.deleteCompressedFiles();
+            segment.load();
+        } else {
+            segment.loadCompressed();
+        }
+        return segment;
+    }
+
+    private synchronized void load() throws IOException {
+        long size = Files.size(file);
+        int loaded = readIndex(size);
+
+        // 从最后一个检查点开始扫描，得到行数并补上缺失的检查点
+        if (cpCount > 0) {
+            lineCount = cpLines[cpCount - 1] - firstLine;
+            bytes = cpOffsets[cpCount - 1];
+            lastTime = cpTimes[cpCount - 1];
+        }
+        scan(bytes, size);
+
+        // 索引补上了新的检查点，或者索引文件末尾有无效记录时重写
+        if (cpCount != loaded || Files.exists(indexFile) && Files.size(indexFile) != loaded * (long) RECORD_BYTES) {
+            try (FileChannel out = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                writeIndex(out);
+            }
+        }
+    }
+
+    /**
+     * 加载压缩的日志段，压缩块索引缺失或与索引不一致时解压后按未压缩的日志段加载
+     */
+    private synchronized void loadCompressed() throws IOException {
+        long size = 0;
+        long lines = 0;
+        long[] offsets = null;
+        if (Files.exists(blockIndexFile) && Files.size(blockIndexFile) >= 2 * Long.BYTES) {
+            ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(blockIndexFile));
+            size = header.getLong();
+            lines = header.getLong();
+            offsets = new long[header.remaining() / Long.BYTES];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = header.getLong();
+            }
+        }
+        if (offsets == null || readIndex(size) != offsets.length
+                || Files.size(indexFile) != offsets.length * (long) RECORD_BYTES) {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(compressedFile), COMPRESS_BUFFER_BYTES)) {
+                Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            deleteCompressedFiles();
+            cpCount = 0;
+            linesSinceCheckpoint = 0;
+            bytesSinceCheckpoint = 0;
+            load();
+            return;
+        }
+        bytes = size;
+        lineCount = lines;
+        lastTime = cpTimes[cpCount - 1];
+        blockOffsets = offsets;
+        compressedBytes = Files.size(compressedFile);
+        sealed = true;
+    }
+
+    /**
+     * 读取索引文件中的有效检查点
+     * @param size 日志数据的字节数，检查点必须指向其中已存在的行
+     * @return 读取的检查点数
+     */
+    private int readIndex(long size) throws IOException {
+        int loaded = 0;
+        if (Files.exists(indexFile)) {
+            ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+            long prevLine = -1;
+            long prevOffset = -1;
+            while (records.remaining() >= RECORD_BYTES) {
+                long line = records.getLong();
+                long offset = records.getLong();
+                long time = records.getLong();
+                boolean valid = cpCount == 0
+                    ? line == firstLine && offset == 0
+                    : line > prevLine && offset > prevOffset;
+                // 检查点必须指向文件中已存在的行
+                if (!valid || offset >= size) {
+                    break;
+                }
+                addCheckpoint(line, offset, time);
+                prevLine = line;
+                prevOffset = offset;
+            }
+            loaded = cpCount;
+        }
+        return loaded;
+    }
+
+    /**
+     * 扫描 [from, to) 之间的完整行，更新行数并按间隔添加检查点
+     */
+    private void scan(long from, long to) throws IOException {
+        forEachLine(from, to, (offset, buffer, start, end) -> {
+            long time = parseTime(buffer, start, end);
+            if (time >= 0) {
+                lastTime = time;
+            }
+            if (checkpointDue()) {
+                addCheckpoint(firstLine + lineCount, offset, lastTime);
+            }
+            int length = end - start + 1;
+            lineCount++;
+            linesSinceCheckpoint++;
+            bytesSinceCheckpoint += length;
+            bytes = offset + length;
+            return true;
+        });
+    }
+
+    private boolean checkpointDue() {
+        return cpCount == 0
+            || linesSinceCheckpoint >= Constants.LOG_INDEX_INTERVAL_LINES
+            || bytesSinceCheckpoint >= Constants.LOG_INDEX_INTERVAL_BYTES;
+    }
+
+    private void addCheckpoint(long line, long offset, long time) {
+        if (cpCount == cpLines.length) {
+            int capacity = cpCount * 2;
+            cpLines = Arrays.copyOf(cpLines, capacity);
+            cpOffsets = Arrays.copyOf(cpOffsets, capacity);
+            cpTimes = Arrays.copyOf(cpTimes, capacity);
+        }
+        cpLines[cpCount] = line;
+        cpOffsets[cpCount] = offset;
+        cpTimes[cpCount] = time;
+        cpCount++;
+        linesSinceCheckpoint = 0;
+        bytesSinceCheckpoint = 0;
+    }
+
+    private void writeIndex(FileChannel out) throws IOException {
+        ByteBuffer records = ByteBuffer.allocate(cpCount * RECORD_BYTES);
+        for (int i = 0; i < cpCount; i++) {
+            records.putLong(cpLines[i]).putLong(cpOffsets[i]).putLong(cpTimes[i]);
+        }
+        records.flip();
+        long position = 0;
+        while (records.hasRemaining()) {
+            position += out.write(records, position);
+        }
+        out.truncate(position);
+    }
+
+    /**
+     * 追加若干完整的行
+     * 数据可能是批量写入的许多行，检查点仍按行间隔添加，时间取自各行行首，没有时间的行使用time
+     * @param time 写入时间（毫秒）
+     * @param data 以换行符结尾的UTF-8数据
+     * @return 追加的行数
+     */
+    synchronized int append(long time, byte[] data, int offset, int length) throws IOException {
+        if (channel == null) {
+            openForAppend();
+        }
+        int savedCpCount = cpCount;
+        long savedLineCount = lineCount;
+        int savedLinesSince = linesSinceCheckpoint;
+        long savedBytesSince = bytesSinceCheckpoint;
+        long savedLastTime = lastTime;
+
+        ByteBuffer view = ByteBuffer.wrap(data);
+        int lines = 0;
+        int lineStart = offset;
+        for (int i = offset; i < offset + length; i++) {
+            if (data[i] != '\n') {
+                continue;
+            }
+            long lineTime = parseTime(view, lineStart, i);
+            if (lineTime >= 0) {
+                lastTime = lineTime;
+            } else if (lineStart == offset) {
+                lastTime = time;
+            }
+            if (checkpointDue()) {
+                // 与行首时间的精度一致，只保留到秒
+                addCheckpoint(firstLine + lineCount, bytes + (lineStart - offset), lastTime - Math.floorMod(lastTime, 1000L));
+            }
+            lineCount++;
+            linesSinceCheckpoint++;
+            bytesSinceCheckpoint += i - lineStart + 1;
+            lines++;
+            lineStart = i + 1;
+        }
+
+        // 先写数据再写索引，写入失败时恢复内存中的状态
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        long position = bytes;
+        try {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } catch (IOException e) {
+            cpCount = savedCpCount;
+            lineCount = savedLineCount;
+            linesSinceCheckpoint = savedLinesSince;
+            bytesSinceCheckpoint = savedBytesSince;
+            lastTime = savedLastTime;
+            throw e;
+        }
+        bytes = position;
+
+        if (cpCount > savedCpCount) {
+            ByteBuffer records = ByteBuffer.allocate((cpCount - savedCpCount) * RECORD_BYTES);
+            for (int i = savedCpCount; i < cpCount; i++) {
+                records.putLong(cpLines[i]).putLong(cpOffsets[i]).putLong(cpTimes[i]);
+            }
+            records.flip();
+            long indexPosition = (long) savedCpCount * RECORD_BYTES;
+            while (records.hasRemaining()) {
+                indexPosition += indexChannel.write(records, indexPosition);
+            }
+        }
+        return lines;
+    }
+
+    private void openForAppend() throws IOException {
+        if (sealed) {
+            throw new IOException("日志段已封存: " + file);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size > bytes) {
+            // 上次异常退出留下了不完整的行，补上换行使它成为完整的一行
+            channel.write(ByteBuffer.wrap(new byte[] {'\n'}), size);
+            scan(bytes, size + 1);
+        }
+        indexChannel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        writeIndex(indexChannel);
+    }
+
+    /**
+     * 封存日志段，之后不能再追加
+     */
+    synchronized void seal() throws IOException {
+        sealed = true;
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            channel = null;
+            if (indexChannel != null) {
+                indexChannel.close();
+                indexChannel = null;
+            }
+        }
+    }
+
+    /**
+     * 删除日志段文件
+     */
+    synchronized void delete() throws IOException {
+        deleted = true;
+        seal();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(indexFile);
+        deleteCompressedFiles();
+    }
+
+    private void deleteCompressedFiles() throws IOException {
+        Files.deleteIfExists(compressedFile);
+        Files.deleteIfExists(blockIndexFile);
+        Files.deleteIfExists(tempFile(compressedFile));
+        Files.deleteIfExists(tempFile(blockIndexFile));
+    }
+
+    private static Path tempFile(Path path) {
+        return path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+    }
+
+    /**
+     * 压缩已封存的日志段，压缩完成后删除未压缩的文件
+     * 压缩期间仍然从未压缩的文件读取，完成后才切换，压缩中途退出不影响已有数据。
+     * @return 是否进行了压缩，未封存、已压缩或已删除时返回false
+     */
+    boolean compress() throws IOException {
+        int count;
+        long[] offsets;
+        long length;
+        long lines;
+        synchronized (this) {
+            if (!sealed || deleted || blockOffsets != null || cpCount == 0) {
+                return false;
+            }
+            count = cpCount;
+            offsets = Arrays.copyOf(cpOffsets, count);
+            length = bytes;
+            lines = lineCount;
+        }
+
+        Path compressedTemp = tempFile(compressedFile);
+        Path blockIndexTemp = tempFile(blockIndexFile);
+        long[] blocks = new long[count];
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(compressedTemp, StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream target = new NonClosingOutputStream(Channels.newOutputStream(out));
+            byte[] buffer = new byte[COMPRESS_BUFFER_BYTES];
+            for (int i = 0; i < count; i++) {
+                blocks[i] = out.position();
+                long position = offsets[i];
+                long end = i + 1 < count ? offsets[i + 1] : length;
+                try (GZIPOutputStream gzip = new GZIPOutputStream(target, COMPRESS_BUFFER_BYTES)) {
+                    while (position < end) {
+                        int n = in.read(ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, end - position)), position);
+                        if (n < 0) {
+                            throw new EOFException("日志段比索引记录的短: " + file);
+                        }
+                        gzip.write(buffer, 0, n);
+                        position += n;
+                    }
+                }
+            }
+            out.force(true);
+        }
+        ByteBuffer header = ByteBuffer.allocate(2 * Long.BYTES + count * Long.BYTES);
+        header.putLong(length).putLong(lines);
+        for (long block : blocks) {
+            header.putLong(block);
+        }
+        Files.write(blockIndexTemp, header.array());
+
+        synchronized (this) {
+            if (deleted) {
+                deleteCompressedFiles();
+                return false;
+            }
+            Files.setLastModifiedTime(compressedTemp, Files.getLastModifiedTime(file));
+            Files.move(blockIndexTemp, blockIndexFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(compressedTemp, compressedFile, StandardCopyOption.REPLACE_EXISTING);
+            blockOffsets = blocks;
+            compressedBytes = Files.size(compressedFile);
+            // 已经打开的读取仍然可以读完被删除的文件
+            Files.delete(file);
+        }
+        return true;
+    }
+
+    long getFirstLine() {
+        return firstLine;
+    }
+
+    synchronized long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * 日志数据的字节数（未压缩）
+     */
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * 占用的磁盘空间，已压缩时为压缩文件的大小
+     */
+    synchronized long getDiskBytes() {
+        return blockOffsets != null ? compressedBytes : bytes;
+    }
+
+    synchronized boolean isSealed() {
+        return sealed;
+    }
+
+    synchronized boolean isCompressed() {
+        return blockOffsets != null;
+    }
+
+    /**
+     * 第一行的时间，空日志段返回Long.MAX_VALUE
+     */
+    synchronized long getFirstTime() {
+        return cpCount > 0 ? cpTimes[0] : Long.MAX_VALUE;
+    }
+
+    /**
+     * 当前的数据文件，已压缩时为 .log.gz
+     */
+    synchronized Path getFile() {
+        return blockOffsets != null ? compressedFile : file;
+    }
+
+    /**
+     * 把本段的全部日志（解压后）写入out
+     */
+    void transferTo(WritableByteChannel out) throws IOException {
+        long length = getBytes();
+        try (Source source = openSource(0)) {
+            long position = 0;
+            while (position < length) {
+                int window = (int) Math.min(source.windowSize(), length - position);
+                ByteBuffer buffer = source.window(position, window);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                position += window;
+            }
+        }
+    }
+
+    /**
+     * 读取 [from, to) 之间的行，行号为全局行号，超出本段的部分被忽略
+     */
+    List<String> read(long from, long to) throws IOException {
+        long startLine;
+        long startOffset;
+        long end;
+        long first;
+        long last;
+        synchronized (this) {
+            first = Math.max(from, firstLine);
+            last = Math.min(to, firstLine + lineCount);
+            if (first >= last) {
+                return new ArrayList<>();
+            }
+            int i = floorCheckpoint(first);
+            startLine = cpLines[i];
+            startOffset = cpOffsets[i];
+            end = bytes;
+        }
+        List<String> lines = new ArrayList<>((int) (last - first));
+        long[] current = {startLine};
+        forEachLine(startOffset, end, (offset, buffer, start, stop) -> {
+            long line = current[0]++;
+            if (line >= first) {
+                lines.add(decode(buffer, start, stop));
+            }
+            return current[0] < last;
+        });
+        return lines;
+    }
+
+    /**
+     * 读取本段最后n行
+     */
+    LogSlice tail(int n) throws IOException {
+        long count;
+        long end;
+        boolean compressed;
+        synchronized (this) {
+            count = lineCount;
+            end = bytes;
+            compressed = blockOffsets != null;
+        }
+        long total = firstLine + count;
+        if (n <= 0) {
+            return new LogSlice(total, new ArrayList<>(), total);
+        }
+        if (n >= count) {
+            return new LogSlice(firstLine, read(firstLine, total), total);
+        }
+        if (compressed) {
+            // 压缩的日志段不能从末尾向前扫描，改为从检查点向后读取
+            return new LogSlice(total - n, read(total - n, total), total);
+        }
+        List<String> lines = new ArrayList<>(n);
+        forEachLine(tailOffset(n, end), end, (offset, buffer, start, stop) -> {
+            lines.add(decode(buffer, start, stop));
+            return true;
+        });
+        return new LogSlice(total - lines.size(), lines, total);
+    }
+
+    /**
+     * 从末尾向前扫描，找到倒数第n行的起始偏移
+     */
+    private long tailOffset(int n, long end) throws IOException {
+        FileChannel channel;
+        synchronized (this) {
+            if (blockOffsets != null) {
+                return cpOffsets[floorCheckpoint(firstLine + lineCount - n)];
+            }
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        }
+        try (FileChannel in = channel) {
+            int found = 0;
+            // 跳过最后一行自身的换行符
+            long windowEnd = end - 1;
+            while (windowEnd > 0) {
+                long windowStart = Math.max(0, windowEnd - Constants.LOG_MAP_WINDOW_BYTES);
+                MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+                for (int i = (int) (windowEnd - windowStart) - 1; i >= 0; i--) {
+                    if (map.get(i) == '\n' && ++found == n) {
+                        return windowStart + i + 1;
+                    }
+                }
+                windowEnd = windowStart;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * 查找第一个时间不早于time的行
+     * 时间取自行首的 [yyyy-MM-dd HH:mm:ss]，精确到秒；没有时间的行（例如多行消息的后续行）跟随前一行
+     * @return 全局行号，本段所有行都早于time时返回本段最后一行之后的行号
+     */
+    long findLine(long time) throws IOException {
+        long startLine;
+        long startOffset;
+        long end;
+        long endLine;
+        synchronized (this) {
+            endLine = firstLine + lineCount;
+            // 最后一个早于time的检查点，假定时间随行号不减
+            int lo = 0;
+            int hi = cpCount - 1;
+            int found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cpTimes[mid] < time) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (found < 0) {
+                return cpCount > 0 ? firstLine : endLine;
+            }
+            startLine = cpLines[found];
+            startOffset = cpOffsets[found];
+            end = bytes;
+        }
+        long[] result = {endLine};
+        long[] current = {startLine};
+        forEachLine(startOffset, end, (offset, buffer, start, stop) -> {
+            if (parseTime(buffer, start, stop) >= time) {
+                result[0] = current[0];
+                return false;
+            }
+            current[0]++;
+            return true;
+        });
+        return result[0];
+    }
+
+    private int floorCheckpoint(long line) {
+        int i = Arrays.binarySearch(cpLines, 0, cpCount, line);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    @FunctionalInterface
+    private interface LineVisitor {
+        /**
+         * @param offset 行在文件中的起始偏移
+         * @param buffer 包含该行的映射窗口
+         * @param start 行在窗口中的起始位置
+         * @param end 行末换行符在窗口中的位置
+         * @return 返回false停止访问
+         */
+        boolean visit(long offset, ByteBuffer buffer, int start, int end) throws IOException;
+    }
+
+    /**
+     * 逐行访问 [from, to) 之间以换行符结尾的行，末尾不完整的行不访问
+     */
+    private void forEachLine(long from, long to, LineVisitor visitor) throws IOException {
+        if (from >= to) {
+            return;
+        }
+        try (Source source = openSource(from)) {
+            long windowStart = from;
+            int window = source.windowSize();
+            while (windowStart < to) {
+                int length = (int) Math.min(window, to - windowStart);
+                ByteBuffer map = source.window(windowStart, length);
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (map.get(i) == '\n') {
+                        if (!visitor.visit(windowStart + lineStart, map, lineStart, i)) {
+                            return;
+                        }
+                        lineStart = i + 1;
+                    }
+                }
+                if (windowStart + length == to) {
+                    return;
+                }
+                if (lineStart == 0) {
+                    // 一行比窗口还长，扩大窗口后重新映射
+                    if (window == Integer.MAX_VALUE) {
+                        throw new IOException("日志行过长: " + file + " 偏移 " + windowStart);
+                    }
+                    window = (int) Math.min((long) window * 2, Integer.MAX_VALUE);
+                } else {
+                    windowStart += lineStart;
+                }
+            }
+        }
+    }
+
+    /**
+     * 打开读取from之后数据的来源，已压缩时从不晚于from的检查点所在的gzip成员开始解压
+     */
+    private synchronized Source openSource(long from) throws IOException {
+        if (blockOffsets == null) {
+            return new MappedSource(FileChannel.open(file, StandardOpenOption.READ));
+        }
+        int i = Arrays.binarySearch(cpOffsets, 0, cpCount, from);
+        int block = i >= 0 ? i : Math.max(0, -i - 2);
+        return new CompressedSource(FileChannel.open(compressedFile, StandardOpenOption.READ),
+            blockOffsets[block], cpOffsets[block]);
+    }
+
+    /**
+     * 按窗口读取日志段的数据，窗口起点只能递增
+     */
+    private interface Source extends Closeable {
+        int windowSize();
+
+        /**
+         * @return 从start开始的length字节，缓冲区位置0对应start
+         */
+        ByteBuffer window(long start, int length) throws IOException;
+    }
+
+    private static final class MappedSource implements Source {
+        private final FileChannel channel;
+
+        MappedSource(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int windowSize() {
+            return Constants.LOG_MAP_WINDOW_BYTES;
+        }
+
+        @Override
+        public ByteBuffer window(long start, int length) throws IOException {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static final class CompressedSource implements Source {
+        private final FileChannel channel;
+        private final InputStream in;
+        private byte[] buffer = new byte[COMPRESSED_WINDOW_BYTES];
+        private long bufferStart;
+        private int bufferLength;
+
+        /**
+         * @param blockOffset gzip成员在压缩文件中的偏移
+         * @param blockStart 该成员第一个字节在未压缩数据中的偏移
+         */
+        CompressedSource(FileChannel channel, long blockOffset, long blockStart) throws IOException {
+            this.channel = channel;
+            channel.position(blockOffset);
+            this.in = new GZIPInputStream(Channels.newInputStream(channel), COMPRESS_BUFFER_BYTES);
+            this.bufferStart = blockStart;
+        }
+
+        @Override
+        public int windowSize() {
+            return COMPRESSED_WINDOW_BYTES;
+        }
+
+        @Override
+        public ByteBuffer window(long start, int length) throws IOException {
+            if (start < bufferStart) {
+                throw new IOException("压缩日志段只能向后读取");
+            }
+            // 丢弃start之前已解压的数据，再跳过缓冲区之外的部分
+            int discard = (int) Math.min(bufferLength, start - bufferStart);
+            System.arraycopy(buffer, discard, buffer, 0, bufferLength - discard);
+            bufferLength -= discard;
+            bufferStart += discard;
+            while (bufferStart < start) {
+                long skipped = in.skip(start - bufferStart);
+                if (skipped <= 0) {
+                    throw new EOFException("压缩日志段不完整");
+                }
+                bufferStart += skipped;
+            }
+            if (buffer.length < length) {
+                buffer = Arrays.copyOf(buffer, length);
+            }
+            while (bufferLength < length) {
+                int n = in.read(buffer, bufferLength, length - bufferLength);
+                if (n < 0) {
+                    throw new EOFException("压缩日志段不完整");
+                }
+                bufferLength += n;
+            }
+            return ByteBuffer.wrap(buffer, 0, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * 关闭时不关闭底层流，用于在同一个文件中依次写入多个gzip成员
+     */
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            // 只结束当前gzip成员
+        }
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        byte[] data = new byte[end - start];
+        buffer.get(start, data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 解析行首的 [yyyy-MM-dd HH:mm:ss]
+     * @return 毫秒时间戳，没有时间时返回-1
+     */
+    static long parseTime(ByteBuffer buffer, int start, int end) {
+        if (end - start < 21 || buffer.get(start) != '[' || buffer.get(start + 20) != ']') {
+            return -1;
+        }
+        int year = digits(buffer, start + 1, 4);
+        int month = digits(buffer, start + 6, 2);
+        int day = digits(buffer, start + 9, 2);
+        int hour = digits(buffer, start + 12, 2);
+        int minute = digits(buffer, start + 15, 2);
+        int second = digits(buffer, start + 18, 2);
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0) {
+            return -1;
+        }
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second).atZone(ZONE).toEpochSecond() * 1000;
+        } catch (DateTimeException e) {
+            return -1;
+        }
+    }
+
+    private static int digits(ByteBuffer buffer, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
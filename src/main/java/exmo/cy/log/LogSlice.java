@@ -0,0 +1,44 @@
+package exmo.cy.log;
+
+import java.util.List;
+
+/**
+ * 从日志存储中读取的连续若干行
+ */
+public final class LogSlice {
+
+    private final long firstLine;
+    private final List<String> lines;
+    private final long totalLines;
+
+    LogSlice(long firstLine, List<String> lines, long totalLines) {
+        this.firstLine = firstLine;
+        this.lines = lines;
+        this.totalLines = totalLines;
+    }
+
+    /**
+     * 第一行的行号（从0开始，整个日志内唯一）
+     */
+    public long getFirstLine() {
+        return firstLine;
+    }
+
+    public List<String> getLines() {
+        return lines;
+    }
+
+    /**
+     * 最后一行之后的行号，可作为下一次分页读取的起点
+     */
+    public long getNextLine() {
+        return firstLine + lines.size();
+    }
+
+    /**
+     * 读取时日志的总行数（即下一行将要写入的行号）
+     */
+    public long getTotalLines() {
+        return totalLines;
+    }
+}
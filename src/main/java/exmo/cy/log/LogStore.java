@@ -0,0 +1,461 @@
+package exmo.cy.log;
+
+import exmo.cy.config.Constants;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 分段日志存储
+ * 一个日志（例如一个服务器的输出）对应一个目录，目录中是按第一行行号命名的日志段及其稀疏索引，
+ * 活动段超过 {@link Constants#LOG_SEGMENT_BYTES} 或跨过自然日后封存并开始新段。每行有一个全局行号，
+ * 取末尾N行、按行号范围读取、按时间范围读取都只访问相关日志段中的一小段区间，耗时与日志总大小无关。
+ * 写入由调用方串行化（方法已同步），读取可以与写入并发进行，只能看到调用时已写入的行。
+ * 同一目录只能由一个LogStore实例写入。
+ * 指定了维护线程池时，封存的日志段在其中压缩（读取时透明解压），并在日志总大小超过保留上限时删除最旧的日志段。
+ * 新写入的行也在维护线程池中增量建立倒排索引（见 {@link LogIndex}），用于全文搜索。
+ */
+public class LogStore implements Closeable {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final Path directory;
+    private final Executor maintenanceExecutor;
+    private final long retentionBytes;
+    private final AtomicBoolean maintenanceScheduled = new AtomicBoolean();
+    private final AtomicBoolean indexingScheduled = new AtomicBoolean();
+    private final LogIndex index;
+    // 按第一行行号排序，最后一个为活动段
+    private final List<LogSegment> segments = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * 打开日志目录，目录不存在时创建，不压缩也不限制大小
+     * @param directory 日志目录
+     * @throws IOException 如果目录或已有日志段无法读取
+     */
+    public LogStore(Path directory) throws IOException {
+        this(directory, null, 0);
+    }
+
+    /**
+     * 打开日志目录，目录不存在时创建
+     * @param directory 日志目录
+     * @param maintenanceExecutor 压缩封存日志段和执行保留策略的线程池，为null时不压缩
+     * @param retentionBytes 所有日志段占用磁盘空间的上限，0表示不限制，活动段总是保留
+     * @throws IOException 如果目录或已有日志段无法读取
+     */
+    public LogStore(Path directory, Executor maintenanceExecutor, long retentionBytes) throws IOException {
+        this.directory = directory;
+        this.maintenanceExecutor = maintenanceExecutor;
+        this.retentionBytes = retentionBytes;
+        Files.createDirectories(directory);
+
+        TreeSet<Long> firstLines = new TreeSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                "*{" + LogSegment.LOG_SUFFIX + "," + LogSegment.COMPRESSED_SUFFIX + "}")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                String base = name.substring(0, name.indexOf('.'));
+                if (base.length() == 20 && base.chars().allMatch(Character::isDigit)) {
+                    firstLines.add(Long.parseLong(base));
+                }
+            }
+        }
+        for (long firstLine : firstLines) {
+            segments.add(LogSegment.open(directory, firstLine));
+        }
+        for (int i = 0; i < segments.size() - 1; i++) {
+            segments.get(i).seal();
+        }
+        if (segments.isEmpty()) {
+            segments.add(LogSegment.create(directory, 0));
+        }
+        index = new LogIndex(this, directory);
+        // 上次退出前没有压缩完的日志段和没有索引的行
+        scheduleMaintenance();
+        scheduleIndexing();
+    }
+
+    /**
+     * 追加一行
+     * @param time 写入时间（毫秒），应与行首的时间一致
+     * @param line 日志行，可以不带换行符
+     * @return 该行的行号
+     */
+    public long append(long time, String line) throws IOException {
+        byte[] data = (line.endsWith("\n") ? line : line + "\n").getBytes(StandardCharsets.UTF_8);
+        return append(time, data, 0, data.length);
+    }
+
+    /**
+     * 追加若干完整的行
+     * @param time 写入时间（毫秒）
+     * @param data UTF-8编码的数据，必须以换行符结尾
+     * @return 第一行的行号
+     * @throws IllegalArgumentException 如果数据不以换行符结尾
+     */
+    public synchronized long append(long time, byte[] data, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("日志已关闭: " + directory);
+        }
+        if (length == 0) {
+            return getLineCount();
+        }
+        if (data[offset + length - 1] != '\n') {
+            throw new IllegalArgumentException("日志数据必须以换行符结尾");
+        }
+
+        LogSegment active = segments.get(segments.size() - 1);
+        if (active.getBytes() > 0 && (active.getBytes() + length > Constants.LOG_SEGMENT_BYTES
+                || !sameDay(active.getFirstTime(), time))) {
+            active.seal();
+            active = LogSegment.create(directory, active.getFirstLine() + active.getLineCount());
+            segments.add(active);
+            scheduleMaintenance();
+        }
+        long line = active.getFirstLine() + active.getLineCount();
+        active.append(time, data, offset, length);
+        scheduleIndexing();
+        return line;
+    }
+
+    private static boolean sameDay(long a, long b) {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(a), ZONE).equals(LocalDate.ofInstant(Instant.ofEpochMilli(b), ZONE));
+    }
+
+    /**
+     * 在维护线程池中压缩封存的日志段并执行保留策略，已经在排队时不重复提交
+     */
+    private void scheduleMaintenance() {
+        if (maintenanceExecutor == null || !maintenanceScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            maintenanceExecutor.execute(this::runMaintenance);
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭，下次打开时再处理
+            maintenanceScheduled.set(false);
+        }
+    }
+
+    private void runMaintenance() {
+        maintenanceScheduled.set(false);
+        try {
+            for (LogSegment segment : new ArrayList<>(segments)) {
+                if (segment.isSealed() && !segment.isCompressed()) {
+                    segment.compress();
+                }
+            }
+            if (retentionBytes > 0) {
+                trimToSize(retentionBytes);
+            }
+        } catch (IOException e) {
+            System.err.println("压缩日志段失败: " + directory + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * 在维护线程池中索引新写入的行，每次最多索引若干批后重新排队，不长时间占用维护线程
+     */
+    private void scheduleIndexing() {
+        if (maintenanceExecutor == null || !indexingScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            maintenanceExecutor.execute(this::runIndexing);
+        } catch (RejectedExecutionException e) {
+            indexingScheduled.set(false);
+        }
+    }
+
+    private void runIndexing() {
+        indexingScheduled.set(false);
+        try {
+            for (int i = 0; i < Constants.LOG_SEARCH_BATCHES_PER_TASK; i++) {
+                if (!index.indexNextBatch()) {
+                    return;
+                }
+            }
+            scheduleIndexing();
+        } catch (IOException e) {
+            System.err.println("建立日志索引失败: " + directory + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * 搜索日志，从最新的行开始
+     * 没有维护线程池时先索引全部未索引的行；否则未索引的行较多（例如正在重建索引）时只搜索已索引的部分
+     * @param limit 最多返回的行数
+     * @return 匹配的行，按行号从新到旧排列
+     */
+    public List<LogMatch> search(LogQuery query, int limit) throws IOException {
+        if (maintenanceExecutor == null) {
+            index.catchUp();
+        }
+        long from = query.getFromMillis() == Long.MIN_VALUE ? getFirstLine() : findLine(query.getFromMillis());
+        long to = query.getUntilMillis() == Long.MAX_VALUE ? Long.MAX_VALUE : findLine(query.getUntilMillis());
+        return index.search(query, from, to, limit);
+    }
+
+    /**
+     * 删除倒排索引并在后台从日志原文重建
+     */
+    public void rebuildIndex() throws IOException {
+        index.rebuild();
+        scheduleIndexing();
+    }
+
+    /**
+     * 尚未建立索引的行数
+     */
+    public long getUnindexedLines() {
+        return index.getBacklog();
+    }
+
+    /**
+     * 第一行的行号，删除旧日志段后大于0
+     */
+    public long getFirstLine() {
+        return segments.get(0).getFirstLine();
+    }
+
+    /**
+     * 总行数，即下一行将要写入的行号
+     */
+    public long getLineCount() {
+        LogSegment last = segments.get(segments.size() - 1);
+        return last.getFirstLine() + last.getLineCount();
+    }
+
+    /**
+     * 所有日志段占用的磁盘空间，已压缩的日志段按压缩后的大小计算
+     */
+    public long size() {
+        long total = 0;
+        for (LogSegment segment : segments) {
+            total += segment.getDiskBytes();
+        }
+        return total;
+    }
+
+    /**
+     * 已压缩的日志段数
+     */
+    public int getCompressedSegmentCount() {
+        int count = 0;
+        for (LogSegment segment : segments) {
+            if (segment.isCompressed()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * 最后写入时间，没有写入过时返回0
+     */
+    public long getLastModified() {
+        Path file = segments.get(segments.size() - 1).getFile();
+        try {
+            return Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 读取末尾n行，从最后一个日志段的末尾向前扫描，不够时继续读前一个日志段
+     * @param n 行数
+     */
+    public LogSlice tail(int n) throws IOException {
+        List<LogSegment> snapshot = new ArrayList<>(segments);
+        Deque<LogSlice> parts = new ArrayDeque<>();
+        int remaining = n;
+        for (int i = snapshot.size() - 1; i >= 0 && remaining > 0; i--) {
+            LogSlice part = snapshot.get(i).tail(remaining);
+            parts.addFirst(part);
+            remaining -= part.getLines().size();
+        }
+        if (parts.isEmpty()) {
+            long total = getLineCount();
+            return new LogSlice(total, new ArrayList<>(), total);
+        }
+        if (parts.size() == 1) {
+            return parts.getFirst();
+        }
+        List<String> lines = new ArrayList<>(n - remaining);
+        for (LogSlice part : parts) {
+            lines.addAll(part.getLines());
+        }
+        return new LogSlice(parts.getFirst().getFirstLine(), lines, parts.getLast().getTotalLines());
+    }
+
+    /**
+     * 从指定行号开始读取
+     * @param from 起始行号，早于第一行时从第一行开始
+     * @param limit 最多读取的行数
+     */
+    public LogSlice read(long from, int limit) throws IOException {
+        long total = getLineCount();
+        long start = Math.max(from, getFirstLine());
+        long end = Math.min(total, start + Math.max(0, limit));
+        List<String> lines = new ArrayList<>();
+        if (start < end) {
+            List<LogSegment> snapshot = new ArrayList<>(segments);
+            for (int i = floorSegment(snapshot, start); i < snapshot.size(); i++) {
+                LogSegment segment = snapshot.get(i);
+                if (segment.getFirstLine() >= end) {
+                    break;
+                }
+                lines.addAll(segment.read(start, end));
+            }
+        }
+        return new LogSlice(start, lines, total);
+    }
+
+    /**
+     * 读取时间在 [fromMillis, toMillis) 之间的行，时间精确到秒
+     * @param limit 最多读取的行数，超出时可以从返回结果的 {@link LogSlice#getNextLine()} 继续按行号读取
+     */
+    public LogSlice readBetween(long fromMillis, long toMillis, int limit) throws IOException {
+        long from = findLine(fromMillis);
+        long to = findLine(toMillis);
+        return read(from, (int) Math.min(limit, Math.max(0, to - from)));
+    }
+
+    /**
+     * 查找第一个时间不早于指定时间的行
+     * @param timeMillis 时间（毫秒），按秒比较
+     * @return 行号，所有行都早于该时间时返回总行数
+     */
+    public long findLine(long timeMillis) throws IOException {
+        long time = timeMillis - Math.floorMod(timeMillis, 1000L);
+        List<LogSegment> snapshot = new ArrayList<>(segments);
+        // 最后一个第一行早于该时间的日志段
+        int index = -1;
+        for (int i = snapshot.size() - 1; i >= 0; i--) {
+            if (snapshot.get(i).getFirstTime() < time) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return snapshot.get(0).getFirstLine();
+        }
+        return snapshot.get(index).findLine(time);
+    }
+
+    private static int floorSegment(List<LogSegment> snapshot, long line) {
+        int lo = 0;
+        int hi = snapshot.size() - 1;
+        int found = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (snapshot.get(mid).getFirstLine() <= line) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 删除最后修改时间早于指定时间的已封存日志段，活动段不会被删除
+     * @return 删除的日志段数
+     */
+    public synchronized int deleteSegmentsOlderThan(long cutoffMillis) throws IOException {
+        int deleted = 0;
+        while (segments.size() > 1) {
+            LogSegment oldest = segments.get(0);
+            if (Files.exists(oldest.getFile())
+                    && Files.getLastModifiedTime(oldest.getFile()).toMillis() >= cutoffMillis) {
+                break;
+            }
+            oldest.delete();
+            segments.remove(0);
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * 从最旧的日志段开始删除，直到占用的磁盘空间不超过maxBytes，活动段不会被删除
+     * @return 删除的日志段数
+     */
+    public synchronized int trimToSize(long maxBytes) throws IOException {
+        int deleted = 0;
+        long total = size();
+        while (segments.size() > 1 && total > maxBytes) {
+            LogSegment oldest = segments.remove(0);
+            total -= oldest.getDiskBytes();
+            oldest.delete();
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * 删除所有日志段，行号继续递增，不会与已读取的行号重复
+     */
+    public synchronized void clear() throws IOException {
+        long next = getLineCount();
+        for (LogSegment segment : segments) {
+            segment.delete();
+        }
+        segments.clear();
+        segments.add(LogSegment.create(directory, next));
+    }
+
+    /**
+     * 把所有日志段按顺序导出到一个文件，压缩的日志段解压后导出
+     */
+    public void exportTo(Path output) throws IOException {
+        try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (LogSegment segment : new ArrayList<>(segments)) {
+                if (segment.getBytes() > 0) {
+                    segment.transferTo(out);
+                }
+            }
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        segments.get(segments.size() - 1).seal();
+        index.close();
+    }
+}
@@ -0,0 +1,93 @@
+package exmo.cy.log;
+
+import java.util.function.Consumer;
+
+/**
+ * 日志分词
+ * 建立索引和解析查询使用同一套规则：字母、数字和下划线组成的连续片段为一个词（转为小写），
+ * 汉字等表意文字每个字单独成词，其他字符都是分隔符。过长的词截断到 {@link #MAX_TOKEN_LENGTH} 个字符。
+ */
+final class LogTokenizer {
+
+    static final int MAX_TOKEN_LENGTH = 64;
+    // 行首 "[yyyy-MM-dd HH:mm:ss] " 的长度
+    private static final int TIME_PREFIX_LENGTH = 22;
+    // 日志级别的特殊词，以\0开头，不会与普通词冲突
+    private static final String LEVEL_PREFIX = "\0level:";
+
+    private LogTokenizer() {
+    }
+
+    /**
+     * 对text分词
+     * @param sink 接收每个词，同一个词可能出现多次
+     */
+    static void tokenize(String text, Consumer<String> sink) {
+        StringBuilder token = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            if (Character.isIdeographic(cp)) {
+                emit(token, sink);
+                sink.accept(new String(Character.toChars(cp)));
+            } else if (Character.isLetterOrDigit(cp) || cp == '_') {
+                if (token.length() < MAX_TOKEN_LENGTH) {
+                    token.appendCodePoint(Character.toLowerCase(cp));
+                }
+            } else {
+                emit(token, sink);
+            }
+        }
+        emit(token, sink);
+    }
+
+    private static void emit(StringBuilder token, Consumer<String> sink) {
+        if (token.length() > 0) {
+            sink.accept(token.toString());
+            token.setLength(0);
+        }
+    }
+
+    /**
+     * 对一行日志分词：跳过行首时间，并为日志级别额外生成一个特殊词
+     */
+    static void tokenizeLine(String line, Consumer<String> sink) {
+        String level = level(line);
+        if (level != null) {
+            sink.accept(levelToken(level));
+        }
+        tokenize(line.length() >= TIME_PREFIX_LENGTH && line.charAt(0) == '[' ? line.substring(TIME_PREFIX_LENGTH) : line, sink);
+    }
+
+    static String levelToken(String level) {
+        return LEVEL_PREFIX + level.toLowerCase();
+    }
+
+    /**
+     * 解析 "[时间] [级别] 消息" 中的级别
+     * @return 级别，格式不符时返回null
+     */
+    static String level(String line) {
+        if (line.length() < TIME_PREFIX_LENGTH + 3 || line.charAt(0) != '[' || line.charAt(TIME_PREFIX_LENGTH) != '[') {
+            return null;
+        }
+        int end = line.indexOf(']', TIME_PREFIX_LENGTH + 1);
+        if (end < 0 || end - TIME_PREFIX_LENGTH > 16) {
+            return null;
+        }
+        return line.substring(TIME_PREFIX_LENGTH + 1, end);
+    }
+
+    /**
+     * 词的64位哈希（FNV-1a），索引文件中只保存哈希，永不为0
+     */
+    static long hash(String token) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < token.length(); i++) {
+            h ^= token.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h;
+    }
+}
@@ -0,0 +1,28 @@
+package exmo.cy.model;
+
+/**
+ * 服务器的自动重启策略
+ */
+public enum RestartPolicy {
+    /** 不自动重启（默认） */
+    NEVER,
+    /** 崩溃、被杀死或看门狗终止后重启，正常退出不重启 */
+    ON_CRASH,
+    /** 除了通过管理器停止之外的任何退出都重启 */
+    ALWAYS;
+
+    /**
+     * 按名称解析策略，忽略大小写，接受 on-crash 和 on_crash 两种写法
+     * @return 无法识别时返回null
+     */
+    public static RestartPolicy parse(String name) {
+        if (name == null) {
+            return null;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -19,6 +19,7 @@ public class Server {
     private String group;
     private String minMemory; // 最小内存设置
     private String maxMemory; // 最大内存设置
+    private RestartPolicy restartPolicy; // 自动重启策略，null表示不自动重启
     
     /**
      * 默认构造函数
@@ -68,6 +69,25 @@ public class Server {
         this.maxMemory = null;
     }
     
+    /**
+     * 复制构造函数
+     * @param other 要复制的服务器配置
+     */
+    public Server(Server other) {
+        this.name = other.name;
+        this.corePath = other.corePath;
+        this.version = other.version;
+        this.description = other.description;
+        this.isModpack = other.isModpack;
+        this.map = other.map;
+        this.defaultJvmArgs = other.defaultJvmArgs;
+        this.defaultServerArgs = other.defaultServerArgs;
+        this.group = other.group;
+        this.minMemory = other.minMemory;
+        this.maxMemory = other.maxMemory;
+        this.restartPolicy = other.restartPolicy;
+    }
+    
     // Getter和Setter方法
     
     public String getName() {
@@ -158,6 +178,18 @@ public class Server {
         this.maxMemory = maxMemory;
     }
     
+    /**
+     * 获取自动重启策略
+     * @return 重启策略，没有设置时返回 {@link RestartPolicy#NEVER}
+     */
+    public RestartPolicy getRestartPolicy() {
+        return restartPolicy != null ? restartPolicy : RestartPolicy.NEVER;
+    }
+    
+    public void setRestartPolicy(RestartPolicy restartPolicy) {
+        this.restartPolicy = restartPolicy;
+    }
+    
     /**
      * 验证服务器配置的有效性
      * @return 如果配置有效返回true
@@ -194,6 +226,7 @@ public class Server {
                 ", group='" + group + '\'' +
                 ", minMemory='" + minMemory + '\'' +
                 ", maxMemory='" + maxMemory + '\'' +
+                ", restartPolicy=" + getRestartPolicy() +
                 '}';
     }
 }
\ No newline at end of file
@@ -1,7 +1,10 @@
 package exmo.cy.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 服务器群组模型
@@ -11,19 +14,25 @@ public class ServerGroup {
     private String name;
     private List<String> serverNames; // 服务器名称列表
     private boolean orderedStartup; // 是否按顺序启动
-    private String triggerKeyword; // 触发关键词，用于有序启动时判断上一个服务器是否准备好
-    private int startupDelay; // 启动延迟（毫秒），在有序启动时使用
+    private String triggerKeyword; // 触发关键词，用于有序启动时判断上一个服务器是否准备好，多个关键词用 | 分隔
+    private String readyPattern; // 就绪正则表达式，与触发关键词任意一个匹配即视为准备好
+    private int readyTimeoutSeconds; // 等待就绪的超时时间（秒），超时后继续启动下一个服务器
+    private int startupDelay; // 启动延迟（毫秒），有序启动时未配置关键词和正则则等待此时间
     private int launchMode; // 启动模式，默认为CORE模式
     private String presetJvmArgs; // 预设JVM参数
     private String presetServerArgs; // 预设服务器参数
     private String minMemory; // 最小内存参数，例如 "512M" 或 "2G"
     private String maxMemory; // 最大内存参数，例如 "2G" 或 "4G"
+    private Map<String, List<String>> dependencies; // 服务器 -> 它依赖的服务器（这些服务器就绪后才启动它）
+    private int maxParallelStarts; // 并行启动时同时处于启动中的服务器上限，0表示按CPU数量决定
     
     public ServerGroup() {
         this.serverNames = new ArrayList<>();
+        this.dependencies = new LinkedHashMap<>();
         this.orderedStartup = false;
         this.triggerKeyword = "Done"; // 默认触发词为 "Done"，通常表示服务器启动完成
         this.startupDelay = 5000; // 默认延迟5秒
+        this.readyTimeoutSeconds = 300; // 默认最多等待5分钟
         this.launchMode = 1; // 默认为CORE模式
         this.presetJvmArgs = null;
         this.presetServerArgs = null;
@@ -86,6 +95,22 @@ public class ServerGroup {
         this.triggerKeyword = triggerKeyword;
     }
     
+    public String getReadyPattern() {
+        return readyPattern;
+    }
+    
+    public void setReadyPattern(String readyPattern) {
+        this.readyPattern = readyPattern;
+    }
+    
+    public int getReadyTimeoutSeconds() {
+        return readyTimeoutSeconds;
+    }
+    
+    public void setReadyTimeoutSeconds(int readyTimeoutSeconds) {
+        this.readyTimeoutSeconds = readyTimeoutSeconds;
+    }
+    
     public int getStartupDelay() {
         return startupDelay;
     }
@@ -94,6 +119,57 @@ public class ServerGroup {
         this.startupDelay = startupDelay;
     }
     
+    public Map<String, List<String>> getDependencies() {
+        return dependencies;
+    }
+    
+    public void setDependencies(Map<String, List<String>> dependencies) {
+        this.dependencies = dependencies != null ? dependencies : new LinkedHashMap<>();
+    }
+    
+    public int getMaxParallelStarts() {
+        return maxParallelStarts;
+    }
+    
+    public void setMaxParallelStarts(int maxParallelStarts) {
+        this.maxParallelStarts = maxParallelStarts;
+    }
+    
+    /**
+     * 获取服务器依赖的服务器
+     * @param serverName 服务器名称
+     * @return 依赖的服务器列表，没有依赖时返回空列表
+     */
+    public List<String> getDependencies(String serverName) {
+        List<String> deps = dependencies.get(serverName);
+        return deps != null ? Collections.unmodifiableList(deps) : Collections.emptyList();
+    }
+    
+    /**
+     * 添加启动依赖：dependsOn就绪后才启动serverName
+     */
+    public void addDependency(String serverName, String dependsOn) {
+        List<String> deps = dependencies.computeIfAbsent(serverName, k -> new ArrayList<>());
+        if (!deps.contains(dependsOn)) {
+            deps.add(dependsOn);
+        }
+    }
+    
+    /**
+     * 移除启动依赖
+     * @return 如果依赖存在并已移除返回true
+     */
+    public boolean removeDependency(String serverName, String dependsOn) {
+        List<String> deps = dependencies.get(serverName);
+        if (deps == null || !deps.remove(dependsOn)) {
+            return false;
+        }
+        if (deps.isEmpty()) {
+            dependencies.remove(serverName);
+        }
+        return true;
+    }
+    
     public int getLaunchMode() {
         return launchMode;
     }
@@ -147,6 +223,10 @@ public class ServerGroup {
      * 从群组中移除服务器
      */
     public boolean removeServer(String serverName) {
+        // 同时移除与该服务器相关的依赖
+        dependencies.remove(serverName);
+        dependencies.values().forEach(deps -> deps.remove(serverName));
+        dependencies.values().removeIf(List::isEmpty);
         return serverNames.remove(serverName);
     }
     
@@ -171,6 +251,8 @@ public class ServerGroup {
                 ", serverNames=" + serverNames +
                 ", orderedStartup=" + orderedStartup +
                 ", triggerKeyword='" + triggerKeyword + '\'' +
+                ", readyPattern='" + readyPattern + '\'' +
+                ", readyTimeoutSeconds=" + readyTimeoutSeconds +
                 ", startupDelay=" + startupDelay +
                 ", launchMode=" + launchMode +
                 ", presetJvmArgs='" + presetJvmArgs + '\'' +
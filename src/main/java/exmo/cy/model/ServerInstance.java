@@ -1,5 +1,10 @@
 package exmo.cy.model;
 
+import exmo.cy.console.CommandCapture;
+import exmo.cy.console.ConsoleHistory;
+import exmo.cy.console.ConsoleStats;
+import exmo.cy.rcon.RconClient;
+
 import java.io.OutputStream;
 import java.util.Objects;
 
@@ -13,6 +18,12 @@ public class ServerInstance {
     private Server server;
     private OutputStream processInput;
     private long startTime;
+    private ConsoleStats consoleStats;
+    private ConsoleHistory consoleHistory;
+    private CommandCapture commandCapture;
+    private RconClient rconClient; // 服务器启用了RCON时不为null
+    private volatile long readyTime; // 检测到启动完成的时间，0表示尚未检测到
+    private volatile long stopRequestedNanos; // 第一次发送停止命令的System.nanoTime()，0表示未请求停止
     
     /**
      * 默认构造函数
@@ -64,6 +75,78 @@ public class ServerInstance {
         return startTime;
     }
     
+    public ConsoleStats getConsoleStats() {
+        return consoleStats;
+    }
+    
+    public void setConsoleStats(ConsoleStats consoleStats) {
+        this.consoleStats = consoleStats;
+    }
+    
+    public ConsoleHistory getConsoleHistory() {
+        return consoleHistory;
+    }
+    
+    public void setConsoleHistory(ConsoleHistory consoleHistory) {
+        this.consoleHistory = consoleHistory;
+    }
+    
+    public CommandCapture getCommandCapture() {
+        return commandCapture;
+    }
+    
+    public void setCommandCapture(CommandCapture commandCapture) {
+        this.commandCapture = commandCapture;
+    }
+    
+    public RconClient getRconClient() {
+        return rconClient;
+    }
+    
+    public void setRconClient(RconClient rconClient) {
+        this.rconClient = rconClient;
+    }
+    
+    /**
+     * 标记服务器已启动完成
+     */
+    public void markReady() {
+        this.readyTime = System.currentTimeMillis();
+    }
+    
+    /**
+     * 检查是否已检测到服务器启动完成
+     * @return 如果已启动完成返回true
+     */
+    public boolean isReady() {
+        return readyTime > 0;
+    }
+    
+    /**
+     * 获取服务器从启动到就绪的耗时（毫秒）
+     * @return 启动耗时，尚未检测到就绪时返回-1
+     */
+    public long getStartupMillis() {
+        return readyTime > 0 ? readyTime - startTime : -1;
+    }
+    
+    /**
+     * 记录第一次请求停止的时间，用于统计停止耗时
+     */
+    public void markStopRequested() {
+        if (stopRequestedNanos == 0) {
+            stopRequestedNanos = System.nanoTime();
+        }
+    }
+    
+    /**
+     * 获取第一次请求停止时的System.nanoTime()
+     * @return 未请求停止时返回0
+     */
+    public long getStopRequestedNanos() {
+        return stopRequestedNanos;
+    }
+    
     /**
      * 检查服务器实例是否正在运行
      * @return 如果正在运行返回true
@@ -0,0 +1,72 @@
+package exmo.cy.model;
+
+/**
+ * 服务器生命周期事件
+ * 由ServerService在服务器启动、就绪、停止和退出时发出
+ */
+public class ServerLifecycleEvent {
+
+    /**
+     * 事件类型
+     */
+    public enum Type {
+        /** 进程已启动 */
+        STARTED,
+        /** 检测到服务器启动完成 */
+        READY,
+        /** 已请求停止 */
+        STOPPING,
+        /** 进程正常退出（请求停止后退出，或自行以0退出） */
+        STOPPED,
+        /** 进程在没有请求停止的情况下异常退出（崩溃、被杀死或被看门狗终止） */
+        CRASHED
+    }
+
+    private final Type type;
+    private final String serverName;
+    private final long timestamp;
+    private final Integer exitCode;
+
+    /**
+     * 构造函数
+     * @param type 事件类型
+     * @param serverName 服务器名称
+     * @param exitCode 进程退出码，只有STOPPED和CRASHED事件有值
+     */
+    public ServerLifecycleEvent(Type type, String serverName, Integer exitCode) {
+        this.type = type;
+        this.serverName = serverName;
+        this.timestamp = System.currentTimeMillis();
+        this.exitCode = exitCode;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * 获取进程退出码
+     * @return 退出码，不是退出事件时返回null
+     */
+    public Integer getExitCode() {
+        return exitCode;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerLifecycleEvent{" +
+                "type=" + type +
+                ", serverName='" + serverName + '\'' +
+                ", timestamp=" + timestamp +
+                (exitCode != null ? ", exitCode=" + exitCode : "") +
+                '}';
+    }
+}
@@ -0,0 +1,124 @@
+package exmo.cy.model;
+
+/**
+ * 服务器的一次运行记录
+ * 由ServerSupervisor在进程退出时创建，记录运行时长、退出码、退出原因和之后的重启安排
+ */
+public class ServerRun {
+
+    /**
+     * 进程退出原因
+     */
+    public enum Exit {
+        /** 通过管理器请求停止后退出 */
+        STOPPED("已停止"),
+        /** 没有请求停止，退出码为0（例如在游戏内执行了stop） */
+        CLEAN_EXIT("自行正常退出"),
+        /** 没有请求停止，以非0退出码退出 */
+        CRASH("崩溃"),
+        /** 被SIGKILL杀死（退出码137，通常是内核或容器的OOM killer），或控制台中出现了OutOfMemoryError */
+        OOM_KILLED("内存不足被终止"),
+        /** 服务器的看门狗检测到主线程卡死后终止了进程 */
+        WATCHDOG("看门狗终止");
+
+        private final String description;
+
+        Exit(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * 是否为非计划的异常退出
+         */
+        public boolean isFailure() {
+            return this == CRASH || this == OOM_KILLED || this == WATCHDOG;
+        }
+    }
+
+    private final String serverName;
+    private final long startTime;
+    private final long endTime;
+    private final long startupMillis;
+    private final int exitCode;
+    private final Exit exit;
+    private final int restartAttempt;
+    private final long restartDelayMillis;
+
+    /**
+     * 构造函数
+     * @param serverName 服务器名称
+     * @param startTime 进程启动时间
+     * @param endTime 进程退出时间
+     * @param startupMillis 从启动到就绪的耗时，没有就绪时为-1
+     * @param exitCode 进程退出码
+     * @param exit 退出原因
+     * @param restartAttempt 这次运行是连续第几次自动重启，手动启动为0
+     * @param restartDelayMillis 退出后安排在多少毫秒后自动重启，不重启时为-1
+     */
+    public ServerRun(String serverName, long startTime, long endTime, long startupMillis, int exitCode,
+                     Exit exit, int restartAttempt, long restartDelayMillis) {
+        this.serverName = serverName;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.startupMillis = startupMillis;
+        this.exitCode = exitCode;
+        this.exit = exit;
+        this.restartAttempt = restartAttempt;
+        this.restartDelayMillis = restartDelayMillis;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * 获取运行时长（毫秒）
+     */
+    public long getDurationMillis() {
+        return endTime - startTime;
+    }
+
+    public long getStartupMillis() {
+        return startupMillis;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public Exit getExit() {
+        return exit;
+    }
+
+    public int getRestartAttempt() {
+        return restartAttempt;
+    }
+
+    public long getRestartDelayMillis() {
+        return restartDelayMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerRun{" +
+                "serverName='" + serverName + '\'' +
+                ", exit=" + exit +
+                ", exitCode=" + exitCode +
+                ", durationMillis=" + getDurationMillis() +
+                ", restartAttempt=" + restartAttempt +
+                ", restartDelayMillis=" + restartDelayMillis +
+                '}';
+    }
+}
@@ -0,0 +1,204 @@
+package exmo.cy.monitor;
+
+import exmo.cy.console.ConsoleEvent;
+import exmo.cy.console.ConsoleEventParser;
+import exmo.cy.console.ConsoleStats;
+import exmo.cy.model.ServerRun;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 管理器指标
+ * 所有指标注册在Micrometer全局注册表上：Web模式下Spring Boot会把Prometheus注册表加入全局注册表，
+ * 通过 /actuator/prometheus 导出；命令行模式下没有具体注册表，记录操作几乎没有开销。
+ * 控制台输出等高频路径不在每行上做任何记录，而是注册读取已有计数器的FunctionCounter，
+ * 由抓取时读取；其余指标在启动时或绑定时创建好，记录时不再按标签查找。
+ */
+public final class ManagerMetrics {
+
+    private static final MeterRegistry REGISTRY = Metrics.globalRegistry;
+
+    private static final Timer COMMAND_LATENCY = Timer.builder("cymc.command.latency")
+        .description("向服务器进程写入并刷新一条命令的耗时")
+        .register(REGISTRY);
+    private static final Timer RCON_LATENCY = Timer.builder("cymc.rcon.latency")
+        .description("通过RCON发送一条命令到收到完整响应的往返耗时")
+        .register(REGISTRY);
+    private static final Timer SCHEDULER_LAG = Timer.builder("cymc.scheduler.lag")
+        .description("计划任务实际触发时间与计划时间的差")
+        .register(REGISTRY);
+    private static final Timer CONFIG_LOAD = Timer.builder("cymc.config.load")
+        .description("从文件加载服务器配置的耗时")
+        .register(REGISTRY);
+    private static final Timer CONFIG_SAVE = Timer.builder("cymc.config.save")
+        .description("把服务器配置写回文件的耗时")
+        .register(REGISTRY);
+
+    // 按服务器、TCP命令等有限取值缓存的计时器
+    private static final Map<String, Timer> START_TIMERS = new ConcurrentHashMap<>();
+    private static final Map<String, Timer> STOP_TIMERS = new ConcurrentHashMap<>();
+    private static final Map<String, Timer> TCP_TIMERS = new ConcurrentHashMap<>();
+    private static final Map<String, Counter> EXIT_COUNTERS = new ConcurrentHashMap<>();
+    // 服务器名称 -> 该服务器运行期间的控制台指标
+    private static final Map<String, List<Meter>> SERVER_METERS = new ConcurrentHashMap<>();
+
+    // 防止实例化
+    private ManagerMetrics() {
+        throw new UnsupportedOperationException("这是一个工具类，不能被实例化");
+    }
+
+    /**
+     * 获取指标注册表，用于注册其他模块自己的指标
+     */
+    public static MeterRegistry registry() {
+        return REGISTRY;
+    }
+
+    /**
+     * 从注册表中移除指标
+     */
+    public static void remove(List<Meter> meters) {
+        for (Meter meter : meters) {
+            REGISTRY.remove(meter);
+        }
+    }
+
+    /**
+     * 记录一次命令发送耗时
+     * @param nanos 耗时（纳秒）
+     */
+    public static void recordCommand(long nanos) {
+        COMMAND_LATENCY.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次RCON命令的往返耗时
+     * @param nanos 耗时（纳秒）
+     */
+    public static void recordRcon(long nanos) {
+        RCON_LATENCY.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录计划任务的触发延迟
+     * @param millis 实际触发时间晚于计划时间的毫秒数
+     */
+    public static void recordSchedulerLag(long millis) {
+        SCHEDULER_LAG.record(Math.max(0, millis), TimeUnit.MILLISECONDS);
+    }
+
+    public static void recordConfigLoad(long nanos) {
+        CONFIG_LOAD.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static void recordConfigSave(long nanos) {
+        CONFIG_SAVE.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录服务器启动耗时：从提交启动请求（包括准入排队）到进程启动完成
+     */
+    public static void recordStart(String serverName, long nanos) {
+        START_TIMERS.computeIfAbsent(serverName, name -> Timer.builder("cymc.server.start")
+            .description("从提交启动请求到进程启动完成的耗时，包括准入排队")
+            .tag("server", name)
+            .register(REGISTRY)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录服务器停止耗时：从发送停止命令到进程退出
+     */
+    public static void recordStop(String serverName, long nanos) {
+        STOP_TIMERS.computeIfAbsent(serverName, name -> Timer.builder("cymc.server.stop")
+            .description("从发送停止命令到进程退出的耗时")
+            .tag("server", name)
+            .register(REGISTRY)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次服务器进程退出
+     * @param serverName 服务器名称
+     * @param exit 退出原因
+     */
+    public static void recordExit(String serverName, ServerRun.Exit exit) {
+        EXIT_COUNTERS.computeIfAbsent(serverName + '\0' + exit, key -> Counter.builder("cymc.server.exits")
+            .description("服务器进程退出次数，按退出原因（停止、正常退出、崩溃、OOM、看门狗）分类")
+            .tag("server", serverName)
+            .tag("reason", exit.name().toLowerCase())
+            .register(REGISTRY)).increment();
+    }
+
+    /**
+     * 获取TCP API命令的计时器
+     * @param command 命令名称，调用方应把未知命令归为同一个名称，避免标签无限增长
+     */
+    public static Timer tcpRequestTimer(String command) {
+        return TCP_TIMERS.computeIfAbsent(command, name -> Timer.builder("cymc.tcp.request")
+            .description("TCP API请求的处理耗时")
+            .tag("command", name)
+            .register(REGISTRY));
+    }
+
+    /**
+     * 服务器启动时绑定控制台指标
+     * 直接读取ConsoleStats中已有的计数，控制台输出路径上没有额外开销
+     * @param serverName 服务器名称
+     * @param stats 控制台统计
+     * @param events 控制台事件解析器，读取各类事件的计数
+     */
+    public static void bindServer(String serverName, ConsoleStats stats, ConsoleEventParser events) {
+        // 同名指标已存在时注册会返回旧指标（仍读取上次运行的统计），需要先移除
+        unbindServer(serverName);
+        List<Meter> meters = new ArrayList<>();
+        meters.add(FunctionCounter.builder("cymc.console.lines", stats, ConsoleStats::getStdoutLines)
+            .description("服务器控制台输出行数")
+            .tag("server", serverName)
+            .tag("stream", "stdout")
+            .register(REGISTRY));
+        meters.add(FunctionCounter.builder("cymc.console.lines", stats, ConsoleStats::getStderrLines)
+            .description("服务器控制台输出行数")
+            .tag("server", serverName)
+            .tag("stream", "stderr")
+            .register(REGISTRY));
+        meters.add(FunctionCounter.builder("cymc.console.bytes", stats, ConsoleStats::getTotalBytes)
+            .description("服务器控制台输出字节数")
+            .baseUnit("bytes")
+            .tag("server", serverName)
+            .register(REGISTRY));
+        meters.add(FunctionCounter.builder("cymc.console.truncated", stats, ConsoleStats::getTruncatedLines)
+            .description("因超长被截断的控制台行数")
+            .tag("server", serverName)
+            .register(REGISTRY));
+        for (ConsoleEvent.Type type : ConsoleEvent.Type.values()) {
+            if (type == ConsoleEvent.Type.OTHER) {
+                continue;
+            }
+            meters.add(FunctionCounter.builder("cymc.console.events", events, parser -> parser.getCount(type))
+                .description("识别出的控制台事件数（启动完成、玩家进出、卡顿警告、保存、崩溃等）")
+                .tag("server", serverName)
+                .tag("type", type.name().toLowerCase())
+                .register(REGISTRY));
+        }
+        SERVER_METERS.put(serverName, meters);
+    }
+
+    /**
+     * 服务器退出后移除它的控制台指标
+     */
+    public static void unbindServer(String serverName) {
+        List<Meter> meters = SERVER_METERS.remove(serverName);
+        if (meters != null) {
+            remove(meters);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package exmo.cy.monitor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 读取Linux /proc 下的进程信息
+ * 直接在复用的字节缓冲区上解析数字，不创建中间字符串。只能由一个线程使用。
+ */
+final class ProcfsReader {
+
+    private static final Path PROC = Paths.get("/proc");
+    private static final byte[] VM_RSS = "VmRSS:".getBytes();
+
+    private final byte[] buffer = new byte[8192];
+
+    /**
+     * 检查当前系统是否提供 /proc 文件系统
+     */
+    static boolean isAvailable() {
+        return Files.isReadable(PROC.resolve("self").resolve("stat"));
+    }
+
+    /**
+     * 读取一个进程的资源使用情况并累加到totals
+     * @param pid 进程ID
+     * @param totals 累加结果：[0]CPU时间（时钟周期），[1]常驻内存（字节），[2]线程数，[3]文件描述符数
+     * @return 进程不存在或无法读取时返回false
+     */
+    boolean accumulate(long pid, long[] totals) {
+        Path dir = PROC.resolve(Long.toString(pid));
+
+        // /proc/<pid>/stat: 进程名在括号中且可能包含空格，从最后一个右括号之后开始数字段
+        int length = read(dir.resolve("stat"));
+        if (length <= 0) {
+            return false;
+        }
+        int pos = length - 1;
+        while (pos >= 0 && buffer[pos] != ')') {
+            pos--;
+        }
+        if (pos < 0) {
+            return false;
+        }
+        // 右括号后第1个字段是第3个字段（state），utime/stime是第14/15个，num_threads是第20个
+        long utime = 0;
+        long stime = 0;
+        long threads = 0;
+        int field = 2;
+        int i = pos + 1;
+        while (i < length && field < 20) {
+            while (i < length && buffer[i] == ' ') {
+                i++;
+            }
+            field++;
+            long value = 0;
+            while (i < length && buffer[i] != ' ' && buffer[i] != '\n') {
+                byte b = buffer[i++];
+                if (b >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                }
+            }
+            if (field == 14) {
+                utime = value;
+            } else if (field == 15) {
+                stime = value;
+            } else if (field == 20) {
+                threads = value;
+            }
+        }
+
+        // /proc/<pid>/status: VmRSS以kB为单位，不需要知道页大小
+        long rssKb = 0;
+        length = read(dir.resolve("status"));
+        int at = indexOf(length, VM_RSS);
+        if (at >= 0) {
+            for (i = at + VM_RSS.length; i < length && buffer[i] != '\n'; i++) {
+                byte b = buffer[i];
+                if (b >= '0' && b <= '9') {
+                    rssKb = rssKb * 10 + (b - '0');
+                }
+            }
+        }
+
+        totals[0] += utime + stime;
+        totals[1] += rssKb * 1024L;
+        totals[2] += threads;
+        totals[3] += countFds(dir.resolve("fd"));
+        return true;
+    }
+
+    private int read(Path file) {
+        try (FileInputStream in = new FileInputStream(file.toFile())) {
+            int total = 0;
+            int n;
+            while (total < buffer.length && (n = in.read(buffer, total, buffer.length - total)) > 0) {
+                total += n;
+            }
+            return total;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private int indexOf(int length, byte[] key) {
+        outer:
+        for (int i = 0; i + key.length <= length; i++) {
+            for (int k = 0; k < key.length; k++) {
+                if (buffer[i + k] != key[k]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static long countFds(Path fdDir) {
+        long count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(fdDir)) {
+            for (Path ignored : stream) {
+                count++;
+            }
+        } catch (IOException e) {
+            // 进程已退出或没有权限
+        }
+        return count;
+    }
+}
@@ -0,0 +1,173 @@
+package exmo.cy.monitor;
+
+import exmo.cy.config.Constants;
+import exmo.cy.model.ServerInstance;
+import exmo.cy.util.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 服务器进程资源采样器
+ * 每秒读取每个运行中服务器进程及其所有子进程的 /proc 信息，汇总CPU、常驻内存、线程数和
+ * 文件描述符数后写入该服务器的 {@link ResourceTimeSeries}。
+ * 服务器停止后保留其时间序列，重新启动后在同一序列上继续记录。
+ * 非Linux系统没有 /proc，采样器不会启动。
+ */
+public class ResourceSampler {
+
+    private final Supplier<Map<String, ServerInstance>> activeServers;
+    private final Map<String, ResourceTimeSeries> series = new ConcurrentHashMap<>();
+    // 以下状态只在采样线程中访问
+    private final Map<String, long[]> lastCpu = new HashMap<>();   // 服务器 -> [主进程PID, CPU时钟周期, 采样时间纳秒]
+    private final ProcfsReader reader = new ProcfsReader();
+    private final long[] totals = new long[4];
+    private ScheduledExecutorService executor;
+
+    /**
+     * 构造函数
+     * @param activeServers 提供当前运行中的服务器
+     */
+    public ResourceSampler(Supplier<Map<String, ServerInstance>> activeServers) {
+        this.activeServers = activeServers;
+    }
+
+    /**
+     * 启动后台采样
+     * @return 当前系统不支持 /proc 时返回false
+     */
+    public synchronized boolean start() {
+        if (executor != null) {
+            return true;
+        }
+        if (!ProcfsReader.isAvailable()) {
+            Logger.warn("当前系统没有 /proc 文件系统，服务器资源采样不可用");
+            return false;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "resource-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::sampleSafely, 0, Constants.RESOURCE_SAMPLE_INTERVAL_MS,
+            TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * 停止后台采样
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    private void sampleSafely() {
+        try {
+            sample();
+        } catch (RuntimeException e) {
+            // 异常会终止周期任务，这里只记录
+            Logger.error("采样服务器资源时出错: " + e.getMessage(), e);
+        }
+    }
+
+    private void sample() {
+        long now = System.currentTimeMillis();
+        long nanos = System.nanoTime();
+        Map<String, ServerInstance> servers = activeServers.get();
+
+        for (Map.Entry<String, ServerInstance> entry : servers.entrySet()) {
+            Process process = entry.getValue().getProcess();
+            if (process == null || !process.isAlive()) {
+                continue;
+            }
+            String name = entry.getKey();
+            long pid = process.pid();
+
+            totals[0] = totals[1] = totals[2] = totals[3] = 0;
+            if (!reader.accumulate(pid, totals)) {
+                continue;
+            }
+            long processes = 1;
+            // 包括服务器启动脚本拉起的子进程
+            for (ProcessHandle child : (Iterable<ProcessHandle>) process.descendants()::iterator) {
+                if (reader.accumulate(child.pid(), totals)) {
+                    processes++;
+                }
+            }
+
+            // CPU占用由两次采样之间的时钟周期差计算，主进程变化（重启）后重新开始
+            long cpu = 0;
+            long[] last = lastCpu.get(name);
+            if (last != null && last[0] == pid && totals[0] >= last[1]) {
+                double seconds = (nanos - last[2]) / 1e9;
+                if (seconds > 0) {
+                    double cores = (totals[0] - last[1]) / (double) Constants.PROC_CLOCK_TICKS / seconds;
+                    cpu = Math.round(cores * 10000);
+                }
+            }
+            lastCpu.put(name, new long[] {pid, totals[0], nanos});
+
+            long[] values = new long[ResourceTimeSeries.METRIC_COUNT];
+            values[ResourceTimeSeries.CPU] = cpu;
+            values[ResourceTimeSeries.RSS] = totals[1];
+            values[ResourceTimeSeries.THREADS] = totals[2];
+            values[ResourceTimeSeries.FDS] = totals[3];
+            values[ResourceTimeSeries.PROCESSES] = processes;
+            series.computeIfAbsent(name, k -> new ResourceTimeSeries()).add(now, values);
+        }
+
+        lastCpu.keySet().retainAll(servers.keySet());
+    }
+
+    /**
+     * 获取服务器的资源时间序列
+     * @param serverName 服务器名称
+     * @return 时间序列，服务器从未被采样时返回Optional.empty()
+     */
+    public Optional<ResourceTimeSeries> getSeries(String serverName) {
+        return Optional.ofNullable(series.get(serverName));
+    }
+
+    /**
+     * 获取服务器最新的采样值
+     * @param serverName 服务器名称
+     * @return 各项指标，下标见 {@link ResourceTimeSeries} 的常量
+     */
+    public Optional<long[]> getLatest(String serverName) {
+        ResourceTimeSeries s = series.get(serverName);
+        return s != null ? Optional.ofNullable(s.latest()) : Optional.empty();
+    }
+
+    /**
+     * 删除服务器的时间序列，例如服务器配置被删除时
+     */
+    public void remove(String serverName) {
+        series.remove(serverName);
+    }
+
+    /**
+     * 把采样值转换为便于输出的映射
+     */
+    public static Map<String, Object> toMap(long[] values) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("cpuPercent", values[ResourceTimeSeries.CPU] / 100.0);
+        map.put("rssBytes", values[ResourceTimeSeries.RSS]);
+        map.put("threads", values[ResourceTimeSeries.THREADS]);
+        map.put("fds", values[ResourceTimeSeries.FDS]);
+        map.put("processes", values[ResourceTimeSeries.PROCESSES]);
+        return map;
+    }
+}
@@ -0,0 +1,223 @@
+package exmo.cy.monitor;
+
+/**
+ * 单个服务器的资源时间序列
+ * 两级环形缓冲区，全部使用long数组存储：
+ * 秒级保留最近 {@link #FINE_CAPACITY} 个采样点，每个自然分钟结束时把这一分钟的采样平均后
+ * 写入分钟级，分钟级保留 {@link #COARSE_CAPACITY} 个点。
+ * 写入只来自采样线程，读取可以来自任意线程，读写通过对象锁同步。
+ */
+public final class ResourceTimeSeries {
+
+    /** CPU占用，单位为单核的万分之一（10000表示占满一个核心） */
+    public static final int CPU = 0;
+    /** 常驻内存（字节） */
+    public static final int RSS = 1;
+    /** 线程数 */
+    public static final int THREADS = 2;
+    /** 打开的文件描述符数 */
+    public static final int FDS = 3;
+    /** 进程数（服务器进程及其子进程） */
+    public static final int PROCESSES = 4;
+    public static final int METRIC_COUNT = 5;
+
+    /** 秒级：10分钟 */
+    public static final int FINE_CAPACITY = 600;
+    /** 分钟级：24小时 */
+    public static final int COARSE_CAPACITY = 1440;
+
+    private static final long MINUTE_MILLIS = 60_000L;
+
+    private final Tier fine = new Tier(FINE_CAPACITY);
+    private final Tier coarse = new Tier(COARSE_CAPACITY);
+
+    // 当前分钟的累加值
+    private final long[] minuteSum = new long[METRIC_COUNT];
+    private int minuteCount;
+    private long currentMinute = -1;
+
+    /**
+     * 一段时间内的采样点，values[i][m] 为第i个点的第m项指标
+     */
+    public static final class Range {
+        private final long resolutionMillis;
+        private final long[] timestamps;
+        private final long[][] values;
+
+        Range(long resolutionMillis, long[] timestamps, long[][] values) {
+            this.resolutionMillis = resolutionMillis;
+            this.timestamps = timestamps;
+            this.values = values;
+        }
+
+        /**
+         * 采样点之间的间隔（毫秒）
+         */
+        public long getResolutionMillis() {
+            return resolutionMillis;
+        }
+
+        public int size() {
+            return timestamps.length;
+        }
+
+        public long getTimestamp(int index) {
+            return timestamps[index];
+        }
+
+        public long getValue(int index, int metric) {
+            return values[index][metric];
+        }
+
+        /**
+         * 指标在这段时间内的平均值，没有采样点时返回0
+         */
+        public long average(int metric) {
+            if (values.length == 0) {
+                return 0;
+            }
+            long sum = 0;
+            for (long[] point : values) {
+                sum += point[metric];
+            }
+            return sum / values.length;
+        }
+
+        /**
+         * 指标在这段时间内的最大值，没有采样点时返回0
+         */
+        public long max(int metric) {
+            long max = 0;
+            for (long[] point : values) {
+                max = Math.max(max, point[metric]);
+            }
+            return max;
+        }
+    }
+
+    /**
+     * 固定容量的环形缓冲区，时间戳和各项指标各用一个long数组
+     */
+    private static final class Tier {
+        private final int capacity;
+        private final long[] timestamps;
+        private final long[][] metrics = new long[METRIC_COUNT][];
+        private int head;   // 下一个写入位置
+        private int size;
+
+        Tier(int capacity) {
+            this.capacity = capacity;
+            this.timestamps = new long[capacity];
+            for (int m = 0; m < METRIC_COUNT; m++) {
+                metrics[m] = new long[capacity];
+            }
+        }
+
+        void add(long timestamp, long[] values) {
+            timestamps[head] = timestamp;
+            for (int m = 0; m < METRIC_COUNT; m++) {
+                metrics[m][head] = values[m];
+            }
+            head = (head + 1) % capacity;
+            if (size < capacity) {
+                size++;
+            }
+        }
+
+        /**
+         * 最旧的时间戳，为空时返回Long.MAX_VALUE
+         */
+        long oldest() {
+            return size == 0 ? Long.MAX_VALUE : timestamps[(head - size + capacity) % capacity];
+        }
+
+        Range select(long fromMillis, long resolutionMillis) {
+            int start = (head - size + capacity) % capacity;
+            int skip = 0;
+            while (skip < size && timestamps[(start + skip) % capacity] < fromMillis) {
+                skip++;
+            }
+            int count = size - skip;
+            long[] ts = new long[count];
+            long[][] values = new long[count][METRIC_COUNT];
+            for (int i = 0; i < count; i++) {
+                int index = (start + skip + i) % capacity;
+                ts[i] = timestamps[index];
+                for (int m = 0; m < METRIC_COUNT; m++) {
+                    values[i][m] = metrics[m][index];
+                }
+            }
+            return new Range(resolutionMillis, ts, values);
+        }
+    }
+
+    /**
+     * 写入一个秒级采样点，跨过分钟边界时把上一分钟的平均值写入分钟级
+     * @param timestamp 采样时间（毫秒）
+     * @param values 各项指标，长度为 {@link #METRIC_COUNT}
+     */
+    public synchronized void add(long timestamp, long[] values) {
+        long minute = timestamp / MINUTE_MILLIS;
+        if (minute != currentMinute) {
+            flushMinute();
+            currentMinute = minute;
+        }
+        for (int m = 0; m < METRIC_COUNT; m++) {
+            minuteSum[m] += values[m];
+        }
+        minuteCount++;
+        fine.add(timestamp, values);
+    }
+
+    private void flushMinute() {
+        if (minuteCount == 0) {
+            return;
+        }
+        long[] average = new long[METRIC_COUNT];
+        for (int m = 0; m < METRIC_COUNT; m++) {
+            average[m] = minuteSum[m] / minuteCount;
+            minuteSum[m] = 0;
+        }
+        coarse.add(currentMinute * MINUTE_MILLIS, average);
+        minuteCount = 0;
+    }
+
+    /**
+     * 获取最近一段时间的采样点
+     * 秒级数据覆盖整个范围时返回秒级数据，否则返回分钟级数据
+     * @param fromMillis 起始时间（毫秒）
+     * @return 采样点
+     */
+    public synchronized Range since(long fromMillis) {
+        if (fine.oldest() <= fromMillis || coarse.size == 0) {
+            return fine.select(fromMillis, 1000L);
+        }
+        return coarse.select(fromMillis, MINUTE_MILLIS);
+    }
+
+    /**
+     * 获取最新的采样点
+     * @return 各项指标，没有采样时返回null
+     */
+    public synchronized long[] latest() {
+        if (fine.size == 0) {
+            return null;
+        }
+        int index = (fine.head - 1 + fine.capacity) % fine.capacity;
+        long[] values = new long[METRIC_COUNT];
+        for (int m = 0; m < METRIC_COUNT; m++) {
+            values[m] = fine.metrics[m][index];
+        }
+        return values;
+    }
+
+    /**
+     * 获取最新采样点的时间，没有采样时返回-1
+     */
+    public synchronized long latestTimestamp() {
+        if (fine.size == 0) {
+            return -1;
+        }
+        return fine.timestamps[(fine.head - 1 + fine.capacity) % fine.capacity];
+    }
+}
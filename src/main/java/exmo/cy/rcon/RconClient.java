@@ -0,0 +1,325 @@
+package exmo.cy.rcon;
+
+import exmo.cy.config.Constants;
+import exmo.cy.console.CommandCapture;
+import exmo.cy.console.CommandResult;
+import exmo.cy.exception.ServerOperationException;
+import exmo.cy.monitor.ManagerMetrics;
+import exmo.cy.util.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一个服务器的RCON客户端
+ * 按需打开最多 {@link Constants#RCON_POOL_SIZE} 条连接，请求排队后分配给空闲的连接，每条连接同一时间只有一个请求在途。
+ * 所有连接共用一个非阻塞的事件循环线程，调用方只拿到Future，不会因为等待响应而阻塞。
+ * 连接或认证失败时在 {@link Constants#RCON_RETRY_MS} 内视为不可用，排队的请求以 {@link UnavailableException} 结束，
+ * 调用方可以据此改用标准输入发送；已经发出的命令不会以该异常结束，避免重复执行。
+ */
+public class RconClient {
+
+    /**
+     * RCON不可用，命令没有发送到服务器，可以改用其他方式发送
+     */
+    public static class UnavailableException extends ServerOperationException {
+        private static final long serialVersionUID = 1L;
+
+        public UnavailableException(String message) {
+            super(message);
+        }
+
+        public UnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * 一个RCON请求
+     */
+    static final class Request {
+        final int id;
+        final String command;
+        final byte[] payload;
+        // 整个请求（包括排队）的截止时间
+        final long deadline;
+        final CompletableFuture<CommandResult> future = new CompletableFuture<>();
+        long sentNanos;
+
+        Request(int id, String command, byte[] payload, long deadline) {
+            this.id = id;
+            this.command = command;
+            this.payload = payload;
+            this.deadline = deadline;
+        }
+    }
+
+    private static final String SERVER_PROPERTIES = "server.properties";
+
+    private final String serverName;
+    private final InetSocketAddress address;
+    private final byte[] password;
+    private final RconEventLoop loop;
+    private final AtomicInteger nextId = new AtomicInteger();
+    // 不可用状态的结束时间（System.nanoTime()），0表示可用；其他线程据此选择发送方式
+    private volatile long unavailableUntil;
+    private volatile boolean closed;
+
+    // 以下状态只在事件循环线程上访问
+    private final List<RconConnection> connections = new ArrayList<>();
+    private final Deque<Request> queue = new ArrayDeque<>();
+
+    RconClient(String serverName, InetSocketAddress address, String password, RconEventLoop loop) {
+        this.serverName = serverName;
+        this.address = address;
+        this.password = password.getBytes(StandardCharsets.UTF_8);
+        this.loop = loop;
+        loop.execute(() -> loop.register(this));
+    }
+
+    /**
+     * 根据服务器目录中的server.properties创建客户端
+     * @param serverName 服务器名称
+     * @param serverDir 服务器目录
+     * @return 如果服务器启用了RCON并配置了密码返回客户端，否则返回null
+     */
+    public static RconClient fromServerProperties(String serverName, Path serverDir) {
+        Path file = serverDir.resolve(SERVER_PROPERTIES);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            props.load(reader);
+        } catch (IOException | IllegalArgumentException e) {
+            Logger.warn("读取 " + file + " 失败，不使用RCON: " + e.getMessage());
+            return null;
+        }
+        String password = props.getProperty("rcon.password", "");
+        if (!Boolean.parseBoolean(props.getProperty("enable-rcon", "false").trim()) || password.isEmpty()) {
+            return null;
+        }
+        int port;
+        try {
+            port = Integer.parseInt(props.getProperty("rcon.port", String.valueOf(Constants.RCON_DEFAULT_PORT)).trim());
+        } catch (NumberFormatException e) {
+            Logger.warn("服务器 " + serverName + " 的rcon.port无效，不使用RCON");
+            return null;
+        }
+        // RCON监听在server-ip上，没有配置时监听所有地址
+        String host = props.getProperty("server-ip", "").trim();
+        try {
+            return new RconClient(serverName, new InetSocketAddress(host.isEmpty() ? "127.0.0.1" : host, port),
+                password, RconEventLoop.get());
+        } catch (IOException e) {
+            Logger.warn("无法启动RCON事件循环: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * RCON当前是否可用；不可用时应改用标准输入发送命令
+     */
+    public boolean isAvailable() {
+        long until = unavailableUntil;
+        return !closed && (until == 0 || System.nanoTime() - until >= 0);
+    }
+
+    /**
+     * 通过RCON执行命令
+     * @param command 命令
+     * @param timeoutMs 最长等待时间（毫秒），包括排队时间
+     * @return 收到完整响应后完成；命令已发出但超时返回不完整的结果；
+     *         命令没有发出时以 {@link UnavailableException} 异常完成
+     */
+    public CompletableFuture<CommandResult> execute(String command, long timeoutMs) {
+        byte[] payload = command.getBytes(StandardCharsets.UTF_8);
+        if (payload.length > RconConnection.MAX_COMMAND_BYTES) {
+            return CompletableFuture.failedFuture(new UnavailableException("命令超过RCON的长度限制: " + payload.length + " 字节"));
+        }
+        Request request = new Request(nextId(), command, payload, System.nanoTime() + timeoutMs * 1_000_000L);
+        loop.execute(() -> enqueue(request));
+        return request.future;
+    }
+
+    /**
+     * 服务器停止：关闭所有连接，未完成的请求异常结束
+     */
+    public void close() {
+        closed = true;
+        loop.execute(() -> {
+            loop.unregister(this);
+            ServerOperationException cause = new ServerOperationException("服务器已停止: " + serverName);
+            for (RconConnection connection : connections) {
+                Request request = connection.abort();
+                if (request != null) {
+                    fail(request, cause);
+                }
+            }
+            connections.clear();
+            failQueued(cause);
+        });
+    }
+
+    int nextId() {
+        // ID为正数，-1表示认证失败，0留给未发送的结束包
+        return (nextId.incrementAndGet() & Integer.MAX_VALUE) % (Integer.MAX_VALUE - 1) + 1;
+    }
+
+    byte[] password() {
+        return password;
+    }
+
+    private void enqueue(Request request) {
+        if (closed) {
+            fail(request, new ServerOperationException("服务器未运行: " + serverName));
+        } else if (!isAvailable()) {
+            fail(request, new UnavailableException("RCON暂不可用: " + serverName));
+        } else if (queue.size() >= Constants.RCON_MAX_QUEUED) {
+            fail(request, new ServerOperationException("等待RCON发送的命令过多: " + serverName));
+        } else {
+            queue.add(request);
+            dispatch();
+        }
+    }
+
+    /**
+     * 把排队的请求分配给空闲连接，连接不够时打开新连接
+     */
+    private void dispatch() {
+        for (RconConnection connection : connections) {
+            if (queue.isEmpty()) {
+                return;
+            }
+            if (connection.isIdle()) {
+                connection.send(queue.poll());
+            }
+        }
+        int connecting = 0;
+        for (RconConnection connection : connections) {
+            if (connection.isConnecting()) {
+                connecting++;
+            }
+        }
+        while (queue.size() > connecting && connections.size() < Constants.RCON_POOL_SIZE) {
+            try {
+                connections.add(new RconConnection(this, loop.selector(), address));
+                connecting++;
+            } catch (IOException e) {
+                markUnavailable(e);
+                return;
+            }
+        }
+    }
+
+    void onIdle(RconConnection connection) {
+        if (!closed) {
+            dispatch();
+        }
+    }
+
+    void onResponse(Request request, String text, boolean complete) {
+        long latencyNanos = System.nanoTime() - request.sentNanos;
+        if (complete) {
+            ManagerMetrics.recordRcon(latencyNanos);
+        }
+        List<String> lines = text.isEmpty()
+            ? Collections.emptyList()
+            : Collections.unmodifiableList(Arrays.asList(text.split("\n")));
+        CommandResult result = new CommandResult(request.command, lines, latencyNanos / 1_000_000L,
+            CommandCapture.Mode.RCON, complete);
+        // 在公共线程池上完成，调用方的回调不占用事件循环线程
+        ForkJoinPool.commonPool().execute(() -> request.future.complete(result));
+    }
+
+    /**
+     * 连接已关闭
+     * @param cause 出错原因，超时关闭时为null
+     * @param request 连接关闭时在途的请求，可以为null
+     * @param sent 在途请求是否已经完整写入套接字
+     */
+    void onClosed(RconConnection connection, Throwable cause, Request request, boolean sent) {
+        connections.remove(connection);
+        if (request != null) {
+            if (sent) {
+                fail(request, new ServerOperationException("RCON连接断开，命令可能已经执行: " + request.command, cause));
+            } else {
+                queue.addFirst(request);
+            }
+        }
+        if (cause != null && !connection.isAuthenticated()) {
+            boolean anyReady = false;
+            for (RconConnection other : connections) {
+                anyReady |= other.isAuthenticated();
+            }
+            if (!anyReady) {
+                markUnavailable(cause);
+                return;
+            }
+        }
+        if (!closed) {
+            dispatch();
+        }
+    }
+
+    /**
+     * 检查超时：连接和在途请求由连接自己处理，排队超时的请求异常结束
+     */
+    void sweep(long now) {
+        for (RconConnection connection : new ArrayList<>(connections)) {
+            connection.checkDeadline(now);
+        }
+        Iterator<Request> it = queue.iterator();
+        while (it.hasNext()) {
+            Request request = it.next();
+            if (now - request.deadline >= 0) {
+                it.remove();
+                fail(request, new ServerOperationException("等待RCON连接超时: " + request.command));
+            }
+        }
+    }
+
+    /**
+     * 无法连接或认证：一段时间内不再尝试，排队的请求交给调用方改用其他方式发送
+     */
+    private void markUnavailable(Throwable cause) {
+        if (isAvailable()) {
+            Logger.warn("服务器 " + serverName + " 的RCON不可用，" + (Constants.RCON_RETRY_MS / 1000)
+                + " 秒内改用标准输入发送命令: " + cause.getMessage());
+        }
+        unavailableUntil = System.nanoTime() + Constants.RCON_RETRY_MS * 1_000_000L;
+        for (RconConnection connection : new ArrayList<>(connections)) {
+            if (connection.isConnecting()) {
+                connections.remove(connection);
+                connection.close();
+            }
+        }
+        failQueued(new UnavailableException("RCON不可用: " + serverName, cause));
+    }
+
+    private void failQueued(ServerOperationException cause) {
+        Request request;
+        while ((request = queue.poll()) != null) {
+            fail(request, cause);
+        }
+    }
+
+    private static void fail(Request request, ServerOperationException cause) {
+        ForkJoinPool.commonPool().execute(() -> request.future.completeExceptionally(cause));
+    }
+}
@@ -0,0 +1,305 @@
+package exmo.cy.rcon;
+
+import exmo.cy.config.Constants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * 一条RCON连接，只在事件循环线程上使用
+ * 数据包格式：长度(int32) 请求ID(int32) 类型(int32) 内容 0x00 0x00，整数均为小端序，长度不包括自身的4字节。
+ * 原版服务器每次从套接字读取后只解析第一个数据包，同一连接上连续写入的多个数据包可能被合并读取而丢失，
+ * 因此每条连接同一时间只有一个请求在途，并发通过连接池实现。
+ * 超过4096字节的响应会被拆成多个同ID的数据包：收到满长度的数据包后再发送一个空的RESPONSE_VALUE包，
+ * 服务器按顺序回复它，它的回复到达时原命令的响应一定已经全部收到。
+ */
+final class RconConnection {
+
+    static final int TYPE_RESPONSE = 0;
+    static final int TYPE_COMMAND = 2;
+    static final int TYPE_AUTH_RESPONSE = 2;
+    static final int TYPE_AUTH = 3;
+    // 原版服务器的读缓冲区为1460字节，减去14字节的包头和结尾
+    static final int MAX_COMMAND_BYTES = 1446;
+    // 服务器拆分响应的长度，达到该长度的数据包后面可能还有同一响应的数据包
+    private static final int RESPONSE_CHUNK = 4096;
+    private static final int MAX_PACKET = 64 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+
+    enum State {
+        CONNECTING,
+        AUTHENTICATING,
+        IDLE,
+        BUSY,
+        CLOSED
+    }
+
+    private final RconClient client;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final Deque<ByteBuffer> writes = new ArrayDeque<>();
+    private final ByteArrayOutputStream response = new ByteArrayOutputStream();
+    private ByteBuffer readBuffer = ByteBuffer.allocate(16 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private State state = State.CONNECTING;
+    // 连接或认证的截止时间，请求在途时为请求的截止时间（System.nanoTime()）
+    private long deadline;
+    private int authId;
+    private RconClient.Request current;
+    // 当前请求的数据包已全部写入套接字
+    private boolean currentSent;
+    // 用于确定拆分响应结束的空数据包ID，0表示未发送
+    private int terminatorId;
+    private boolean authenticated;
+
+    RconConnection(RconClient client, Selector selector, InetSocketAddress address) throws IOException {
+        this.client = client;
+        this.channel = SocketChannel.open();
+        boolean connected;
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            connected = channel.connect(address);
+            // 立即连接成功时等到可写再发送认证包，构造期间不回调客户端
+            this.key = channel.register(selector, connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, this);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.deadline = System.nanoTime() + Constants.RCON_CONNECT_TIMEOUT_MS * 1_000_000L;
+    }
+
+    boolean isConnecting() {
+        return state == State.CONNECTING || state == State.AUTHENTICATING;
+    }
+
+    boolean isIdle() {
+        return state == State.IDLE;
+    }
+
+    /**
+     * 是否曾经认证成功；从未认证成功就断开说明服务器的RCON不可用
+     */
+    boolean isAuthenticated() {
+        return authenticated;
+    }
+
+    /**
+     * 发送一个命令请求，连接必须处于空闲状态
+     */
+    void send(RconClient.Request request) {
+        state = State.BUSY;
+        current = request;
+        currentSent = false;
+        deadline = request.deadline;
+        request.sentNanos = System.nanoTime();
+        write(packet(request.id, TYPE_COMMAND, request.payload));
+    }
+
+    /**
+     * 处理Selector就绪事件
+     */
+    void handle() {
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+            if (state == State.CONNECTING) {
+                if (key.isConnectable()) {
+                    channel.finishConnect();
+                }
+                onConnected();
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush();
+            }
+            if (key.isValid() && key.isReadable()) {
+                read();
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * 检查连接、认证或在途请求是否超时
+     */
+    void checkDeadline(long now) {
+        if (state == State.CLOSED || state == State.IDLE || now - deadline < 0) {
+            return;
+        }
+        if (state == State.BUSY) {
+            // 服务器可能卡住了，返回已收到的部分并丢弃这条连接，迟到的响应不会被误认为下一个请求的
+            RconClient.Request request = current;
+            String text = response.toString(StandardCharsets.UTF_8);
+            current = null;
+            close();
+            client.onResponse(request, text, false);
+            client.onClosed(this, null, null, false);
+            return;
+        }
+        fail(new IOException("连接RCON超时"));
+    }
+
+    /**
+     * 关闭连接并返回在途的请求
+     */
+    RconClient.Request abort() {
+        RconClient.Request request = current;
+        current = null;
+        close();
+        return request;
+    }
+
+    void close() {
+        state = State.CLOSED;
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // 关闭失败不影响后续处理
+        }
+    }
+
+    /**
+     * 连接出错：关闭连接，把在途请求交还给客户端
+     */
+    private void fail(Throwable cause) {
+        if (state == State.CLOSED) {
+            return;
+        }
+        RconClient.Request request = current;
+        boolean sent = currentSent;
+        current = null;
+        close();
+        client.onClosed(this, cause, request, sent);
+    }
+
+    private void onConnected() {
+        state = State.AUTHENTICATING;
+        authId = client.nextId();
+        write(packet(authId, TYPE_AUTH, client.password()));
+    }
+
+    private void write(ByteBuffer buffer) {
+        writes.add(buffer);
+        try {
+            flush();
+        } catch (IOException e) {
+            // 调用方可能正在遍历连接列表，等Selector报告可写时重试，在handle()中再处理错误
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void flush() throws IOException {
+        while (!writes.isEmpty()) {
+            ByteBuffer buffer = writes.peek();
+            channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                break;
+            }
+            writes.poll();
+        }
+        if (writes.isEmpty() && current != null) {
+            currentSent = true;
+        }
+        key.interestOps(SelectionKey.OP_READ | (writes.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+    }
+
+    private void read() throws IOException {
+        int n = channel.read(readBuffer);
+        if (n < 0) {
+            throw new IOException("RCON连接已被服务器关闭");
+        }
+        readBuffer.flip();
+        while (readBuffer.remaining() >= 4) {
+            int length = readBuffer.getInt(readBuffer.position());
+            if (length < 10 || length > MAX_PACKET) {
+                throw new IOException("无效的RCON数据包长度: " + length);
+            }
+            if (readBuffer.remaining() < 4 + length) {
+                break;
+            }
+            readBuffer.getInt();
+            int id = readBuffer.getInt();
+            int type = readBuffer.getInt();
+            int payloadStart = readBuffer.position();
+            // 内容后面的两个0字节不属于内容
+            int payloadLength = length - 10;
+            readBuffer.position(payloadStart + length - 8);
+            onPacket(id, type, readBuffer.array(), payloadStart, payloadLength);
+            if (state == State.CLOSED) {
+                return;
+            }
+        }
+        readBuffer.compact();
+        if (!readBuffer.hasRemaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(readBuffer.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            readBuffer.flip();
+            larger.put(readBuffer);
+            readBuffer = larger;
+        }
+    }
+
+    private void onPacket(int id, int type, byte[] data, int offset, int length) {
+        if (state == State.AUTHENTICATING) {
+            // 有的服务器在认证结果之前先回复一个空的RESPONSE_VALUE包
+            if (type != TYPE_AUTH_RESPONSE) {
+                return;
+            }
+            if (id == -1) {
+                fail(new IOException("RCON密码错误"));
+                return;
+            }
+            if (id == authId) {
+                state = State.IDLE;
+                authenticated = true;
+                client.onIdle(this);
+            }
+            return;
+        }
+        if (state != State.BUSY) {
+            return;
+        }
+        if (id == current.id) {
+            response.write(data, offset, length);
+            if (terminatorId == 0) {
+                if (length >= RESPONSE_CHUNK) {
+                    terminatorId = client.nextId();
+                    write(packet(terminatorId, TYPE_RESPONSE, EMPTY));
+                } else {
+                    finish();
+                }
+            }
+        } else if (id == terminatorId) {
+            finish();
+        }
+    }
+
+    private void finish() {
+        RconClient.Request request = current;
+        String text = response.toString(StandardCharsets.UTF_8);
+        response.reset();
+        current = null;
+        terminatorId = 0;
+        state = State.IDLE;
+        client.onResponse(request, text, true);
+        client.onIdle(this);
+    }
+
+    private static ByteBuffer packet(int id, int type, byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(14 + payload.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(10 + payload.length).putInt(id).putInt(type).put(payload).put((byte) 0).put((byte) 0);
+        buffer.flip();
+        return buffer;
+    }
+}
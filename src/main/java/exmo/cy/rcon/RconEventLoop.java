@@ -0,0 +1,110 @@
+package exmo.cy.rcon;
+
+import exmo.cy.config.Constants;
+import exmo.cy.util.Logger;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * RCON事件循环
+ * 所有服务器的RCON连接共用一个非阻塞的Selector线程。连接和客户端的状态只在该线程上读写，
+ * 其他线程通过 {@link #execute(Runnable)} 提交任务，不需要加锁。
+ */
+final class RconEventLoop implements Runnable {
+
+    private static RconEventLoop instance;
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // 已经唤醒过Selector、但任务还没被取走，避免高频提交时每次都调用wakeup()
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    // 以下状态只在事件循环线程上访问
+    private final Set<RconClient> clients = new HashSet<>();
+    private long lastSweepNanos = System.nanoTime();
+
+    private RconEventLoop(Selector selector) {
+        this.selector = selector;
+    }
+
+    /**
+     * 获取共用的事件循环，第一次调用时启动线程
+     * @throws IOException 如果无法创建Selector
+     */
+    static synchronized RconEventLoop get() throws IOException {
+        if (instance == null) {
+            RconEventLoop loop = new RconEventLoop(Selector.open());
+            Thread thread = new Thread(loop, "rcon-io");
+            thread.setDaemon(true);
+            thread.start();
+            instance = loop;
+        }
+        return instance;
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    /**
+     * 在事件循环线程上执行任务
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * 注册客户端，定期检查其连接和请求是否超时；只能在事件循环线程上调用
+     */
+    void register(RconClient client) {
+        clients.add(client);
+    }
+
+    void unregister(RconClient client) {
+        clients.remove(client);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                selector.select(Constants.RCON_SWEEP_INTERVAL_MS);
+            } catch (IOException e) {
+                Logger.error("RCON事件循环出错", e);
+                continue;
+            }
+            // 先清除标记再取任务，清除之后提交的任务一定会再次唤醒
+            wakeupPending.set(false);
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    Logger.error("RCON任务执行出错", e);
+                }
+            }
+            for (SelectionKey key : selector.selectedKeys()) {
+                ((RconConnection) key.attachment()).handle();
+            }
+            selector.selectedKeys().clear();
+
+            long now = System.nanoTime();
+            if (now - lastSweepNanos >= Constants.RCON_SWEEP_INTERVAL_MS * 1_000_000L) {
+                lastSweepNanos = now;
+                for (RconClient client : new ArrayList<>(clients)) {
+                    client.sweep(now);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package exmo.cy.scheduler;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+
+/**
+ * Cron表达式
+ * 支持标准的5段格式：分 时 日 月 周，例如 "30 4 * * 1-5" 表示工作日 04:30。
+ * 每段支持 *、数字、范围(a-b)、步长(星号/n 或 a-b/n)、列表(a,b,c)，
+ * 月份和星期可以使用英文缩写(JAN、MON)，星期中 0 和 7 都表示周日。
+ * 另外支持 @yearly、@monthly、@weekly、@daily、@hourly 简写。
+ *
+ * 日和周同时被限制时，满足其中之一即触发（与常见的cron实现一致）。
+ */
+public final class CronExpression {
+
+    private static final String[] MONTH_NAMES = {
+        "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"
+    };
+    private static final String[] DAY_NAMES = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+
+    // 最多向后搜索的天数，超过说明表达式永远不会触发（例如 2月30日）
+    private static final int MAX_SEARCH_DAYS = 366 * 5;
+
+    private final String expression;
+    private final long minutes;      // 第0~59位
+    private final long hours;        // 第0~23位
+    private final long daysOfMonth;  // 第1~31位
+    private final long months;       // 第1~12位
+    private final long daysOfWeek;   // 第0~6位，0为周日
+    private final boolean dayOfMonthRestricted;
+    private final boolean dayOfWeekRestricted;
+
+    private CronExpression(String expression, String[] fields) {
+        this.expression = expression;
+        this.minutes = parseField(fields[0], 0, 59, null, "分钟");
+        this.hours = parseField(fields[1], 0, 23, null, "小时");
+        this.daysOfMonth = parseField(fields[2], 1, 31, null, "日期");
+        this.months = parseField(fields[3], 1, 12, MONTH_NAMES, "月份");
+        long dow = parseField(fields[4], 0, 7, DAY_NAMES, "星期");
+        if ((dow & (1L << 7)) != 0) {
+            dow = (dow | 1L) & ~(1L << 7);
+        }
+        this.daysOfWeek = dow;
+        this.dayOfMonthRestricted = !fields[2].startsWith("*");
+        this.dayOfWeekRestricted = !fields[4].startsWith("*");
+    }
+
+    /**
+     * 解析cron表达式
+     * @param expression 表达式
+     * @return 解析结果
+     * @throws IllegalArgumentException 如果表达式格式不正确
+     */
+    public static CronExpression parse(String expression) {
+        if (expression == null || expression.trim().isEmpty()) {
+            throw new IllegalArgumentException("cron表达式不能为空");
+        }
+        String normalized = expandMacro(expression.trim());
+        String[] fields = normalized.split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("cron表达式应包含5段(分 时 日 月 周): " + expression);
+        }
+        CronExpression cron = new CronExpression(expression.trim(), fields);
+        if (cron.next(LocalDateTime.now()) == null) {
+            throw new IllegalArgumentException("cron表达式永远不会触发: " + expression);
+        }
+        return cron;
+    }
+
+    /**
+     * 检查表达式是否有效
+     * @param expression 表达式
+     * @return 如果有效返回true
+     */
+    public static boolean isValid(String expression) {
+        try {
+            parse(expression);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 计算指定时间之后的下一次触发时间
+     * @param after 起始时间（不包含）
+     * @return 下一次触发时间，精确到分钟；如果找不到返回null
+     */
+    public LocalDateTime next(LocalDateTime after) {
+        LocalDateTime time = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        LocalDateTime limit = time.plusDays(MAX_SEARCH_DAYS);
+
+        while (time.isBefore(limit)) {
+            if (!has(months, time.getMonthValue())) {
+                time = time.withDayOfMonth(1).withHour(0).withMinute(0).plusMonths(1);
+                continue;
+            }
+            if (!matchesDay(time)) {
+                time = time.withHour(0).withMinute(0).plusDays(1);
+                continue;
+            }
+            if (!has(hours, time.getHour())) {
+                time = time.withMinute(0).plusHours(1);
+                continue;
+            }
+            if (!has(minutes, time.getMinute())) {
+                time = time.plusMinutes(1);
+                continue;
+            }
+            return time;
+        }
+        return null;
+    }
+
+    private boolean matchesDay(LocalDateTime time) {
+        boolean domMatch = has(daysOfMonth, time.getDayOfMonth());
+        boolean dowMatch = has(daysOfWeek, time.getDayOfWeek().getValue() % 7);
+        if (dayOfMonthRestricted && dayOfWeekRestricted) {
+            return domMatch || dowMatch;
+        }
+        return domMatch && dowMatch;
+    }
+
+    private static boolean has(long bits, int value) {
+        return (bits & (1L << value)) != 0;
+    }
+
+    private static String expandMacro(String expression) {
+        switch (expression.toLowerCase(Locale.ROOT)) {
+            case "@yearly":
+            case "@annually":
+                return "0 0 1 1 *";
+            case "@monthly":
+                return "0 0 1 * *";
+            case "@weekly":
+                return "0 0 * * 0";
+            case "@daily":
+            case "@midnight":
+                return "0 0 * * *";
+            case "@hourly":
+                return "0 * * * *";
+            default:
+                return expression;
+        }
+    }
+
+    /**
+     * 把一段表达式解析为位图
+     */
+    private static long parseField(String field, int min, int max, String[] names, String fieldName) {
+        long bits = 0;
+        for (String part : field.split(",")) {
+            if (part.isEmpty()) {
+                throw new IllegalArgumentException(fieldName + "字段格式不正确: " + field);
+            }
+
+            int step = 1;
+            String range = part;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseNumber(part.substring(slash + 1), 1, max, null, fieldName);
+                range = part.substring(0, slash);
+            }
+
+            int start;
+            int end;
+            if (range.equals("*")) {
+                start = min;
+                end = max;
+            } else {
+                int dash = range.indexOf('-');
+                if (dash >= 0) {
+                    start = parseNumber(range.substring(0, dash), min, max, names, fieldName);
+                    end = parseNumber(range.substring(dash + 1), min, max, names, fieldName);
+                    if (start > end) {
+                        throw new IllegalArgumentException(fieldName + "范围不正确: " + range);
+                    }
+                } else {
+                    start = parseNumber(range, min, max, names, fieldName);
+                    // "5/15" 表示从5开始每15个单位
+                    end = slash >= 0 ? max : start;
+                }
+            }
+
+            for (int value = start; value <= end; value += step) {
+                bits |= 1L << value;
+            }
+        }
+        return bits;
+    }
+
+    private static int parseNumber(String text, int min, int max, String[] names, String fieldName) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equalsIgnoreCase(text)) {
+                    return names == MONTH_NAMES ? i + 1 : i;
+                }
+            }
+        }
+        int value;
+        try {
+            value = Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(fieldName + "字段包含无效值: " + text);
+        }
+        if (value < min || value > max) {
+            throw new IllegalArgumentException(fieldName + "取值超出范围(" + min + "-" + max + "): " + value);
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -17,6 +17,9 @@ public class ScheduledTask {
     private String cronExpression; // 用于重复任务
     private boolean enabled;
     private TaskType taskType;
+    private MissedFirePolicy missedFirePolicy; // 错过执行时间后的处理方式，为null时按SKIP处理
+    private int jitterSeconds;                 // 每次执行前随机延迟的最大秒数
+    private LocalDateTime lastExecutedTime;
     
     public enum TaskType {
         START_SERVER,     // 启动服务器
@@ -26,6 +29,14 @@ public class ScheduledTask {
         RESTART_SERVER    // 重启服务器
     }
     
+    /**
+     * 错过执行时间（例如管理器停机期间）后的处理方式
+     */
+    public enum MissedFirePolicy {
+        SKIP,             // 跳过错过的执行，等待下一次
+        FIRE_ONCE         // 立即补执行一次，多次错过也只执行一次
+    }
+    
     public ScheduledTask() {
     }
     
@@ -131,6 +142,30 @@ public class ScheduledTask {
         this.taskType = taskType;
     }
     
+    public MissedFirePolicy getMissedFirePolicy() {
+        return missedFirePolicy != null ? missedFirePolicy : MissedFirePolicy.SKIP;
+    }
+    
+    public void setMissedFirePolicy(MissedFirePolicy missedFirePolicy) {
+        this.missedFirePolicy = missedFirePolicy;
+    }
+    
+    public int getJitterSeconds() {
+        return jitterSeconds;
+    }
+    
+    public void setJitterSeconds(int jitterSeconds) {
+        this.jitterSeconds = jitterSeconds;
+    }
+    
+    public LocalDateTime getLastExecutedTime() {
+        return lastExecutedTime;
+    }
+    
+    public void setLastExecutedTime(LocalDateTime lastExecutedTime) {
+        this.lastExecutedTime = lastExecutedTime;
+    }
+    
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -157,6 +192,8 @@ public class ScheduledTask {
                 ", cronExpression='" + cronExpression + '\'' +
                 ", enabled=" + enabled +
                 ", taskType=" + taskType +
+                ", missedFirePolicy=" + missedFirePolicy +
+                ", jitterSeconds=" + jitterSeconds +
                 '}';
     }
 }
\ No newline at end of file
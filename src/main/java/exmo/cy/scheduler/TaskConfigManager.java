@@ -2,27 +2,50 @@ package exmo.cy.scheduler;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 import exmo.cy.config.Constants;
 import exmo.cy.util.Logger;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.lang.reflect.Type;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 计划任务配置管理器
- * 负责保存和加载计划任务配置
+ * 负责保存和加载计划任务配置。任务在内存中维护，修改后由后台线程合并写回：
+ * 重复任务每次触发都会更新下次执行时间，{@link Constants#SCHEDULER_WRITE_DELAY_MS} 内的所有修改只写一次文件，
+ * 触发路径上不读写文件。
  */
 public class TaskConfigManager {
     private static final String TASKS_CONFIG_FILE = "scheduled_tasks.json";
     private final Gson gson;
+    private final Path configPath = Paths.get(TASKS_CONFIG_FILE);
+    // 任务ID -> 任务，首次访问时从文件加载
+    private Map<String, ScheduledTask> tasks;
+    private final Object fileLock = new Object();
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private long version;
+    private long persistedVersion;
+    private ScheduledExecutorService writer;
+    // 配置文件无法解析时为true：保留原文件，不再写入，以免用空列表覆盖已有的任务
+    private boolean loadFailed;
     
     public TaskConfigManager() {
         this.gson = new GsonBuilder()
@@ -32,56 +55,173 @@ public class TaskConfigManager {
     }
     
     /**
-     * 保存任务列表到文件
+     * 保存任务列表到文件，替换内存中的全部任务
+     * 配置文件无法解析时不会写入，见 {@link #loadTasks()}
      */
-    public void saveTasks(List<ScheduledTask> tasks) {
-        try (FileWriter writer = new FileWriter(TASKS_CONFIG_FILE)) {
-            gson.toJson(tasks, writer);
-            Logger.info("已保存 " + tasks.size() + " 个计划任务到配置文件");
-        } catch (IOException e) {
-            Logger.error("保存计划任务配置失败: " + e.getMessage(), e);
+    public void saveTasks(List<ScheduledTask> newTasks) {
+        synchronized (this) {
+            tasks = new LinkedHashMap<>();
+            for (ScheduledTask task : newTasks) {
+                tasks.put(task.getTaskId(), task);
+            }
+            version++;
         }
+        flush();
     }
     
     /**
-     * 从文件加载任务列表
+     * 加载任务列表，第一次调用时从文件读取
+     * 文件无法解析时返回空列表，并保留原文件：之后的修改只保存在内存中，不会覆盖该文件
      */
-    public List<ScheduledTask> loadTasks() {
-        Path path = Paths.get(TASKS_CONFIG_FILE);
-        if (!Files.exists(path)) {
-            Logger.info("计划任务配置文件不存在，返回空列表");
-            return new CopyOnWriteArrayList<>();
+    public synchronized List<ScheduledTask> loadTasks() {
+        return new CopyOnWriteArrayList<>(registry().values());
+    }
+    
+    /**
+     * 添加单个任务
+     */
+    public synchronized void addTask(ScheduledTask task) {
+        registry().put(task.getTaskId(), task);
+        markChanged();
+    }
+    
+    /**
+     * 更新任务（例如重复任务的下次执行时间），只修改内存并安排延迟写回
+     */
+    public synchronized void updateTask(ScheduledTask task) {
+        Map<String, ScheduledTask> registry = registry();
+        if (registry.containsKey(task.getTaskId())) {
+            registry.put(task.getTaskId(), task);
+            markChanged();
         }
-        
-        try (FileReader reader = new FileReader(TASKS_CONFIG_FILE)) {
-            Type listType = new TypeToken<List<ScheduledTask>>(){}.getType();
-            List<ScheduledTask> tasks = gson.fromJson(reader, listType);
-            if (tasks == null) {
-                return new CopyOnWriteArrayList<>();
+    }
+    
+    /**
+     * 删除任务
+     */
+    public synchronized void removeTask(String taskId) {
+        if (registry().remove(taskId) != null) {
+            markChanged();
+        }
+    }
+    
+    /**
+     * 立即把尚未写回的修改写入文件
+     */
+    public void flush() {
+        synchronized (fileLock) {
+            List<ScheduledTask> snapshot;
+            long snapshotVersion;
+            synchronized (this) {
+                if (tasks == null || version == persistedVersion) {
+                    return;
+                }
+                if (loadFailed) {
+                    Logger.warn("计划任务配置文件 " + configPath + " 无法解析，修改不会保存；请修复或移走该文件后重启");
+                    persistedVersion = version;
+                    return;
+                }
+                snapshot = new ArrayList<>(tasks.values());
+                snapshotVersion = version;
             }
-            Logger.info("已从配置文件加载 " + tasks.size() + " 个计划任务");
-            return new CopyOnWriteArrayList<>(tasks);
-        } catch (IOException e) {
-            Logger.error("加载计划任务配置失败: " + e.getMessage(), e);
-            return new CopyOnWriteArrayList<>();
+            try {
+                writeAtomically(gson.toJson(snapshot));
+            } catch (IOException e) {
+                Logger.error("保存计划任务配置失败: " + e.getMessage(), e);
+                return;
+            }
+            synchronized (this) {
+                persistedVersion = snapshotVersion;
+            }
+            Logger.debug("已保存 " + snapshot.size() + " 个计划任务到配置文件");
         }
     }
     
     /**
-     * 添加单个任务
+     * 写回尚未保存的修改并停止后台写入线程
      */
-    public void addTask(ScheduledTask task) {
-        List<ScheduledTask> tasks = loadTasks();
-        tasks.add(task);
-        saveTasks(tasks);
+    public void close() {
+        flush();
+        synchronized (this) {
+            if (writer != null) {
+                writer.shutdownNow();
+                writer = null;
+            }
+        }
+    }
+    
+    private Map<String, ScheduledTask> registry() {
+        if (tasks == null) {
+            tasks = new LinkedHashMap<>();
+            for (ScheduledTask task : readFile()) {
+                tasks.put(task.getTaskId(), task);
+            }
+        }
+        return tasks;
     }
     
     /**
-     * 删除任务
+     * 记录一次修改，调用方持有this的锁
      */
-    public void removeTask(String taskId) {
-        List<ScheduledTask> tasks = loadTasks();
-        tasks.removeIf(task -> task.getTaskId().equals(taskId));
-        saveTasks(tasks);
+    private void markChanged() {
+        version++;
+        if (writeScheduled.compareAndSet(false, true)) {
+            writer().schedule(() -> {
+                writeScheduled.set(false);
+                flush();
+            }, Constants.SCHEDULER_WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    private ScheduledExecutorService writer() {
+        if (writer == null) {
+            writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "task-config-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return writer;
+    }
+    
+    private List<ScheduledTask> readFile() {
+        if (!Files.exists(configPath)) {
+            Logger.info("计划任务配置文件不存在，返回空列表");
+            return new ArrayList<>();
+        }
+        
+        try (Reader reader = Files.newBufferedReader(configPath)) {
+            Type listType = new TypeToken<List<ScheduledTask>>(){}.getType();
+            List<ScheduledTask> loaded = gson.fromJson(reader, listType);
+            if (loaded == null) {
+                return new ArrayList<>();
+            }
+            Logger.info("已从配置文件加载 " + loaded.size() + " 个计划任务");
+            return loaded;
+        } catch (IOException | JsonParseException e) {
+            loadFailed = true;
+            Logger.error("加载计划任务配置失败，已保留原文件且不会覆盖: " + configPath + " (" + e.getMessage() + ")", e);
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * 先写入临时文件再重命名，避免进程中途退出留下不完整的配置文件
+     */
+    private void writeAtomically(String content) throws IOException {
+        Path temp = configPath.resolveSibling(configPath.getFileName() + ".tmp");
+        try {
+            try (Writer out = Files.newBufferedWriter(temp)) {
+                out.write(content);
+            }
+            try {
+                Files.move(temp, configPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, configPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
     }
-}
\ No newline at end of file
+}
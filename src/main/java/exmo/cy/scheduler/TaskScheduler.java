@@ -1,30 +1,51 @@
 package exmo.cy.scheduler;
 
+import exmo.cy.console.CommandResult;
+import exmo.cy.monitor.ManagerMetrics;
 import exmo.cy.service.ServerService;
 import exmo.cy.util.Logger;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 任务调度器
+ * 所有任务（一次性和重复任务）都由同一个ScheduledExecutorService驱动：
+ * 每个任务只在执行器的延迟队列中保留下一次触发，触发后再按cron表达式计算并安排下一次，
+ * 因此任务数量增加不会增加线程，重新安排的开销为O(log n)。
+ * 定时器线程只负责安排下一次触发并把任务交给虚拟线程执行，耗时的任务（等待启动、备份、重启）不会推迟其他任务的触发。
  */
 public class TaskScheduler {
+    // 长延迟分段等待，避免系统时间调整后触发时间出现偏差
+    private static final long MAX_TIMER_DELAY_MS = TimeUnit.HOURS.toMillis(1);
+    
     private final ServerService serverService;
     private final ScheduledExecutorService scheduler;
-    private final Map<String, java.util.Timer> recurringTimers;
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    // 正在执行的任务ID，同一任务上一次执行结束前不会再次执行
+    private final Set<String> runningTasks = ConcurrentHashMap.newKeySet();
+    private final Map<String, ScheduledFuture<?>> pendingFires;
     private final List<ScheduledTask> scheduledTasks;
     private final TaskConfigManager configManager;
     private final Object lock = new Object();
     
     public TaskScheduler(ServerService serverService) {
         this.serverService = serverService;
-        this.scheduler = Executors.newScheduledThreadPool(5);
-        this.recurringTimers = new HashMap<>();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.scheduler = executor;
+        this.pendingFires = new ConcurrentHashMap<>();
         this.scheduledTasks = Collections.synchronizedList(new ArrayList<>());
         this.configManager = new TaskConfigManager();
         
@@ -34,43 +55,77 @@ public class TaskScheduler {
     
     /**
      * 从配置文件加载已保存的任务
+     * 管理器停机期间错过的任务按任务的MissedFirePolicy处理
      */
     private void loadSavedTasks() {
         List<ScheduledTask> savedTasks = configManager.loadTasks();
+        LocalDateTime now = LocalDateTime.now();
         for (ScheduledTask task : savedTasks) {
-            // 重新安排已保存的任务
-            if (task.isEnabled() && !task.isRecurring()) {
-                // 只重新安排一次性任务（如果是将来时间）
-                if (task.getScheduledTime().isAfter(LocalDateTime.now())) {
-                    scheduleOneTimeTask(task);
-                    scheduledTasks.add(task);
+            if (!task.isEnabled()) {
+                continue;
+            }
+            
+            boolean missed = task.getScheduledTime() != null && task.getScheduledTime().isBefore(now);
+            boolean fireMissed = missed && task.getMissedFirePolicy() == ScheduledTask.MissedFirePolicy.FIRE_ONCE;
+            
+            synchronized (lock) {
+                if (!task.isRecurring()) {
+                    // 只重新安排将来的一次性任务，错过的任务按策略补执行
+                    if (!missed || fireMissed) {
+                        if (fireMissed) {
+                            Logger.info("补执行停机期间错过的计划任务: " + task.getTaskName());
+                        }
+                        scheduledTasks.add(task);
+                        scheduleOneTimeTask(task);
+                    }
+                    continue;
                 }
-            } else if (task.isEnabled() && task.isRecurring()) {
+                
                 // 重新安排重复任务
-                scheduleRecurringTask(task);
+                CronExpression cron;
+                try {
+                    cron = CronExpression.parse(task.getCronExpression());
+                } catch (IllegalArgumentException e) {
+                    Logger.error("计划任务 " + task.getTaskName() + " 的cron表达式无效: " + e.getMessage());
+                    continue;
+                }
+                if (fireMissed) {
+                    Logger.info("补执行停机期间错过的计划任务: " + task.getTaskName());
+                    dispatch(task);
+                } else if (missed) {
+                    Logger.info("跳过停机期间错过的计划任务: " + task.getTaskName());
+                }
                 scheduledTasks.add(task);
+                scheduleRecurringTask(task, cron, missed);
             }
         }
         Logger.info("已加载 " + savedTasks.size() + " 个已保存的计划任务");
     }
     
     /**
-     * 添加一次性任务
+     * 添加计划任务
+     * @throws IllegalArgumentException 如果重复任务的cron表达式无效
      */
     public String scheduleTask(ScheduledTask task) {
+        CronExpression cron = task.isRecurring() ? CronExpression.parse(task.getCronExpression()) : null;
+        if (task.getJitterSeconds() < 0) {
+            task.setJitterSeconds(0);
+        }
+        
         synchronized (lock) {
             String taskId = generateTaskId();
             task.setTaskId(taskId);
+            scheduledTasks.add(task);
             
-            if (task.isRecurring()) {
+            if (cron != null) {
                 // 添加重复任务
-                scheduleRecurringTask(task);
+                task.setScheduledTime(null);
+                scheduleRecurringTask(task, cron, false);
             } else {
                 // 添加一次性任务
                 scheduleOneTimeTask(task);
             }
             
-            scheduledTasks.add(task);
             configManager.addTask(task); // 保存到配置文件
             Logger.info("已添加计划任务: " + task.getTaskName() + " (ID: " + taskId + ")");
             return taskId;
@@ -78,51 +133,95 @@ public class TaskScheduler {
     }
     
     /**
-     * 添加一次性任务
+     * 添加一次性任务，调用方需持有lock
      */
     private void scheduleOneTimeTask(ScheduledTask task) {
-        long delay = calculateDelay(task.getScheduledTime());
-        if (delay <= 0) {
-            Logger.warn("计划任务时间已过期: " + task.getTaskName());
-            executeTask(task);
-            return;
+        if (calculateDelay(task.getScheduledTime()) <= 0) {
+            Logger.warn("计划任务时间已过期，立即执行: " + task.getTaskName());
         }
         
-        scheduler.schedule(() -> {
+        arm(task, toEpochMillis(task.getScheduledTime()) + jitterMillis(task), () -> {
             if (task.isEnabled()) {
-                executeTask(task);
+                dispatch(task);
                 cancelTask(task.getTaskId());
             }
-        }, delay, TimeUnit.MILLISECONDS);
+        });
     }
     
     /**
-     * 添加重复任务
+     * 按cron表达式安排重复任务的下一次执行，调用方需持有lock
+     * @param persist 是否把新的下次执行时间写回配置文件；为false时沿用已保存的将来时间
      */
-    private void scheduleRecurringTask(ScheduledTask task) {
-        // 简化实现：每分钟检查一次是否需要执行
-        java.util.Timer timer = new java.util.Timer(true);
-        TimerTask timerTask = new TimerTask() {
-            @Override
-            public void run() {
-                if (task.isEnabled() && shouldExecuteNow(task)) {
-                    executeTask(task);
+    private void scheduleRecurringTask(ScheduledTask task, CronExpression cron, boolean persist) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime previous = task.getScheduledTime();
+        LocalDateTime next;
+        if (!persist && previous != null && previous.isAfter(now)) {
+            // 已保存的下次执行时间仍在将来，只要与表达式一致就沿用
+            next = cron.next(previous.minusMinutes(1));
+        } else {
+            // 从刚触发的时间和当前时间中较晚的一个往后算，避免时钟误差导致同一分钟重复执行
+            next = cron.next(previous != null && previous.isAfter(now) ? previous : now);
+        }
+        if (next == null) {
+            Logger.error("计划任务 " + task.getTaskName() + " 没有下一次执行时间");
+            return;
+        }
+        
+        task.setScheduledTime(next);
+        if (persist) {
+            configManager.updateTask(task);
+        }
+        
+        arm(task, toEpochMillis(next) + jitterMillis(task), () -> {
+            // 先安排下一次触发，执行时间再长也不会错过之后的时间点
+            synchronized (lock) {
+                if (pendingFires.containsKey(task.getTaskId())) {
+                    scheduleRecurringTask(task, cron, true);
                 }
             }
-        };
-        
-        timer.scheduleAtFixedRate(timerTask, 0, 60000); // 每分钟检查一次
-        recurringTimers.put(task.getTaskId(), timer);
+            if (task.isEnabled()) {
+                dispatch(task);
+            }
+        });
     }
     
     /**
-     * 检查是否应该现在执行任务（简化版cron实现）
+     * 在指定时间执行动作，同一任务只保留一个待触发的定时器，调用方需持有lock
      */
-    private boolean shouldExecuteNow(ScheduledTask task) {
-        // 简化实现：这里只是检查当前时间是否接近计划时间
-        // 在实际实现中，应该使用真正的cron表达式解析器
-        LocalDateTime now = LocalDateTime.now();
-        return now.isAfter(task.getScheduledTime()) || now.equals(task.getScheduledTime());
+    private void arm(ScheduledTask task, long fireAtMillis, Runnable action) {
+        String taskId = task.getTaskId();
+        long delay = Math.max(0, fireAtMillis - System.currentTimeMillis());
+        ScheduledFuture<?> future;
+        if (delay > MAX_TIMER_DELAY_MS) {
+            future = scheduler.schedule(() -> {
+                synchronized (lock) {
+                    if (pendingFires.containsKey(taskId)) {
+                        arm(task, fireAtMillis, action);
+                    }
+                }
+            }, MAX_TIMER_DELAY_MS, TimeUnit.MILLISECONDS);
+        } else {
+            // 已过期的任务立即执行，延迟从安排时刻算起
+            long dueAt = System.currentTimeMillis() + delay;
+            future = scheduler.schedule(() -> {
+                ManagerMetrics.recordSchedulerLag(System.currentTimeMillis() - dueAt);
+                action.run();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        pendingFires.put(taskId, future);
+    }
+    
+    /**
+     * 随机延迟，避免多个服务器的任务在同一时刻执行
+     */
+    private long jitterMillis(ScheduledTask task) {
+        int jitter = task.getJitterSeconds();
+        return jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter * 1000L + 1) : 0;
+    }
+    
+    private long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
     
     /**
@@ -134,12 +233,36 @@ public class TaskScheduler {
         return Math.max(0, scheduledTimeMillis - currentTimeMillis);
     }
     
+    /**
+     * 把任务交给工作线程执行，上一次执行尚未结束时跳过本次
+     */
+    private void dispatch(ScheduledTask task) {
+        String taskId = task.getTaskId();
+        if (!runningTasks.add(taskId)) {
+            Logger.warn("计划任务上一次执行尚未结束，跳过本次执行: " + task.getTaskName());
+            return;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    executeTask(task);
+                } finally {
+                    runningTasks.remove(taskId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 调度器已关闭
+            runningTasks.remove(taskId);
+        }
+    }
+    
     /**
      * 执行任务
      */
     private void executeTask(ScheduledTask task) {
         try {
             Logger.info("执行计划任务: " + task.getTaskName() + " (类型: " + task.getTaskType() + ")");
+            task.setLastExecutedTime(LocalDateTime.now());
             
             switch (task.getTaskType()) {
                 case START_SERVER:
@@ -181,8 +304,13 @@ public class TaskScheduler {
     }
     
     private void sendCommand(ScheduledTask task) throws Exception {
-        serverService.sendCommand(task.getServerName(), task.getCommand());
-        Logger.info("已向服务器 " + task.getServerName() + " 发送命令: " + task.getCommand());
+        CommandResult result = serverService.executeCommand(task.getServerName(), task.getCommand());
+        Logger.info("已向服务器 " + task.getServerName() + " 发送命令: " + task.getCommand()
+            + " (" + result.getLines().size() + " 行输出, " + result.getLatencyMs() + " ms"
+            + (result.isComplete() ? "" : ", 等待输出超时") + ")");
+        for (String line : result.getLines()) {
+            Logger.info("[" + task.getServerName() + "] " + line);
+        }
     }
     
     private void createBackup(ScheduledTask task) throws Exception {
@@ -210,12 +338,10 @@ public class TaskScheduler {
             
             task.setEnabled(false);
             
-            // 如果是重复任务，取消定时器
-            if (task.isRecurring()) {
-                java.util.Timer timer = recurringTimers.remove(taskId);
-                if (timer != null) {
-                    timer.cancel();
-                }
+            // 取消尚未触发的定时器
+            ScheduledFuture<?> future = pendingFires.remove(taskId);
+            if (future != null) {
+                future.cancel(false);
             }
             
             boolean removed = scheduledTasks.remove(task);
@@ -259,9 +385,9 @@ public class TaskScheduler {
      */
     public void shutdown() {
         scheduler.shutdown();
-        for (java.util.Timer timer : recurringTimers.values()) {
-            timer.cancel();
-        }
-        recurringTimers.clear();
+        workers.shutdown();
+        pendingFires.clear();
+        // 写回合并中的下次执行时间
+        configManager.close();
     }
 }
\ No newline at end of file
@@ -0,0 +1,439 @@
+package exmo.cy.service;
+
+import exmo.cy.config.Constants;
+import exmo.cy.exception.ServerOperationException;
+import exmo.cy.util.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 服务器启动准入控制器
+ * 按实际启动参数中的-Xmx统计已承诺的堆内存，与主机物理内存和CPU核心数比较，
+ * 会超量分配的启动请求进入先进先出队列，服务器退出释放资源后按顺序放行。
+ * 队首请求放不下时后面的请求也不会越过它，避免需要大内存的服务器一直排不上。
+ */
+public class AdmissionController {
+
+    /**
+     * 一次启动请求
+     */
+    public static final class Ticket {
+        private final String serverName;
+        private final long memoryBytes;
+        private final long requestedAt = System.currentTimeMillis();
+        private volatile long admittedAt = -1;
+        private final CompletableFuture<Ticket> future = new CompletableFuture<>();
+
+        Ticket(String serverName, long memoryBytes) {
+            this.serverName = serverName;
+            this.memoryBytes = memoryBytes;
+        }
+
+        public String getServerName() {
+            return serverName;
+        }
+
+        /**
+         * 启动参数中的最大堆内存（字节）
+         */
+        public long getMemoryBytes() {
+            return memoryBytes;
+        }
+
+        /**
+         * 提交启动请求的时间
+         */
+        public long getRequestedAt() {
+            return requestedAt;
+        }
+
+        /**
+         * 放行的时间，仍在排队时为-1
+         */
+        public long getAdmittedAt() {
+            return admittedAt;
+        }
+    }
+
+    /**
+     * 准入状态快照
+     */
+    public static final class Status {
+        private final long physicalMemory;
+        private final int cpuCount;
+        private final double overcommitRatio;
+        private final long memoryCapacity;
+        private final long committedMemory;
+        private final int instanceLimit;
+        private final List<Ticket> admitted;
+        private final List<Ticket> waiting;
+
+        Status(long physicalMemory, int cpuCount, double overcommitRatio, long memoryCapacity,
+               long committedMemory, int instanceLimit, List<Ticket> admitted, List<Ticket> waiting) {
+            this.physicalMemory = physicalMemory;
+            this.cpuCount = cpuCount;
+            this.overcommitRatio = overcommitRatio;
+            this.memoryCapacity = memoryCapacity;
+            this.committedMemory = committedMemory;
+            this.instanceLimit = instanceLimit;
+            this.admitted = admitted;
+            this.waiting = waiting;
+        }
+
+        /**
+         * 主机物理内存（字节），无法获取时为0
+         */
+        public long getPhysicalMemory() {
+            return physicalMemory;
+        }
+
+        public int getCpuCount() {
+            return cpuCount;
+        }
+
+        public double getOvercommitRatio() {
+            return overcommitRatio;
+        }
+
+        /**
+         * 可分配给服务器的堆内存上限（字节）
+         */
+        public long getMemoryCapacity() {
+            return memoryCapacity;
+        }
+
+        /**
+         * 已放行的服务器承诺的堆内存之和（字节）
+         */
+        public long getCommittedMemory() {
+            return committedMemory;
+        }
+
+        /**
+         * 同时运行的服务器数量上限
+         */
+        public int getInstanceLimit() {
+            return instanceLimit;
+        }
+
+        /**
+         * 已放行（启动中或运行中）的服务器
+         */
+        public List<Ticket> getAdmitted() {
+            return admitted;
+        }
+
+        /**
+         * 排队中的启动请求，按放行顺序排列
+         */
+        public List<Ticket> getWaiting() {
+            return waiting;
+        }
+    }
+
+    private final Object lock = new Object();
+    private final long physicalMemory;
+    private final int cpuCount;
+    private final long reservedMemory;
+    private final Map<String, Ticket> admitted = new LinkedHashMap<>();
+    private final Deque<Ticket> waiting = new ArrayDeque<>();
+    private long committedMemory;
+    private double overcommitRatio;
+
+    /**
+     * 构造函数，超量分配比例可通过系统属性 cymc.admission.overcommit 覆盖
+     */
+    public AdmissionController() {
+        this(detectPhysicalMemory(),
+             Runtime.getRuntime().availableProcessors(),
+             Constants.ADMISSION_RESERVED_MEMORY_MB * 1024L * 1024L,
+             readOvercommitRatio());
+    }
+
+    AdmissionController(long physicalMemory, int cpuCount, long reservedMemory, double overcommitRatio) {
+        this.physicalMemory = physicalMemory;
+        this.cpuCount = Math.max(1, cpuCount);
+        this.reservedMemory = reservedMemory;
+        this.overcommitRatio = overcommitRatio;
+    }
+
+    private static long detectPhysicalMemory() {
+        java.lang.management.OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+        if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) osBean).getTotalMemorySize();
+        }
+        return 0;
+    }
+
+    private static double readOvercommitRatio() {
+        String value = System.getProperty(Constants.ADMISSION_OVERCOMMIT_PROPERTY);
+        if (value != null) {
+            try {
+                double ratio = Double.parseDouble(value.trim());
+                if (ratio > 0) {
+                    return ratio;
+                }
+            } catch (NumberFormatException ignored) {
+                // 使用默认值
+            }
+            Logger.warn("无效的超量分配比例 " + value + "，使用默认值 " + Constants.DEFAULT_ADMISSION_OVERCOMMIT_RATIO);
+        }
+        return Constants.DEFAULT_ADMISSION_OVERCOMMIT_RATIO;
+    }
+
+    /**
+     * 从启动命令中解析最大堆内存
+     * 只看-jar之前的JVM参数，多次出现时与JVM一致以最后一个为准；
+     * 没有指定时按JVM默认的物理内存1/4估算
+     * @param command 完整的启动命令
+     * @return 最大堆内存（字节）
+     */
+    public long estimateMaxHeap(List<String> command) {
+        long maxHeap = -1;
+        for (String arg : command) {
+            if ("-jar".equals(arg)) {
+                break;
+            }
+            if (arg.startsWith("-Xmx")) {
+                maxHeap = parseSize(arg.substring(4));
+            } else if (arg.startsWith("-XX:MaxHeapSize=")) {
+                maxHeap = parseSize(arg.substring("-XX:MaxHeapSize=".length()));
+            }
+        }
+        if (maxHeap > 0) {
+            return maxHeap;
+        }
+        return physicalMemory > 0 ? physicalMemory / 4 : parseSize(Constants.DEFAULT_MAX_MEMORY);
+    }
+
+    /**
+     * 解析JVM内存参数，例如 4096M、4g、512k
+     * @return 字节数，格式无效时返回-1
+     */
+    static long parseSize(String value) {
+        if (value == null || value.isEmpty()) {
+            return -1;
+        }
+        long multiplier = 1;
+        char unit = Character.toLowerCase(value.charAt(value.length() - 1));
+        String digits = value;
+        if (!Character.isDigit(unit)) {
+            switch (unit) {
+                case 'k': multiplier = 1024L; break;
+                case 'm': multiplier = 1024L * 1024L; break;
+                case 'g': multiplier = 1024L * 1024L * 1024L; break;
+                case 't': multiplier = 1024L * 1024L * 1024L * 1024L; break;
+                default: return -1;
+            }
+            digits = value.substring(0, value.length() - 1);
+        }
+        try {
+            long number = Long.parseLong(digits);
+            return number > 0 ? number * multiplier : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 申请启动名额
+     * 资源足够且没有排队的请求时立即放行，否则进入队列
+     * @param serverName 服务器名称
+     * @param memoryBytes 服务器的最大堆内存（字节）
+     * @return 放行时完成；请求被取消时异常完成
+     * @throws ServerOperationException 如果服务器已在运行或排队，或所需内存超过主机可分配的上限
+     */
+    public CompletableFuture<Ticket> acquire(String serverName, long memoryBytes) throws ServerOperationException {
+        Ticket ticket = new Ticket(serverName, memoryBytes);
+        List<Ticket> ready;
+        synchronized (lock) {
+            if (admitted.containsKey(serverName)) {
+                throw new ServerOperationException("服务器已在运行: " + serverName);
+            }
+            if (findWaiting(serverName) != null) {
+                throw new ServerOperationException("服务器已在启动队列中: " + serverName);
+            }
+            long capacity = memoryCapacity();
+            if (memoryBytes > capacity) {
+                throw new ServerOperationException("服务器 " + serverName + " 需要 " + formatMemory(memoryBytes)
+                    + " 堆内存，超过主机可分配的 " + formatMemory(capacity));
+            }
+            waiting.add(ticket);
+            ready = drainLocked();
+        }
+        admit(ready);
+        return ticket.future;
+    }
+
+    /**
+     * 服务器退出后释放它占用的资源，并放行排队中能放下的请求
+     * @param serverName 服务器名称
+     */
+    public void release(String serverName) {
+        List<Ticket> ready;
+        synchronized (lock) {
+            Ticket ticket = admitted.remove(serverName);
+            if (ticket == null) {
+                return;
+            }
+            committedMemory -= ticket.memoryBytes;
+            ready = drainLocked();
+        }
+        admit(ready);
+    }
+
+    /**
+     * 取消排队中的启动请求
+     * @param serverName 服务器名称
+     * @return 请求仍在排队并已取消时返回true
+     */
+    public boolean cancel(String serverName) {
+        Ticket ticket;
+        List<Ticket> ready;
+        synchronized (lock) {
+            ticket = findWaiting(serverName);
+            if (ticket == null) {
+                return false;
+            }
+            waiting.remove(ticket);
+            // 被取消的可能是队首，后面的请求也许已经放得下
+            ready = drainLocked();
+        }
+        ticket.future.completeExceptionally(new ServerOperationException("服务器 " + serverName + " 的启动请求已取消"));
+        admit(ready);
+        return true;
+    }
+
+    /**
+     * 修改超量分配比例，调大后立即放行能放下的请求
+     * @param ratio 比例，必须大于0
+     */
+    public void setOvercommitRatio(double ratio) {
+        if (!(ratio > 0)) {
+            throw new IllegalArgumentException("超量分配比例必须大于0: " + ratio);
+        }
+        List<Ticket> ready;
+        synchronized (lock) {
+            overcommitRatio = ratio;
+            ready = drainLocked();
+        }
+        admit(ready);
+    }
+
+    public double getOvercommitRatio() {
+        synchronized (lock) {
+            return overcommitRatio;
+        }
+    }
+
+    /**
+     * 获取排队中请求的位置
+     * @param serverName 服务器名称
+     * @return 从1开始的位置，不在队列中时返回-1
+     */
+    public int getQueuePosition(String serverName) {
+        synchronized (lock) {
+            int position = 1;
+            for (Ticket ticket : waiting) {
+                if (ticket.serverName.equals(serverName)) {
+                    return position;
+                }
+                position++;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * 获取准入状态快照
+     */
+    public Status getStatus() {
+        synchronized (lock) {
+            return new Status(physicalMemory, cpuCount, overcommitRatio, memoryCapacity(), committedMemory,
+                instanceLimit(), Collections.unmodifiableList(new ArrayList<>(admitted.values())),
+                Collections.unmodifiableList(new ArrayList<>(waiting)));
+        }
+    }
+
+    /**
+     * 可分配给服务器的堆内存上限：扣除为系统保留的内存后乘以超量分配比例。
+     * 无法获取物理内存时不限制内存
+     */
+    private long memoryCapacity() {
+        if (physicalMemory <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return (long) (Math.max(0, physicalMemory - reservedMemory) * overcommitRatio);
+    }
+
+    /**
+     * 同时运行的服务器数量上限：每个服务器至少按一个核心计算，再乘以超量分配比例
+     */
+    private int instanceLimit() {
+        return Math.max(1, (int) (cpuCount * overcommitRatio));
+    }
+
+    private Ticket findWaiting(String serverName) {
+        for (Ticket ticket : waiting) {
+            if (ticket.serverName.equals(serverName)) {
+                return ticket;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按队列顺序放行能放下的请求，队首放不下时停止
+     * @return 本次放行的请求，需要在锁外完成它们的Future
+     */
+    private List<Ticket> drainLocked() {
+        List<Ticket> ready = new ArrayList<>();
+        long capacity = memoryCapacity();
+        int limit = instanceLimit();
+        Iterator<Ticket> it = waiting.iterator();
+        while (it.hasNext()) {
+            Ticket ticket = it.next();
+            if (admitted.size() >= limit || committedMemory + ticket.memoryBytes > capacity) {
+                break;
+            }
+            it.remove();
+            ticket.admittedAt = System.currentTimeMillis();
+            committedMemory += ticket.memoryBytes;
+            admitted.put(ticket.serverName, ticket);
+            ready.add(ticket);
+        }
+        return ready;
+    }
+
+    private void admit(List<Ticket> ready) {
+        for (Ticket ticket : ready) {
+            if (ticket.requestedAt < ticket.admittedAt - 1000) {
+                Logger.info("主机资源已释放，放行服务器 " + ticket.serverName + " 的启动请求（排队 "
+                    + (ticket.admittedAt - ticket.requestedAt) / 1000 + " 秒）");
+            }
+            ticket.future.complete(ticket);
+        }
+    }
+
+    /**
+     * 格式化内存大小
+     */
+    public static String formatMemory(long bytes) {
+        if (bytes == Long.MAX_VALUE) {
+            return "不限";
+        }
+        if (bytes < 1024L * 1024L * 1024L) {
+            return String.format("%.0f MB", bytes / (1024.0 * 1024.0));
+        }
+        return String.format("%.2f GB", bytes / (1024.0 * 1024.0 * 1024.0));
+    }
+}
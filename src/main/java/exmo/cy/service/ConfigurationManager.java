@@ -2,29 +2,64 @@ package exmo.cy.service;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import exmo.cy.config.Constants;
 import exmo.cy.exception.ConfigurationException;
 import exmo.cy.model.LaunchConfig;
 import exmo.cy.model.Server;
-import exmo.cy.util.FileUtils;
+import exmo.cy.monitor.ManagerMetrics;
 import exmo.cy.util.Logger;
 
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 配置管理器
  * 负责服务器配置和启动配置的加载、保存和管理
+ *
+ * 服务器配置在首次访问时从文件加载到内存索引中，之后的查询都直接读内存。
+ * 修改先更新内存索引，再由后台线程延迟写回文件（临时文件 + 原子重命名），
+ * 短时间内的多次修改只写一次。可选的文件监视器会在配置文件被外部修改时重新加载。
  */
 public class ConfigurationManager {
-    
+
     private final Gson gson;
     private final Path configFilePath;
     private final Path lastLaunchConfigPath;
-    
+
+    // 按名称索引的服务器配置快照，写入时整体替换，读取无需加锁；null表示尚未加载
+    private volatile Map<String, Server> registry;
+    private final AtomicLong version = new AtomicLong();
+    private final Object registryLock = new Object();
+
+    // 写回状态
+    private final Object fileLock = new Object();
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private ScheduledExecutorService writer;
+    private long persistedVersion;
+    private volatile FileTime lastWrittenTime;
+
+    // 文件监视
+    private WatchService watchService;
+    private Thread watcherThread;
+
     /**
      * 构造函数
      */
@@ -33,32 +68,22 @@ public class ConfigurationManager {
         this.configFilePath = Paths.get(Constants.CONFIG_FILE);
         this.lastLaunchConfigPath = Paths.get(Constants.LAST_LAUNCH_CONFIG);
     }
-    
+
     /**
      * 加载所有服务器配置
+     * 返回的是配置的副本，修改后需要调用saveServer保存
      * @return 服务器列表
      * @throws ConfigurationException 如果加载失败
      */
     public List<Server> loadServers() throws ConfigurationException {
-        if (!Files.exists(configFilePath)) {
-            Logger.debug("配置文件不存在，返回空列表");
-            return new ArrayList<>();
-        }
-        
-        try (BufferedReader reader = Files.newBufferedReader(configFilePath)) {
-            Server[] servers = gson.fromJson(reader, Server[].class);
-            if (servers == null) {
-                return new ArrayList<>();
-            }
-            
-            List<Server> serverList = new ArrayList<>(Arrays.asList(servers));
-            Logger.info("成功加载 " + serverList.size() + " 个服务器配置");
-            return serverList;
-        } catch (IOException e) {
-            throw new ConfigurationException("加载服务器配置失败", e);
+        Map<String, Server> current = ensureLoaded();
+        List<Server> serverList = new ArrayList<>(current.size());
+        for (Server server : current.values()) {
+            serverList.add(new Server(server));
         }
+        return serverList;
     }
-    
+
     /**
      * 保存单个服务器配置
      * 如果服务器已存在则更新，否则添加
@@ -69,27 +94,16 @@ public class ConfigurationManager {
         if (server == null || !server.isValid()) {
             throw new ConfigurationException("服务器配置无效");
         }
-        
-        List<Server> servers = loadServers();
-        
-        // 查找并更新现有服务器，或添加新服务器
-        boolean found = false;
-        for (int i = 0; i < servers.size(); i++) {
-            if (servers.get(i).getName().equals(server.getName())) {
-                servers.set(i, server);
-                found = true;
-                break;
-            }
-        }
-        
-        if (!found) {
-            servers.add(server);
+
+        synchronized (registryLock) {
+            Map<String, Server> updated = new LinkedHashMap<>(ensureLoaded());
+            updated.put(server.getName(), new Server(server));
+            publish(updated);
         }
-        
-        saveServers(servers);
+        scheduleWrite();
         Logger.info("保存服务器配置: " + server.getName());
     }
-    
+
     /**
      * 保存所有服务器配置
      * @param servers 服务器列表
@@ -99,44 +113,173 @@ public class ConfigurationManager {
         if (servers == null) {
             throw new ConfigurationException("服务器列表不能为null");
         }
-        
-        try (BufferedWriter writer = Files.newBufferedWriter(configFilePath)) {
-            writer.write(gson.toJson(servers.toArray()));
-            Logger.debug("保存 " + servers.size() + " 个服务器配置到文件");
-        } catch (IOException e) {
-            throw new ConfigurationException("保存服务器配置失败", e);
+
+        Map<String, Server> updated = new LinkedHashMap<>();
+        for (Server server : servers) {
+            if (server != null && server.getName() != null) {
+                updated.put(server.getName(), new Server(server));
+            }
         }
+        synchronized (registryLock) {
+            publish(updated);
+        }
+        scheduleWrite();
     }
-    
+
     /**
      * 删除服务器配置
      * @param serverName 服务器名称
      * @throws ConfigurationException 如果删除失败
      */
     public void deleteServer(String serverName) throws ConfigurationException {
-        List<Server> servers = loadServers();
-        boolean removed = servers.removeIf(s -> s.getName().equals(serverName));
-        
+        boolean removed;
+        synchronized (registryLock) {
+            Map<String, Server> updated = new LinkedHashMap<>(ensureLoaded());
+            removed = updated.remove(serverName) != null;
+            if (removed) {
+                publish(updated);
+            }
+        }
+
         if (removed) {
-            saveServers(servers);
+            scheduleWrite();
             Logger.info("删除服务器配置: " + serverName);
         } else {
             Logger.warn("未找到要删除的服务器: " + serverName);
         }
     }
-    
+
     /**
      * 根据名称查找服务器
      * @param name 服务器名称
-     * @return 服务器配置，如果不存在返回Optional.empty()
+     * @return 服务器配置的副本，如果不存在返回Optional.empty()
      * @throws ConfigurationException 如果查找失败
      */
     public Optional<Server> findServerByName(String name) throws ConfigurationException {
-        return loadServers().stream()
-            .filter(s -> s.getName().equals(name))
-            .findFirst();
+        if (name == null) {
+            return Optional.empty();
+        }
+        Server server = ensureLoaded().get(name);
+        return server != null ? Optional.of(new Server(server)) : Optional.empty();
+    }
+
+    /**
+     * 检查服务器名称是否已存在
+     * @param name 服务器名称
+     * @return 如果存在返回true
+     * @throws ConfigurationException 如果检查失败
+     */
+    public boolean serverExists(String name) throws ConfigurationException {
+        return name != null && ensureLoaded().containsKey(name);
+    }
+
+    /**
+     * 获取服务器配置的版本号
+     * 每次修改或重新加载后递增，可用于判断缓存的数据是否过期
+     * @return 版本号
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 丢弃内存中的配置，从文件重新加载
+     * 尚未写回的修改会先写入文件
+     * @throws ConfigurationException 如果加载失败
+     */
+    public void reload() throws ConfigurationException {
+        while (true) {
+            flush();
+            long expected = version.get();
+            Map<String, Server> loaded = readServersFromFile();
+            if (publishLoaded(loaded, expected)) {
+                return;
+            }
+            // 读取文件期间内存中的配置被修改，先写回再重新读取
+        }
+    }
+
+    /**
+     * 立即把尚未写回的修改写入文件
+     * @throws ConfigurationException 如果写入失败
+     */
+    public void flush() throws ConfigurationException {
+        synchronized (fileLock) {
+            Map<String, Server> snapshot;
+            long snapshotVersion;
+            synchronized (registryLock) {
+                snapshot = registry;
+                snapshotVersion = version.get();
+                if (snapshot == null || snapshotVersion == persistedVersion) {
+                    return;
+                }
+            }
+
+            long saveStart = System.nanoTime();
+            writeAtomically(configFilePath, gson.toJson(snapshot.values().toArray()));
+            ManagerMetrics.recordConfigSave(System.nanoTime() - saveStart);
+            synchronized (registryLock) {
+                persistedVersion = snapshotVersion;
+            }
+            lastWrittenTime = readModifiedTime();
+            Logger.debug("保存 " + snapshot.size() + " 个服务器配置到文件");
+        }
     }
-    
+
+    /**
+     * 开始监视配置文件，被外部修改时自动重新加载
+     * @throws ConfigurationException 如果无法创建文件监视器
+     */
+    public synchronized void startWatching() throws ConfigurationException {
+        if (watcherThread != null) {
+            return;
+        }
+
+        Path dir = configFilePath.toAbsolutePath().getParent();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            throw new ConfigurationException("无法监视配置文件", e);
+        }
+
+        WatchService service = watchService;
+        watcherThread = new Thread(() -> watchLoop(service), "config-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+        Logger.debug("开始监视配置文件: " + configFilePath.toAbsolutePath());
+    }
+
+    /**
+     * 停止监视配置文件并写回尚未保存的修改
+     */
+    public void close() {
+        synchronized (this) {
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException e) {
+                    // 忽略关闭错误
+                }
+                watchService = null;
+                watcherThread = null;
+            }
+        }
+
+        try {
+            flush();
+        } catch (ConfigurationException e) {
+            Logger.error("写回服务器配置失败: " + e.getMessage(), e);
+        }
+
+        synchronized (this) {
+            if (writer != null) {
+                writer.shutdownNow();
+                writer = null;
+            }
+        }
+    }
+
     /**
      * 保存启动配置
      * @param config 启动配置
@@ -146,15 +289,11 @@ public class ConfigurationManager {
         if (config == null || !config.isValid()) {
             throw new ConfigurationException("启动配置无效");
         }
-        
-        try (BufferedWriter writer = Files.newBufferedWriter(lastLaunchConfigPath)) {
-            writer.write(gson.toJson(config));
-            Logger.debug("保存最后启动配置: " + config.getServerName());
-        } catch (IOException e) {
-            throw new ConfigurationException("保存启动配置失败", e);
-        }
+
+        writeAtomically(lastLaunchConfigPath, gson.toJson(config));
+        Logger.debug("保存最后启动配置: " + config.getServerName());
     }
-    
+
     /**
      * 加载启动配置
      * @return 启动配置，如果不存在返回Optional.empty()
@@ -165,7 +304,7 @@ public class ConfigurationManager {
             Logger.debug("启动配置文件不存在");
             return Optional.empty();
         }
-        
+
         try (BufferedReader reader = Files.newBufferedReader(lastLaunchConfigPath)) {
             LaunchConfig config = gson.fromJson(reader, LaunchConfig.class);
             if (config != null && config.isValid()) {
@@ -177,14 +316,212 @@ public class ConfigurationManager {
             throw new ConfigurationException("加载启动配置失败", e);
         }
     }
-    
+
     /**
-     * 检查服务器名称是否已存在
-     * @param name 服务器名称
-     * @return 如果存在返回true
-     * @throws ConfigurationException 如果检查失败
+     * 获取内存中的配置，首次调用时从文件加载
      */
-    public boolean serverExists(String name) throws ConfigurationException {
-        return findServerByName(name).isPresent();
+    private Map<String, Server> ensureLoaded() throws ConfigurationException {
+        Map<String, Server> current = registry;
+        if (current != null) {
+            return current;
+        }
+        synchronized (registryLock) {
+            if (registry == null) {
+                publish(readServersFromFile());
+                markPersisted();
+                lastWrittenTime = readModifiedTime();
+            }
+            return registry;
+        }
+    }
+
+    /**
+     * 替换内存中的配置快照，调用方需持有registryLock
+     */
+    private void publish(Map<String, Server> servers) {
+        registry = Collections.unmodifiableMap(servers);
+        version.incrementAndGet();
+    }
+
+    /**
+     * 发布从文件读取的配置
+     * 读取期间内存中的配置被修改，或存在尚未写回的修改时放弃读取的内容，以免这些修改被覆盖且不再写回
+     * @param loaded 从文件读取的配置
+     * @param expected 开始读取文件前的版本号
+     * @return 如果已发布返回true
+     */
+    private boolean publishLoaded(Map<String, Server> loaded, long expected) {
+        synchronized (registryLock) {
+            long current = version.get();
+            if (current != expected || current != persistedVersion) {
+                return false;
+            }
+            publish(loaded);
+            markPersisted();
+            return true;
+        }
+    }
+
+    /**
+     * 标记当前版本与文件内容一致，调用方需持有registryLock
+     */
+    private void markPersisted() {
+        persistedVersion = version.get();
+    }
+
+    private Map<String, Server> readServersFromFile() throws ConfigurationException {
+        Map<String, Server> servers = new LinkedHashMap<>();
+        if (!Files.exists(configFilePath)) {
+            Logger.debug("配置文件不存在，返回空列表");
+            return servers;
+        }
+
+        long loadStart = System.nanoTime();
+        try (BufferedReader reader = Files.newBufferedReader(configFilePath)) {
+            Server[] loaded = gson.fromJson(reader, Server[].class);
+            if (loaded != null) {
+                for (Server server : loaded) {
+                    if (server != null && server.getName() != null) {
+                        servers.put(server.getName(), server);
+                    }
+                }
+            }
+            ManagerMetrics.recordConfigLoad(System.nanoTime() - loadStart);
+            Logger.info("成功加载 " + servers.size() + " 个服务器配置");
+            return servers;
+        } catch (IOException | JsonParseException e) {
+            throw new ConfigurationException("加载服务器配置失败", e);
+        }
+    }
+
+    /**
+     * 安排一次延迟写回，已有待执行的写回时直接合并
+     */
+    private void scheduleWrite() {
+        if (writeScheduled.compareAndSet(false, true)) {
+            writer().schedule(() -> {
+                writeScheduled.set(false);
+                try {
+                    flush();
+                } catch (ConfigurationException e) {
+                    Logger.error("写回服务器配置失败: " + e.getMessage(), e);
+                }
+            }, Constants.CONFIG_WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized ScheduledExecutorService writer() {
+        if (writer == null) {
+            writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "config-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return writer;
+    }
+
+    /**
+     * 先写入同目录下的临时文件再重命名，避免进程中途退出留下不完整的配置文件
+     */
+    private void writeAtomically(Path target, String content) throws ConfigurationException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+                writer.write(content);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // 忽略清理错误
+            }
+            throw new ConfigurationException("保存配置文件失败: " + target, e);
+        }
+    }
+
+    private FileTime readModifiedTime() {
+        try {
+            return Files.exists(configFilePath) ? Files.getLastModifiedTime(configFilePath) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void watchLoop(WatchService service) {
+        Path fileName = configFilePath.getFileName();
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (fileName.equals(event.context())) {
+                    changed = true;
+                }
+            }
+            if (!key.reset()) {
+                Logger.warn("配置文件所在目录已不可访问，停止监视");
+                return;
+            }
+
+            if (changed) {
+                try {
+                    Thread.sleep(Constants.CONFIG_RELOAD_DEBOUNCE_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // 合并等待期间产生的重复事件
+                WatchKey pending;
+                while ((pending = service.poll()) != null) {
+                    pending.pollEvents();
+                    pending.reset();
+                }
+                reloadIfChangedExternally();
+            }
+        }
+    }
+
+    /**
+     * 文件被外部修改时重新加载，自己写入引起的事件会被忽略
+     */
+    private void reloadIfChangedExternally() {
+        synchronized (fileLock) {
+            FileTime modified = readModifiedTime();
+            if (modified == null || modified.equals(lastWrittenTime)) {
+                return;
+            }
+
+            long expected;
+            synchronized (registryLock) {
+                expected = version.get();
+                if (registry != null && expected != persistedVersion) {
+                    Logger.warn("配置文件被外部修改，但内存中有尚未写回的修改，将以内存中的配置为准");
+                    return;
+                }
+            }
+
+            try {
+                Map<String, Server> loaded = readServersFromFile();
+                if (!publishLoaded(loaded, expected)) {
+                    Logger.warn("配置文件被外部修改，但读取期间内存中的配置有新的修改，将以内存中的配置为准");
+                    return;
+                }
+                lastWrittenTime = modified;
+                Logger.info("检测到配置文件被外部修改，已重新加载");
+            } catch (ConfigurationException e) {
+                // 外部编辑可能尚未完成或内容有误，保留当前配置
+                Logger.warn("重新加载配置文件失败，保留当前配置: " + e.getMessage());
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,219 @@
+package exmo.cy.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 群组并行启动报告
+ * 记录每个服务器开始启动和就绪的时间（相对群组开始启动的毫秒数），
+ * 启动结束后计算总耗时和实际的关键路径。
+ */
+public class GroupStartupReport {
+
+    /**
+     * 单个服务器的启动状态
+     */
+    public enum Status {
+        PENDING,      // 等待依赖就绪或启动名额
+        STARTING,     // 已启动，等待就绪
+        READY,        // 检测到就绪信号
+        UNCONFIRMED,  // 等待超时或未配置就绪条件，已继续启动依赖它的服务器
+        FAILED,       // 启动失败或在就绪前退出
+        SKIPPED       // 依赖的服务器失败，未启动
+    }
+
+    /**
+     * 单个服务器的启动记录
+     */
+    public static final class Entry {
+        private final String serverName;
+        private volatile Status status = Status.PENDING;
+        private volatile long startedAt = -1;
+        private volatile long finishedAt = -1;
+        private volatile String message;
+
+        Entry(String serverName) {
+            this.serverName = serverName;
+        }
+
+        public String getServerName() {
+            return serverName;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * 开始启动的时间（相对群组开始的毫秒数），未启动时为-1
+         */
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        /**
+         * 就绪或失败的时间（相对群组开始的毫秒数），未结束时为-1
+         */
+        public long getFinishedAt() {
+            return finishedAt;
+        }
+
+        /**
+         * 失败或跳过的原因
+         */
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private final String groupName;
+    private final StartupGraph graph;
+    private final int maxParallelStarts;
+    private final long startedAtMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private volatile long totalMillis = -1;
+    private volatile List<String> criticalPath = Collections.emptyList();
+
+    GroupStartupReport(String groupName, StartupGraph graph, int maxParallelStarts) {
+        this.groupName = groupName;
+        this.graph = graph;
+        this.maxParallelStarts = maxParallelStarts;
+        for (String server : graph.getOrder()) {
+            entries.put(server, new Entry(server));
+        }
+    }
+
+    private long elapsed() {
+        return (System.nanoTime() - startNanos) / 1_000_000L;
+    }
+
+    void markStarting(String server) {
+        Entry entry = entries.get(server);
+        entry.startedAt = elapsed();
+        entry.status = Status.STARTING;
+    }
+
+    void markFinished(String server, Status status, String message) {
+        Entry entry = entries.get(server);
+        entry.finishedAt = elapsed();
+        entry.status = status;
+        entry.message = message;
+    }
+
+    /**
+     * 检查服务器是否已失败或被跳过
+     */
+    boolean isFailed(String server) {
+        Status status = entries.get(server).status;
+        return status == Status.FAILED || status == Status.SKIPPED;
+    }
+
+    /**
+     * 所有服务器结束后计算总耗时和关键路径
+     * 关键路径从最后结束的服务器开始，沿着结束最晚的依赖向前回溯
+     */
+    void complete() {
+        totalMillis = elapsed();
+
+        Entry last = null;
+        for (Entry entry : entries.values()) {
+            if (entry.startedAt >= 0 && (last == null || entry.finishedAt > last.finishedAt)) {
+                last = entry;
+            }
+        }
+        List<String> path = new ArrayList<>();
+        while (last != null) {
+            path.add(last.serverName);
+            Entry latestDep = null;
+            for (String dep : graph.getDependencies(last.serverName)) {
+                Entry candidate = entries.get(dep);
+                if (latestDep == null || candidate.finishedAt > latestDep.finishedAt) {
+                    latestDep = candidate;
+                }
+            }
+            last = latestDep;
+        }
+        Collections.reverse(path);
+        criticalPath = Collections.unmodifiableList(path);
+    }
+
+    public String getGroupName() {
+        return groupName;
+    }
+
+    public long getStartedAtMillis() {
+        return startedAtMillis;
+    }
+
+    public int getMaxParallelStarts() {
+        return maxParallelStarts;
+    }
+
+    /**
+     * 获取启动顺序（拓扑顺序）
+     */
+    public List<String> getOrder() {
+        return graph.getOrder();
+    }
+
+    /**
+     * 获取所有服务器的启动记录，按拓扑顺序排列
+     */
+    public Map<String, Entry> getEntries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * 获取整个群组的启动耗时（毫秒），尚未结束时返回-1
+     */
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    /**
+     * 获取关键路径：决定群组总启动耗时的依赖链
+     */
+    public List<String> getCriticalPath() {
+        return criticalPath;
+    }
+
+    /**
+     * 检查启动是否已全部结束
+     */
+    public boolean isComplete() {
+        return totalMillis >= 0;
+    }
+
+    /**
+     * 生成用于日志和命令输出的报告文本
+     */
+    public List<String> toLines() {
+        List<String> lines = new ArrayList<>();
+        lines.add("群组 " + groupName + " 并行启动报告 (并行上限: " + maxParallelStarts + ")");
+        for (Entry entry : entries.values()) {
+            StringBuilder line = new StringBuilder("  ").append(entry.serverName).append(": ").append(entry.status);
+            if (entry.startedAt >= 0) {
+                line.append(" 开始 +").append(entry.startedAt).append("ms");
+            }
+            if (entry.finishedAt >= 0 && entry.startedAt >= 0) {
+                line.append(" 结束 +").append(entry.finishedAt).append("ms (耗时 ")
+                    .append(entry.finishedAt - entry.startedAt).append("ms)");
+            }
+            if (entry.message != null) {
+                line.append(" - ").append(entry.message);
+            }
+            lines.add(line.toString());
+        }
+        if (isComplete()) {
+            lines.add("  总耗时: " + totalMillis + "ms");
+            lines.add("  关键路径: " + (criticalPath.isEmpty() ? "无" : String.join(" -> ", criticalPath)));
+        } else {
+            lines.add("  启动进行中...");
+        }
+        return lines;
+    }
+}
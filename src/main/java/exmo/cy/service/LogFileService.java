@@ -1,36 +1,69 @@
 package exmo.cy.service;
 
-import exmo.cy.exception.ConfigurationException;
+import exmo.cy.config.Constants;
+import exmo.cy.log.LogAppender;
+import exmo.cy.log.LogMatch;
+import exmo.cy.log.LogQuery;
+import exmo.cy.log.LogSlice;
+import exmo.cy.log.LogStore;
 import exmo.cy.util.Logger;
 
 import java.io.*;
 import java.nio.file.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Stream;
 
 /**
  * 日志文件管理服务
- * 负责日志文件的创建、读取、管理和导出
+ * 负责日志文件的创建、读取、管理和导出。
+ * 系统日志和每个服务器的日志分别保存在 logs/system/ 和 logs/servers/&lt;服务器&gt;/ 下的分段日志存储中
+ * （见 {@link LogStore}），读取末尾若干行、按行号或时间范围读取都不需要扫描整个日志。
+ * 旧版本的 logs/&lt;服务器&gt;.log 在第一次访问该服务器日志时迁移为第一个日志段。
+ * 写入经由每个日志的 {@link LogAppender} 缓冲后批量落盘，读取前会先刷新缓冲区，
+ * 持久性模式由系统属性 {@value Constants#LOG_DURABILITY_PROPERTY}（line/batch）配置。
+ * 日志段按大小和自然日轮转，封存的日志段在低优先级的后台线程中压缩，每个日志占用的磁盘空间
+ * 超过 {@value Constants#LOG_RETENTION_BYTES_PROPERTY}（默认1GB）时删除最旧的日志段。
+ * 同一个后台线程为新写入的行增量建立倒排索引，{@link #searchLogs} 据此在所有日志中全文搜索。
  */
 public class LogFileService {
     
     private static final String LOG_DIR = "logs";
-    private static final String SYSTEM_LOG_FILE = "system.log";
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String SYSTEM_LOG_DIR = "system";
+    private static final String SERVER_LOG_DIR = "servers";
+    private static final String LEGACY_SYSTEM_LOG_FILE = "system.log";
     
     private final Path logDirectory;
-    private final Path systemLogFile;
+    private final Path serverLogDirectory;
+    private final LogAppender.Durability durability = LogAppender.Durability.fromSystemProperty();
+    private final long retentionBytes = Long.getLong(
+            Constants.LOG_RETENTION_BYTES_PROPERTY, Constants.DEFAULT_LOG_RETENTION_BYTES);
+    // 压缩封存日志段和建立搜索索引的后台线程，优先级最低，不与服务器争抢CPU
+    private final ExecutorService maintenanceExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "log-maintenance");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    // 日志目录 -> 已打开的日志
+    private final Map<Path, LogAppender> appenders = new ConcurrentHashMap<>();
     
     /**
      * 构造函数
      */
     public LogFileService() {
-        this.logDirectory = Paths.get(LOG_DIR);
-        this.systemLogFile = logDirectory.resolve(SYSTEM_LOG_FILE);
+        this(Paths.get(LOG_DIR));
+    }
+    
+    /**
+     * 构造函数
+     * @param logDirectory 日志根目录
+     */
+    public LogFileService(Path logDirectory) {
+        this.logDirectory = logDirectory;
+        this.serverLogDirectory = logDirectory.resolve(SERVER_LOG_DIR);
         initializeLogDirectory();
     }
     
@@ -55,11 +88,7 @@ public class LogFileService {
      */
     public void writeSystemLog(String level, String message) {
         try {
-            String timestamp = LocalDateTime.now().format(TIME_FORMATTER);
-            String logEntry = String.format("[%s] [%s] %s%n", timestamp, level, message);
-            
-            // 追加写入日志文件
-            Files.write(systemLogFile, logEntry.getBytes(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            systemAppender().append(System.currentTimeMillis(), level, message);
         } catch (IOException e) {
             // 静默失败，避免日志记录导致的问题
             System.err.println("写入日志文件失败: " + e.getMessage());
@@ -79,66 +108,172 @@ public class LogFileService {
         }
         
         try {
-            Path serverLogFile = logDirectory.resolve(serverName + ".log");
-            String timestamp = LocalDateTime.now().format(TIME_FORMATTER);
-            String logEntry = String.format("[%s] [%s] %s%n", timestamp, level, message);
-            
-            // 追加写入日志文件
-            Files.write(serverLogFile, logEntry.getBytes(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            serverAppender(serverName).append(System.currentTimeMillis(), level, message);
         } catch (IOException e) {
             // 静默失败
             System.err.println("写入服务器日志文件失败: " + e.getMessage());
         }
     }
     
+    /**
+     * 写入服务器日志，消息为UTF-8编码的字节（例如控制台输出的一行），不需要先转换为字符串
+     * @param serverName 服务器名称
+     * @param level 日志级别
+     * @param data 消息数据，不含换行符
+     */
+    public void writeServerLog(String serverName, String level, byte[] data, int offset, int length) {
+        if (serverName == null || serverName.isEmpty()) {
+            return;
+        }
+        
+        try {
+            serverAppender(serverName).append(System.currentTimeMillis(), level, data, offset, length);
+        } catch (IOException e) {
+            // 静默失败
+            System.err.println("写入服务器日志文件失败: " + e.getMessage());
+        }
+    }
+    
+    private LogAppender systemAppender() throws IOException {
+        return openAppender(logDirectory.resolve(SYSTEM_LOG_DIR), logDirectory.resolve(LEGACY_SYSTEM_LOG_FILE));
+    }
+    
+    private LogAppender serverAppender(String serverName) throws IOException {
+        return openAppender(serverLogDirectory.resolve(serverName), logDirectory.resolve(serverName + ".log"));
+    }
+    
+    /**
+     * 获取系统日志存储，已缓冲的日志先写入
+     */
+    private LogStore systemStore() throws IOException {
+        return flushed(systemAppender());
+    }
+    
+    /**
+     * 获取服务器日志存储，已缓冲的日志先写入
+     */
+    private LogStore serverStore(String serverName) throws IOException {
+        return flushed(serverAppender(serverName));
+    }
+    
+    private static LogStore flushed(LogAppender appender) throws IOException {
+        appender.flush();
+        return appender.getStore();
+    }
+    
+    /**
+     * 打开日志，旧格式的单个日志文件迁移为第一个日志段
+     */
+    private LogAppender openAppender(Path directory, Path legacyFile) throws IOException {
+        LogAppender appender = appenders.get(directory);
+        if (appender != null) {
+            return appender;
+        }
+        synchronized (appenders) {
+            appender = appenders.get(directory);
+            if (appender == null) {
+                if (Files.isRegularFile(legacyFile) && !Files.exists(directory)) {
+                    Files.createDirectories(directory);
+                    Files.move(legacyFile, directory.resolve(String.format("%020d.log", 0)));
+                    Logger.info("迁移旧日志文件: " + legacyFile + " -> " + directory);
+                }
+                appender = new LogAppender(new LogStore(directory, maintenanceExecutor, retentionBytes), durability);
+                appenders.put(directory, appender);
+            }
+            return appender;
+        }
+    }
+    
+    /**
+     * 检查服务器是否有日志（不会创建日志目录）
+     */
+    private boolean hasServerLog(String serverName) {
+        return appenders.containsKey(serverLogDirectory.resolve(serverName))
+            || Files.isDirectory(serverLogDirectory.resolve(serverName))
+            || Files.isRegularFile(logDirectory.resolve(serverName + ".log"));
+    }
+    
     /**
      * 读取系统日志
-     * @param lines 读取的行数（从末尾开始），0表示读取全部
+     * @param lines 读取的行数（从末尾开始），0表示读取最多 {@link Constants#LOG_MAX_READ_LINES} 行
      * @return 日志行列表
      */
     public List<String> readSystemLog(int lines) {
-        return readLogFile(systemLogFile, lines);
+        try {
+            return systemStore().tail(limit(lines)).getLines();
+        } catch (IOException e) {
+            Logger.error("读取系统日志失败", e);
+            return new ArrayList<>();
+        }
     }
     
     /**
      * 读取服务器日志
      * @param serverName 服务器名称
-     * @param lines 读取的行数（从末尾开始），0表示读取全部
+     * @param lines 读取的行数（从末尾开始），0表示读取最多 {@link Constants#LOG_MAX_READ_LINES} 行
      * @return 日志行列表
      */
     public List<String> readServerLog(String serverName, int lines) {
-        if (serverName == null || serverName.isEmpty()) {
-            return new ArrayList<>();
+        return tailServerLog(serverName, lines).map(LogSlice::getLines).orElseGet(ArrayList::new);
+    }
+    
+    /**
+     * 读取服务器日志末尾若干行
+     * @param serverName 服务器名称
+     * @param lines 读取的行数，0表示读取最多 {@link Constants#LOG_MAX_READ_LINES} 行
+     * @return 日志行及其行号，服务器没有日志时返回Optional.empty()
+     */
+    public Optional<LogSlice> tailServerLog(String serverName, int lines) {
+        if (serverName == null || serverName.isEmpty() || !hasServerLog(serverName)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(serverStore(serverName).tail(limit(lines)));
+        } catch (IOException e) {
+            Logger.error("读取服务器日志失败: " + serverName, e);
+            return Optional.empty();
         }
-        
-        Path serverLogFile = logDirectory.resolve(serverName + ".log");
-        return readLogFile(serverLogFile, lines);
     }
     
     /**
-     * 读取日志文件
-     * @param logFile 日志文件路径
-     * @param lines 读取的行数（从末尾开始），0表示读取全部
-     * @return 日志行列表
+     * 从指定行号开始读取服务器日志
+     * @param serverName 服务器名称
+     * @param fromLine 起始行号
+     * @param lines 最多读取的行数
+     * @return 日志行及其行号，服务器没有日志时返回Optional.empty()
      */
-    private List<String> readLogFile(Path logFile, int lines) {
-        if (!Files.exists(logFile)) {
-            return new ArrayList<>();
+    public Optional<LogSlice> readServerLines(String serverName, long fromLine, int lines) {
+        if (serverName == null || serverName.isEmpty() || !hasServerLog(serverName)) {
+            return Optional.empty();
         }
-        
         try {
-            List<String> allLines = Files.readAllLines(logFile);
-            
-            if (lines <= 0 || lines >= allLines.size()) {
-                return allLines;
-            }
-            
-            // 返回最后N行
-            return allLines.subList(allLines.size() - lines, allLines.size());
+            return Optional.of(serverStore(serverName).read(fromLine, limit(lines)));
         } catch (IOException e) {
-            Logger.error("读取日志文件失败: " + logFile, e);
-            return new ArrayList<>();
+            Logger.error("读取服务器日志失败: " + serverName, e);
+            return Optional.empty();
+        }
+    }
+    
+    /**
+     * 读取服务器日志中时间在 [fromMillis, toMillis) 之间的行，时间精确到秒
+     * @param serverName 服务器名称
+     * @param lines 最多读取的行数，超出时可从返回结果的下一行号继续按行号读取
+     * @return 日志行及其行号，服务器没有日志时返回Optional.empty()
+     */
+    public Optional<LogSlice> readServerLogBetween(String serverName, long fromMillis, long toMillis, int lines) {
+        if (serverName == null || serverName.isEmpty() || !hasServerLog(serverName)) {
+            return Optional.empty();
         }
+        try {
+            return Optional.of(serverStore(serverName).readBetween(fromMillis, toMillis, limit(lines)));
+        } catch (IOException e) {
+            Logger.error("读取服务器日志失败: " + serverName, e);
+            return Optional.empty();
+        }
+    }
+    
+    private static int limit(int lines) {
+        return lines <= 0 ? Constants.LOG_MAX_READ_LINES : Math.min(lines, Constants.LOG_MAX_READ_LINES);
     }
     
     /**
@@ -147,7 +282,7 @@ public class LogFileService {
      */
     public long getSystemLogSize() {
         try {
-            return Files.exists(systemLogFile) ? Files.size(systemLogFile) : 0;
+            return systemStore().size();
         } catch (IOException e) {
             return 0;
         }
@@ -159,13 +294,12 @@ public class LogFileService {
      * @return 文件大小（字节）
      */
     public long getServerLogSize(String serverName) {
-        if (serverName == null || serverName.isEmpty()) {
+        if (serverName == null || serverName.isEmpty() || !hasServerLog(serverName)) {
             return 0;
         }
         
         try {
-            Path serverLogFile = logDirectory.resolve(serverName + ".log");
-            return Files.exists(serverLogFile) ? Files.size(serverLogFile) : 0;
+            return serverStore(serverName).size();
         } catch (IOException e) {
             return 0;
         }
@@ -176,9 +310,7 @@ public class LogFileService {
      */
     public void clearSystemLog() {
         try {
-            if (Files.exists(systemLogFile)) {
-                Files.delete(systemLogFile);
-            }
+            systemStore().clear();
             Logger.info("系统日志已清空");
         } catch (IOException e) {
             Logger.error("清空系统日志失败", e);
@@ -194,11 +326,12 @@ public class LogFileService {
             return;
         }
         
+        if (!hasServerLog(serverName)) {
+            return;
+        }
+        
         try {
-            Path serverLogFile = logDirectory.resolve(serverName + ".log");
-            if (Files.exists(serverLogFile)) {
-                Files.delete(serverLogFile);
-            }
+            serverStore(serverName).clear();
             Logger.info("服务器日志已清空: " + serverName);
         } catch (IOException e) {
             Logger.error("清空服务器日志失败: " + serverName, e);
@@ -211,7 +344,12 @@ public class LogFileService {
      * @return 导出是否成功
      */
     public boolean exportSystemLog(Path outputPath) {
-        return exportLogFile(systemLogFile, outputPath);
+        try {
+            return exportLog(systemStore(), outputPath);
+        } catch (IOException e) {
+            Logger.error("导出日志文件失败", e);
+            return false;
+        }
     }
     
     /**
@@ -221,60 +359,49 @@ public class LogFileService {
      * @return 导出是否成功
      */
     public boolean exportServerLog(String serverName, Path outputPath) {
-        if (serverName == null || serverName.isEmpty()) {
+        if (serverName == null || serverName.isEmpty() || !hasServerLog(serverName)) {
             return false;
         }
         
-        Path serverLogFile = logDirectory.resolve(serverName + ".log");
-        return exportLogFile(serverLogFile, outputPath);
+        try {
+            return exportLog(serverStore(serverName), outputPath);
+        } catch (IOException e) {
+            Logger.error("导出日志文件失败", e);
+            return false;
+        }
     }
     
     /**
-     * 导出日志文件
-     * @param sourceFile 源文件
+     * 按顺序把所有日志段导出为一个文件
+     * @param store 日志存储
      * @param outputPath 输出路径
      * @return 导出是否成功
      */
-    private boolean exportLogFile(Path sourceFile, Path outputPath) {
-        if (!Files.exists(sourceFile)) {
-            return false;
-        }
-        
-        try {
-            Files.copy(sourceFile, outputPath, StandardCopyOption.REPLACE_EXISTING);
-            return true;
-        } catch (IOException e) {
-            Logger.error("导出日志文件失败", e);
+    private boolean exportLog(LogStore store, Path outputPath) throws IOException {
+        if (store.getLineCount() == store.getFirstLine()) {
             return false;
         }
+        store.exportTo(outputPath);
+        return true;
     }
     
     /**
-     * 获取所有日志文件列表
-     * @return 日志文件信息列表
+     * 获取所有日志列表
+     * @return 日志信息列表，name为 system 或服务器名称
      */
     public List<Map<String, Object>> listLogFiles() {
         List<Map<String, Object>> logFiles = new ArrayList<>();
         
         try {
-            if (!Files.exists(logDirectory)) {
-                return logFiles;
-            }
+            logFiles.add(describe(SYSTEM_LOG_DIR, systemStore()));
             
-            try (Stream<Path> paths = Files.list(logDirectory)) {
-                paths.filter(Files::isRegularFile)
-                    .filter(path -> path.toString().endsWith(".log"))
-                    .forEach(path -> {
-                        try {
-                            Map<String, Object> fileInfo = new HashMap<>();
-                            fileInfo.put("name", path.getFileName().toString());
-                            fileInfo.put("size", Files.size(path));
-                            fileInfo.put("modified", Files.getLastModifiedTime(path).toMillis());
-                            logFiles.add(fileInfo);
-                        } catch (IOException e) {
-                            // 忽略单个文件的错误
-                        }
-                    });
+            for (String serverName : serverLogNames()) {
+                try {
+                    logFiles.add(describe(serverName, serverStore(serverName)));
+                } catch (IOException e) {
+                    // 忽略单个日志的错误
+                    Logger.warn("读取服务器日志失败: " + serverName + " - " + e.getMessage());
+                }
             }
         } catch (IOException e) {
             Logger.error("列出日志文件失败", e);
@@ -290,49 +417,160 @@ public class LogFileService {
     }
     
     /**
-     * 清理旧日志文件
+     * 所有有日志的服务器名称，包括尚未迁移的旧日志文件
+     */
+    private Set<String> serverLogNames() throws IOException {
+        Set<String> serverNames = new TreeSet<>();
+        if (Files.isDirectory(serverLogDirectory)) {
+            try (Stream<Path> paths = Files.list(serverLogDirectory)) {
+                paths.filter(Files::isDirectory).forEach(path -> serverNames.add(path.getFileName().toString()));
+            }
+        }
+        // 尚未迁移的旧日志文件
+        try (Stream<Path> paths = Files.list(logDirectory)) {
+            paths.filter(Files::isRegularFile)
+                .map(path -> path.getFileName().toString())
+                .filter(name -> name.endsWith(".log") && !name.equals(LEGACY_SYSTEM_LOG_FILE))
+                .forEach(name -> serverNames.add(name.substring(0, name.length() - 4)));
+        }
+        return serverNames;
+    }
+    
+    /**
+     * 要搜索的日志：指定服务器时只有该服务器的日志，否则为系统日志和所有服务器的日志
+     */
+    private Map<String, LogStore> searchTargets(String serverName) throws IOException {
+        Map<String, LogStore> targets = new LinkedHashMap<>();
+        if (serverName != null && !serverName.isEmpty()) {
+            if (hasServerLog(serverName)) {
+                targets.put(serverName, serverStore(serverName));
+            }
+            return targets;
+        }
+        targets.put(SYSTEM_LOG_DIR, systemStore());
+        for (String name : serverLogNames()) {
+            targets.put(name, serverStore(name));
+        }
+        return targets;
+    }
+    
+    /**
+     * 全文搜索日志
+     * @param serverName 服务器名称，为null时搜索系统日志和所有服务器的日志
+     * @param query 搜索条件
+     * @param limit 最多返回的行数，0表示默认行数
+     * @return 匹配的行，按时间从新到旧排列
+     */
+    public List<LogMatch> searchLogs(String serverName, LogQuery query, int limit) {
+        int max = limit <= 0 ? Constants.LOG_SEARCH_DEFAULT_RESULTS : Math.min(limit, Constants.LOG_SEARCH_MAX_RESULTS);
+        List<LogMatch> matches = new ArrayList<>();
+        try {
+            for (Map.Entry<String, LogStore> target : searchTargets(serverName).entrySet()) {
+                try {
+                    matches.addAll(target.getValue().search(query, max));
+                } catch (IOException e) {
+                    Logger.warn("搜索日志失败: " + target.getKey() + " - " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            Logger.error("搜索日志失败", e);
+        }
+        matches.sort(Comparator.comparingLong(LogMatch::getTime).thenComparingLong(LogMatch::getLine).reversed());
+        return matches.size() > max ? new ArrayList<>(matches.subList(0, max)) : matches;
+    }
+    
+    /**
+     * 尚未建立搜索索引的行数，不为0时搜索结果可能不完整
+     * @param serverName 服务器名称，为null时统计所有日志
+     */
+    public long getSearchBacklog(String serverName) {
+        long backlog = 0;
+        try {
+            for (LogStore store : searchTargets(serverName).values()) {
+                backlog += store.getUnindexedLines();
+            }
+        } catch (IOException e) {
+            Logger.warn("读取日志索引状态失败: " + e.getMessage());
+        }
+        return backlog;
+    }
+    
+    /**
+     * 删除搜索索引并在后台从日志原文重建
+     * @param serverName 服务器名称，为null时重建所有日志的索引
+     * @return 重建的日志数
+     */
+    public int rebuildSearchIndex(String serverName) {
+        int rebuilt = 0;
+        try {
+            for (Map.Entry<String, LogStore> target : searchTargets(serverName).entrySet()) {
+                try {
+                    target.getValue().rebuildIndex();
+                    rebuilt++;
+                } catch (IOException e) {
+                    Logger.warn("重建日志索引失败: " + target.getKey() + " - " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            Logger.error("重建日志索引失败", e);
+        }
+        if (rebuilt > 0) {
+            Logger.info("开始重建 " + rebuilt + " 个日志的搜索索引");
+        }
+        return rebuilt;
+    }
+    
+    private static Map<String, Object> describe(String name, LogStore store) {
+        Map<String, Object> info = new HashMap<>();
+        info.put("name", name);
+        info.put("size", store.size());
+        info.put("modified", store.getLastModified());
+        info.put("lines", store.getLineCount() - store.getFirstLine());
+        info.put("segments", store.getSegmentCount());
+        info.put("compressedSegments", store.getCompressedSegmentCount());
+        info.put("unindexedLines", store.getUnindexedLines());
+        return info;
+    }
+    
+    /**
+     * 清理旧日志段，每个日志正在写入的日志段不会被删除
      * @param daysToKeep 保留天数
-     * @return 清理的文件数量
+     * @return 清理的日志段数量
      */
     public int cleanOldLogs(int daysToKeep) {
         int cleanedCount = 0;
         long cutoffTime = System.currentTimeMillis() - (daysToKeep * 24L * 60 * 60 * 1000);
         
-        try {
-            if (!Files.exists(logDirectory)) {
-                return 0;
+        for (Map<String, Object> info : listLogFiles()) {
+            String name = (String) info.get("name");
+            try {
+                LogStore store = SYSTEM_LOG_DIR.equals(name) ? systemStore() : serverStore(name);
+                cleanedCount += store.deleteSegmentsOlderThan(cutoffTime);
+            } catch (IOException e) {
+                Logger.warn("清理旧日志失败: " + name + " - " + e.getMessage());
             }
-            
-            try (Stream<Path> paths = Files.list(logDirectory)) {
-                List<Path> filesToDelete = paths
-                    .filter(Files::isRegularFile)
-                    .filter(path -> path.toString().endsWith(".log"))
-                    .filter(path -> {
-                        try {
-                            return Files.getLastModifiedTime(path).toMillis() < cutoffTime;
-                        } catch (IOException e) {
-                            return false;
-                        }
-                    })
-                    .collect(Collectors.toList());
-                
-                for (Path file : filesToDelete) {
-                    try {
-                        Files.delete(file);
-                        cleanedCount++;
-                    } catch (IOException e) {
-                        Logger.warn("删除旧日志文件失败: " + file);
-                    }
-                }
-            }
-        } catch (IOException e) {
-            Logger.error("清理旧日志文件失败", e);
         }
         
         if (cleanedCount > 0) {
-            Logger.info("清理了 " + cleanedCount + " 个旧日志文件");
+            Logger.info("清理了 " + cleanedCount + " 个旧日志段");
         }
         
         return cleanedCount;
     }
+    
+    /**
+     * 关闭所有日志
+     */
+    public void close() {
+        for (LogAppender appender : appenders.values()) {
+            try {
+                appender.close();
+            } catch (IOException e) {
+                Logger.warn("关闭日志失败: " + appender.getStore().getDirectory() + " - " + e.getMessage());
+            }
+        }
+        appenders.clear();
+        // 正在进行的压缩中断后，下次打开日志时会重新压缩
+        maintenanceExecutor.shutdownNow();
+    }
 }
@@ -0,0 +1,206 @@
+package exmo.cy.service;
+
+import exmo.cy.config.Constants;
+import exmo.cy.exception.ServerOperationException;
+import exmo.cy.model.Server;
+import exmo.cy.util.FileUtils;
+import exmo.cy.util.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 地图导入和切换服务
+ * maps/ 中的地图可以是ZIP存档或目录，世界根目录是包含level.dat的最浅一层目录。
+ * 导入时先把地图解压或复制到服务器目录中的暂存目录（&lt;世界名&gt;.importing），完成后通过重命名替换世界目录，
+ * 原来的世界保留为 &lt;世界名&gt;.previous。服务器正在运行时暂存目录改名为 &lt;世界名&gt;.pending，
+ * 在下次启动前完成替换，运行中的服务器不会写入新世界。
+ */
+public class MapService {
+
+    private static final String LEVEL_DAT = "level.dat";
+    private static final String IMPORTING_SUFFIX = ".importing";
+    private static final String PENDING_SUFFIX = ".pending";
+    private static final String PREVIOUS_SUFFIX = ".previous";
+    private static final String SERVER_PROPERTIES = "server.properties";
+
+    private final ConfigurationManager configManager;
+    // 服务器名 -> 等待下次启动时替换的地图名，替换后用于更新配置中的地图字段
+    private final Map<String, String> pendingMaps = new ConcurrentHashMap<>();
+
+    public MapService(ConfigurationManager configManager) {
+        this.configManager = configManager;
+    }
+
+    /**
+     * 列出maps目录中的地图（ZIP文件和目录）
+     */
+    public List<String> listMaps() {
+        return FileUtils.listMapsAndZips(Paths.get(Constants.MAPS_DIR));
+    }
+
+    /**
+     * 把地图导入服务器
+     * @param server 服务器配置
+     * @param mapName maps目录中的地图名（ZIP文件名或目录名）
+     * @param running 服务器是否正在运行，在解压完成后判断；运行中时只准备好新世界，下次启动前替换
+     * @param progress 进度回调，可以为null
+     * @return 如果世界已替换返回true，等待下次启动时替换返回false
+     * @throws ServerOperationException 如果地图不存在、不是有效的存档或导入失败
+     */
+    public boolean importMap(Server server, String mapName, BooleanSupplier running, FileUtils.Progress progress)
+            throws ServerOperationException {
+        Path source = Paths.get(Constants.MAPS_DIR).resolve(mapName).normalize();
+        if (!source.startsWith(Paths.get(Constants.MAPS_DIR)) || !Files.exists(source)) {
+            throw new ServerOperationException("地图不存在: " + mapName);
+        }
+
+        Path serverDir = Paths.get(server.getCorePath()).getParent();
+        String worldName = readLevelName(serverDir);
+        Path importing = serverDir.resolve(worldName + IMPORTING_SUFFIX);
+        FileUtils.deleteDirectory(importing);
+
+        long start = System.currentTimeMillis();
+        try {
+            if (Files.isDirectory(source)) {
+                FileUtils.copyDirectory(findWorldRoot(source), importing, false, progress);
+            } else {
+                FileUtils.extractZip(source, importing, findWorldPrefix(source), progress);
+            }
+        } catch (ServerOperationException e) {
+            FileUtils.deleteDirectory(importing);
+            throw e;
+        }
+        Logger.info("地图 " + mapName + " 已解压到 " + importing + "，耗时 " + (System.currentTimeMillis() - start) + " ms");
+
+        if (running.getAsBoolean()) {
+            Path pending = serverDir.resolve(worldName + PENDING_SUFFIX);
+            FileUtils.deleteDirectory(pending);
+            move(importing, pending);
+            pendingMaps.put(server.getName(), mapName);
+            return false;
+        }
+        swapWorld(serverDir, worldName, importing);
+        saveMap(server, mapName);
+        return true;
+    }
+
+    /**
+     * 如果有等待替换的地图，在服务器启动前替换世界目录
+     * @param server 服务器配置
+     * @throws ServerOperationException 如果替换失败
+     */
+    public void applyPendingMap(Server server) throws ServerOperationException {
+        Path serverDir = Paths.get(server.getCorePath()).getParent();
+        if (serverDir == null) {
+            return;
+        }
+        String worldName = readLevelName(serverDir);
+        Path pending = serverDir.resolve(worldName + PENDING_SUFFIX);
+        if (!Files.isDirectory(pending)) {
+            return;
+        }
+        swapWorld(serverDir, worldName, pending);
+        String mapName = pendingMaps.remove(server.getName());
+        if (mapName != null) {
+            saveMap(server, mapName);
+        }
+        Logger.info("已为服务器 " + server.getName() + " 切换到新导入的地图");
+    }
+
+    /**
+     * 用新世界替换世界目录：原世界改名为 .previous（替换掉更早的一份），新世界改名为世界目录
+     */
+    private void swapWorld(Path serverDir, String worldName, Path newWorld) throws ServerOperationException {
+        Path world = serverDir.resolve(worldName);
+        Path previous = serverDir.resolve(worldName + PREVIOUS_SUFFIX);
+        if (Files.exists(world)) {
+            FileUtils.deleteDirectory(previous);
+            move(world, previous);
+        }
+        move(newWorld, world);
+    }
+
+    private void saveMap(Server server, String mapName) {
+        server.setMap(mapName);
+        try {
+            configManager.saveServer(server);
+        } catch (Exception e) {
+            Logger.warn("更新服务器地图配置失败: " + server.getName() + " (" + e.getMessage() + ")");
+        }
+    }
+
+    private static void move(Path source, Path target) throws ServerOperationException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new ServerOperationException("重命名目录失败: " + source + " -> " + target, e);
+        }
+    }
+
+    /**
+     * 读取server.properties中的level-name，没有配置时为world
+     */
+    private static String readLevelName(Path serverDir) {
+        Path properties = serverDir.resolve(SERVER_PROPERTIES);
+        if (Files.exists(properties)) {
+            Properties props = new Properties();
+            try (Reader reader = Files.newBufferedReader(properties)) {
+                props.load(reader);
+                String levelName = props.getProperty("level-name", "").trim();
+                if (!levelName.isEmpty() && !levelName.contains("/") && !levelName.contains("\\") && !levelName.contains("..")) {
+                    return levelName;
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                Logger.warn("读取 " + properties + " 失败，使用默认世界目录: " + e.getMessage());
+            }
+        }
+        return Constants.WORLD_DIR;
+    }
+
+    /**
+     * 在ZIP中找到包含level.dat的最浅目录，返回其路径前缀（根目录为空字符串）
+     */
+    private static String findWorldPrefix(Path zipPath) throws ServerOperationException {
+        String best = null;
+        try (ZipFile zip = new ZipFile(zipPath.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.equals(LEVEL_DAT) || name.endsWith("/" + LEVEL_DAT)) {
+                    String prefix = name.substring(0, name.length() - LEVEL_DAT.length());
+                    if (best == null || prefix.length() < best.length()) {
+                        best = prefix;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new ServerOperationException("无法读取地图存档: " + zipPath, e);
+        }
+        if (best == null) {
+            throw new ServerOperationException("地图存档中没有level.dat: " + zipPath);
+        }
+        return best;
+    }
+
+    /**
+     * 在地图目录中找到包含level.dat的最浅目录
+     */
+    private static Path findWorldRoot(Path mapDir) throws ServerOperationException {
+        try (Stream<Path> paths = Files.walk(mapDir, 3)) {
+            return paths.filter(path -> path.getFileName().toString().equals(LEVEL_DAT))
+                .min(Comparator.comparingInt(Path::getNameCount))
+                .map(Path::getParent)
+                .orElseThrow(() -> new ServerOperationException("地图目录中没有level.dat: " + mapDir));
+        } catch (IOException e) {
+            throw new ServerOperationException("无法读取地图目录: " + mapDir, e);
+        }
+    }
+}
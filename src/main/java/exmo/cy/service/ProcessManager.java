@@ -1,5 +1,16 @@
 package exmo.cy.service;
 
+import exmo.cy.config.Constants;
+import exmo.cy.console.CommandCapture;
+import exmo.cy.console.ConsoleEvent;
+import exmo.cy.console.ConsoleEventListener;
+import exmo.cy.console.ConsoleEventParser;
+import exmo.cy.console.ConsoleHistory;
+import exmo.cy.console.ConsoleLine;
+import exmo.cy.console.ConsoleListener;
+import exmo.cy.console.ConsolePump;
+import exmo.cy.console.ConsoleStats;
+import exmo.cy.monitor.ManagerMetrics;
 import exmo.cy.exception.ServerOperationException;
 import exmo.cy.model.ServerInstance;
 import exmo.cy.service.ServerService;
@@ -7,9 +18,13 @@ import exmo.cy.util.Logger;
 import exmo.cy.web.LogWebSocketHandler;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Consumer;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * 进程管理器
@@ -21,6 +36,23 @@ public class ProcessManager {
     private final Map<ServerInstance, String> serverNames = new ConcurrentHashMap<>();
     private ServerService serverService;
     
+    // 共享的控制台泵，所有服务器的输出都由少量工作线程读取
+    private final ConsolePump consolePump = new ConsolePump();
+    
+    // 每个服务器最近一次运行的控制台历史，进程退出后仍保留以便客户端查看
+    private final Map<String, ConsoleHistory> consoleHistories = new ConcurrentHashMap<>();
+    private final int consoleHistoryBytes = Integer.getInteger(
+            Constants.CONSOLE_HISTORY_BYTES_PROPERTY, Constants.DEFAULT_CONSOLE_HISTORY_BYTES);
+    
+    // 其他组件订阅的控制台输出监听器（例如启动就绪检测），按服务器名称分类
+    private final Map<String, List<ConsoleListener>> consoleSubscribers = new ConcurrentHashMap<>();
+    // 订阅所有服务器输出的监听器（例如TCP API的推送订阅）
+    private final List<ConsoleListener> globalConsoleSubscribers = new CopyOnWriteArrayList<>();
+    // 每个服务器当前运行的命令输出捕获器，控制台输出先经过它过滤掉标记命令的输出再分发
+    private final Map<String, CommandCapture> commandCaptures = new ConcurrentHashMap<>();
+    // 每个服务器的控制台事件解析器，跨多次运行保留，以便在启动前订阅
+    private final Map<String, ConsoleEventParser> eventParsers = new ConcurrentHashMap<>();
+    
     /**
      * 启动进程并设置输出监听
      * @param processBuilder 进程构建器
@@ -39,6 +71,21 @@ public class ProcessManager {
      * @throws ServerOperationException 如果启动失败
      */
     public ServerInstance startProcess(ProcessBuilder processBuilder, ServerService serverService) throws ServerOperationException {
+        // 没有指定名称时以目录名作为服务器名称
+        return startProcess(processBuilder, extractServerNameFromDirectory(processBuilder.directory().getPath()), serverService);
+    }
+    
+    /**
+     * 启动进程并设置输出监听
+     * 控制台历史、控制台泵、订阅者和事件解析器都以该名称为键，必须与服务器配置中的名称一致
+     * @param processBuilder 进程构建器
+     * @param serverName 服务器配置中的名称
+     * @param serverService 服务器服务实例（用于检查屏蔽）
+     * @return 服务器实例
+     * @throws ServerOperationException 如果启动失败
+     */
+    public ServerInstance startProcess(ProcessBuilder processBuilder, String serverName, ServerService serverService)
+            throws ServerOperationException {
         try {
             this.serverService = serverService;
             Logger.info("启动进程: " + String.join(" ", processBuilder.command()));
@@ -47,24 +94,21 @@ public class ProcessManager {
             ServerInstance instance = new ServerInstance();
             instance.setProcess(process);
             instance.setProcessInput(process.getOutputStream());
-            
-            // 从目录获取服务器名称
-            String serverName = extractServerNameFromDirectory(processBuilder.directory().getPath());
             setServerName(instance, serverName);
             
             Logger.info("服务器名称: " + serverName);
             
-            // 启动输出监听线程 - 传递服务器名称用于日志记录
-            startOutputGobbler(process.getInputStream(), serverName, output -> {
-                LogWebSocketHandler.sendLogMessageWithBlockCheck(serverName, output, serverService);
-                // 同时输出到控制台
-                System.out.println("[SERVER " + serverName + "] " + output);
-            });
-            startOutputGobbler(process.getErrorStream(), serverName, error -> {
-                LogWebSocketHandler.sendLogMessageWithBlockCheck(serverName, "[ERROR] " + error, serverService);
-                // 同时输出到控制台
-                System.err.println("[SERVER " + serverName + " ERROR] " + error);
-            });
+            // 控制台历史缓冲区，用于WebSocket重连时补发
+            // 从上次运行的序列号之后继续编号，保持连接的客户端能够收到重启后的输出
+            ConsoleHistory previous = consoleHistories.get(serverName);
+            ConsoleHistory history = new ConsoleHistory(consoleHistoryBytes,
+                previous != null ? previous.getLastSeq() + 1 : 1);
+            instance.setConsoleHistory(history);
+            consoleHistories.put(serverName, history);
+            
+            // 交给控制台泵读取输出 - 传递服务器名称用于日志记录
+            ConsoleStats stats = consolePump.attach(serverName, process, new ServerConsoleListener(serverName, history));
+            instance.setConsoleStats(stats);
             
             return instance;
         } catch (IOException e) {
@@ -99,15 +143,117 @@ public class ProcessManager {
     }
     
     /**
-     * 启动输出流读取线程
-     * @param inputStream 输入流
+     * 获取服务器最近一次运行的控制台历史
+     * @param serverName 服务器名称
+     * @return 控制台历史，如果服务器从未启动返回Optional.empty()
+     */
+    public Optional<ConsoleHistory> getConsoleHistory(String serverName) {
+        return Optional.ofNullable(consoleHistories.get(serverName));
+    }
+    
+    /**
+     * 订阅服务器的控制台输出
+     * 可以在服务器启动前订阅，以免错过最早的输出。
+     * 监听器在控制台泵线程上调用，不能阻塞，也不能在返回后继续持有ConsoleLine。
+     * @param serverName 服务器名称
+     * @param listener 监听器
+     */
+    public void addConsoleListener(String serverName, ConsoleListener listener) {
+        consoleSubscribers.computeIfAbsent(serverName, k -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+    
+    /**
+     * 取消订阅服务器的控制台输出
+     * @param serverName 服务器名称
+     * @param listener 监听器
+     */
+    public void removeConsoleListener(String serverName, ConsoleListener listener) {
+        List<ConsoleListener> listeners = consoleSubscribers.get(serverName);
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+    
+    /**
+     * 设置服务器的命令输出捕获器
+     * 捕获器在其他订阅者之前收到每一行输出，标记命令产生的输出不会进入控制台历史和其他订阅者。
+     * @param serverName 服务器名称
+     * @param capture 捕获器
+     */
+    public void setCommandCapture(String serverName, CommandCapture capture) {
+        commandCaptures.put(serverName, capture);
+    }
+    
+    /**
+     * 移除服务器的命令输出捕获器，已被新一次运行替换时不做任何事
      * @param serverName 服务器名称
-     * @param consumer 输出消费者
+     * @param capture 要移除的捕获器
      */
-    private void startOutputGobbler(InputStream inputStream, String serverName, Consumer<String> consumer) {
-        Thread thread = new Thread(new StreamGobbler(inputStream, serverName, consumer));
-        thread.setDaemon(true);
-        thread.start();
+    public void removeCommandCapture(String serverName, CommandCapture capture) {
+        commandCaptures.remove(serverName, capture);
+    }
+    
+    /**
+     * 获取服务器的控制台事件解析器，不存在时创建
+     * @param serverName 服务器名称
+     * @return 事件解析器
+     */
+    public ConsoleEventParser getConsoleEventParser(String serverName) {
+        return eventParsers.computeIfAbsent(serverName, ConsoleEventParser::new);
+    }
+    
+    /**
+     * 按事件类型订阅服务器的控制台事件
+     * 可以在服务器启动前订阅。监听器在控制台泵线程上调用，不能阻塞，也不能在返回后继续持有ConsoleEvent。
+     * @param serverName 服务器名称
+     * @param types 订阅的事件类型
+     * @param listener 监听器
+     */
+    public void addConsoleEventListener(String serverName, Set<ConsoleEvent.Type> types, ConsoleEventListener listener) {
+        getConsoleEventParser(serverName).subscribe(types, listener);
+    }
+    
+    /**
+     * 取消订阅服务器的控制台事件
+     * @param serverName 服务器名称
+     * @param listener 监听器
+     */
+    public void removeConsoleEventListener(String serverName, ConsoleEventListener listener) {
+        ConsoleEventParser parser = eventParsers.get(serverName);
+        if (parser != null) {
+            parser.unsubscribe(listener);
+        }
+    }
+    
+    /**
+     * 订阅所有服务器的控制台输出，通过 {@link ConsoleLine#getServerName()} 区分来源
+     * @param listener 监听器
+     */
+    public void addGlobalConsoleListener(ConsoleListener listener) {
+        globalConsoleSubscribers.add(listener);
+    }
+    
+    /**
+     * 取消订阅所有服务器的控制台输出
+     * @param listener 监听器
+     */
+    public void removeGlobalConsoleListener(ConsoleListener listener) {
+        globalConsoleSubscribers.remove(listener);
+    }
+    
+    /**
+     * 获取控制台泵
+     * @return 控制台泵
+     */
+    public ConsolePump getConsolePump() {
+        return consolePump;
+    }
+    
+    /**
+     * 关闭进程管理器持有的后台资源
+     */
+    public void shutdown() {
+        consolePump.shutdown();
     }
     
     /**
@@ -117,6 +263,17 @@ public class ProcessManager {
      * @throws ServerOperationException 如果发送失败
      */
     public void sendCommand(ServerInstance instance, String command) throws ServerOperationException {
+        sendCommand(instance, command, null);
+    }
+    
+    /**
+     * 向进程发送命令，并在同一次写入中紧跟一行附加内容（例如命令捕获的结束标记）
+     * @param instance 服务器实例
+     * @param command 命令，为null时只发送附加行
+     * @param trailer 附加行，为null时不发送；附加行不回显到控制台历史
+     * @throws ServerOperationException 如果发送失败
+     */
+    public void sendCommand(ServerInstance instance, String command, String trailer) throws ServerOperationException {
         if (instance == null || !instance.isRunning()) {
             throw new ServerOperationException("服务器实例无效或未运行");
         }
@@ -126,16 +283,38 @@ public class ProcessManager {
             if (input == null) {
                 throw new ServerOperationException("无法获取服务器输入流");
             }
-            input.write((command + "\n").getBytes("UTF-8"));  // 确保使用UTF-8编码并添加换行符
-            input.flush();
+            StringBuilder text = new StringBuilder();
+            if (command != null) {
+                text.append(command).append('\n');
+            }
+            if (trailer != null) {
+                text.append(trailer).append('\n');
+            }
+            long sendStart = System.nanoTime();
+            // 多个线程可能同时发送，命令和附加行必须连续写入
+            synchronized (input) {
+                input.write(text.toString().getBytes("UTF-8"));  // 确保使用UTF-8编码并添加换行符
+                input.flush();
+            }
+            ManagerMetrics.recordCommand(System.nanoTime() - sendStart);
+            if (command == null) {
+                return;
+            }
             Logger.debug("发送命令到服务器: " + command);
             
-            // 发送命令到WebSocket
+            // 发送命令到WebSocket，同时记录到控制台历史
             String serverName = getServerName(instance);
             if (serverName == null) {
                 serverName = instance.getServerName() != null ? instance.getServerName() : "unknown";
             }
-            LogWebSocketHandler.sendLogMessageWithBlockCheck(serverName, "[COMMAND SENT] " + command, serverService);
+            String echo = "[COMMAND SENT] " + command;
+            ConsoleHistory history = instance.getConsoleHistory();
+            if (history != null) {
+                long seq = history.append(echo, false);
+                LogWebSocketHandler.sendConsoleLine(serverName, seq, echo, serverService);
+            } else {
+                LogWebSocketHandler.sendLogMessageWithBlockCheck(serverName, echo, serverService);
+            }
         } catch (IOException e) {
             Logger.error("发送命令失败", e);
             throw new ServerOperationException("发送命令失败", e);
@@ -212,38 +391,74 @@ public class ProcessManager {
     }
     
     /**
-     * 流读取器内部类
-     * 用于读取进程的输出流
+     * 服务器输出监听器
+     * 记录到控制台历史、转发到WebSocket并回显到控制台，只有在存在WebSocket会话时才解码为字符串
      */
-    private static class StreamGobbler implements Runnable {
-        private final InputStream inputStream;
-        private final Consumer<String> consumer;
+    private class ServerConsoleListener implements ConsoleListener {
         private final String serverName;
+        private final ConsoleHistory history;
+        private final ConsoleEventParser parser;
+        private final byte[] outPrefix;
+        private final byte[] errPrefix;
+        private final ConsoleListener delivery = this::deliver;
         
-        public StreamGobbler(InputStream inputStream, String serverName, Consumer<String> consumer) {
-            this.inputStream = inputStream;
-            this.consumer = consumer;
+        ServerConsoleListener(String serverName, ConsoleHistory history) {
             this.serverName = serverName;
+            this.history = history;
+            this.parser = getConsoleEventParser(serverName);
+            this.outPrefix = ("[SERVER " + serverName + "] ").getBytes(StandardCharsets.UTF_8);
+            this.errPrefix = ("[SERVER " + serverName + " ERROR] ").getBytes(StandardCharsets.UTF_8);
         }
         
         @Override
-        public void run() {
-            // 设置当前线程的服务器名称上下文
-            if (serverName != null && !serverName.isEmpty()) {
-                Logger.setServerNameContext(serverName);
+        public void onLine(ConsoleLine line) {
+            CommandCapture capture = commandCaptures.get(serverName);
+            if (capture != null) {
+                capture.filter(line, delivery);
+            } else {
+                deliver(line);
+            }
+        }
+        
+        /**
+         * 把一行输出写入历史并分发给解析器、订阅者、WebSocket和本地控制台
+         */
+        private void deliver(ConsoleLine line) {
+            long seq = history.append(line);
+            parser.onLine(line);
+            
+            List<ConsoleListener> subscribers = consoleSubscribers.get(serverName);
+            if (subscribers != null) {
+                notifySubscribers(subscribers, line);
+            }
+            notifySubscribers(globalConsoleSubscribers, line);
+            if (LogWebSocketHandler.hasSessions(serverName)) {
+                String message = line.isError() ? "[ERROR] " + line : line.toString();
+                LogWebSocketHandler.sendConsoleLine(serverName, seq, message, serverService);
             }
             
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    consumer.accept(line);
+            // 同时输出到控制台
+            PrintStream out = line.isError() ? System.err : System.out;
+            if (StandardCharsets.UTF_8.equals(out.charset())) {
+                // 控制台编码与服务器输出一致时直接写字节
+                synchronized (out) {
+                    out.writeBytes(line.isError() ? errPrefix : outPrefix);
+                    out.write(line.getData(), line.getOffset(), line.getLength());
+                    out.println();
+                }
+            } else {
+                out.println(new String(line.isError() ? errPrefix : outPrefix, StandardCharsets.UTF_8) + line);
+            }
+        }
+        
+        private void notifySubscribers(List<ConsoleListener> subscribers, ConsoleLine line) {
+            for (ConsoleListener subscriber : subscribers) {
+                try {
+                    subscriber.onLine(line);
+                } catch (RuntimeException e) {
+                    Logger.debug("控制台输出监听器出错: " + e.getMessage());
                 }
-            } catch (IOException e) {
-                Logger.debug("读取进程输出时出错: " + e.getMessage());
-            } finally {
-                // 清除线程本地存储
-                Logger.clearServerNameContext();
             }
         }
     }
-}
\ No newline at end of file
+}
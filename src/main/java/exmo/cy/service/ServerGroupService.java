@@ -1,7 +1,13 @@
 package exmo.cy.service;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import exmo.cy.console.ReadinessDetector;
 import exmo.cy.model.Server;
 import exmo.cy.model.ServerGroup;
+import exmo.cy.model.ServerInstance;
+import exmo.cy.util.FileUtils;
 import exmo.cy.util.Logger;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,9 +20,12 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 服务器群组服务
@@ -31,9 +40,12 @@ public class ServerGroupService {
     private final Map<String, ServerGroup> groups = new ConcurrentHashMap<>();
     private final Map<String, Queue<String>> orderedStartupQueues = new ConcurrentHashMap<>(); // 群组启动队列
     private final Map<String, Boolean> groupStartupStatus = new ConcurrentHashMap<>(); // 群组启动状态
+    private final Map<String, Long> startupLatencies = new ConcurrentHashMap<>(); // 服务器启动耗时（毫秒）
+    private final Map<String, GroupStartupReport> startupReports = new ConcurrentHashMap<>(); // 最近一次并行启动报告
     private final ExecutorService executorService = Executors.newCachedThreadPool();
     
     private static final String GROUPS_CONFIG_FILE = "server_groups.json";
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
     
     @PostConstruct
     public void init() {
@@ -159,45 +171,171 @@ public class ServerGroupService {
     
     /**
      * 启动群组中的所有服务器（同时启动）
+     * 按群组声明的依赖关系并行启动，没有依赖的服务器同时启动，
+     * 同时处于启动中的服务器数量受群组的并行上限约束。不会阻塞调用方。
      */
     public void startGroupConcurrently(String groupName) {
+        startGroupGraph(groupName);
+    }
+    
+    /**
+     * 按依赖图并行启动群组
+     * 服务器在它依赖的所有服务器就绪后才启动；依赖的服务器启动失败时跳过它。
+     * @param groupName 群组名称
+     * @return 启动结束后完成的报告，群组不存在或依赖关系无效时异常完成
+     */
+    public CompletableFuture<GroupStartupReport> startGroupGraph(String groupName) {
         ServerGroup group = groups.get(groupName);
         if (group == null) {
             Logger.warn("群组不存在: " + groupName);
-            return;
+            return CompletableFuture.failedFuture(new IllegalArgumentException("群组不存在: " + groupName));
+        }
+        
+        StartupGraph graph;
+        try {
+            graph = StartupGraph.of(new ArrayList<>(group.getServerNames()), group.getDependencies());
+        } catch (IllegalArgumentException e) {
+            Logger.error("群组 " + groupName + " 的启动依赖无效: " + e.getMessage());
+            return CompletableFuture.failedFuture(e);
         }
         
-        Logger.info("开始同时启动群组 " + groupName + " 中的所有服务器");
+        int limit = group.getMaxParallelStarts() > 0 ? group.getMaxParallelStarts() : defaultParallelStarts();
+        StartPermits permits = new StartPermits(limit);
+        GroupStartupReport report = new GroupStartupReport(groupName, graph, limit);
+        startupReports.put(groupName, report);
         groupStartupStatus.put(groupName, true);
+        Logger.info("开始并行启动群组 " + groupName + " 中的服务器 (并行上限: " + limit + ")");
         
-        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        // 按拓扑顺序建立每个服务器的启动任务，前驱任务一定先于后继建立
+        Map<String, CompletableFuture<Void>> finished = new HashMap<>();
+        for (String serverName : graph.getOrder()) {
+            List<String> deps = graph.getDependencies(serverName);
+            CompletableFuture<?>[] predecessors = new CompletableFuture<?>[deps.size()];
+            for (int i = 0; i < deps.size(); i++) {
+                predecessors[i] = finished.get(deps.get(i));
+            }
+            
+            CompletableFuture<Void> future = CompletableFuture.allOf(predecessors)
+                .thenComposeAsync(v -> startGraphNode(group, serverName, deps, permits, report), executorService);
+            finished.put(serverName, future);
+        }
         
-        for (String serverName : group.getServerNames()) {
-            CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-                try {
-                    Optional<Server> serverOpt = serverService.getConfigManager().findServerByName(serverName);
-                    if (serverOpt.isPresent()) {
-                        Server server = serverOpt.get();
-                        // 使用群组配置的启动模式和预设参数，包括内存参数
-                        String jvmArgs = buildJvmArgs(group, server);
-                        serverService.startServer(server, group.getLaunchMode(), null,
-                            jvmArgs,
-                            group.getPresetServerArgs() != null ? group.getPresetServerArgs() : server.getDefaultServerArgs());
-                        Logger.info("服务器 " + serverName + " 启动成功");
-                    } else {
-                        Logger.warn("服务器不存在: " + serverName);
-                    }
-                } catch (Exception e) {
-                    Logger.error("启动服务器失败 " + serverName + ": " + e.getMessage(), e);
+        return CompletableFuture.allOf(finished.values().toArray(new CompletableFuture<?>[0]))
+            .thenApply(v -> {
+                report.complete();
+                groupStartupStatus.put(groupName, false);
+                for (String line : report.toLines()) {
+                    Logger.info(line);
                 }
-            }, executorService);
-            
-            futures.add(future);
+                return report;
+            });
+    }
+    
+    /**
+     * 启动依赖图中的一个服务器，返回的Future总是正常完成
+     */
+    private CompletableFuture<Void> startGraphNode(ServerGroup group, String serverName, List<String> deps,
+                                                   StartPermits permits, GroupStartupReport report) {
+        for (String dep : deps) {
+            if (report.isFailed(dep)) {
+                Logger.warn("服务器 " + serverName + " 依赖的 " + dep + " 启动失败，跳过启动");
+                report.markFinished(serverName, GroupStartupReport.Status.SKIPPED, "依赖的 " + dep + " 启动失败");
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+        
+        // 限制同时处于启动中的服务器数量，避免大量JVM同时争抢磁盘和CPU；等待名额时不占用线程
+        return permits.acquire().thenComposeAsync(v -> launchGraphNode(group, serverName, permits, report), executorService);
+    }
+    
+    private CompletableFuture<Void> launchGraphNode(ServerGroup group, String serverName, StartPermits permits,
+                                                    GroupStartupReport report) {
+        report.markStarting(serverName);
+        return launchAndAwaitReady(group, serverName).handle((latency, error) -> {
+            permits.release();
+            if (error == null) {
+                report.markFinished(serverName, latency >= 0
+                    ? GroupStartupReport.Status.READY : GroupStartupReport.Status.UNCONFIRMED, null);
+            } else {
+                Throwable cause = unwrap(error);
+                Logger.error("服务器 " + serverName + " 启动失败: " + cause.getMessage());
+                report.markFinished(serverName, GroupStartupReport.Status.FAILED, cause.getMessage());
+            }
+            return null;
+        });
+    }
+    
+    /**
+     * 并行启动名额，名额用完时acquire返回的Future等到有服务器启动结束才完成，不阻塞线程
+     */
+    private static final class StartPermits {
+        private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+        private int available;
+        
+        StartPermits(int permits) {
+            this.available = permits;
+        }
+        
+        CompletableFuture<Void> acquire() {
+            synchronized (this) {
+                if (available > 0) {
+                    available--;
+                    return CompletableFuture.completedFuture(null);
+                }
+                CompletableFuture<Void> waiter = new CompletableFuture<>();
+                waiters.add(waiter);
+                return waiter;
+            }
         }
         
-        // 等待所有服务器启动完成
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-        Logger.info("群组 " + groupName + " 中的所有服务器启动完成");
+        void release() {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiters.poll();
+                if (next == null) {
+                    available++;
+                    return;
+                }
+            }
+            // 名额直接交给下一个等待者
+            next.complete(null);
+        }
+    }
+    
+    private static int defaultParallelStarts() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+    
+    /**
+     * 添加启动依赖：dependsOn就绪后才启动serverName
+     * @return 如果添加成功返回true；群组不存在或会形成循环依赖时返回false
+     */
+    public boolean addDependency(String groupName, String serverName, String dependsOn) {
+        ServerGroup group = groups.get(groupName);
+        if (group == null) {
+            Logger.warn("群组不存在: " + groupName);
+            return false;
+        }
+        
+        group.addDependency(serverName, dependsOn);
+        try {
+            StartupGraph.of(new ArrayList<>(group.getServerNames()), group.getDependencies());
+        } catch (IllegalArgumentException e) {
+            group.removeDependency(serverName, dependsOn);
+            Logger.warn("无法添加启动依赖: " + e.getMessage());
+            return false;
+        }
+        saveGroups();
+        return true;
+    }
+    
+    /**
+     * 获取群组最近一次并行启动的报告
+     * @param groupName 群组名称
+     * @return 启动报告，从未并行启动过时返回Optional.empty()
+     */
+    public Optional<GroupStartupReport> getStartupReport(String groupName) {
+        return Optional.ofNullable(startupReports.get(groupName));
     }
     
     /**
@@ -242,52 +380,141 @@ public class ServerGroupService {
         
         String serverName = queue.poll();
         if (serverName != null) {
-            try {
-                Optional<Server> serverOpt = serverService.getConfigManager().findServerByName(serverName);
-                if (serverOpt.isPresent()) {
-                    Server server = serverOpt.get();
-                    // 使用群组配置的启动模式和预设参数，包括内存参数
-                    String jvmArgs = buildJvmArgs(group, server);
-                    serverService.startServer(server, group.getLaunchMode(), null,
-                        jvmArgs,
-                        group.getPresetServerArgs() != null ? group.getPresetServerArgs() : server.getDefaultServerArgs());
-                    Logger.info("服务器 " + serverName + " 已启动，等待启动完成信号...");
-                    
-                    // 在单独的线程中监控启动完成信号
-                    monitorStartupCompletion(groupName, serverName, group.getTriggerKeyword());
-                } else {
-                    Logger.warn("服务器不存在: " + serverName + "，跳过启动");
-                    // 继续启动下一个服务器
-                    startNextServerInQueue(groupName);
+            // 就绪、超时或启动失败后都继续启动下一个服务器
+            launchAndAwaitReady(group, serverName).whenCompleteAsync((latency, error) -> {
+                if (error != null) {
+                    Logger.error("启动服务器失败 " + serverName + ": " + unwrap(error).getMessage());
                 }
-            } catch (Exception e) {
-                Logger.error("启动服务器失败 " + serverName + ": " + e.getMessage(), e);
-                // 继续启动下一个服务器
                 startNextServerInQueue(groupName);
-            }
+            }, executorService);
         }
     }
     
     /**
-     * 监控服务器启动完成情况
+     * 启动服务器并等待其就绪
+     * @return 完成值为启动耗时（毫秒），等待超时或未配置就绪条件时为-1；
+     *         服务器不存在、启动失败或进程在就绪前退出时异常完成
      */
-    private void monitorStartupCompletion(String groupName, String serverName, String triggerKeyword) {
-        // 这里我们模拟监控，实际上需要监听服务器控制台输出
-        // 在真实情况下，我们需要监听服务器输出以检测启动完成信号
-        executorService.submit(() -> {
-            try {
-                // 模拟等待一段时间，实际应用中应监听服务器输出
-                Thread.sleep(10000); // 等待10秒
-                
-                Logger.info("假定服务器 " + serverName + " 启动完成，启动下一个服务器");
-                
-                // 启动队列中的下一个服务器
-                startNextServerInQueue(groupName);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                Logger.error("监控启动完成被中断", e);
+    private CompletableFuture<Long> launchAndAwaitReady(ServerGroup group, String serverName) {
+        ReadinessDetector detector = null;
+        try {
+            Optional<Server> serverOpt = serverService.getConfigManager().findServerByName(serverName);
+            if (!serverOpt.isPresent()) {
+                return CompletableFuture.failedFuture(new IllegalStateException("服务器不存在: " + serverName));
             }
-        });
+            Server server = serverOpt.get();
+            
+            // 在启动前订阅控制台输出，避免错过就绪信号
+            detector = createReadinessDetector(group, serverName);
+            if (detector != null) {
+                serverService.addConsoleListener(serverName, detector);
+            }
+            
+            // 使用群组配置的启动模式和预设参数，包括内存参数；主机资源不足时在准入队列中等待
+            String jvmArgs = buildJvmArgs(group, server);
+            ReadinessDetector subscribed = detector;
+            CompletableFuture<ServerInstance> launch = serverService.submitStart(server, group.getLaunchMode(), null,
+                jvmArgs,
+                group.getPresetServerArgs() != null ? group.getPresetServerArgs() : server.getDefaultServerArgs());
+            launch.whenComplete((instance, error) -> {
+                if (error != null && subscribed != null) {
+                    serverService.removeConsoleListener(serverName, subscribed);
+                }
+            });
+            
+            return launch.thenCompose(instance -> {
+                Logger.info("服务器 " + serverName + " 已启动，等待启动完成信号...");
+                return awaitReady(group, instance, serverName, subscribed);
+            });
+        } catch (Exception e) {
+            if (detector != null) {
+                serverService.removeConsoleListener(serverName, detector);
+            }
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    /**
+     * 根据群组配置创建就绪检测器
+     * @return 就绪检测器，群组没有配置关键词和正则时返回null
+     */
+    private ReadinessDetector createReadinessDetector(ServerGroup group, String serverName) {
+        boolean hasKeyword = group.getTriggerKeyword() != null && !group.getTriggerKeyword().trim().isEmpty();
+        boolean hasPattern = group.getReadyPattern() != null && !group.getReadyPattern().trim().isEmpty();
+        if (!hasKeyword && !hasPattern) {
+            return null;
+        }
+        try {
+            return new ReadinessDetector(serverName, group.getTriggerKeyword(), group.getReadyPattern());
+        } catch (IllegalArgumentException e) {
+            Logger.warn("群组 " + group.getName() + " 的就绪条件无效，改为固定延迟: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 等待服务器启动完成
+     * 检测到就绪信号后立即完成；超时时同样完成（结果为-1），进程在就绪前退出时异常完成。
+     * 没有配置就绪条件时等待群组的启动延迟
+     */
+    private CompletableFuture<Long> awaitReady(ServerGroup group, ServerInstance instance,
+                                               String serverName, ReadinessDetector detector) {
+        if (detector == null) {
+            long delay = Math.max(0, group.getStartupDelay());
+            return CompletableFuture.supplyAsync(() -> {
+                Logger.info("假定服务器 " + serverName + " 启动完成");
+                return -1L;
+            }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executorService));
+        }
+        
+        // 进程在就绪前退出时不必等到超时
+        Process process = instance != null ? instance.getProcess() : null;
+        if (process != null) {
+            process.onExit().thenRun(() ->
+                detector.fail(new IllegalStateException("进程在就绪前退出，退出码: " + process.exitValue())));
+        }
+        
+        int timeoutSeconds = group.getReadyTimeoutSeconds() > 0 ? group.getReadyTimeoutSeconds() : 300;
+        return detector.getFuture()
+            .orTimeout(timeoutSeconds, TimeUnit.SECONDS)
+            .handleAsync((latency, error) -> {
+                serverService.removeConsoleListener(serverName, detector);
+                if (error == null) {
+                    startupLatencies.put(serverName, latency);
+                    if (instance != null) {
+                        serverService.markReady(instance);
+                    }
+                    Logger.info("服务器 " + serverName + " 已就绪，启动耗时 " + latency + " 毫秒");
+                    return latency;
+                }
+                Throwable cause = unwrap(error);
+                if (cause instanceof TimeoutException) {
+                    Logger.warn("等待服务器 " + serverName + " 就绪超时(" + timeoutSeconds + "秒)，视为已启动");
+                    return -1L;
+                }
+                throw new CompletionException(cause);
+            }, executorService);
+    }
+    
+    /**
+     * 获取服务器最近一次群组启动时检测到的启动耗时
+     * @param serverName 服务器名称
+     * @return 启动耗时（毫秒），没有记录时返回Optional.empty()
+     */
+    public Optional<Long> getStartupLatency(String serverName) {
+        return Optional.ofNullable(startupLatencies.get(serverName));
+    }
+    
+    /**
+     * 获取所有服务器最近一次群组启动的启动耗时
+     * @return 服务器名称到启动耗时（毫秒）的映射
+     */
+    public Map<String, Long> getStartupLatencies() {
+        return new HashMap<>(startupLatencies);
+    }
+    
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
     }
     
     /**
@@ -322,39 +549,9 @@ public class ServerGroupService {
      * 保存群组配置到文件
      */
     public void saveGroups() {
-        try (PrintWriter writer = new PrintWriter(GROUPS_CONFIG_FILE)) {
-            writer.println("[");
-            boolean first = true;
-            for (ServerGroup group : groups.values()) {
-                if (!first) {
-                    writer.println(",");
-                }
-                writer.print("  {\n");
-                writer.print("    \"name\":\"" + group.getName() + "\",\n");
-                writer.print("    \"orderedStartup\":" + group.isOrderedStartup() + ",\n");
-                writer.print("    \"triggerKeyword\":\"" + group.getTriggerKeyword() + "\",\n");
-                writer.print("    \"startupDelay\":" + group.getStartupDelay() + ",\n");
-                writer.print("    \"launchMode\":" + group.getLaunchMode() + ",\n");
-                writer.print("    \"presetJvmArgs\":\"" + (group.getPresetJvmArgs() != null ? group.getPresetJvmArgs() : "") + "\",\n");
-                writer.print("    \"presetServerArgs\":\"" + (group.getPresetServerArgs() != null ? group.getPresetServerArgs() : "") + "\",\n");
-                writer.print("    \"minMemory\":\"" + (group.getMinMemory() != null ? group.getMinMemory() : "") + "\",\n");
-                writer.print("    \"maxMemory\":\"" + (group.getMaxMemory() != null ? group.getMaxMemory() : "") + "\",\n");
-                writer.print("    \"serverNames\":[");
-                boolean serverFirst = true;
-                for (String serverName : group.getServerNames()) {
-                    if (!serverFirst) {
-                        writer.print(",");
-                    }
-                    writer.print("\"" + serverName + "\"");
-                    serverFirst = false;
-                }
-                writer.print("]");
-                writer.print("}");
-                first = false;
-            }
-            writer.println();
-            writer.println("]");
-        } catch (FileNotFoundException e) {
+        try {
+            FileUtils.writeAtomically(Paths.get(GROUPS_CONFIG_FILE), gson.toJson(groups.values().toArray(new ServerGroup[0])));
+        } catch (IOException e) {
             Logger.error("保存群组配置失败: " + e.getMessage(), e);
         }
     }
@@ -369,17 +566,22 @@ public class ServerGroupService {
             return;
         }
         
-        try (Scanner scanner = new Scanner(path)) {
-            // 简单的JSON解析，实际应用中应使用JSON库
-            StringBuilder content = new StringBuilder();
-            while (scanner.hasNextLine()) {
-                content.append(scanner.nextLine());
+        try (Reader reader = Files.newBufferedReader(path)) {
+            ServerGroup[] loaded = gson.fromJson(reader, ServerGroup[].class);
+            if (loaded == null) {
+                return;
             }
-            
-            // TODO: 实现完整的JSON解析以支持新字段（launchMode, presetJvmArgs, presetServerArgs）
-            // 当前简单的解析仅能加载基本群组配置
-            Logger.info("群组配置已加载");
-        } catch (Exception e) {
+            for (ServerGroup group : loaded) {
+                if (group == null || group.getName() == null) {
+                    continue;
+                }
+                // 文件中缺失或为null的集合字段恢复为空集合
+                group.setServerNames(group.getServerNames());
+                group.setDependencies(group.getDependencies());
+                groups.put(group.getName(), group);
+            }
+            Logger.info("已加载 " + groups.size() + " 个服务器群组");
+        } catch (IOException | JsonParseException e) {
             Logger.error("加载群组配置失败: " + e.getMessage(), e);
         }
     }
@@ -0,0 +1,17 @@
+package exmo.cy.service;
+
+import exmo.cy.model.ServerLifecycleEvent;
+
+/**
+ * 服务器生命周期监听器
+ * 在启动、停止服务器的调用线程或进程监控线程上被调用，实现应尽快返回，不能阻塞
+ */
+@FunctionalInterface
+public interface ServerLifecycleListener {
+
+    /**
+     * 收到一个生命周期事件
+     * @param event 事件
+     */
+    void onEvent(ServerLifecycleEvent event);
+}
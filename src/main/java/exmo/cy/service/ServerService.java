@@ -1,11 +1,25 @@
 package exmo.cy.service;
 
+import exmo.cy.backup.BackupEngine;
+import exmo.cy.backup.BackupManifest;
 import exmo.cy.config.Constants;
+import exmo.cy.console.CommandCapture;
+import exmo.cy.console.CommandResult;
+import exmo.cy.console.ConsoleEvent;
+import exmo.cy.console.ConsoleEventListener;
+import exmo.cy.console.ConsoleHistory;
+import exmo.cy.console.ConsoleListener;
+import exmo.cy.console.ConsoleStats;
 import exmo.cy.exception.ConfigurationException;
 import exmo.cy.exception.ServerOperationException;
 import exmo.cy.model.LaunchConfig;
 import exmo.cy.model.Server;
 import exmo.cy.model.ServerInstance;
+import exmo.cy.model.ServerLifecycleEvent;
+import exmo.cy.model.ServerRun;
+import exmo.cy.monitor.ManagerMetrics;
+import exmo.cy.monitor.ResourceSampler;
+import exmo.cy.rcon.RconClient;
 import exmo.cy.util.FileUtils;
 import exmo.cy.util.JavaPathFinder;
 import exmo.cy.util.Logger;
@@ -13,12 +27,18 @@ import exmo.cy.scheduler.SchedulerManager;
 import exmo.cy.web.LogWebSocketHandler;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -37,6 +57,14 @@ public class ServerService {
     private final ProcessManager processManager;
     private final Map<String, ServerInstance> activeServers;
     private final Set<String> blockedServers;
+    private final AdmissionController admissionController;
+    private final ResourceSampler resourceSampler;
+    private final LogFileService logFileService;
+    private final MapService mapService;
+    private final ServerSupervisor supervisor;
+    private BackupEngine backupEngine;
+    private final Map<String, Object> backupLocks = new ConcurrentHashMap<>();
+    private final List<ServerLifecycleListener> lifecycleListeners = new CopyOnWriteArrayList<>();
     
     /**
      * 构造函数
@@ -46,6 +74,26 @@ public class ServerService {
         this.processManager = new ProcessManager();
         this.activeServers = new ConcurrentHashMap<>();
         this.blockedServers = new HashSet<>();
+        this.admissionController = new AdmissionController();
+        this.resourceSampler = new ResourceSampler(() -> activeServers);
+        this.logFileService = new LogFileService();
+        this.mapService = new MapService(configManager);
+        this.supervisor = new ServerSupervisor(this);
+        
+        // 配置文件被外部修改时自动重新加载
+        try {
+            configManager.startWatching();
+        } catch (ConfigurationException e) {
+            Logger.warn("无法监视配置文件，外部修改需要重启后生效: " + e.getMessage());
+        }
+        
+        // 按秒采样服务器进程的CPU、内存、线程和文件描述符
+        resourceSampler.start();
+        
+        // 所有服务器的控制台输出写入各自的日志，供日志查看和按时间查询
+        processManager.addGlobalConsoleListener(line ->
+            logFileService.writeServerLog(line.getServerName(), line.isError() ? "ERROR" : "INFO",
+                line.getData(), line.getOffset(), line.getLength()));
         
         // 初始化调度管理器
         SchedulerManager.getInstance().initialize(this);
@@ -204,50 +252,199 @@ public class ServerService {
     
     /**
      * 启动服务器
+     * 主机资源不足时在准入队列中等待，最多等待 {@link Constants#ADMISSION_WAIT_TIMEOUT_SECONDS} 秒
      * @param server 服务器配置
      * @param launchMode 启动模式
      * @param javaPath Java路径
      * @param jvmArgs JVM参数（可选）
      * @param serverArgs 服务器参数（可选）
      * @return 服务器实例
-     * @throws ServerOperationException 如果启动失败
+     * @throws ServerOperationException 如果启动失败或等待主机资源超时
      */
     public ServerInstance startServer(Server server, int launchMode, String javaPath, 
                                       String jvmArgs, String serverArgs) 
             throws ServerOperationException, ConfigurationException {
         
-        if (server == null) {
-            throw new ServerOperationException("服务器配置不能为null");
+        CompletableFuture<ServerInstance> future = submitStart(server, launchMode, javaPath, jvmArgs, serverArgs);
+        try {
+            return future.get(Constants.ADMISSION_WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            if (admissionController.cancel(server.getName())) {
+                throw new ServerOperationException("等待主机资源超时，已取消启动: " + server.getName());
+            }
+            // 取消前刚好被放行，等待启动完成
+            return awaitLaunch(future);
+        } catch (InterruptedException e) {
+            admissionController.cancel(server.getName());
+            Thread.currentThread().interrupt();
+            throw new ServerOperationException("等待启动时被中断: " + server.getName(), e);
+        } catch (ExecutionException e) {
+            throw launchFailure(e.getCause());
         }
-        
-        if (activeServers.containsKey(server.getName())) {
-            throw new ServerOperationException("服务器已在运行: " + server.getName());
+    }
+    
+    /**
+     * 提交启动请求
+     * 启动命令中的最大堆内存和服务器数量经过准入控制，主机资源足够时立即启动，
+     * 否则排队，直到其他服务器退出释放资源后再启动
+     * @param server 服务器配置
+     * @param launchMode 启动模式
+     * @param javaPath Java路径
+     * @param jvmArgs JVM参数（可选）
+     * @param serverArgs 服务器参数（可选）
+     * @return 服务器启动后完成；参数无效、启动失败或排队被取消时异常完成
+     */
+    public CompletableFuture<ServerInstance> submitStart(Server server, int launchMode, String javaPath,
+                                                         String jvmArgs, String serverArgs) {
+        // 手动启动取代计划中的自动重启，并重新开始计算退避
+        if (server != null) {
+            supervisor.reset(server.getName());
+        }
+        return start(server, launchMode, javaPath, jvmArgs, serverArgs);
+    }
+    
+    /**
+     * 监督器按上次的启动配置自动重启服务器，不清除退避状态
+     */
+    CompletableFuture<ServerInstance> submitRestart(Server server, LaunchConfig config) {
+        return start(server, config.getLaunchMode(), config.getJavaPath(), config.getJvmArgs(), config.getServerArgs());
+    }
+    
+    private CompletableFuture<ServerInstance> start(Server server, int launchMode, String javaPath,
+                                                    String jvmArgs, String serverArgs) {
+        long submittedAt = System.nanoTime();
+        try {
+            if (server == null) {
+                throw new ServerOperationException("服务器配置不能为null");
+            }
+            
+            if (activeServers.containsKey(server.getName())) {
+                throw new ServerOperationException("服务器已在运行: " + server.getName());
+            }
+            
+            // 构建进程命令
+            ProcessBuilder pb = buildProcessCommand(server, launchMode, javaPath, jvmArgs, serverArgs);
+            
+            // 按实际启动参数申请主机资源
+            long memory = admissionController.estimateMaxHeap(pb.command());
+            CompletableFuture<AdmissionController.Ticket> admission =
+                admissionController.acquire(server.getName(), memory);
+            if (!admission.isDone()) {
+                Logger.info("主机资源不足，服务器 " + server.getName() + " 已加入启动队列（需要 "
+                    + AdmissionController.formatMemory(memory) + " 堆内存，队列位置 "
+                    + admissionController.getQueuePosition(server.getName()) + "）");
+            }
+            
+            return admission.thenApply(ticket -> {
+                try {
+                    ServerInstance instance = launch(server, pb, launchMode, javaPath, jvmArgs, serverArgs);
+                    ManagerMetrics.recordStart(server.getName(), System.nanoTime() - submittedAt);
+                    return instance;
+                } catch (ServerOperationException | RuntimeException e) {
+                    admissionController.release(server.getName());
+                    throw new CompletionException(e);
+                }
+            });
+        } catch (ServerOperationException e) {
+            return CompletableFuture.failedFuture(e);
         }
+    }
+    
+    /**
+     * 启动已通过准入控制的服务器进程
+     */
+    private ServerInstance launch(Server server, ProcessBuilder pb, int launchMode, String javaPath,
+                                  String jvmArgs, String serverArgs) throws ServerOperationException {
         
-        // 构建进程命令
-        ProcessBuilder pb = buildProcessCommand(server, launchMode, javaPath, jvmArgs, serverArgs);
+        // 服务器运行时导入的地图在这次启动前替换世界目录
+        mapService.applyPendingMap(server);
+        
+        // 在进程启动前订阅启动完成事件
+        CompletableFuture<Void> ready = new CompletableFuture<>();
+        ConsoleEventListener readyListener = event -> ready.complete(null);
+        processManager.addConsoleEventListener(server.getName(), EnumSet.of(ConsoleEvent.Type.READY), readyListener);
         
         // 启动进程
-        ServerInstance instance = processManager.startProcess(pb, this);
+        ServerInstance instance;
+        try {
+            instance = processManager.startProcess(pb, server.getName(), this);
+        } catch (ServerOperationException e) {
+            processManager.removeConsoleEventListener(server.getName(), readyListener);
+            throw e;
+        }
         instance.setServer(server);
         
-        // 设置服务器名称
-        processManager.setServerName(instance, server.getName());
-        
-        // 保存启动配置
-        LaunchConfig config = new LaunchConfig(server.getName(), launchMode, javaPath, jvmArgs, serverArgs);
-        configManager.saveLastLaunchConfig(config);
+        // 过滤并订阅输出，供executeCommand把输出归属到命令
+        CommandCapture capture = new CommandCapture(server.getName(),
+            (command, marker) -> processManager.sendCommand(instance, command, marker));
+        instance.setCommandCapture(capture);
+        processManager.setCommandCapture(server.getName(), capture);
+        // 启用了RCON的服务器优先通过RCON发送命令，RCON在启动完成后才开始监听，连接失败时改用标准输入
+        instance.setRconClient(RconClient.fromServerProperties(server.getName(), Paths.get(server.getCorePath()).getParent()));
         
         // 添加到活动服务器列表
         activeServers.put(server.getName(), instance);
+        if (instance.getConsoleStats() != null) {
+            ManagerMetrics.bindServer(server.getName(), instance.getConsoleStats(),
+                processManager.getConsoleEventParser(server.getName()));
+        }
+        fireLifecycleEvent(new ServerLifecycleEvent(ServerLifecycleEvent.Type.STARTED, server.getName(), null));
         
-        // 监控进程结束
-        startProcessMonitor(instance);
+        ready.whenComplete((ignored, error) -> {
+            processManager.removeConsoleEventListener(server.getName(), readyListener);
+            if (error == null) {
+                markReady(instance);
+            }
+        });
+        instance.getProcess().onExit().thenRun(() ->
+            ready.completeExceptionally(new IllegalStateException("进程在就绪前退出")));
+        
+        // 监督进程退出，按重启策略用同样的配置重启
+        LaunchConfig config = new LaunchConfig(server.getName(), launchMode, javaPath, jvmArgs, serverArgs);
+        supervisor.watch(instance, config);
+        
+        // 保存启动配置，进程已经在运行，保存失败不影响启动结果
+        try {
+            configManager.saveLastLaunchConfig(config);
+        } catch (ConfigurationException e) {
+            Logger.warn("保存启动配置失败: " + e.getMessage());
+        }
         
         Logger.info("服务器已启动: " + server.getName());
         return instance;
     }
     
+    /**
+     * 等待已放行的启动完成
+     */
+    private ServerInstance awaitLaunch(CompletableFuture<ServerInstance> future)
+            throws ServerOperationException, ConfigurationException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServerOperationException("等待启动时被中断", e);
+        } catch (ExecutionException e) {
+            throw launchFailure(e.getCause());
+        }
+    }
+    
+    /**
+     * 把异步启动的失败原因还原为同步接口声明的异常
+     */
+    private static ServerOperationException launchFailure(Throwable cause) throws ConfigurationException {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof ConfigurationException) {
+            throw (ConfigurationException) cause;
+        }
+        if (cause instanceof ServerOperationException) {
+            return (ServerOperationException) cause;
+        }
+        return new ServerOperationException("启动服务器失败: " + cause.getMessage(), cause);
+    }
+    
     /**
      * 构建进程启动命令
      */
@@ -343,27 +540,46 @@ public class ServerService {
     }
     
     /**
-     * 启动进程监控线程
+     * 进程退出后的处理，由监督器判断出退出原因后调用：
+     * 记录停止耗时，发出STOPPED或CRASHED事件，释放命令捕获、RCON连接和准入资源
+     * @param instance 已退出的服务器实例
+     * @param exitCode 进程退出码
+     * @param exit 退出原因
+     * @param exitNanos 进程退出时的System.nanoTime()
      */
-    private void startProcessMonitor(ServerInstance instance) {
-        new Thread(() -> {
-            try {
-                int exitCode = processManager.waitForProcess(instance);
-                String message = "服务器 " + instance.getServer().getName() + " 已关闭，退出代码: " + exitCode;
+    void onProcessExit(ServerInstance instance, int exitCode, ServerRun.Exit exit, long exitNanos) {
+        String serverName = instance.getServer().getName();
+        try {
+            if (instance.getStopRequestedNanos() != 0) {
+                ManagerMetrics.recordStop(serverName, exitNanos - instance.getStopRequestedNanos());
+            }
+            fireLifecycleEvent(new ServerLifecycleEvent(
+                exit.isFailure() ? ServerLifecycleEvent.Type.CRASHED : ServerLifecycleEvent.Type.STOPPED,
+                serverName, exitCode));
+            String level = exit.isFailure() ? "WARN" : "INFO";
+            String message = "服务器 " + serverName + " 已关闭（" + exit.getDescription() + "），退出代码: " + exitCode;
+            if (exit.isFailure()) {
+                Logger.warn(message);
+            } else {
                 Logger.info(message);
-                LogWebSocketHandler.sendLogMessage(instance.getServer().getName(), "[INFO] " + message);
-                // 同时输出到控制台
-                System.out.println("[INFO] " + message);
-            } catch (ServerOperationException e) {
-                String errorMessage = "监控服务器进程时出错: " + e.getMessage();
-                Logger.error(errorMessage, e);
-                LogWebSocketHandler.sendLogMessage(instance.getServer().getName(), "[ERROR] " + errorMessage);
-                // 同时输出到控制台
-                System.err.println("[ERROR] " + errorMessage);
-            } finally {
-                activeServers.remove(instance.getServer().getName());
             }
-        }).start();
+            LogWebSocketHandler.sendLogMessage(serverName, "[" + level + "] " + message);
+            // 同时输出到控制台
+            System.out.println("[" + level + "] " + message);
+        } finally {
+            CommandCapture capture = instance.getCommandCapture();
+            if (capture != null) {
+                processManager.removeCommandCapture(serverName, capture);
+                capture.close();
+            }
+            if (instance.getRconClient() != null) {
+                instance.getRconClient().close();
+            }
+            // 强制停止后可能已经用同样的名称启动了新实例，只移除自己
+            activeServers.remove(serverName, instance);
+            admissionController.release(serverName);
+            ManagerMetrics.unbindServer(serverName);
+        }
     }
     
     /**
@@ -374,14 +590,165 @@ public class ServerService {
     public void stopServer(String serverName) throws ServerOperationException {
         ServerInstance instance = activeServers.get(serverName);
         if (instance == null) {
+            if (supervisor.cancelRestart(serverName)) {
+                Logger.info("服务器 " + serverName + " 正在等待自动重启，已取消");
+                return;
+            }
             throw new ServerOperationException("服务器未运行: " + serverName);
         }
-        processManager.stopServer(instance);
+        // 在后台等待退出，超时依次升级为SIGTERM和SIGKILL
+        stopWithEscalation(instance, true);
         LogWebSocketHandler.sendLogMessage(serverName, "[INFO] 服务器正在停止...");
         // 同时输出到控制台
         System.out.println("[SERVER " + serverName + " INFO] 服务器正在停止...");
     }
     
+    /**
+     * 并行停止多个服务器
+     * 同时向所有服务器发出停止请求，每个服务器各自按截止时间升级，总耗时取决于最慢的服务器而不是所有服务器之和
+     * @param serverNames 服务器名称，未运行的服务器被忽略
+     * @param graceful true时先发送stop命令，超时再升级为SIGTERM和SIGKILL；false时直接SIGKILL（紧急停止）
+     * @return 所有服务器退出（或最后一级也超时）后完成的报告
+     */
+    public CompletableFuture<ShutdownReport> stopServers(Collection<String> serverNames, boolean graceful) {
+        Map<String, ServerInstance> instances = new LinkedHashMap<>();
+        for (String serverName : serverNames) {
+            ServerInstance instance = activeServers.get(serverName);
+            if (instance != null) {
+                instances.put(serverName, instance);
+            }
+        }
+        ShutdownReport report = new ShutdownReport(instances.keySet(), graceful);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Map.Entry<String, ServerInstance> entry : instances.entrySet()) {
+            String serverName = entry.getKey();
+            Process process = entry.getValue().getProcess();
+            futures.add(stopWithEscalation(entry.getValue(), graceful).handle((status, error) -> {
+                int exitCode = process.isAlive() ? -1 : process.exitValue();
+                if (error != null) {
+                    report.markFinished(serverName, ShutdownReport.Status.FAILED, exitCode, error.getMessage());
+                } else {
+                    report.markFinished(serverName, status, exitCode,
+                        status == ShutdownReport.Status.FAILED ? "强制终止后进程仍未退出" : null);
+                }
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            report.complete();
+            return report;
+        });
+    }
+    
+    /**
+     * 停止一个服务器，不阻塞调用线程
+     * 发送stop后等待 {@link Constants#SHUTDOWN_STOP_TIMEOUT_SECONDS} 秒，未退出则发送SIGTERM（服务器的关闭钩子会保存世界）
+     * 再等待 {@link Constants#SHUTDOWN_TERM_TIMEOUT_SECONDS} 秒，仍未退出才SIGKILL。等待通过进程的onExit()和超时完成，不占用线程
+     * @param instance 服务器实例
+     * @param graceful false时跳过stop和SIGTERM直接SIGKILL
+     * @return 进程退出后以最后使用的停止方式完成，SIGKILL后仍未退出时为FAILED
+     */
+    private CompletableFuture<ShutdownReport.Status> stopWithEscalation(ServerInstance instance, boolean graceful) {
+        String serverName = instance.getServer().getName();
+        Process process = instance.getProcess();
+        markStopRequested(instance);
+        if (!graceful) {
+            return kill(serverName, process);
+        }
+        boolean sent;
+        try {
+            processManager.sendCommand(instance, "stop");
+            sent = true;
+        } catch (ServerOperationException e) {
+            Logger.warn("向服务器 " + serverName + " 发送停止命令失败: " + e.getMessage());
+            sent = false;
+        }
+        CompletableFuture<Boolean> stopped = sent
+            ? exitWithin(process, Constants.SHUTDOWN_STOP_TIMEOUT_SECONDS)
+            : CompletableFuture.completedFuture(!process.isAlive());
+        return stopped.thenCompose(exited -> {
+            if (exited) {
+                return CompletableFuture.completedFuture(ShutdownReport.Status.STOPPED);
+            }
+            Logger.warn("服务器 " + serverName + " 没有响应stop命令，发送SIGTERM");
+            LogWebSocketHandler.sendLogMessage(serverName, "[WARN] 服务器没有按时停止，发送SIGTERM");
+            process.destroy();
+            return exitWithin(process, Constants.SHUTDOWN_TERM_TIMEOUT_SECONDS).thenCompose(terminated -> terminated
+                ? CompletableFuture.completedFuture(ShutdownReport.Status.TERMINATED)
+                : kill(serverName, process));
+        });
+    }
+    
+    private CompletableFuture<ShutdownReport.Status> kill(String serverName, Process process) {
+        if (process.isAlive()) {
+            Logger.warn("强制终止服务器 " + serverName + " 的进程");
+            LogWebSocketHandler.sendLogMessage(serverName, "[WARN] 强制终止服务器进程");
+        }
+        process.destroyForcibly();
+        return exitWithin(process, Constants.SHUTDOWN_KILL_TIMEOUT_SECONDS).thenApply(killed -> killed
+            ? ShutdownReport.Status.KILLED
+            : ShutdownReport.Status.FAILED);
+    }
+    
+    /**
+     * 进程在指定时间内退出时以true完成，否则以false完成
+     */
+    private static CompletableFuture<Boolean> exitWithin(Process process, long seconds) {
+        return process.onExit().thenApply(p -> true).completeOnTimeout(false, seconds, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * 记录停止请求，第一次请求时发出STOPPING事件
+     */
+    private void markStopRequested(ServerInstance instance) {
+        if (instance.getStopRequestedNanos() == 0) {
+            instance.markStopRequested();
+            fireLifecycleEvent(new ServerLifecycleEvent(ServerLifecycleEvent.Type.STOPPING,
+                instance.getServer().getName(), null));
+        }
+    }
+    
+    /**
+     * 标记服务器已启动完成，第一次标记时发出READY事件
+     * @param instance 服务器实例
+     */
+    public void markReady(ServerInstance instance) {
+        synchronized (instance) {
+            if (instance.isReady()) {
+                return;
+            }
+            instance.markReady();
+        }
+        fireLifecycleEvent(new ServerLifecycleEvent(ServerLifecycleEvent.Type.READY,
+            instance.getServer().getName(), null));
+    }
+    
+    /**
+     * 订阅服务器生命周期事件
+     * @param listener 监听器
+     */
+    public void addLifecycleListener(ServerLifecycleListener listener) {
+        lifecycleListeners.add(listener);
+    }
+    
+    /**
+     * 取消订阅服务器生命周期事件
+     * @param listener 监听器
+     */
+    public void removeLifecycleListener(ServerLifecycleListener listener) {
+        lifecycleListeners.remove(listener);
+    }
+    
+    private void fireLifecycleEvent(ServerLifecycleEvent event) {
+        for (ServerLifecycleListener listener : lifecycleListeners) {
+            try {
+                listener.onEvent(event);
+            } catch (RuntimeException e) {
+                Logger.debug("生命周期监听器出错: " + e.getMessage());
+            }
+        }
+    }
+    
     /**
      * 强制停止服务器
      * @param serverName 服务器名称
@@ -390,8 +757,13 @@ public class ServerService {
     public void forceStopServer(String serverName) throws ServerOperationException {
         ServerInstance instance = activeServers.get(serverName);
         if (instance == null) {
+            if (supervisor.cancelRestart(serverName)) {
+                Logger.info("服务器 " + serverName + " 正在等待自动重启，已取消");
+                return;
+            }
             throw new ServerOperationException("服务器未运行: " + serverName);
         }
+        markStopRequested(instance);
         processManager.forceStopServer(instance);
         activeServers.remove(serverName);
         LogWebSocketHandler.sendLogMessage(serverName, "[INFO] 服务器已被强制停止");
@@ -408,12 +780,75 @@ public class ServerService {
         if (instance == null) {
             throw new ServerOperationException("服务器未运行: " + serverName);
         }
+        RconClient rcon = instance.getRconClient();
+        if (rcon != null && rcon.isAvailable()) {
+            // RCON的响应不出现在服务器控制台中，收到后转发到WebSocket
+            executeCommand(serverName, command, Constants.COMMAND_TIMEOUT_MS).whenComplete((result, error) -> {
+                if (error != null) {
+                    Logger.warn("发送命令失败: " + command + " (" + error.getMessage() + ")");
+                } else if (result.getMode() == CommandCapture.Mode.RCON && !result.getLines().isEmpty()) {
+                    LogWebSocketHandler.sendCommandResponse(serverName, command, String.join("\n", result.getLines()));
+                }
+            });
+            return;
+        }
         processManager.sendCommand(instance, command);
         LogWebSocketHandler.sendLogMessage(serverName, "[COMMAND SENT] " + command);
         // 同时输出到控制台
         System.out.println("[SERVER " + serverName + " COMMAND SENT] " + command);
     }
     
+    /**
+     * 向服务器发送命令并捕获命令的输出
+     * 服务器启用了RCON时通过RCON执行，响应即输出；否则从控制台输出中捕获
+     * @param serverName 服务器名称
+     * @param command 命令
+     * @param timeoutMs 最长等待时间（毫秒），超时后返回已捕获的输出
+     * @return 命令输出结束后完成；服务器未运行或发送失败时异常完成
+     */
+    public CompletableFuture<CommandResult> executeCommand(String serverName, String command, long timeoutMs) {
+        ServerInstance instance = activeServers.get(serverName);
+        if (instance == null || instance.getCommandCapture() == null) {
+            return CompletableFuture.failedFuture(new ServerOperationException("服务器未运行: " + serverName));
+        }
+        LogWebSocketHandler.sendLogMessage(serverName, "[COMMAND SENT] " + command);
+        System.out.println("[SERVER " + serverName + " COMMAND SENT] " + command);
+        CommandCapture capture = instance.getCommandCapture();
+        RconClient rcon = instance.getRconClient();
+        if (rcon == null || !rcon.isAvailable()) {
+            return capture.execute(command, timeoutMs);
+        }
+        // RCON没有发出命令时改用标准输入，已发出的命令不重发
+        return rcon.execute(command, timeoutMs).exceptionallyCompose(error -> {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof RconClient.UnavailableException) {
+                return capture.execute(command, timeoutMs);
+            }
+            return CompletableFuture.failedFuture(cause);
+        });
+    }
+    
+    /**
+     * 向服务器发送命令并等待命令的输出
+     * @param serverName 服务器名称
+     * @param command 命令
+     * @return 命令的输出；超过 {@link Constants#COMMAND_TIMEOUT_MS} 时返回已捕获的部分
+     * @throws ServerOperationException 如果服务器未运行或发送失败
+     */
+    public CommandResult executeCommand(String serverName, String command) throws ServerOperationException {
+        try {
+            return executeCommand(serverName, command, Constants.COMMAND_TIMEOUT_MS).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServerOperationException("等待命令输出时被中断: " + command, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ServerOperationException) {
+                throw (ServerOperationException) e.getCause();
+            }
+            throw new ServerOperationException("执行命令失败: " + command, e.getCause());
+        }
+    }
+    
     /**
      * 获取所有活动服务器
      * @return 活动服务器映射
@@ -431,6 +866,86 @@ public class ServerService {
         return Optional.ofNullable(activeServers.get(serverName));
     }
     
+    /**
+     * 获取服务器控制台吞吐量统计
+     * @param serverName 服务器名称
+     * @return 统计信息，如果服务器从未启动返回Optional.empty()
+     */
+    public Optional<ConsoleStats> getConsoleStats(String serverName) {
+        ServerInstance instance = activeServers.get(serverName);
+        if (instance != null && instance.getConsoleStats() != null) {
+            return Optional.of(instance.getConsoleStats());
+        }
+        return processManager.getConsolePump().getStats(serverName);
+    }
+    
+    /**
+     * 获取服务器控制台历史
+     * 服务器停止后仍可获取最后一次运行的历史
+     * @param serverName 服务器名称
+     * @return 控制台历史，如果服务器从未启动返回Optional.empty()
+     */
+    public Optional<ConsoleHistory> getConsoleHistory(String serverName) {
+        ServerInstance instance = activeServers.get(serverName);
+        if (instance != null && instance.getConsoleHistory() != null) {
+            return Optional.of(instance.getConsoleHistory());
+        }
+        return processManager.getConsoleHistory(serverName);
+    }
+    
+    /**
+     * 订阅服务器的控制台输出，可以在服务器启动前订阅
+     * @param serverName 服务器名称
+     * @param listener 监听器
+     */
+    public void addConsoleListener(String serverName, ConsoleListener listener) {
+        processManager.addConsoleListener(serverName, listener);
+    }
+    
+    /**
+     * 取消订阅服务器的控制台输出
+     * @param serverName 服务器名称
+     * @param listener 监听器
+     */
+    public void removeConsoleListener(String serverName, ConsoleListener listener) {
+        processManager.removeConsoleListener(serverName, listener);
+    }
+    
+    /**
+     * 按事件类型订阅服务器的控制台事件，可以在服务器启动前订阅
+     * @param serverName 服务器名称
+     * @param types 订阅的事件类型
+     * @param listener 监听器（在控制台泵线程上调用，不能阻塞）
+     */
+    public void addConsoleEventListener(String serverName, Set<ConsoleEvent.Type> types, ConsoleEventListener listener) {
+        processManager.addConsoleEventListener(serverName, types, listener);
+    }
+    
+    /**
+     * 取消订阅服务器的控制台事件
+     * @param serverName 服务器名称
+     * @param listener 监听器
+     */
+    public void removeConsoleEventListener(String serverName, ConsoleEventListener listener) {
+        processManager.removeConsoleEventListener(serverName, listener);
+    }
+    
+    /**
+     * 订阅所有服务器的控制台输出
+     * @param listener 监听器
+     */
+    public void addGlobalConsoleListener(ConsoleListener listener) {
+        processManager.addGlobalConsoleListener(listener);
+    }
+    
+    /**
+     * 取消订阅所有服务器的控制台输出
+     * @param listener 监听器
+     */
+    public void removeGlobalConsoleListener(ConsoleListener listener) {
+        processManager.removeGlobalConsoleListener(listener);
+    }
+    
     /**
      * 删除服务器
      * @param serverName 服务器名称
@@ -454,6 +969,8 @@ public class ServerService {
         
         // 删除配置
         configManager.deleteServer(serverName);
+        resourceSampler.remove(serverName);
+        supervisor.forget(serverName);
         
         // 删除本地文件
         if (deleteFiles) {
@@ -462,7 +979,6 @@ public class ServerService {
                 FileUtils.deleteDirectory(serverDir);
                 Logger.info("已删除服务器目录: " + serverDir);
             }
-
         }
         
         Logger.info("已删除服务器: " + serverName);
@@ -476,6 +992,11 @@ public class ServerService {
         } catch (Exception e) {
             Logger.error("关闭调度管理器时出错: " + e.getMessage(), e);
         }
+        supervisor.shutdown();
+        resourceSampler.stop();
+        processManager.shutdown();
+        configManager.close();
+        logFileService.close();
     }
     /**
      * 切换服务器核心版本
@@ -508,11 +1029,14 @@ public class ServerService {
     
     /**
      * 创建备份
+     * 备份是增量的：与该服务器上一次备份相比没有变化的文件不会被重新读取，内容已存在的块不会被重复保存。
+     * 服务器正在运行时先暂停自动保存并把世界写入磁盘，在暂停期间把变化的文件复制到暂存目录后立即恢复保存，
+     * 再从快照中备份，因此备份内容一致，暂停保存的时间只包括复制变化文件的时间。
      * @param serverName 服务器名称
-     * @return 备份目录路径
+     * @return 备份清单
      * @throws ServerOperationException 如果备份失败
      */
-    public Path createBackup(String serverName) throws ServerOperationException, ConfigurationException {
+    public BackupManifest createBackup(String serverName) throws ServerOperationException, ConfigurationException {
         Optional<Server> serverOpt = configManager.findServerByName(serverName);
         if (!serverOpt.isPresent()) {
             throw new ServerOperationException("服务器不存在: " + serverName);
@@ -521,16 +1045,169 @@ public class ServerService {
         Server server = serverOpt.get();
         Path serverDir = Paths.get(server.getCorePath()).getParent();
         
-        // 创建备份目录
-        String timestamp = new SimpleDateFormat(Constants.TIMESTAMP_FORMAT).format(new Date());
-        Path backupDir = Paths.get(Constants.BACKUPS_DIR, timestamp, serverName);
-        FileUtils.ensureDirectoryExists(backupDir);
+        // 同一服务器的备份依次进行，避免两次save-off/save-on交错
+        synchronized (backupLocks.computeIfAbsent(serverName, name -> new Object())) {
+            BackupEngine engine = getBackupEngine();
+            BackupManifest manifest = activeServers.containsKey(serverName)
+                ? backupRunningServer(serverName, serverDir, engine) : backup(engine, serverName, serverDir);
+            Logger.info("创建备份: " + serverName + "/" + manifest.getId() + "，" + manifest.getFileCount() + " 个文件，"
+                + manifest.getHashedFiles() + " 个有变化，新增 " + manifest.getNewBytes() / 1024 / 1024 + " MB，耗时 "
+                + manifest.getDurationMs() + " ms");
+            return manifest;
+        }
+    }
+    
+    private static BackupManifest backup(BackupEngine engine, String serverName, Path serverDir) throws ServerOperationException {
+        try {
+            return engine.backup(serverName, serverDir);
+        } catch (IOException e) {
+            throw new ServerOperationException("创建备份失败: " + serverName, e);
+        }
+    }
+    
+    /**
+     * 备份运行中服务器的目录
+     * 依次发送save-off和save-all flush，等到控制台输出保存完成后创建快照（把变化的文件复制到暂存目录），
+     * 无论成功与否随后都发送save-on；分块和写入块存储在恢复保存之后从快照中进行。
+     * @return 备份清单
+     * @throws ServerOperationException 如果等待保存超时或备份失败
+     */
+    private BackupManifest backupRunningServer(String serverName, Path serverDir, BackupEngine engine) 
+            throws ServerOperationException {
+        BackupEngine.Snapshot snapshot = snapshotRunningServer(serverName, serverDir, engine);
+        try {
+            return engine.backup(snapshot);
+        } catch (IOException e) {
+            throw new ServerOperationException("创建备份失败: " + serverName, e);
+        } finally {
+            snapshot.close();
+        }
+    }
+    
+    /**
+     * 在暂停保存期间创建服务器目录的快照，暂停时间只包括保存世界和复制变化文件的时间
+     */
+    private BackupEngine.Snapshot snapshotRunningServer(String serverName, Path serverDir, BackupEngine engine) 
+            throws ServerOperationException {
+        CompletableFuture<Void> saved = new CompletableFuture<>();
+        ConsoleEventListener savedListener = event -> saved.complete(null);
+        addConsoleEventListener(serverName, EnumSet.of(ConsoleEvent.Type.WORLD_SAVED), savedListener);
+        long pauseStart = System.nanoTime();
+        try {
+            // 等待save-off执行完再发送save-all，两条命令通过RCON发送时可能分到不同的连接
+            executeCommand(serverName, "save-off");
+            executeCommand(serverName, "save-all flush");
+            try {
+                saved.get(Constants.BACKUP_SAVE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                throw new ServerOperationException("等待服务器保存世界超时: " + serverName);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServerOperationException("等待服务器保存世界时被中断: " + serverName, e);
+            } catch (ExecutionException e) {
+                throw new ServerOperationException("等待服务器保存世界失败: " + serverName, e.getCause());
+            }
+            long saveMs = (System.nanoTime() - pauseStart) / 1_000_000L;
+            BackupEngine.Snapshot snapshot;
+            try {
+                snapshot = engine.snapshot(serverName, serverDir, true);
+            } catch (IOException e) {
+                throw new ServerOperationException("创建备份快照失败: " + serverName, e);
+            }
+            Logger.info("服务器 " + serverName + " 的快照已创建，复制 " + snapshot.getStagedBytes() / 1024 + " KB，保存世界 "
+                + saveMs + " ms，暂停保存共 " + (System.nanoTime() - pauseStart) / 1_000_000L + " ms");
+            return snapshot;
+        } finally {
+            removeConsoleEventListener(serverName, savedListener);
+            if (activeServers.containsKey(serverName)) {
+                try {
+                    sendCommand(serverName, "save-on");
+                } catch (ServerOperationException e) {
+                    Logger.error("恢复服务器自动保存失败，请手动执行 save-on: " + serverName, e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 把maps目录中的地图导入服务器
+     * 服务器已停止时直接替换世界目录；正在运行时先准备好新世界，下次启动前替换
+     * @param serverName 服务器名称
+     * @param mapName 地图名（ZIP文件名或目录名）
+     * @param progress 进度回调，可以为null
+     * @return 如果世界已替换返回true，等待下次启动时替换返回false
+     * @throws ServerOperationException 如果服务器或地图不存在或导入失败
+     */
+    public boolean switchMap(String serverName, String mapName, FileUtils.Progress progress) 
+            throws ServerOperationException, ConfigurationException {
+        Optional<Server> serverOpt = configManager.findServerByName(serverName);
+        if (!serverOpt.isPresent()) {
+            throw new ServerOperationException("服务器不存在: " + serverName);
+        }
+        return mapService.importMap(serverOpt.get(), mapName, () -> activeServers.containsKey(serverName), progress);
+    }
+    
+    /**
+     * 把服务器目录恢复到指定备份，服务器必须已停止
+     * @param serverName 服务器名称
+     * @param backupId 备份ID
+     * @return 恢复的备份清单
+     * @throws ServerOperationException 如果服务器正在运行或恢复失败
+     */
+    public BackupManifest restoreBackup(String serverName, String backupId) 
+            throws ServerOperationException, ConfigurationException {
+        if (activeServers.containsKey(serverName)) {
+            throw new ServerOperationException("无法恢复正在运行的服务器: " + serverName);
+        }
         
-        // 复制服务器目录
-        FileUtils.copyDirectory(serverDir, backupDir);
+        Optional<Server> serverOpt = configManager.findServerByName(serverName);
+        if (!serverOpt.isPresent()) {
+            throw new ServerOperationException("服务器不存在: " + serverName);
+        }
         
-        Logger.info("创建备份: " + backupDir);
-        return backupDir;
+        Path serverDir = Paths.get(serverOpt.get().getCorePath()).getParent();
+        try {
+            BackupManifest manifest = getBackupEngine().restore(serverName, backupId, serverDir);
+            Logger.info("已将服务器 " + serverName + " 恢复到备份 " + backupId);
+            return manifest;
+        } catch (IOException e) {
+            throw new ServerOperationException("恢复备份失败: " + serverName + "/" + backupId, e);
+        }
+    }
+    
+    /**
+     * 获取备份引擎，第一次使用时创建备份目录
+     * @throws ServerOperationException 如果备份目录无法创建
+     */
+    public synchronized BackupEngine getBackupEngine() throws ServerOperationException {
+        if (backupEngine == null) {
+            try {
+                backupEngine = new BackupEngine(Paths.get(Constants.BACKUPS_DIR));
+            } catch (IOException e) {
+                throw new ServerOperationException("无法打开备份目录: " + Constants.BACKUPS_DIR, e);
+            }
+        }
+        return backupEngine;
+    }
+    
+    public ServerSupervisor getSupervisor() {
+        return supervisor;
+    }
+    
+    public LogFileService getLogFileService() {
+        return logFileService;
+    }
+    
+    public MapService getMapService() {
+        return mapService;
+    }
+    
+    public ResourceSampler getResourceSampler() {
+        return resourceSampler;
+    }
+    
+    public AdmissionController getAdmissionController() {
+        return admissionController;
     }
     
     public ConfigurationManager getConfigManager() {
@@ -574,23 +1251,20 @@ public class ServerService {
     
     /**
      * 关闭所有正在运行的服务器
+     * 并行发送stop并等待全部退出，没有按时退出的服务器依次升级为SIGTERM和SIGKILL
+     * @return 停止报告
      */
-    public void shutdownAllServers() {
+    public ShutdownReport shutdownAllServers() {
         Logger.info("开始关闭所有服务器...");
+        // 等待中的自动重启不再执行
+        supervisor.cancelAll();
         
-        // 获取所有活动服务器的副本以避免并发修改异常
-        Set<String> serverNames = new HashSet<>(activeServers.keySet());
-        
-        for (String serverName : serverNames) {
-            try {
-                Logger.info("正在停止服务器: " + serverName);
-                forceStopServer(serverName);
-                Logger.info("服务器已停止: " + serverName);
-            } catch (ServerOperationException e) {
-                Logger.error("停止服务器失败: " + serverName + ", 错误: " + e.getMessage());
-            }
+        ShutdownReport report = stopServers(new ArrayList<>(activeServers.keySet()), true).join();
+        for (String line : report.toLines()) {
+            Logger.info(line);
         }
         
         Logger.info("所有服务器已关闭");
+        return report;
     }
 }
\ No newline at end of file
@@ -0,0 +1,408 @@
+package exmo.cy.service;
+
+import exmo.cy.config.Constants;
+import exmo.cy.console.ConsoleEvent;
+import exmo.cy.console.ConsoleEventListener;
+import exmo.cy.exception.ConfigurationException;
+import exmo.cy.model.LaunchConfig;
+import exmo.cy.model.RestartPolicy;
+import exmo.cy.model.Server;
+import exmo.cy.model.ServerInstance;
+import exmo.cy.model.ServerRun;
+import exmo.cy.monitor.ManagerMetrics;
+import exmo.cy.util.Logger;
+import exmo.cy.web.LogWebSocketHandler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务器进程监督器
+ * 通过 {@link Process#onExit()} 得知进程退出，不为每个服务器占用一个阻塞在waitFor()上的线程，
+ * 退出处理和计划中的重启都在一个共用的调度线程上执行。
+ * 进程退出时按是否请求过停止、退出码以及运行期间控制台中的看门狗和内存溢出信息判断退出原因，
+ * 再按服务器的 {@link RestartPolicy} 决定是否重启：连续重启的等待时间从 {@link Constants#RESTART_BACKOFF_BASE_MS}
+ * 开始翻倍，最长 {@link Constants#RESTART_BACKOFF_MAX_MS}；{@link Constants#RESTART_CRASH_LOOP_WINDOW_MS} 内异常退出
+ * {@link Constants#RESTART_CRASH_LOOP_COUNT} 次视为崩溃循环，不再自动重启，直到手动启动。
+ */
+public class ServerSupervisor {
+
+    // 退出码 128+9：进程被SIGKILL杀死
+    private static final int EXIT_SIGKILL = 137;
+
+    /**
+     * 一次运行期间从控制台观察到的退出线索
+     */
+    private static final class Watch implements ConsoleEventListener {
+        private static final String OUT_OF_MEMORY = "OutOfMemoryError";
+
+        volatile boolean watchdog;
+        volatile boolean outOfMemory;
+
+        @Override
+        public void onEvent(ConsoleEvent event) {
+            if (event.getType() == ConsoleEvent.Type.WATCHDOG) {
+                watchdog = true;
+            } else if (!outOfMemory && event.getMessage().contains(OUT_OF_MEMORY)) {
+                // 只订阅了崩溃和异常行，出现得很少，按需解码
+                outOfMemory = true;
+            }
+        }
+    }
+
+    /**
+     * 一个服务器的重启状态，访问时对该对象加锁
+     */
+    private static final class State {
+        final Deque<ServerRun> history = new ArrayDeque<>();
+        // 计入崩溃循环检测的异常退出时间（System.currentTimeMillis()）
+        final Deque<Long> failures = new ArrayDeque<>();
+        // 连续自动重启的次数，决定下次的退避时间；手动启动或运行足够长后清零
+        int attempts;
+        ScheduledFuture<?> pendingRestart;
+        long restartAt;
+        boolean crashLoop;
+    }
+
+    private final ServerService serverService;
+    private final ScheduledExecutorService executor;
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+    private volatile boolean shutdown;
+
+    ServerSupervisor(ServerService serverService) {
+        this.serverService = serverService;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "server-supervisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 开始监督刚启动的服务器进程
+     * @param instance 服务器实例
+     * @param config 这次启动使用的配置，自动重启时沿用
+     */
+    void watch(ServerInstance instance, LaunchConfig config) {
+        String serverName = instance.getServer().getName();
+        Watch watch = new Watch();
+        serverService.addConsoleEventListener(serverName,
+            EnumSet.of(ConsoleEvent.Type.WATCHDOG, ConsoleEvent.Type.CRASH, ConsoleEvent.Type.EXCEPTION), watch);
+        instance.getProcess().onExit().thenRun(() -> {
+            long endTime = System.currentTimeMillis();
+            long exitNanos = System.nanoTime();
+            Runnable handler = () -> onExit(instance, config, watch, endTime, exitNanos);
+            try {
+                // 进程退出时控制台泵可能还没读完最后的输出（崩溃报告、看门狗信息），稍等再判断原因
+                executor.schedule(handler, Constants.EXIT_DRAIN_MS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                handler.run();
+            }
+        });
+    }
+
+    /**
+     * 手动启动服务器：取消计划中的自动重启，清除退避和崩溃循环状态
+     */
+    void reset(String serverName) {
+        State state = states.get(serverName);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            cancelPending(state);
+            state.attempts = 0;
+            state.failures.clear();
+            state.crashLoop = false;
+        }
+    }
+
+    /**
+     * 取消计划中的自动重启
+     * @param serverName 服务器名称
+     * @return 如果有计划中的重启并已取消返回true
+     */
+    public boolean cancelRestart(String serverName) {
+        State state = states.get(serverName);
+        if (state == null) {
+            return false;
+        }
+        synchronized (state) {
+            return cancelPending(state);
+        }
+    }
+
+    /**
+     * 取消所有计划中的自动重启
+     */
+    public void cancelAll() {
+        for (State state : states.values()) {
+            synchronized (state) {
+                cancelPending(state);
+            }
+        }
+    }
+
+    /**
+     * 服务器被删除：取消计划中的重启并丢弃运行记录
+     */
+    void forget(String serverName) {
+        cancelRestart(serverName);
+        states.remove(serverName);
+    }
+
+    /**
+     * 获取服务器最近的运行记录
+     * @param serverName 服务器名称
+     * @return 按时间先后排列的运行记录，最多 {@link Constants#RUN_HISTORY_SIZE} 条
+     */
+    public List<ServerRun> getRunHistory(String serverName) {
+        State state = states.get(serverName);
+        if (state == null) {
+            return Collections.emptyList();
+        }
+        synchronized (state) {
+            return new ArrayList<>(state.history);
+        }
+    }
+
+    /**
+     * 获取计划中的自动重启时间
+     * @param serverName 服务器名称
+     * @return 重启时间（System.currentTimeMillis()），没有计划中的重启时返回0
+     */
+    public long getPendingRestartAt(String serverName) {
+        State state = states.get(serverName);
+        if (state == null) {
+            return 0;
+        }
+        synchronized (state) {
+            return state.pendingRestart != null ? state.restartAt : 0;
+        }
+    }
+
+    /**
+     * 服务器是否因为崩溃循环而停止了自动重启
+     */
+    public boolean isCrashLoop(String serverName) {
+        State state = states.get(serverName);
+        if (state == null) {
+            return false;
+        }
+        synchronized (state) {
+            return state.crashLoop;
+        }
+    }
+
+    /**
+     * 停止监督：取消所有计划中的重启，之后的进程退出只做清理
+     */
+    void shutdown() {
+        shutdown = true;
+        cancelAll();
+        executor.shutdown();
+    }
+
+    /**
+     * 判断退出原因
+     */
+    static ServerRun.Exit classify(boolean stopRequested, int exitCode, boolean watchdog, boolean outOfMemory) {
+        if (stopRequested) {
+            return ServerRun.Exit.STOPPED;
+        }
+        // 看门狗终止进程时原版以1退出，Paper以0退出，都不能只看退出码
+        if (watchdog) {
+            return ServerRun.Exit.WATCHDOG;
+        }
+        if (exitCode == EXIT_SIGKILL || outOfMemory) {
+            return ServerRun.Exit.OOM_KILLED;
+        }
+        return exitCode == 0 ? ServerRun.Exit.CLEAN_EXIT : ServerRun.Exit.CRASH;
+    }
+
+    private void onExit(ServerInstance instance, LaunchConfig config, Watch watch, long endTime, long exitNanos) {
+        String serverName = instance.getServer().getName();
+        serverService.removeConsoleEventListener(serverName, watch);
+        int exitCode = instance.getProcess().exitValue();
+        ServerRun.Exit exit = classify(instance.getStopRequestedNanos() != 0, exitCode, watch.watchdog, watch.outOfMemory);
+        try {
+            serverService.onProcessExit(instance, exitCode, exit, exitNanos);
+        } catch (RuntimeException e) {
+            Logger.error("处理服务器 " + serverName + " 退出时出错: " + e.getMessage(), e);
+        }
+        ManagerMetrics.recordExit(serverName, exit);
+
+        State state = states.computeIfAbsent(serverName, name -> new State());
+        ServerRun run;
+        synchronized (state) {
+            int attempt = state.attempts;
+            // 这次运行足够长，之前的连续重启不再影响退避时间
+            if (endTime - instance.getStartTime() >= Constants.RESTART_STABLE_MS) {
+                state.attempts = 0;
+            }
+            long delay = -1;
+            if (shouldRestart(instance.getServer(), exit) && !recordFailure(serverName, state, exit, endTime)) {
+                delay = scheduleRestart(serverName, state, config);
+            }
+            run = new ServerRun(serverName, instance.getStartTime(), endTime, instance.getStartupMillis(),
+                exitCode, exit, attempt, delay);
+            state.history.addLast(run);
+            while (state.history.size() > Constants.RUN_HISTORY_SIZE) {
+                state.history.removeFirst();
+            }
+        }
+        Logger.info("服务器 " + serverName + " 本次运行结束: " + exit.getDescription() + "，退出代码 " + exitCode
+            + "，运行 " + run.getDurationMillis() / 1000 + " 秒"
+            + (run.getRestartDelayMillis() >= 0 ? "，" + run.getRestartDelayMillis() / 1000 + " 秒后自动重启" : ""));
+        if (run.getRestartDelayMillis() >= 0) {
+            LogWebSocketHandler.sendLogMessage(serverName, "[INFO] 服务器将在 "
+                + run.getRestartDelayMillis() / 1000 + " 秒后自动重启");
+        }
+    }
+
+    /**
+     * 按服务器当前的重启策略判断是否需要重启，配置在运行期间被修改时以最新的为准
+     */
+    private boolean shouldRestart(Server server, ServerRun.Exit exit) {
+        if (shutdown || exit == ServerRun.Exit.STOPPED) {
+            return false;
+        }
+        RestartPolicy policy;
+        try {
+            Optional<Server> current = serverService.getConfigManager().findServerByName(server.getName());
+            if (!current.isPresent()) {
+                // 服务器已经被删除
+                return false;
+            }
+            policy = current.get().getRestartPolicy();
+        } catch (ConfigurationException e) {
+            policy = server.getRestartPolicy();
+        }
+        switch (policy) {
+            case ALWAYS:
+                return true;
+            case ON_CRASH:
+                return exit.isFailure();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 记录一次异常退出并检查是否进入崩溃循环，调用方持有state的锁
+     * @return 如果进入崩溃循环、不应再重启返回true
+     */
+    private boolean recordFailure(String serverName, State state, ServerRun.Exit exit, long now) {
+        if (!exit.isFailure()) {
+            return false;
+        }
+        state.failures.addLast(now);
+        while (!state.failures.isEmpty() && now - state.failures.peekFirst() > Constants.RESTART_CRASH_LOOP_WINDOW_MS) {
+            state.failures.removeFirst();
+        }
+        if (state.failures.size() < Constants.RESTART_CRASH_LOOP_COUNT) {
+            return false;
+        }
+        state.crashLoop = true;
+        String message = "服务器 " + serverName + " 在 " + Constants.RESTART_CRASH_LOOP_WINDOW_MS / 60_000 + " 分钟内异常退出 "
+            + state.failures.size() + " 次，判断为崩溃循环，已停止自动重启，请检查后手动启动";
+        Logger.error(message);
+        LogWebSocketHandler.sendLogMessage(serverName, "[ERROR] " + message);
+        return true;
+    }
+
+    /**
+     * 按退避时间计划重启，调用方持有state的锁
+     * @return 距离重启的毫秒数
+     */
+    private long scheduleRestart(String serverName, State state, LaunchConfig config) {
+        long delay = Math.min(Constants.RESTART_BACKOFF_BASE_MS << Math.min(state.attempts, 16),
+            Constants.RESTART_BACKOFF_MAX_MS);
+        state.attempts++;
+        state.restartAt = System.currentTimeMillis() + delay;
+        state.pendingRestart = executor.schedule(() -> restart(serverName, config), delay, TimeUnit.MILLISECONDS);
+        return delay;
+    }
+
+    private void restart(String serverName, LaunchConfig config) {
+        State state = states.get(serverName);
+        if (state == null) {
+            return;
+        }
+        int attempt;
+        synchronized (state) {
+            // 在等待锁期间被取消
+            if (state.pendingRestart == null || shutdown) {
+                return;
+            }
+            state.pendingRestart = null;
+            attempt = state.attempts;
+        }
+        if (serverService.getActiveServer(serverName).isPresent()) {
+            return;
+        }
+        Optional<Server> server;
+        try {
+            server = serverService.getConfigManager().findServerByName(serverName);
+        } catch (ConfigurationException e) {
+            onRestartFailed(serverName, config, e);
+            return;
+        }
+        if (!server.isPresent()) {
+            Logger.warn("服务器 " + serverName + " 已被删除，取消自动重启");
+            return;
+        }
+        Logger.info("正在自动重启服务器 " + serverName + "（连续第 " + attempt + " 次）");
+        LogWebSocketHandler.sendLogMessage(serverName, "[INFO] 正在自动重启服务器（连续第 " + attempt + " 次）");
+        serverService.submitRestart(server.get(), config).whenComplete((instance, error) -> {
+            if (error != null) {
+                onRestartFailed(serverName, config, error);
+            }
+        });
+    }
+
+    /**
+     * 自动重启没能启动进程：按异常退出处理，继续退避重试
+     */
+    private void onRestartFailed(String serverName, LaunchConfig config, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        Logger.warn("自动重启服务器 " + serverName + " 失败: " + cause.getMessage());
+        State state = states.get(serverName);
+        if (state == null || serverService.getActiveServer(serverName).isPresent()) {
+            return;
+        }
+        synchronized (state) {
+            if (shutdown || state.pendingRestart != null
+                    || recordFailure(serverName, state, ServerRun.Exit.CRASH, System.currentTimeMillis())) {
+                return;
+            }
+            long delay = scheduleRestart(serverName, state, config);
+            Logger.info("将在 " + delay / 1000 + " 秒后再次尝试启动服务器 " + serverName);
+        }
+    }
+
+    /**
+     * 取消计划中的重启，调用方持有state的锁
+     */
+    private static boolean cancelPending(State state) {
+        if (state.pendingRestart == null) {
+            return false;
+        }
+        state.pendingRestart.cancel(false);
+        state.pendingRestart = null;
+        return true;
+    }
+}
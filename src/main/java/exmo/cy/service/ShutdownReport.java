@@ -0,0 +1,190 @@
+package exmo.cy.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 并行停止报告
+ * 记录每个服务器退出的时间（相对开始停止的毫秒数）和最终使用的停止方式，
+ * 全部结束后计算总耗时和最慢的服务器。
+ */
+public class ShutdownReport {
+
+    /**
+     * 单个服务器的停止结果
+     */
+    public enum Status {
+        STOPPING,     // 等待退出
+        STOPPED,      // 收到stop命令后自行退出
+        TERMINATED,   // stop超时，收到SIGTERM后退出
+        KILLED,       // SIGTERM超时（或紧急停止），被SIGKILL终止
+        FAILED        // SIGKILL后仍未在截止时间内退出
+    }
+
+    /**
+     * 单个服务器的停止记录
+     */
+    public static final class Entry {
+        private final String serverName;
+        private volatile Status status = Status.STOPPING;
+        private volatile long finishedAt = -1;
+        private volatile int exitCode = -1;
+        private volatile String message;
+
+        Entry(String serverName) {
+            this.serverName = serverName;
+        }
+
+        public String getServerName() {
+            return serverName;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * 进程退出的时间（相对开始停止的毫秒数），未结束时为-1
+         */
+        public long getFinishedAt() {
+            return finishedAt;
+        }
+
+        /**
+         * 进程退出码，未退出时为-1
+         */
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        /**
+         * 失败原因
+         */
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private final boolean graceful;
+    private final long startedAtMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private volatile long totalMillis = -1;
+
+    ShutdownReport(Collection<String> serverNames, boolean graceful) {
+        this.graceful = graceful;
+        for (String server : serverNames) {
+            entries.put(server, new Entry(server));
+        }
+    }
+
+    private long elapsed() {
+        return (System.nanoTime() - startNanos) / 1_000_000L;
+    }
+
+    void markFinished(String server, Status status, int exitCode, String message) {
+        Entry entry = entries.get(server);
+        entry.finishedAt = elapsed();
+        entry.exitCode = exitCode;
+        entry.message = message;
+        entry.status = status;
+    }
+
+    void complete() {
+        totalMillis = elapsed();
+    }
+
+    /**
+     * 是否先发送stop命令；false表示紧急停止，直接强制终止
+     */
+    public boolean isGraceful() {
+        return graceful;
+    }
+
+    public long getStartedAtMillis() {
+        return startedAtMillis;
+    }
+
+    /**
+     * 获取所有服务器的停止记录
+     */
+    public Map<String, Entry> getEntries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * 获取总耗时（毫秒），尚未结束时返回-1
+     */
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    /**
+     * 获取最后退出的服务器，它决定了总耗时
+     * @return 服务器名称，没有服务器时返回null
+     */
+    public String getSlowest() {
+        Entry slowest = null;
+        for (Entry entry : entries.values()) {
+            if (slowest == null || entry.finishedAt > slowest.finishedAt) {
+                slowest = entry;
+            }
+        }
+        return slowest != null ? slowest.serverName : null;
+    }
+
+    /**
+     * 统计以某种方式结束的服务器数量
+     */
+    public int count(Status status) {
+        int count = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.status == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 检查停止是否已全部结束
+     */
+    public boolean isComplete() {
+        return totalMillis >= 0;
+    }
+
+    /**
+     * 生成用于日志和命令输出的报告文本
+     */
+    public List<String> toLines() {
+        List<String> lines = new ArrayList<>();
+        lines.add((graceful ? "并行停止报告" : "紧急停止报告") + " (" + entries.size() + " 个服务器)");
+        for (Entry entry : entries.values()) {
+            StringBuilder line = new StringBuilder("  ").append(entry.serverName).append(": ").append(entry.status);
+            if (entry.finishedAt >= 0) {
+                line.append(" 耗时 ").append(entry.finishedAt).append("ms");
+            }
+            if (entry.exitCode >= 0) {
+                line.append(" 退出代码 ").append(entry.exitCode);
+            }
+            if (entry.message != null) {
+                line.append(" - ").append(entry.message);
+            }
+            lines.add(line.toString());
+        }
+        if (isComplete()) {
+            lines.add("  总耗时: " + totalMillis + "ms" + (entries.isEmpty() ? "" : "，最慢: " + getSlowest()));
+            if (graceful && count(Status.STOPPED) < entries.size()) {
+                lines.add("  升级停止: SIGTERM " + count(Status.TERMINATED) + " 个，SIGKILL " + count(Status.KILLED)
+                    + " 个，失败 " + count(Status.FAILED) + " 个");
+            }
+        } else {
+            lines.add("  停止进行中...");
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,105 @@
+package exmo.cy.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * 群组启动依赖图
+ * 校验群组内的依赖关系并给出拓扑顺序，存在循环或依赖了群组外的服务器时拒绝构建。
+ */
+final class StartupGraph {
+
+    private final List<String> order;
+    private final Map<String, List<String>> dependencies;
+
+    private StartupGraph(List<String> order, Map<String, List<String>> dependencies) {
+        this.order = order;
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * 构建依赖图
+     * @param servers 群组中的服务器，拓扑顺序相同时保持此顺序
+     * @param declared 服务器 -> 依赖的服务器
+     * @return 依赖图
+     * @throws IllegalArgumentException 如果依赖了群组外的服务器或存在循环依赖
+     */
+    static StartupGraph of(List<String> servers, Map<String, List<String>> declared) {
+        Map<String, List<String>> dependencies = new LinkedHashMap<>();
+        Map<String, List<String>> dependents = new HashMap<>();
+        Map<String, Integer> inDegree = new HashMap<>();
+        for (String server : servers) {
+            dependencies.put(server, new ArrayList<>());
+            dependents.put(server, new ArrayList<>());
+            inDegree.put(server, 0);
+        }
+
+        for (String server : servers) {
+            List<String> deps = declared != null ? declared.get(server) : null;
+            if (deps == null) {
+                continue;
+            }
+            for (String dep : deps) {
+                if (!dependencies.containsKey(dep)) {
+                    throw new IllegalArgumentException("服务器 " + server + " 依赖的 " + dep + " 不在群组中");
+                }
+                if (dep.equals(server) || dependencies.get(server).contains(dep)) {
+                    continue;
+                }
+                dependencies.get(server).add(dep);
+                dependents.get(dep).add(server);
+                inDegree.merge(server, 1, Integer::sum);
+            }
+        }
+
+        // Kahn算法
+        Queue<String> ready = new ArrayDeque<>();
+        for (String server : servers) {
+            if (inDegree.get(server) == 0) {
+                ready.add(server);
+            }
+        }
+        List<String> order = new ArrayList<>(servers.size());
+        while (!ready.isEmpty()) {
+            String server = ready.poll();
+            order.add(server);
+            for (String dependent : dependents.get(server)) {
+                if (inDegree.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+
+        if (order.size() < servers.size()) {
+            List<String> cyclic = new ArrayList<>();
+            for (String server : servers) {
+                if (inDegree.get(server) > 0) {
+                    cyclic.add(server);
+                }
+            }
+            throw new IllegalArgumentException("启动依赖存在循环: " + String.join(", ", cyclic));
+        }
+        return new StartupGraph(order, dependencies);
+    }
+
+    /**
+     * 获取拓扑顺序，每个服务器都排在它依赖的服务器之后
+     */
+    List<String> getOrder() {
+        return Collections.unmodifiableList(order);
+    }
+
+    /**
+     * 获取服务器依赖的服务器
+     */
+    List<String> getDependencies(String server) {
+        List<String> deps = dependencies.get(server);
+        return deps != null ? deps : Collections.emptyList();
+    }
+}
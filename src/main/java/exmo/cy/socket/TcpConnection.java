@@ -0,0 +1,390 @@
+package exmo.cy.socket;
+
+import exmo.cy.config.Constants;
+import exmo.cy.service.ServerService;
+import exmo.cy.util.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Pattern;
+
+/**
+ * 单个TCP客户端连接
+ * 每个连接由一个虚拟线程读取请求，支持两种帧格式：
+ * <ul>
+ *   <li>文本（默认）：每行一条命令。不带ID的命令按顺序处理；以 "#&lt;id&gt; " 开头的命令
+ *       交给独立的虚拟线程并发处理，响应JSON中带有相同的"id"字段，可能乱序返回</li>
+ *   <li>二进制（发送 mode:binary 后切换）：每帧为 4字节长度 + 4字节请求ID + UTF-8命令，
+ *       长度为其后的字节数；响应帧格式相同并带相同的请求ID。请求ID 0 保留给服务器主动推送</li>
+ * </ul>
+ * 同一连接上并发处理的请求数有上限，达到上限时停止读取，由TCP流量控制让客户端等待。
+ * subscribe 命令把连接变为推送流，推送消息与响应交错发送，见 {@link TcpSubscriptions}；
+ * 存在订阅的连接不会因空闲超时被关闭。
+ */
+class TcpConnection implements Runnable {
+
+    private static final Pattern REQUEST_ID = Pattern.compile("[A-Za-z0-9_.\\-]{1,64}");
+
+    private final Socket socket;
+    private final TcpCommandHandler handler;
+    private final TcpSocketServer server;
+    private final TcpSubscriptions subscriptions;
+    private final ExecutorService workers;
+    private final Semaphore pipeline = new Semaphore(Constants.TCP_MAX_PIPELINED_REQUESTS);
+    private final Object writeLock = new Object();
+    private final long connectedAt = System.currentTimeMillis();
+
+    private OutputStream out;
+    private volatile boolean binary;
+    private volatile boolean closed;
+
+    // 读取状态保存在字段中，读超时后可以从中断处继续
+    private byte[] lineBuffer = new byte[256];
+    private int lineLength;
+    private final byte[] header = new byte[8];
+    private int headerPos;
+    private byte[] payload;
+    private int payloadPos;
+
+    TcpConnection(Socket socket, TcpCommandHandler handler, ServerService serverService,
+                  TcpSocketServer server, ExecutorService workers) {
+        this.socket = socket;
+        this.handler = handler;
+        this.server = server;
+        this.subscriptions = new TcpSubscriptions(this, serverService);
+        this.workers = workers;
+    }
+
+    @Override
+    public void run() {
+        try {
+            socket.setSoTimeout((int) Constants.TCP_IDLE_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            out = new BufferedOutputStream(socket.getOutputStream());
+
+            // 发送欢迎消息
+            sendText("{\"status\":\"ok\",\"message\":\"TCP Socket服务器已连接\",\"port\":" + socket.getLocalPort() + "}");
+
+            while (!closed) {
+                try {
+                    if (!(binary ? readFrame(in) : readLine(in))) {
+                        break;
+                    }
+                } catch (SocketTimeoutException e) {
+                    // 还有请求在处理或存在订阅时不算空闲
+                    if (pipeline.availablePermits() < Constants.TCP_MAX_PIPELINED_REQUESTS
+                            || subscriptions.isActive()) {
+                        continue;
+                    }
+                    Logger.debug("TCP客户端空闲超时: " + socket.getRemoteSocketAddress());
+                    send("{\"status\":\"error\",\"message\":\"连接空闲超时\"}");
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                Logger.debug("TCP客户端连接异常断开: " + socket.getRemoteSocketAddress() + " - " + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * 读取并处理一行文本命令
+     * @return 连接应当结束时返回false
+     */
+    private boolean readLine(InputStream in) throws IOException, InterruptedException {
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                return false;
+            }
+            if (b == '\n') {
+                break;
+            }
+            if (lineLength == lineBuffer.length) {
+                if (lineLength >= Constants.TCP_MAX_FRAME_BYTES) {
+                    send("{\"status\":\"error\",\"message\":\"命令过长\"}");
+                    return false;
+                }
+                lineBuffer = Arrays.copyOf(lineBuffer, Math.min(lineLength * 2, Constants.TCP_MAX_FRAME_BYTES));
+            }
+            lineBuffer[lineLength++] = (byte) b;
+        }
+        String line = new String(lineBuffer, 0, lineLength, StandardCharsets.UTF_8).trim();
+        lineLength = 0;
+        if (line.isEmpty()) {
+            return true;
+        }
+        if ("quit".equalsIgnoreCase(line)) {
+            return false;
+        }
+
+        if (line.startsWith("#")) {
+            int space = line.indexOf(' ');
+            String id = space > 0 ? line.substring(1, space) : line.substring(1);
+            if (!REQUEST_ID.matcher(id).matches()) {
+                sendText("{\"status\":\"error\",\"message\":\"无效的请求ID，只能包含字母、数字和 _ . -，最长64个字符\"}");
+                return true;
+            }
+            String command = space > 0 ? line.substring(space + 1).trim() : "";
+            dispatch(command, response -> sendText(withId(id, response)));
+            return true;
+        }
+
+        if (line.toLowerCase().startsWith("mode:")) {
+            switchMode(line.substring(5).trim());
+            return true;
+        }
+        handle(line, this::sendText);
+        return true;
+    }
+
+    /**
+     * 读取并处理一个二进制帧
+     * @return 连接应当结束时返回false
+     */
+    private boolean readFrame(InputStream in) throws IOException, InterruptedException {
+        while (headerPos < header.length) {
+            int n = in.read(header, headerPos, header.length - headerPos);
+            if (n < 0) {
+                return false;
+            }
+            headerPos += n;
+        }
+        if (payload == null) {
+            int length = readInt(header, 0);
+            if (length < 4 || length > Constants.TCP_MAX_FRAME_BYTES) {
+                sendFrame(readInt(header, 4), "{\"status\":\"error\",\"message\":\"无效的帧长度: " + length + "\"}");
+                return false;
+            }
+            payload = new byte[length - 4];
+            payloadPos = 0;
+        }
+        while (payloadPos < payload.length) {
+            int n = in.read(payload, payloadPos, payload.length - payloadPos);
+            if (n < 0) {
+                return false;
+            }
+            payloadPos += n;
+        }
+
+        int requestId = readInt(header, 4);
+        String command = new String(payload, StandardCharsets.UTF_8).trim();
+        headerPos = 0;
+        payload = null;
+
+        if ("quit".equalsIgnoreCase(command)) {
+            return false;
+        }
+        if (command.toLowerCase().startsWith("mode:")) {
+            switchMode(command.substring(5).trim());
+            return true;
+        }
+        dispatch(command, response -> sendFrame(requestId, response));
+        return true;
+    }
+
+    /**
+     * 切换帧格式，等待已提交的请求全部响应后再切换，避免响应混用两种格式
+     */
+    private void switchMode(String mode) throws IOException, InterruptedException {
+        boolean toBinary;
+        if ("binary".equalsIgnoreCase(mode)) {
+            toBinary = true;
+        } else if ("text".equalsIgnoreCase(mode)) {
+            toBinary = false;
+        } else {
+            send("{\"status\":\"error\",\"message\":\"未知的模式: " + mode + "，可选 text 或 binary\"}");
+            return;
+        }
+        pipeline.acquire(Constants.TCP_MAX_PIPELINED_REQUESTS);
+        try {
+            // 确认消息使用切换前的格式
+            send("{\"status\":\"ok\",\"mode\":\"" + (toBinary ? "binary" : "text") + "\"}");
+            binary = toBinary;
+        } finally {
+            pipeline.release(Constants.TCP_MAX_PIPELINED_REQUESTS);
+        }
+    }
+
+    /**
+     * 在虚拟线程中处理带ID的请求，达到并发上限时阻塞读取线程
+     */
+    private void dispatch(String command, ResponseWriter writer) throws InterruptedException, IOException {
+        pipeline.acquire();
+        try {
+            workers.execute(() -> {
+                try {
+                    handle(command, writer);
+                } catch (IOException e) {
+                    // 连接已关闭，丢弃响应
+                } finally {
+                    pipeline.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pipeline.release();
+            throw new IOException("TCP服务器正在关闭", e);
+        }
+    }
+
+    /**
+     * 处理一条命令并写出响应，订阅相关的命令在连接上处理，其余交给命令处理器
+     */
+    private void handle(String command, ResponseWriter writer) throws IOException {
+        String[] parts = command.split(":", 2);
+        String verb = parts[0].trim().toLowerCase();
+        String args = parts.length > 1 ? parts[1].trim() : "";
+        switch (verb) {
+            case "subscribe":
+                TcpSubscriptions.Subscription subscription;
+                try {
+                    subscription = subscriptions.subscribe(args);
+                } catch (IllegalArgumentException e) {
+                    writer.write("{\"status\":\"error\",\"message\":\"" + TcpSubscriptions.escapeJson(e.getMessage()) + "\"}");
+                    return;
+                }
+                // 先发送确认再开始推送，客户端收到确认时已知道订阅ID
+                try {
+                    writer.write("{\"status\":\"ok\",\"subscription\":\"" + subscription.getId() + "\"}");
+                } finally {
+                    subscription.start();
+                }
+                break;
+            case "unsubscribe":
+                if (args.isEmpty()) {
+                    writer.write("{\"status\":\"error\",\"message\":\"用法: unsubscribe:<订阅ID|all>\"}");
+                    return;
+                }
+                int removed = subscriptions.unsubscribe(args);
+                if (removed == 0 && !"all".equalsIgnoreCase(args)) {
+                    writer.write("{\"status\":\"error\",\"message\":\"订阅不存在: " + TcpSubscriptions.escapeJson(args) + "\"}");
+                } else {
+                    writer.write("{\"status\":\"ok\",\"removed\":" + removed + "}");
+                }
+                break;
+            case "subscriptions":
+                writer.write(subscriptions.describe());
+                break;
+            default:
+                writer.write(handler.process(command));
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResponseWriter {
+        void write(String response) throws IOException;
+    }
+
+    /**
+     * 在JSON响应的开头加入请求ID
+     */
+    private static String withId(String id, String response) {
+        if (response.startsWith("{")) {
+            return "{\"id\":\"" + id + "\"," + response.substring(1);
+        }
+        return response;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+            | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private static void writeInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+
+    /**
+     * 以当前帧格式发送一条消息，二进制格式下使用请求ID 0
+     */
+    void send(String message) throws IOException {
+        if (binary) {
+            sendFrame(0, message);
+        } else {
+            sendText(message);
+        }
+    }
+
+    private void sendText(String line) throws IOException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        synchronized (writeLock) {
+            out.write(bytes);
+            out.write('\n');
+            out.flush();
+        }
+    }
+
+    private void sendFrame(int requestId, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        byte[] frameHeader = new byte[8];
+        writeInt(frameHeader, 0, body.length + 4);
+        writeInt(frameHeader, 4, requestId);
+        synchronized (writeLock) {
+            out.write(frameHeader);
+            out.write(body);
+            out.flush();
+        }
+    }
+
+    /**
+     * 关闭连接，可重复调用
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        subscriptions.closeAll();
+        try {
+            socket.close();
+        } catch (IOException e) {
+            Logger.error("关闭客户端连接时出错", e);
+        }
+        server.onClosed(this);
+    }
+
+    String getRemoteAddress() {
+        return String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    long getConnectedAt() {
+        return connectedAt;
+    }
+
+    boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * 正在处理的请求数
+     */
+    int getInFlight() {
+        return Constants.TCP_MAX_PIPELINED_REQUESTS - pipeline.availablePermits();
+    }
+
+    /**
+     * 当前的推送订阅数
+     */
+    int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+}
@@ -0,0 +1,349 @@
+package exmo.cy.socket;
+
+import exmo.cy.config.Constants;
+import exmo.cy.console.ConsoleLine;
+import exmo.cy.console.ConsoleListener;
+import exmo.cy.model.ServerLifecycleEvent;
+import exmo.cy.service.ServerLifecycleListener;
+import exmo.cy.service.ServerService;
+import exmo.cy.util.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 单个TCP连接上的推送订阅
+ * 一个连接可以同时存在多个订阅，推送消息都带有"subscription"字段，由客户端区分：
+ * <ul>
+ *   <li>subscribe:console,&lt;服务器|*&gt;[,&lt;正则&gt;]：推送控制台输出，可用正则过滤</li>
+ *   <li>subscribe:events[,&lt;服务器|*&gt;]：推送启动、就绪、停止、崩溃等生命周期事件</li>
+ * </ul>
+ * 每个订阅有自己的队列和发送线程（虚拟线程），控制台输出在泵线程上只做过滤和入队。
+ * 客户端读取太慢时控制台订阅的队列会满，新消息被丢弃并在之后推送丢弃数量，
+ * 不会阻塞控制台泵，也不影响同一连接上的其他订阅；生命周期事件数量很少，从不丢弃。
+ */
+class TcpSubscriptions {
+
+    private static final String ALL_SERVERS = "*";
+
+    private final TcpConnection connection;
+    private final ServerService serverService;
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    TcpSubscriptions(TcpConnection connection, ServerService serverService) {
+        this.connection = connection;
+        this.serverService = serverService;
+    }
+
+    /**
+     * 创建订阅，订阅在调用 {@link Subscription#start()} 之后才开始推送，
+     * 以便调用方先发送订阅确认
+     * @param args 订阅参数，格式为 console,&lt;服务器|*&gt;[,&lt;正则&gt;] 或 events[,&lt;服务器|*&gt;]
+     * @return 新的订阅
+     * @throws IllegalArgumentException 如果参数无效
+     */
+    Subscription subscribe(String args) {
+        if (subscriptions.size() >= Constants.TCP_MAX_SUBSCRIPTIONS) {
+            throw new IllegalArgumentException("订阅数已达上限(" + Constants.TCP_MAX_SUBSCRIPTIONS + ")");
+        }
+        // 正则中可能有逗号，只拆分前两个参数
+        String[] parts = args.split(",", 3);
+        String kind = parts[0].trim().toLowerCase();
+        String server = parts.length > 1 && !parts[1].trim().isEmpty() ? parts[1].trim() : ALL_SERVERS;
+
+        Subscription subscription;
+        switch (kind) {
+            case "console":
+                if (parts.length < 2 || parts[1].trim().isEmpty()) {
+                    throw new IllegalArgumentException("用法: subscribe:console,<服务器|*>[,<正则>]");
+                }
+                Pattern filter = null;
+                if (parts.length > 2 && !parts[2].isEmpty()) {
+                    try {
+                        filter = Pattern.compile(parts[2]);
+                    } catch (PatternSyntaxException e) {
+                        throw new IllegalArgumentException("正则表达式无效: " + e.getDescription());
+                    }
+                }
+                subscription = new ConsoleSubscription("s" + nextId.incrementAndGet(), server, filter);
+                break;
+            case "events":
+                subscription = new EventSubscription("s" + nextId.incrementAndGet(), server);
+                break;
+            default:
+                throw new IllegalArgumentException("未知的订阅类型: " + kind + "，可选 console 或 events");
+        }
+        subscriptions.put(subscription.id, subscription);
+        subscription.register();
+        return subscription;
+    }
+
+    /**
+     * 取消订阅
+     * @param id 订阅ID，all表示取消全部
+     * @return 取消的订阅数
+     */
+    int unsubscribe(String id) {
+        if ("all".equalsIgnoreCase(id)) {
+            int count = subscriptions.size();
+            closeAll();
+            return count;
+        }
+        Subscription subscription = subscriptions.remove(id);
+        if (subscription == null) {
+            return 0;
+        }
+        subscription.cancel();
+        return 1;
+    }
+
+    /**
+     * 取消所有订阅，连接关闭时调用
+     */
+    void closeAll() {
+        for (String id : new ArrayList<>(subscriptions.keySet())) {
+            Subscription subscription = subscriptions.remove(id);
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+    }
+
+    boolean isActive() {
+        return !subscriptions.isEmpty();
+    }
+
+    int size() {
+        return subscriptions.size();
+    }
+
+    /**
+     * 以JSON描述当前的订阅
+     */
+    String describe() {
+        StringBuilder sb = new StringBuilder("{\"status\":\"ok\",\"subscriptions\":[");
+        List<Subscription> list = new ArrayList<>(subscriptions.values());
+        for (int i = 0; i < list.size(); i++) {
+            Subscription s = list.get(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"subscription\":\"").append(s.id)
+              .append("\",\"type\":\"").append(s.kind())
+              .append("\",\"server\":\"").append(escapeJson(s.server))
+              .append("\",\"queued\":").append(s.queue.size())
+              .append(",\"dropped\":").append(s.totalDropped.get())
+              .append('}');
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    /**
+     * 转义JSON字符串
+     */
+    static String escapeJson(String value) {
+        StringBuilder sb = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement;
+            switch (c) {
+                case '"': replacement = "\\\""; break;
+                case '\\': replacement = "\\\\"; break;
+                case '\n': replacement = "\\n"; break;
+                case '\r': replacement = "\\r"; break;
+                case '\t': replacement = "\\t"; break;
+                default:
+                    replacement = c < 0x20 ? String.format("\\u%04x", (int) c) : null;
+            }
+            if (replacement != null && sb == null) {
+                sb = new StringBuilder(value.length() + 16).append(value, 0, i);
+            }
+            if (sb != null) {
+                if (replacement != null) {
+                    sb.append(replacement);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb != null ? sb.toString() : value;
+    }
+
+    /**
+     * 一个订阅：消息队列和把队列中的消息写入连接的虚拟线程
+     */
+    abstract class Subscription {
+        final String id;
+        final String server;
+        final BlockingQueue<String> queue;
+        // 上次推送丢弃通知以来丢弃的消息数，以及总丢弃数
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicLong totalDropped = new AtomicLong();
+        private volatile boolean cancelled;
+        private Thread sender;
+
+        Subscription(String id, String server, BlockingQueue<String> queue) {
+            this.id = id;
+            this.server = server;
+            this.queue = queue;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        abstract String kind();
+
+        abstract void register();
+
+        abstract void unregister();
+
+        boolean matchesServer(String serverName) {
+            return ALL_SERVERS.equals(server) || server.equals(serverName);
+        }
+
+        /**
+         * 放入一条消息，队列已满时丢弃
+         */
+        void offer(String message) {
+            if (!queue.offer(message)) {
+                dropped.incrementAndGet();
+                totalDropped.incrementAndGet();
+            }
+        }
+
+        /**
+         * 开始推送
+         */
+        synchronized void start() {
+            if (cancelled || sender != null) {
+                return;
+            }
+            sender = Thread.ofVirtual().name("tcp-subscription-" + id).start(this::drain);
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            unregister();
+            if (sender != null) {
+                sender.interrupt();
+            }
+        }
+
+        private void drain() {
+            try {
+                while (!cancelled) {
+                    String message = queue.take();
+                    long count = dropped.getAndSet(0);
+                    if (count > 0) {
+                        connection.send("{\"type\":\"dropped\",\"subscription\":\"" + id + "\",\"count\":" + count + "}");
+                    }
+                    connection.send(message);
+                }
+            } catch (InterruptedException e) {
+                // 订阅已取消
+            } catch (IOException e) {
+                Logger.debug("推送订阅消息失败，关闭连接: " + e.getMessage());
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * 控制台输出订阅
+     */
+    private class ConsoleSubscription extends Subscription implements ConsoleListener {
+        private final Pattern filter;
+
+        ConsoleSubscription(String id, String server, Pattern filter) {
+            super(id, server, new ArrayBlockingQueue<>(Constants.TCP_SUBSCRIPTION_QUEUE_SIZE));
+            this.filter = filter;
+        }
+
+        @Override
+        String kind() {
+            return "console";
+        }
+
+        @Override
+        void register() {
+            if (ALL_SERVERS.equals(server)) {
+                serverService.addGlobalConsoleListener(this);
+            } else {
+                serverService.addConsoleListener(server, this);
+            }
+        }
+
+        @Override
+        void unregister() {
+            if (ALL_SERVERS.equals(server)) {
+                serverService.removeGlobalConsoleListener(this);
+            } else {
+                serverService.removeConsoleListener(server, this);
+            }
+        }
+
+        @Override
+        public void onLine(ConsoleLine line) {
+            String text = line.toString();
+            if (filter != null && !filter.matcher(text).find()) {
+                return;
+            }
+            offer("{\"type\":\"console\",\"subscription\":\"" + id
+                + "\",\"server\":\"" + escapeJson(line.getServerName())
+                + "\",\"stream\":\"" + (line.isError() ? "stderr" : "stdout")
+                + "\",\"time\":" + System.currentTimeMillis()
+                + ",\"line\":\"" + escapeJson(text) + "\"}");
+        }
+    }
+
+    /**
+     * 生命周期事件订阅
+     */
+    private class EventSubscription extends Subscription implements ServerLifecycleListener {
+
+        EventSubscription(String id, String server) {
+            super(id, server, new LinkedBlockingQueue<>());
+        }
+
+        @Override
+        String kind() {
+            return "events";
+        }
+
+        @Override
+        void register() {
+            serverService.addLifecycleListener(this);
+        }
+
+        @Override
+        void unregister() {
+            serverService.removeLifecycleListener(this);
+        }
+
+        @Override
+        public void onEvent(ServerLifecycleEvent event) {
+            if (!matchesServer(event.getServerName())) {
+                return;
+            }
+            offer("{\"type\":\"event\",\"subscription\":\"" + id
+                + "\",\"server\":\"" + escapeJson(event.getServerName())
+                + "\",\"event\":\"" + event.getType().name().toLowerCase()
+                + "\",\"time\":" + event.getTimestamp()
+                + (event.getExitCode() != null ? ",\"exitCode\":" + event.getExitCode() : "")
+                + "}");
+        }
+    }
+}
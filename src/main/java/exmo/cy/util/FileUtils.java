@@ -1,15 +1,21 @@
 package exmo.cy.util;
 
+import exmo.cy.config.Constants;
 import exmo.cy.exception.ServerOperationException;
 
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 
 /**
  * 文件操作工具类
@@ -17,6 +23,15 @@ import java.util.zip.ZipInputStream;
  */
 public final class FileUtils {
     
+    // 目录复制和删除共用的I/O线程池，并行度即同时进行的文件操作数
+    private static final ForkJoinPool IO_POOL = new ForkJoinPool(Constants.FILE_IO_PARALLELISM, pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("file-io-" + thread.getPoolIndex());
+        return thread;
+    }, null, false);
+    // 一个复制或删除任务最多处理的文件数，文件很多的目录（如region）被分成多个任务并行处理
+    private static final int FILES_PER_TASK = 64;
+    
     // 防止实例化
     private FileUtils() {
         throw new UnsupportedOperationException("这是一个工具类，不能被实例化");
@@ -70,21 +85,61 @@ public final class FileUtils {
      * @throws ServerOperationException 如果复制失败
      */
     public static void copyDirectory(Path source, Path target) throws ServerOperationException {
+        copyDirectory(source, target, false, null);
+    }
+    
+    /**
+     * 并行递归复制目录
+     * 每个目录的内容由I/O线程池中的任务并行复制，目标目录在分发子任务前创建一次，复制文件时不再检查父目录。
+     * 某个文件失败时继续复制其余文件，最后统一报告失败。
+     * @param source 源目录路径
+     * @param target 目标目录路径
+     * @param linkJars 源和目标在同一文件系统时，JAR文件改为创建硬链接而不复制内容。
+     *                 JAR文件只会被整体替换，不会被原地改写，因此可以安全地共享；世界文件等会被原地写入的文件总是复制
+     * @param progress 进度回调，可以为null
+     * @throws ServerOperationException 如果源目录不存在或有文件复制失败
+     */
+    public static void copyDirectory(Path source, Path target, boolean linkJars, Progress progress) 
+            throws ServerOperationException {
+        if (!Files.isDirectory(source)) {
+            throw new ServerOperationException("源目录不存在: " + source);
+        }
+        TreeJob job = new TreeJob(progress);
         try {
-            Files.walk(source).forEach(sourcePath -> {
-                try {
-                    Path targetPath = target.resolve(source.relativize(sourcePath));
-                    if (Files.isDirectory(sourcePath)) {
-                        ensureDirectoryExists(targetPath);
-                    } else {
-                        copyFile(sourcePath, targetPath);
-                    }
-                } catch (ServerOperationException e) {
-                    Logger.error("复制目录内容时出错", e);
-                }
-            });
+            Files.createDirectories(target);
+            job.linkJars = linkJars && Files.getFileStore(source).equals(Files.getFileStore(target));
+        } catch (IOException e) {
+            throw new ServerOperationException("创建目录失败: " + target, e);
+        }
+        IO_POOL.invoke(new CopyTask(job, source, target));
+        job.finish();
+        if (job.failures.get() > 0) {
+            throw new ServerOperationException("复制目录失败: " + source + "，" + job.failures.get() + " 个文件出错", 
+                job.firstError);
+        }
+        Logger.debug("复制目录: " + source + " -> " + target + "，" + job.files.get() + " 个文件");
+    }
+    
+    /**
+     * 写入文本文件：先写入同目录下的临时文件再重命名，进程中途退出时不会留下不完整的文件
+     * @param target 目标文件
+     * @param content 文件内容
+     * @throws IOException 如果写入或重命名失败，此时目标文件保持原样
+     */
+    public static void writeAtomically(Path target, String content) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+                writer.write(content);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
         } catch (IOException e) {
-            throw new ServerOperationException("复制目录失败: " + source, e);
+            Files.deleteIfExists(temp);
+            throw e;
         }
     }
     
@@ -94,23 +149,257 @@ public final class FileUtils {
      * @throws ServerOperationException 如果删除失败
      */
     public static void deleteDirectory(Path directory) throws ServerOperationException {
-        if (!Files.exists(directory)) {
+        deleteDirectory(directory, null);
+    }
+    
+    /**
+     * 并行递归删除目录，不跟随符号链接
+     * @param directory 要删除的目录
+     * @param progress 进度回调，可以为null
+     * @throws ServerOperationException 如果有文件或目录删除失败
+     */
+    public static void deleteDirectory(Path directory, Progress progress) throws ServerOperationException {
+        if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
             return;
         }
         
-        try {
-            Files.walk(directory)
-                .sorted(Comparator.reverseOrder())
-                .forEach(path -> {
-                    try {
-                        Files.delete(path);
-                    } catch (IOException e) {
-                        Logger.error("删除文件失败: " + path, e);
+        TreeJob job = new TreeJob(progress);
+        if (Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+            IO_POOL.invoke(new DeleteTask(job, directory));
+        } else {
+            deleteOne(job, directory);
+        }
+        job.finish();
+        if (job.failures.get() > 0) {
+            throw new ServerOperationException("删除目录失败: " + directory + "，" + job.failures.get() + " 项出错", 
+                job.firstError);
+        }
+        Logger.debug("删除目录: " + directory);
+    }
+    
+    /**
+     * 目录复制或删除的进度回调，可能在任意I/O线程中调用，调用间隔不小于 {@link Constants#FILE_PROGRESS_INTERVAL_MS}，
+     * 结束时总会以最终数量调用一次
+     */
+    @FunctionalInterface
+    public interface Progress {
+        /**
+         * @param files 已处理的文件数
+         * @param bytes 已复制的字节数，删除时为0
+         */
+        void update(long files, long bytes);
+    }
+    
+    /**
+     * 一次复制或删除操作的共享状态
+     */
+    private static final class TreeJob {
+        final Progress progress;
+        final AtomicLong files = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicLong lastReport = new AtomicLong(System.currentTimeMillis());
+        volatile IOException firstError;
+        volatile boolean linkJars;
+        
+        TreeJob(Progress progress) {
+            this.progress = progress;
+        }
+        
+        void done(long size) {
+            long doneFiles = files.incrementAndGet();
+            long doneBytes = bytes.addAndGet(size);
+            if (progress != null) {
+                long now = System.currentTimeMillis();
+                long last = lastReport.get();
+                if (now - last >= Constants.FILE_PROGRESS_INTERVAL_MS && lastReport.compareAndSet(last, now)) {
+                    progress.update(doneFiles, doneBytes);
+                }
+            }
+        }
+        
+        void fail(String message, IOException e) {
+            failures.incrementAndGet();
+            if (firstError == null) {
+                firstError = e;
+            }
+            Logger.error(message, e);
+        }
+        
+        void finish() {
+            if (progress != null) {
+                progress.update(files.get(), bytes.get());
+            }
+        }
+    }
+    
+    /**
+     * 复制一个目录的内容：子目录各自成为一个任务，文件按批分成任务
+     */
+    private static final class CopyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final transient TreeJob job;
+        private final transient Path source;
+        private final transient Path target;
+        
+        CopyTask(TreeJob job, Path source, Path target) {
+            this.job = job;
+            this.source = source;
+            this.target = target;
+        }
+        
+        @Override
+        protected void compute() {
+            List<RecursiveAction> tasks = new ArrayList<>();
+            List<Path> batch = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(source)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        Path targetDir = target.resolve(entry.getFileName().toString());
+                        try {
+                            Files.createDirectories(targetDir);
+                            tasks.add(new CopyTask(job, entry, targetDir));
+                        } catch (IOException e) {
+                            job.fail("创建目录失败: " + targetDir, e);
+                        }
+                    } else {
+                        batch.add(entry);
+                        if (batch.size() == FILES_PER_TASK) {
+                            tasks.add(new CopyFilesTask(job, batch, target));
+                            batch = new ArrayList<>();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                job.fail("读取目录失败: " + source, e);
+            }
+            if (!batch.isEmpty()) {
+                tasks.add(new CopyFilesTask(job, batch, target));
+            }
+            invokeAll(tasks);
+        }
+    }
+    
+    /**
+     * 把一批文件复制到已存在的目标目录
+     */
+    private static final class CopyFilesTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final transient TreeJob job;
+        private final transient List<Path> files;
+        private final transient Path target;
+        
+        CopyFilesTask(TreeJob job, List<Path> files, Path target) {
+            this.job = job;
+            this.files = files;
+            this.target = target;
+        }
+        
+        @Override
+        protected void compute() {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Path targetFile = target.resolve(name);
+                try {
+                    if (job.linkJars && name.endsWith(Constants.JAR_EXTENSION) && link(file, targetFile)) {
+                        job.done(Files.size(file));
+                        continue;
+                    }
+                    Files.copy(file, targetFile, StandardCopyOption.REPLACE_EXISTING);
+                    job.done(Files.size(targetFile));
+                } catch (IOException e) {
+                    job.fail("复制文件失败: " + file, e);
+                }
+            }
+        }
+        
+        private static boolean link(Path file, Path targetFile) {
+            try {
+                Files.deleteIfExists(targetFile);
+                Files.createLink(targetFile, file);
+                return true;
+            } catch (IOException | UnsupportedOperationException e) {
+                // 文件系统不支持硬链接，回退为复制
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * 删除一个目录：先并行删除其中的子目录和文件，再删除目录本身
+     */
+    private static final class DeleteTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final transient TreeJob job;
+        private final transient Path directory;
+        
+        DeleteTask(TreeJob job, Path directory) {
+            this.job = job;
+            this.directory = directory;
+        }
+        
+        @Override
+        protected void compute() {
+            List<RecursiveAction> tasks = new ArrayList<>();
+            List<Path> batch = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        tasks.add(new DeleteTask(job, entry));
+                    } else {
+                        batch.add(entry);
+                        if (batch.size() == FILES_PER_TASK) {
+                            tasks.add(new DeleteFilesTask(job, batch));
+                            batch = new ArrayList<>();
+                        }
                     }
-                });
-            Logger.debug("删除目录: " + directory);
+                }
+            } catch (IOException e) {
+                job.fail("读取目录失败: " + directory, e);
+            }
+            if (!batch.isEmpty()) {
+                tasks.add(new DeleteFilesTask(job, batch));
+            }
+            invokeAll(tasks);
+            try {
+                Files.deleteIfExists(directory);
+            } catch (IOException e) {
+                job.fail("删除目录失败: " + directory, e);
+            }
+        }
+    }
+    
+    /**
+     * 删除一批文件（包括符号链接本身）
+     */
+    private static final class DeleteFilesTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final transient TreeJob job;
+        private final transient List<Path> files;
+        
+        DeleteFilesTask(TreeJob job, List<Path> files) {
+            this.job = job;
+            this.files = files;
+        }
+        
+        @Override
+        protected void compute() {
+            for (Path file : files) {
+                deleteOne(job, file);
+            }
+        }
+    }
+    
+    private static void deleteOne(TreeJob job, Path file) {
+        try {
+            Files.deleteIfExists(file);
+            job.done(0);
         } catch (IOException e) {
-            throw new ServerOperationException("删除目录失败: " + directory, e);
+            job.fail("删除文件失败: " + file, e);
         }
     }
     
@@ -121,28 +410,134 @@ public final class FileUtils {
      * @throws ServerOperationException 如果解压失败
      */
     public static void extractZip(Path zipPath, Path targetDir) throws ServerOperationException {
-        try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(zipPath))) {
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                Path entryPath = targetDir.resolve(entry.getName());
+        extractZip(zipPath, targetDir, "", null);
+    }
+    
+    /**
+     * 并行解压ZIP文件
+     * 通过ZipFile随机访问各个条目，在I/O线程池中并行解压并直接写入目标目录；所有目录在解压前一次创建。
+     * 每个文件解压时计算CRC32并与ZIP中记录的值比较，不一致视为失败。
+     * @param zipPath ZIP文件路径
+     * @param targetDir 目标目录
+     * @param prefix 只解压以该前缀开头的条目，并在目标路径中去掉前缀（例如 "MyMap/"），空字符串表示全部
+     * @param progress 进度回调，可以为null
+     * @throws ServerOperationException 如果ZIP无法读取、包含非法路径、或有文件解压或校验失败
+     */
+    public static void extractZip(Path zipPath, Path targetDir, String prefix, Progress progress) 
+            throws ServerOperationException {
+        Path root = targetDir.toAbsolutePath().normalize();
+        TreeJob job = new TreeJob(progress);
+        try (ZipFile zip = new ZipFile(zipPath.toFile())) {
+            List<ZipEntry> files = new ArrayList<>();
+            List<Path> targets = new ArrayList<>();
+            // 按路径排序，父目录总在子目录之前
+            Set<Path> directories = new TreeSet<>();
+            directories.add(root);
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.startsWith(prefix) || name.length() == prefix.length()) {
+                    continue;
+                }
+                Path entryPath = root.resolve(name.substring(prefix.length())).normalize();
                 
                 // 安全检查：防止ZIP路径遍历攻击
-                if (!entryPath.normalize().startsWith(targetDir.normalize())) {
-                    throw new ServerOperationException("ZIP文件包含非法路径: " + entry.getName());
+                if (!entryPath.startsWith(root) || entryPath.equals(root)) {
+                    throw new ServerOperationException("ZIP文件包含非法路径: " + name);
                 }
                 
                 if (entry.isDirectory()) {
-                    ensureDirectoryExists(entryPath);
+                    directories.add(entryPath);
                 } else {
-                    ensureDirectoryExists(entryPath.getParent());
-                    Files.copy(zis, entryPath, StandardCopyOption.REPLACE_EXISTING);
+                    files.add(entry);
+                    targets.add(entryPath);
+                    directories.add(entryPath.getParent());
                 }
-                zis.closeEntry();
             }
-            Logger.info("解压ZIP文件: " + zipPath + " -> " + targetDir);
+            for (Path directory : directories) {
+                Files.createDirectories(directory);
+            }
+            IO_POOL.invoke(new ExtractTask(job, zip, files, targets, 0, files.size()));
         } catch (IOException e) {
             throw new ServerOperationException("解压ZIP文件失败: " + zipPath, e);
         }
+        job.finish();
+        if (job.failures.get() > 0) {
+            throw new ServerOperationException("解压ZIP文件失败: " + zipPath + "，" + job.failures.get() + " 个文件出错", 
+                job.firstError);
+        }
+        Logger.info("解压ZIP文件: " + zipPath + " -> " + targetDir);
+    }
+    
+    /**
+     * 解压ZIP中一段连续的条目，条目多或数据量大时二分后并行处理
+     */
+    private static final class ExtractTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        // 单个任务最多解压的条目数和未压缩字节数
+        private static final int MAX_ENTRIES = 16;
+        private static final long MAX_BYTES = 16L * 1024 * 1024;
+        
+        private final transient TreeJob job;
+        private final transient ZipFile zip;
+        private final transient List<ZipEntry> entries;
+        private final transient List<Path> targets;
+        private final int from;
+        private final int to;
+        
+        ExtractTask(TreeJob job, ZipFile zip, List<ZipEntry> entries, List<Path> targets, int from, int to) {
+            this.job = job;
+            this.zip = zip;
+            this.entries = entries;
+            this.targets = targets;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from > 1 && (to - from > MAX_ENTRIES || totalBytes() > MAX_BYTES)) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ExtractTask(job, zip, entries, targets, from, middle),
+                    new ExtractTask(job, zip, entries, targets, middle, to));
+                return;
+            }
+            byte[] buffer = new byte[64 * 1024];
+            for (int i = from; i < to; i++) {
+                ZipEntry entry = entries.get(i);
+                try {
+                    extract(entry, targets.get(i), buffer);
+                    job.done(entry.getSize() < 0 ? 0 : entry.getSize());
+                } catch (IOException e) {
+                    job.fail("解压文件失败: " + entry.getName(), e);
+                }
+            }
+        }
+        
+        private long totalBytes() {
+            long total = 0;
+            for (int i = from; i < to; i++) {
+                total += Math.max(0, entries.get(i).getSize());
+            }
+            return total;
+        }
+        
+        private void extract(ZipEntry entry, Path target, byte[] buffer) throws IOException {
+            CRC32 crc = new CRC32();
+            try (InputStream in = zip.getInputStream(entry);
+                 OutputStream out = Files.newOutputStream(target)) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    crc.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                }
+            }
+            if (entry.getCrc() != -1 && crc.getValue() != entry.getCrc()) {
+                throw new IOException("CRC校验失败: " + entry.getName());
+            }
+        }
     }
     
     /**
@@ -1,10 +1,10 @@
 package exmo.cy.web;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import exmo.cy.console.ConsoleHistory;
 import exmo.cy.security.JwtUtil;
 import exmo.cy.security.UserDetailsServiceImpl;
 import exmo.cy.service.ServerService;
-import java.util.concurrent.CopyOnWriteArrayList;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.socket.CloseStatus;
@@ -15,9 +15,11 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Optional;
 
 /**
  * WebSocket日志处理器
@@ -25,9 +27,10 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class LogWebSocketHandler extends TextWebSocketHandler {
 
-    // 存储所有WebSocket会话，按服务器名称分类，value 使用线程安全的列表
-    private static final Map<String, List<WebSocketSession>> serverSessions = new ConcurrentHashMap<>();
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    
+    // 所有WebSocket会话按服务器名称分类，由分发器异步批量推送
+    private static final WebSocketDispatcher dispatcher = new WebSocketDispatcher(objectMapper);
 
     // 用于依赖注入的字段
     @org.springframework.beans.factory.annotation.Autowired
@@ -74,10 +77,16 @@ public class LogWebSocketHandler extends TextWebSocketHandler {
             
             if (validateToken(token)) {
                 System.out.println("新的WebSocket连接到服务器 " + serverName + ": " + session.getId());
-                serverSessions.computeIfAbsent(serverName, k -> new CopyOnWriteArrayList<>()).add(session);
+                long sinceSeq = extractSinceFromUri(uri);
+                
+                // 先以暂停状态注册会话再生成历史快照，历史入队后才开始推送，
+                // 这样实时推送不会插到历史之前，重叠部分由客户端按序列号去重
+                SessionOutbox outbox = dispatcher.register(serverName, session);
                 
                 // 发送连接成功的确认消息
                 sendMessageToSession(session, "[INFO] WebSocket连接已建立，正在连接到 " + serverName + " 控制台...");
+                replayHistory(session, serverName, sinceSeq);
+                dispatcher.activate(outbox);
             } else {
                 System.err.println("WebSocket连接认证失败: 令牌验证失败");
                 session.close(CloseStatus.NOT_ACCEPTABLE.withReason("认证失败: 令牌无效"));
@@ -145,15 +154,12 @@ public class LogWebSocketHandler extends TextWebSocketHandler {
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
         // 从会话列表中移除断开的连接
-        for (Map.Entry<String, List<WebSocketSession>> entry : serverSessions.entrySet()) {
-            List<WebSocketSession> sessions = entry.getValue();
-            if (sessions != null && sessions.remove(session)) {
-                System.out.println("从服务器 '" + entry.getKey() + "' 的会话列表中移除连接: " + session.getId());
-                
-                // 如果该服务器的会话列表为空，可以选择保留或移除
-                if (sessions.isEmpty()) {
-                    System.out.println("服务器 '" + entry.getKey() + "' 的所有WebSocket连接已断开");
-                }
+        String serverName = dispatcher.unregister(session);
+        if (serverName != null) {
+            System.out.println("从服务器 '" + serverName + "' 的会话列表中移除连接: " + session.getId());
+            
+            if (!dispatcher.hasSessions(serverName)) {
+                System.out.println("服务器 '" + serverName + "' 的所有WebSocket连接已断开");
             }
         }
         System.out.println("WebSocket连接关闭: " + session.getId() + ", 状态码: " + status.getCode() + ", 原因: " + status.getReason());
@@ -204,6 +210,62 @@ public class LogWebSocketHandler extends TextWebSocketHandler {
         return null;
     }
 
+    /**
+     * 从URI中提取续传序列号（since参数），没有时返回0
+     */
+    private long extractSinceFromUri(String uri) {
+        try {
+            String query = new URI(uri).getQuery();
+            if (query != null) {
+                for (String p : query.split("&")) {
+                    if (p.startsWith("since=")) {
+                        return Math.max(0, Long.parseLong(p.substring(6)));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // 参数无效时从头补发
+        }
+        return 0;
+    }
+    
+    /**
+     * 向新连接补发控制台历史
+     * @param session WebSocket会话
+     * @param serverName 服务器名称
+     * @param sinceSeq 客户端已收到的最后一个序列号，0表示补发全部
+     */
+    private void replayHistory(WebSocketSession session, String serverName, long sinceSeq) {
+        if (staticServerService == null || staticServerService.isServerBlocked(serverName)) {
+            return;
+        }
+        Optional<ConsoleHistory> history = staticServerService.getConsoleHistory(serverName);
+        if (!history.isPresent()) {
+            return;
+        }
+        
+        ConsoleHistory.Snapshot snapshot = history.get().readSince(sinceSeq);
+        List<Map<String, Object>> lines = new ArrayList<>(snapshot.getEntries().size());
+        for (ConsoleHistory.Entry entry : snapshot.getEntries()) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("seq", entry.getSeq());
+            line.put("message", entry.isError() ? "[ERROR] " + entry.getText() : entry.getText());
+            lines.add(line);
+        }
+        
+        Map<String, Object> frame = new LinkedHashMap<>();
+        frame.put("type", "history");
+        frame.put("lines", lines);
+        frame.put("lastSeq", snapshot.getLastSeq());
+        frame.put("missed", snapshot.getMissed());
+        frame.put("reset", snapshot.isReset());
+        try {
+            sendMessageToSession(session, objectMapper.writeValueAsString(frame));
+        } catch (IOException e) {
+            System.err.println("序列化控制台历史失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 验证JWT令牌
      */
@@ -348,7 +410,7 @@ public class LogWebSocketHandler extends TextWebSocketHandler {
     private void sendMessageToSession(WebSocketSession session, String message) {
         if (session.isOpen()) {
             try {
-                session.sendMessage(new org.springframework.web.socket.TextMessage(message));
+                dispatcher.sendToSession(session, message);
             } catch (IOException e) {
                 System.err.println("发送WebSocket消息失败: " + e.getMessage());
             }
@@ -370,50 +432,61 @@ public class LogWebSocketHandler extends TextWebSocketHandler {
             return;
         }
         
-        List<WebSocketSession> sessions = serverSessions.get(serverName);
-        if (sessions == null || sessions.isEmpty()) {
-            // 服务器没有WebSocket连接，不输出调试信息
+        // 只入队，由分发器异步批量发送
+        dispatcher.publish(serverName, 0, message);
+    }
+    
+    /**
+     * 发送带序列号的服务器控制台输出（带屏蔽检查）
+     * 客户端用序列号去重并在重连时续传
+     * @param serverName 服务器名称
+     * @param seq 控制台历史中的序列号
+     * @param message 消息内容
+     * @param serverService 服务器服务实例
+     */
+    public static void sendConsoleLine(String serverName, long seq, String message, ServerService serverService) {
+        if (serverName == null || !dispatcher.hasSessions(serverName)) {
             return;
         }
-        
-        for (WebSocketSession session : sessions) {
-            if (session.isOpen()) {
-                try {
-                    session.sendMessage(new org.springframework.web.socket.TextMessage(message));
-                } catch (IOException e) {
-                    System.err.println("[错误] 发送WebSocket消息失败: " + e.getMessage());
-                    // 如果发送失败，从列表中移除该会话
-                    sessions.remove(session);
-                }
-            }
+        ServerService serviceToUse = serverService != null ? serverService : staticServerService;
+        if (serviceToUse != null && serviceToUse.isServerBlocked(serverName)) {
+            return;
         }
+        dispatcher.publish(serverName, seq, message);
+    }
+    
+    /**
+     * 检查指定服务器是否有WebSocket连接
+     * 用于在热路径上跳过不必要的字符串构造
+     * @param serverName 服务器名称
+     * @return 如果存在连接返回true
+     */
+    public static boolean hasSessions(String serverName) {
+        return serverName != null && dispatcher.hasSessions(serverName);
     }
     
     /**
      * 发送命令响应到指定服务器的所有连接客户端
      */
     public static void sendCommandResponse(String serverName, String command, String response) {
-        List<WebSocketSession> sessions = serverSessions.get(serverName);
-        if (sessions != null) {
-            for (WebSocketSession session : sessions) {
-                if (session.isOpen()) {
-                    try {
-                        String message = "[" + command + "] " + response;
-                        session.sendMessage(new org.springframework.web.socket.TextMessage(message));
-                    } catch (IOException e) {
-                        System.err.println("发送命令响应失败: " + e.getMessage());
-                        sessions.remove(session);
-                    }
-                }
-            }
-        }
+        dispatcher.publish(serverName, 0, "[" + command + "] " + response);
     }
     
     /**
      * 移除特定服务器的所有连接
      */
     public static void removeServerConnections(String serverName) {
-        serverSessions.remove(serverName);
+        dispatcher.removeServer(serverName);
+    }
+    
+    /**
+     * 获取指定服务器所有WebSocket会话的发送统计
+     * 包括队列深度、丢弃行数和批量合并比例
+     * @param serverName 服务器名称
+     * @return 会话统计列表
+     */
+    public static List<Map<String, Object>> getSessionStats(String serverName) {
+        return dispatcher.getSessionStats(serverName);
     }
     
     /**
@@ -1,17 +1,31 @@
 package exmo.cy.web;
 
+import exmo.cy.console.CommandResult;
+import exmo.cy.console.ConsoleHistory;
+import exmo.cy.log.LogMatch;
+import exmo.cy.log.LogQuery;
+import exmo.cy.log.LogSlice;
 import exmo.cy.model.Server;
+import exmo.cy.model.RestartPolicy;
 import exmo.cy.model.ServerInstance;
+import exmo.cy.model.ServerRun;
+import exmo.cy.monitor.ResourceSampler;
+import exmo.cy.monitor.ResourceTimeSeries;
+import exmo.cy.service.AdmissionController;
 import exmo.cy.service.ServerService;
+import exmo.cy.service.ServerSupervisor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * 服务器管理REST控制器
@@ -63,10 +77,21 @@ public class ServerController {
                 serverInfo.put("uptime", instance.getUptime());
                 serverInfo.put("startTime", instance.getStartTime());
                 serverInfo.put("running", instance.isRunning());
+                serverInfo.put("ready", instance.isReady());
+                serverInfo.put("startupMillis", instance.getStartupMillis());
                 
-                // TODO: 可以添加更多服务器状态信息，如内存使用、在线玩家等
+                // TODO: 可以添加更多服务器状态信息，如在线玩家等
                 serverInfo.put("playerCount", 0); // 暂时设为0，后续可以实现玩家计数
-                serverInfo.put("memoryUsage", "N/A"); // 暂时设为N/A
+                Optional<long[]> resources = serverService.getResourceSampler().getLatest(entry.getKey());
+                if (resources.isPresent()) {
+                    serverInfo.put("memoryUsage", resources.get()[ResourceTimeSeries.RSS]);
+                    serverInfo.put("resources", ResourceSampler.toMap(resources.get()));
+                } else {
+                    serverInfo.put("memoryUsage", "N/A");
+                }
+                if (instance.getConsoleStats() != null) {
+                    serverInfo.put("console", instance.getConsoleStats().toMap());
+                }
                 
                 result.put(entry.getKey(), serverInfo);
             }
@@ -84,6 +109,347 @@ public class ServerController {
         }
     }
 
+    /**
+     * 获取服务器最近的控制台输出
+     * 直接读取内存中的历史缓冲区，since为客户端已收到的最后一个序列号
+     */
+    @GetMapping("/{name}/console")
+    public ResponseEntity<Map<String, Object>> getConsoleHistory(
+            @PathVariable String name,
+            @RequestParam(defaultValue = "0") long since) {
+        Optional<ConsoleHistory> historyOpt = serverService.getConsoleHistory(name);
+        if (!historyOpt.isPresent()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("error", "服务器没有控制台历史");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
+        
+        ConsoleHistory.Snapshot snapshot = historyOpt.get().readSince(since);
+        List<Map<String, Object>> lines = new ArrayList<>(snapshot.getEntries().size());
+        for (ConsoleHistory.Entry entry : snapshot.getEntries()) {
+            Map<String, Object> line = new HashMap<>();
+            line.put("seq", entry.getSeq());
+            line.put("message", entry.getText());
+            line.put("error", entry.isError());
+            lines.add(line);
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("serverName", name);
+        response.put("data", lines);
+        response.put("lastSeq", snapshot.getLastSeq());
+        response.put("missed", snapshot.getMissed());
+        response.put("reset", snapshot.isReset());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 获取服务器进程（含子进程）的资源时间序列
+     * minutes不超过10时返回秒级数据，否则返回分钟级数据，最多24小时
+     * 每个点为 [时间戳, CPU(%), 常驻内存(字节), 线程数, 文件描述符数, 进程数]
+     */
+    @GetMapping("/{name}/resources")
+    public ResponseEntity<Map<String, Object>> getResourceHistory(
+            @PathVariable String name,
+            @RequestParam(defaultValue = "10") int minutes) {
+        Optional<ResourceTimeSeries> series = serverService.getResourceSampler().getSeries(name);
+        if (!series.isPresent()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("error", "没有该服务器的资源采样数据");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
+        
+        int range = Math.max(1, Math.min(minutes, 24 * 60));
+        ResourceTimeSeries.Range data = series.get().since(System.currentTimeMillis() - range * 60_000L);
+        List<Object[]> points = new ArrayList<>(data.size());
+        for (int i = 0; i < data.size(); i++) {
+            points.add(new Object[] {
+                data.getTimestamp(i),
+                data.getValue(i, ResourceTimeSeries.CPU) / 100.0,
+                data.getValue(i, ResourceTimeSeries.RSS),
+                data.getValue(i, ResourceTimeSeries.THREADS),
+                data.getValue(i, ResourceTimeSeries.FDS),
+                data.getValue(i, ResourceTimeSeries.PROCESSES)
+            });
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("serverName", name);
+        response.put("running", serverService.getActiveServers().containsKey(name));
+        response.put("resolutionMillis", data.getResolutionMillis());
+        response.put("points", points);
+        long[] latest = series.get().latest();
+        if (latest != null) {
+            response.put("latest", ResourceSampler.toMap(latest));
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 获取服务器的自动重启状态和最近的运行记录
+     * 每条记录包括运行时间、退出码、退出原因（stopped/clean_exit/crash/oom_killed/watchdog）和之后的重启安排
+     */
+    @GetMapping("/{name}/runs")
+    public ResponseEntity<Map<String, Object>> getRunHistory(@PathVariable String name) {
+        ServerSupervisor supervisor = serverService.getSupervisor();
+        List<Map<String, Object>> runs = new ArrayList<>();
+        for (ServerRun run : supervisor.getRunHistory(name)) {
+            Map<String, Object> info = new HashMap<>();
+            info.put("startTime", run.getStartTime());
+            info.put("endTime", run.getEndTime());
+            info.put("startupMillis", run.getStartupMillis());
+            info.put("exitCode", run.getExitCode());
+            info.put("exit", run.getExit().name().toLowerCase());
+            info.put("restartAttempt", run.getRestartAttempt());
+            info.put("restartDelayMillis", run.getRestartDelayMillis());
+            runs.add(info);
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("serverName", name);
+        response.put("pendingRestartAt", supervisor.getPendingRestartAt(name));
+        response.put("crashLoop", supervisor.isCrashLoop(name));
+        response.put("runs", runs);
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * 设置服务器的自动重启策略（never、on-crash、always）
+     */
+    @PostMapping("/{name}/restartPolicy")
+    public ResponseEntity<Map<String, Object>> setRestartPolicy(
+            @PathVariable String name,
+            @RequestBody Map<String, String> request) {
+        Map<String, Object> response = new HashMap<>();
+        RestartPolicy policy = RestartPolicy.parse(request != null ? request.get("policy") : null);
+        if (policy == null) {
+            response.put("success", false);
+            response.put("error", "无效的重启策略，可选 never、on-crash、always");
+            return ResponseEntity.badRequest().body(response);
+        }
+        try {
+            Optional<Server> server = serverService.getConfigManager().findServerByName(name);
+            if (!server.isPresent()) {
+                response.put("success", false);
+                response.put("error", "服务器不存在: " + name);
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+            }
+            server.get().setRestartPolicy(policy);
+            serverService.getConfigManager().saveServer(server.get());
+            if (policy == RestartPolicy.NEVER) {
+                serverService.getSupervisor().cancelRestart(name);
+            }
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "保存失败: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+        response.put("success", true);
+        response.put("serverName", name);
+        response.put("restartPolicy", policy.name().toLowerCase());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 读取服务器的持久化日志
+     * 默认返回末尾lines行；指定from时从该行号开始读取；指定since（和until）时读取该时间范围内的行，
+     * 时间为毫秒时间戳、精确到秒，until不包含在内。返回的nextLine可作为下一页的from
+     */
+    @GetMapping("/{name}/logs")
+    public ResponseEntity<Map<String, Object>> getServerLog(
+            @PathVariable String name,
+            @RequestParam(defaultValue = "200") int lines,
+            @RequestParam(required = false) Long from,
+            @RequestParam(required = false) Long since,
+            @RequestParam(required = false) Long until) {
+        Optional<LogSlice> slice;
+        if (since != null || until != null) {
+            long start = since != null ? since : 0;
+            long end = until != null ? until : Long.MAX_VALUE;
+            slice = serverService.getLogFileService().readServerLogBetween(name, start, end, lines);
+        } else if (from != null) {
+            slice = serverService.getLogFileService().readServerLines(name, from, lines);
+        } else {
+            slice = serverService.getLogFileService().tailServerLog(name, lines);
+        }
+        if (!slice.isPresent()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("error", "服务器没有日志");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("serverName", name);
+        response.put("firstLine", slice.get().getFirstLine());
+        response.put("nextLine", slice.get().getNextLine());
+        response.put("totalLines", slice.get().getTotalLines());
+        response.put("data", slice.get().getLines());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 全文搜索日志
+     * q为查询文本：词之间为"且"的关系，双引号括起的部分为短语，level:&lt;级别&gt; 为级别条件；
+     * 也可以用level参数指定级别。不指定server时搜索系统日志和所有服务器的日志。
+     * since和until为毫秒时间戳、精确到秒，until不包含在内。结果按时间从新到旧排列，
+     * 每条结果的line可作为 /{name}/logs?from= 的起点读取上下文
+     */
+    @GetMapping("/logs/search")
+    public ResponseEntity<Map<String, Object>> searchLogs(
+            @RequestParam(defaultValue = "") String q,
+            @RequestParam(required = false) String server,
+            @RequestParam(required = false) String level,
+            @RequestParam(required = false) Long since,
+            @RequestParam(required = false) Long until,
+            @RequestParam(defaultValue = "100") int limit) {
+        LogQuery query;
+        try {
+            query = LogQuery.parse(level != null ? q + " level:" + level : q);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+        query.between(since != null ? since : Long.MIN_VALUE, until != null ? until : Long.MAX_VALUE);
+        
+        long startTime = System.nanoTime();
+        List<LogMatch> matches = serverService.getLogFileService().searchLogs(server, query, limit);
+        List<Map<String, Object>> data = new ArrayList<>();
+        for (LogMatch match : matches) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("log", match.getLog());
+            item.put("line", match.getLine());
+            item.put("time", match.getTime());
+            item.put("text", match.getText());
+            data.add(item);
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("query", query.toString());
+        response.put("count", data.size());
+        response.put("tookMillis", (System.nanoTime() - startTime) / 1_000_000);
+        response.put("unindexedLines", serverService.getLogFileService().getSearchBacklog(server));
+        response.put("data", data);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 删除搜索索引并在后台从日志原文重建，不指定server时重建所有日志的索引
+     */
+    @PostMapping("/logs/search/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildLogIndex(@RequestParam(required = false) String server) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("rebuilt", serverService.getLogFileService().rebuildSearchIndex(server));
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 获取服务器当前WebSocket会话的推送统计
+     * 包括队列深度、丢弃行数、批量合并比例等
+     */
+    @GetMapping("/{name}/sessions")
+    public ResponseEntity<Map<String, Object>> getSessionStats(@PathVariable String name) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("serverName", name);
+        response.put("data", LogWebSocketHandler.getSessionStats(name));
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 获取启动准入状态
+     * 包括主机内存和CPU、已承诺的堆内存、运行中的服务器和排队中的启动请求
+     */
+    @GetMapping("/admission")
+    public ResponseEntity<Map<String, Object>> getAdmissionStatus() {
+        AdmissionController.Status status = serverService.getAdmissionController().getStatus();
+        long now = System.currentTimeMillis();
+        
+        List<Map<String, Object>> admitted = new ArrayList<>();
+        for (AdmissionController.Ticket ticket : status.getAdmitted()) {
+            Map<String, Object> info = new HashMap<>();
+            info.put("serverName", ticket.getServerName());
+            info.put("memoryBytes", ticket.getMemoryBytes());
+            info.put("admittedAt", ticket.getAdmittedAt());
+            admitted.add(info);
+        }
+        List<Map<String, Object>> waiting = new ArrayList<>();
+        for (AdmissionController.Ticket ticket : status.getWaiting()) {
+            Map<String, Object> info = new HashMap<>();
+            info.put("serverName", ticket.getServerName());
+            info.put("memoryBytes", ticket.getMemoryBytes());
+            info.put("position", waiting.size() + 1);
+            info.put("waitingMillis", now - ticket.getRequestedAt());
+            waiting.add(info);
+        }
+        
+        Map<String, Object> data = new HashMap<>();
+        data.put("physicalMemory", status.getPhysicalMemory());
+        data.put("cpuCount", status.getCpuCount());
+        data.put("overcommitRatio", status.getOvercommitRatio());
+        data.put("memoryCapacity", status.getMemoryCapacity());
+        data.put("committedMemory", status.getCommittedMemory());
+        data.put("instanceLimit", status.getInstanceLimit());
+        data.put("admitted", admitted);
+        data.put("waiting", waiting);
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", data);
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * 设置启动准入的超量分配比例
+     */
+    @PostMapping("/admission/ratio")
+    public ResponseEntity<Map<String, Object>> setOvercommitRatio(@RequestBody Map<String, Object> request) {
+        Map<String, Object> response = new HashMap<>();
+        Object ratio = request != null ? request.get("ratio") : null;
+        if (!(ratio instanceof Number)) {
+            response.put("success", false);
+            response.put("error", "缺少ratio参数");
+            return ResponseEntity.badRequest().body(response);
+        }
+        try {
+            serverService.getAdmissionController().setOvercommitRatio(((Number) ratio).doubleValue());
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+        response.put("success", true);
+        response.put("overcommitRatio", serverService.getAdmissionController().getOvercommitRatio());
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * 取消排队中的启动请求
+     */
+    @DeleteMapping("/admission/{name}")
+    public ResponseEntity<Map<String, Object>> cancelQueuedStart(@PathVariable String name) {
+        Map<String, Object> response = new HashMap<>();
+        if (!serverService.getAdmissionController().cancel(name)) {
+            response.put("success", false);
+            response.put("error", "服务器不在启动队列中");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
+        response.put("success", true);
+        response.put("message", "已取消启动请求");
+        response.put("serverName", name);
+        return ResponseEntity.ok(response);
+    }
+    
     /**
      * 启动服务器
      */
@@ -112,13 +478,30 @@ public class ServerController {
             String serverArgs = request != null && request.containsKey("serverArgs") ? 
                 (String)request.get("serverArgs") : null;
 
-            serverService.startServer(server, launchMode, javaPath, jvmArgs, serverArgs);
+            // 主机资源不足时不阻塞请求线程，返回排队位置，资源释放后自动启动
+            CompletableFuture<ServerInstance> future =
+                serverService.submitStart(server, launchMode, javaPath, jvmArgs, serverArgs);
+            if (!future.isDone()) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", true);
+                response.put("queued", true);
+                response.put("message", "主机资源不足，服务器已加入启动队列");
+                response.put("serverName", name);
+                response.put("queuePosition", serverService.getAdmissionController().getQueuePosition(name));
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+            }
+            future.join();
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "服务器启动成功");
             response.put("serverName", name);
             return ResponseEntity.ok(response);
+        } catch (CompletionException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("error", "启动失败: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
@@ -183,6 +566,22 @@ public class ServerController {
                 return ResponseEntity.badRequest().body(response);
             }
             
+            // capture=true时等待并返回命令的输出
+            if (Boolean.parseBoolean(request.get("capture"))) {
+                CommandResult result = serverService.executeCommand(name, command);
+                LogWebSocketHandler.sendCommandResponse(name, command, "命令已执行");
+                
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", true);
+                response.put("serverName", name);
+                response.put("command", command);
+                response.put("lines", result.getLines());
+                response.put("complete", result.isComplete());
+                response.put("latencyMs", result.getLatencyMs());
+                response.put("mode", result.getMode().name());
+                return ResponseEntity.ok(response);
+            }
+            
             serverService.sendCommand(name, command);
             
             // 将命令结果发送到WebSocket
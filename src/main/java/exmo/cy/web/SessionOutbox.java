@@ -0,0 +1,238 @@
+package exmo.cy.web;
+
+import exmo.cy.monitor.ManagerMetrics;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个WebSocket会话的发送队列
+ * 生产者只负责入队，发送由WebSocketDispatcher的发送线程批量完成。
+ * 队列满时进入采样模式，只保留部分输出，并统计丢弃的行数。
+ */
+class SessionOutbox {
+
+    /**
+     * 待发送的一行输出
+     */
+    static final class OutboundLine {
+        final long seq;       // 控制台序列号，0表示非控制台消息
+        final String message;
+
+        OutboundLine(long seq, String message) {
+            this.seq = seq;
+            this.message = message;
+        }
+    }
+
+    private final WebSocketSession session;
+    private final String serverName;
+    private final ArrayBlockingQueue<OutboundLine> lines;
+    private final Queue<String> controlFrames = new ConcurrentLinkedQueue<>();
+    private final int sampleRate;
+
+    final AtomicBoolean inFlight = new AtomicBoolean();
+    volatile long sendStartedAt;
+    volatile boolean paused = true;   // 注册后先暂停，补发历史后再开始推送
+    volatile boolean closeAfterFlush;
+    private volatile boolean sampled;
+    private volatile long saturatedSince;
+    private long sampleCounter;
+
+    private final AtomicLong enqueuedLines = new AtomicLong();
+    private final AtomicLong droppedLines = new AtomicLong();
+    private final AtomicLong droppedSinceNotice = new AtomicLong();
+    private final AtomicLong sentLines = new AtomicLong();
+    private final AtomicLong sentFrames = new AtomicLong();
+    private final long connectedAt = System.currentTimeMillis();
+    private volatile ServerMeters meters;
+
+    // 按服务器汇总的推送指标，标签只有服务器名称，数量不随会话增长
+    private static final Map<String, ServerMeters> SERVER_METERS = new ConcurrentHashMap<>();
+
+    /**
+     * 一个服务器所有WebSocket会话的推送指标
+     */
+    private static final class ServerMeters {
+        final AtomicLong frames = new AtomicLong();
+        final AtomicLong lines = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final Set<SessionOutbox> outboxes = ConcurrentHashMap.newKeySet();
+
+        ServerMeters(String serverName) {
+            FunctionCounter.builder("cymc.websocket.frames", frames, AtomicLong::get)
+                .description("发送给WebSocket会话的帧数")
+                .tag("server", serverName)
+                .register(ManagerMetrics.registry());
+            FunctionCounter.builder("cymc.websocket.lines", lines, AtomicLong::get)
+                .description("发送给WebSocket会话的控制台行数")
+                .tag("server", serverName)
+                .register(ManagerMetrics.registry());
+            FunctionCounter.builder("cymc.websocket.dropped", dropped, AtomicLong::get)
+                .description("会话跟不上输出速度而丢弃的行数")
+                .tag("server", serverName)
+                .register(ManagerMetrics.registry());
+            Gauge.builder("cymc.websocket.queue.depth", outboxes, ServerMeters::queueDepth)
+                .description("该服务器所有会话发送队列中等待的行数")
+                .tag("server", serverName)
+                .register(ManagerMetrics.registry());
+            Gauge.builder("cymc.websocket.sessions", outboxes, Set::size)
+                .description("订阅该服务器输出的WebSocket会话数")
+                .tag("server", serverName)
+                .register(ManagerMetrics.registry());
+        }
+
+        static double queueDepth(Set<SessionOutbox> outboxes) {
+            long depth = 0;
+            for (SessionOutbox outbox : outboxes) {
+                depth += outbox.lines.size();
+            }
+            return depth;
+        }
+    }
+
+    SessionOutbox(WebSocketSession session, String serverName, int capacity, int sampleRate) {
+        this.session = session;
+        this.serverName = serverName;
+        this.lines = new ArrayBlockingQueue<>(capacity);
+        this.sampleRate = sampleRate;
+    }
+
+    WebSocketSession getSession() {
+        return session;
+    }
+
+    String getServerName() {
+        return serverName;
+    }
+
+    /**
+     * 入队一行输出，不会阻塞
+     * 同一会话可能有多个生产者，采样计数器的竞争只影响采样精度
+     */
+    void offer(long seq, String message) {
+        enqueuedLines.incrementAndGet();
+        if (sampled && ++sampleCounter % sampleRate != 0) {
+            drop();
+            return;
+        }
+        if (!lines.offer(new OutboundLine(seq, message))) {
+            drop();
+            if (!sampled) {
+                saturatedSince = System.currentTimeMillis();
+                sampled = true;
+            }
+        }
+    }
+
+    private void drop() {
+        droppedLines.incrementAndGet();
+        droppedSinceNotice.incrementAndGet();
+        ServerMeters bound = meters;
+        if (bound != null) {
+            bound.dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * 入队一个完整的控制帧（确认消息、历史补发、通知等），不受容量限制且不会被丢弃
+     */
+    void offerControl(String frame) {
+        controlFrames.add(frame);
+    }
+
+    String pollControl() {
+        return controlFrames.poll();
+    }
+
+    /**
+     * 取出最多max行输出
+     */
+    int drainTo(java.util.Collection<OutboundLine> target, int max) {
+        return lines.drainTo(target, max);
+    }
+
+    boolean hasPending() {
+        return !controlFrames.isEmpty() || !lines.isEmpty();
+    }
+
+    /**
+     * 队列回落到低水位后退出采样模式
+     * @return 退出采样模式期间丢弃的行数，仍处于采样模式或没有丢弃时返回0
+     */
+    long leaveSampledModeIfDrained(int lowWatermark) {
+        if (!sampled || lines.size() > lowWatermark) {
+            return 0;
+        }
+        sampled = false;
+        return droppedSinceNotice.getAndSet(0);
+    }
+
+    boolean isSampled() {
+        return sampled;
+    }
+
+    long getSaturatedSince() {
+        return saturatedSince;
+    }
+
+    void recordFrame(int lineCount) {
+        sentFrames.incrementAndGet();
+        sentLines.addAndGet(lineCount);
+        ServerMeters bound = meters;
+        if (bound != null) {
+            bound.frames.incrementAndGet();
+            bound.lines.addAndGet(lineCount);
+        }
+    }
+
+    /**
+     * 把本会话计入所属服务器的推送指标
+     * 指标按服务器汇总而不是按会话注册，避免会话ID作为标签导致指标数量无限增长；单个会话的统计见toStats()
+     */
+    void bindMetrics() {
+        ServerMeters bound = SERVER_METERS.computeIfAbsent(serverName, ServerMeters::new);
+        bound.outboxes.add(this);
+        meters = bound;
+    }
+
+    /**
+     * 会话关闭后不再计入指标，可重复调用
+     */
+    void unbindMetrics() {
+        ServerMeters bound = meters;
+        meters = null;
+        if (bound != null) {
+            bound.outboxes.remove(this);
+        }
+    }
+
+    /**
+     * 会话统计信息
+     */
+    Map<String, Object> toStats() {
+        long frames = sentFrames.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessionId", session.getId());
+        stats.put("serverName", serverName);
+        stats.put("connectedAt", connectedAt);
+        stats.put("queueDepth", lines.size());
+        stats.put("mode", sampled ? "sampled" : "full");
+        stats.put("enqueuedLines", enqueuedLines.get());
+        stats.put("droppedLines", droppedLines.get());
+        stats.put("sentLines", sentLines.get());
+        stats.put("sentFrames", frames);
+        stats.put("batchingRatio", frames == 0 ? 0.0 : Math.round(sentLines.get() * 100.0 / frames) / 100.0);
+        return stats;
+    }
+}
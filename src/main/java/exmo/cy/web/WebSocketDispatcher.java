@@ -0,0 +1,291 @@
+package exmo.cy.web;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * WebSocket异步分发器
+ * 把日志生产者（控制台泵、命令回显等）与WebSocket会话解耦：
+ * 生产者只向每个会话的有界队列入队，定时器每隔几毫秒把队列中的内容
+ * 合并成一个批量帧，交给发送线程池发送。慢速客户端只会让自己的队列积压，
+ * 积压时降级为采样输出，长时间无法恢复则关闭连接。
+ */
+class WebSocketDispatcher {
+
+    private static final long FLUSH_INTERVAL_MS = 20;
+    private static final int QUEUE_CAPACITY = 2000;
+    private static final int LOW_WATERMARK = QUEUE_CAPACITY / 4;
+    private static final int SAMPLE_RATE = 10;                 // 采样模式下每10行保留1行
+    private static final int MAX_FRAME_LINES = 500;
+    private static final long SLOW_CONSUMER_TIMEOUT_MS = 30_000;
+    private static final long SEND_TIME_LIMIT_MS = 10_000;
+    private static final int SENDER_THREADS = 4;
+
+    private final Map<String, List<SessionOutbox>> outboxesByServer = new ConcurrentHashMap<>();
+    private final Map<String, SessionOutbox> outboxesBySession = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper;
+    private ScheduledExecutorService ticker;
+    private ExecutorService senders;
+
+    WebSocketDispatcher(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 注册会话，返回的队列处于暂停状态，需要调用activate后才开始推送
+     */
+    SessionOutbox register(String serverName, WebSocketSession session) {
+        ensureStarted();
+        SessionOutbox outbox = new SessionOutbox(session, serverName, QUEUE_CAPACITY, SAMPLE_RATE);
+        outboxesBySession.put(session.getId(), outbox);
+        outboxesByServer.computeIfAbsent(serverName, k -> new CopyOnWriteArrayList<>()).add(outbox);
+        outbox.bindMetrics();
+        return outbox;
+    }
+
+    /**
+     * 开始推送已注册会话的队列
+     */
+    void activate(SessionOutbox outbox) {
+        outbox.paused = false;
+    }
+
+    /**
+     * 注销会话
+     * @return 会话所属的服务器名称，未注册时返回null
+     */
+    String unregister(WebSocketSession session) {
+        SessionOutbox outbox = outboxesBySession.remove(session.getId());
+        if (outbox == null) {
+            return null;
+        }
+        List<SessionOutbox> outboxes = outboxesByServer.get(outbox.getServerName());
+        if (outboxes != null) {
+            outboxes.remove(outbox);
+        }
+        outbox.unbindMetrics();
+        return outbox.getServerName();
+    }
+
+    /**
+     * 移除服务器的所有会话
+     */
+    void removeServer(String serverName) {
+        List<SessionOutbox> outboxes = outboxesByServer.remove(serverName);
+        if (outboxes != null) {
+            for (SessionOutbox outbox : outboxes) {
+                outboxesBySession.remove(outbox.getSession().getId());
+                outbox.unbindMetrics();
+            }
+        }
+    }
+
+    boolean hasSessions(String serverName) {
+        List<SessionOutbox> outboxes = outboxesByServer.get(serverName);
+        return outboxes != null && !outboxes.isEmpty();
+    }
+
+    /**
+     * 向服务器的所有会话发布一行输出
+     * @param serverName 服务器名称
+     * @param seq 控制台序列号，0表示非控制台消息
+     * @param message 消息内容
+     */
+    void publish(String serverName, long seq, String message) {
+        List<SessionOutbox> outboxes = outboxesByServer.get(serverName);
+        if (outboxes == null) {
+            return;
+        }
+        for (SessionOutbox outbox : outboxes) {
+            outbox.offer(seq, message);
+        }
+    }
+
+    /**
+     * 向单个会话发送控制帧
+     * 已注册的会话按队列顺序发送，未注册的会话直接发送
+     */
+    void sendToSession(WebSocketSession session, String frame) throws IOException {
+        SessionOutbox outbox = outboxesBySession.get(session.getId());
+        if (outbox != null) {
+            outbox.offerControl(frame);
+            return;
+        }
+        synchronized (session) {
+            session.sendMessage(new TextMessage(frame));
+        }
+    }
+
+    /**
+     * 获取服务器所有会话的统计信息
+     */
+    List<Map<String, Object>> getSessionStats(String serverName) {
+        List<SessionOutbox> outboxes = outboxesByServer.get(serverName);
+        if (outboxes == null) {
+            return Collections.emptyList();
+        }
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (SessionOutbox outbox : outboxes) {
+            result.add(outbox.toStats());
+        }
+        return result;
+    }
+
+    private synchronized void ensureStarted() {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(daemonThreads("ws-dispatch-ticker"));
+        senders = Executors.newFixedThreadPool(SENDER_THREADS, daemonThreads("ws-dispatch-sender"));
+        ticker.scheduleWithFixedDelay(this::tick, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void shutdown() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            senders.shutdownNow();
+            ticker = null;
+            senders = null;
+        }
+    }
+
+    /**
+     * 定时检查所有会话：调度发送、处理慢速客户端
+     */
+    private void tick() {
+        long now = System.currentTimeMillis();
+        for (SessionOutbox outbox : outboxesBySession.values()) {
+            try {
+                WebSocketSession session = outbox.getSession();
+                if (!session.isOpen()) {
+                    unregister(session);
+                    continue;
+                }
+                if (outbox.inFlight.get()) {
+                    // 单次发送卡住太久，说明客户端已经不再读取
+                    if (now - outbox.sendStartedAt > SEND_TIME_LIMIT_MS) {
+                        System.err.println("[警告] WebSocket会话发送超时，关闭连接: " + session.getId());
+                        closeQuietly(outbox, CloseStatus.SESSION_NOT_RELIABLE);
+                    }
+                    continue;
+                }
+                if (outbox.paused) {
+                    continue;
+                }
+                if (outbox.isSampled() && !outbox.closeAfterFlush
+                        && now - outbox.getSaturatedSince() > SLOW_CONSUMER_TIMEOUT_MS) {
+                    outbox.offerControl(batchFrame(Collections.singletonList(new SessionOutbox.OutboundLine(0,
+                            "[ERROR] 客户端接收速度过慢，连接将被关闭，请刷新页面重新连接"))));
+                    outbox.closeAfterFlush = true;
+                }
+                if (outbox.hasPending() && outbox.inFlight.compareAndSet(false, true)) {
+                    outbox.sendStartedAt = now;
+                    senders.execute(() -> flush(outbox));
+                }
+            } catch (RuntimeException e) {
+                System.err.println("[错误] WebSocket分发失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 在发送线程上发送会话队列中的内容
+     */
+    private void flush(SessionOutbox outbox) {
+        WebSocketSession session = outbox.getSession();
+        try {
+            String control;
+            while ((control = outbox.pollControl()) != null) {
+                send(session, control);
+                outbox.recordFrame(0);
+            }
+            if (outbox.closeAfterFlush) {
+                closeQuietly(outbox, CloseStatus.SESSION_NOT_RELIABLE);
+                return;
+            }
+
+            List<SessionOutbox.OutboundLine> batch = new ArrayList<>(Math.min(MAX_FRAME_LINES, 64));
+            if (outbox.drainTo(batch, MAX_FRAME_LINES) > 0) {
+                send(session, batchFrame(batch));
+                outbox.recordFrame(batch.size());
+            }
+
+            long dropped = outbox.leaveSampledModeIfDrained(LOW_WATERMARK);
+            if (dropped > 0) {
+                outbox.offerControl(batchFrame(Collections.singletonList(new SessionOutbox.OutboundLine(0,
+                        "[WARN] 客户端接收速度过慢，已丢弃 " + dropped + " 行输出"))));
+            }
+        } catch (IOException | IllegalStateException e) {
+            System.err.println("[错误] 发送WebSocket消息失败: " + e.getMessage());
+            closeQuietly(outbox, CloseStatus.SERVER_ERROR);
+        } finally {
+            outbox.inFlight.set(false);
+        }
+    }
+
+    private void send(WebSocketSession session, String frame) throws IOException {
+        synchronized (session) {
+            session.sendMessage(new TextMessage(frame));
+        }
+    }
+
+    /**
+     * 把多行输出合并为一个批量帧
+     * 格式: {"type":"batch","lines":[{"seq":1,"message":"..."},{"message":"..."}]}
+     */
+    private String batchFrame(List<SessionOutbox.OutboundLine> batch) throws IOException {
+        StringWriter writer = new StringWriter(batch.size() * 96);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeStringField("type", "batch");
+            generator.writeArrayFieldStart("lines");
+            for (SessionOutbox.OutboundLine line : batch) {
+                generator.writeStartObject();
+                if (line.seq > 0) {
+                    generator.writeNumberField("seq", line.seq);
+                }
+                generator.writeStringField("message", line.message);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return writer.toString();
+    }
+
+    private void closeQuietly(SessionOutbox outbox, CloseStatus status) {
+        unregister(outbox.getSession());
+        try {
+            outbox.getSession().close(status);
+        } catch (IOException e) {
+            // 忽略关闭错误
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -93,9 +93,10 @@ function getCurrentUser() {
 /**
  * 构建 WebSocket URL
  * @param {string} serverName - 服务器名称
+ * @param {number} [sinceSeq] - 已收到的最后一个控制台序列号，用于断线续传
  * @returns {string}
  */
-function buildWebSocketUrl(serverName) {
+function buildWebSocketUrl(serverName, sinceSeq) {
     if (!authToken) {
         console.error('无法构建WebSocket URL: 认证令牌不存在');
         throw new Error('认证令牌不存在，请先登录');
@@ -112,7 +113,10 @@ function buildWebSocketUrl(serverName) {
     const encodedToken = encodeURIComponent(authToken);
     
     // 使用新的WebSocket路径格式，兼容info路径
-    const url = `${protocol}//${host}/ws/logs/${encodedServerName}?token=${encodedToken}`;
+    let url = `${protocol}//${host}/ws/logs/${encodedServerName}?token=${encodedToken}`;
+    if (sinceSeq && sinceSeq > 0) {
+        url += `&since=${sinceSeq}`;
+    }
     console.log('构建WebSocket URL:', url.replace(encodedToken, '***'));
     return url;
 }
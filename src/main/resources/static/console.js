@@ -12,6 +12,7 @@ let maxReconnectAttempts = 5;
 let reconnectDelay = 3000; // 3秒
 let reconnectTimer = null;
 let isManualDisconnect = false;
+let lastConsoleSeq = 0; // 已收到的最后一个控制台序列号，重连时用于续传
 
 /**
  * 切换控制台连接
@@ -49,16 +50,25 @@ function switchConsole() {
 /**
  * 连接到服务器控制台
  * @param {string} serverName - 服务器名称
+ * @param {boolean} [resume] - 是否为断线重连（保留已有输出，只补发错过的内容）
  */
-function connectConsole(serverName) {
+function connectConsole(serverName, resume = false) {
+    // 只有重连同一台服务器时才续传
+    resume = resume && currentServer === serverName;
+    
     // 如果已有连接，先断开
     if (ws && ws.readyState !== WebSocket.CLOSED) {
         disconnectConsole();
     }
     
+    if (!resume) {
+        lastConsoleSeq = 0;
+    }
     currentServer = serverName;
     isManualDisconnect = false;
-    reconnectAttempts = 0;
+    if (!resume) {
+        reconnectAttempts = 0;
+    }
     
     // 清除之前的重连定时器
     if (reconnectTimer) {
@@ -71,15 +81,17 @@ function connectConsole(serverName) {
     document.getElementById('sendCommandBtn').disabled = false;
     document.getElementById('clearConsoleBtn').disabled = false;
     
-    // 清空当前控制台内容
-    document.getElementById('consoleOutput').innerHTML = `<div class="console-line">正在连接到服务器 "${serverName}" 控制台...</div>`;
+    // 清空当前控制台内容（重连时保留）
+    if (!resume) {
+        document.getElementById('consoleOutput').innerHTML = `<div class="console-line">正在连接到服务器 "${serverName}" 控制台...</div>`;
+    }
     
     // 更新连接状态
     updateWebSocketStatus('connecting', '连接中...');
     
     // 连接 WebSocket
     try {
-        const wsUrl = buildWebSocketUrl(serverName);
+        const wsUrl = buildWebSocketUrl(serverName, lastConsoleSeq);
         console.log('正在连接WebSocket:', wsUrl.replace(/token=[^&]*/, 'token=***'));
         
         // 创建 WebSocket 连接
@@ -98,11 +110,17 @@ function connectConsole(serverName) {
             let message = event.data;
             try {
                 const data = JSON.parse(message);
-                if (data.message) {
-                    message = data.message;
-                } else if (data.text) {
-                    message = data.text;
+                if (data.type === 'history') {
+                    handleConsoleHistory(data);
+                    return;
+                }
+                if (data.type === 'batch') {
+                    // 服务器把短时间内的多行输出合并为一帧
+                    (data.lines || []).forEach(handleConsoleMessage);
+                    return;
                 }
+                handleConsoleMessage(data);
+                return;
             } catch (e) {
                 // 不是JSON，使用原始消息
             }
@@ -122,7 +140,7 @@ function connectConsole(serverName) {
                 reconnectTimer = setTimeout(() => {
                     if (currentServer && !isManualDisconnect) {
                         addConsoleLine(`[INFO] 正在尝试重新连接...`, 'log-level-info');
-                        connectConsole(currentServer);
+                        connectConsole(currentServer, true);
                     }
                 }, delay);
             } else if (isManualDisconnect) {
@@ -224,6 +242,47 @@ function disconnectConsole() {
     if (clearConsoleBtn) clearConsoleBtn.disabled = true;
 }
 
+/**
+ * 处理单条控制台消息
+ * @param {object} data - 消息 {seq?, message}
+ */
+function handleConsoleMessage(data) {
+    if (data.seq) {
+        // 重连补发与实时推送可能重叠，按序列号去重
+        if (data.seq <= lastConsoleSeq) {
+            return;
+        }
+        lastConsoleSeq = data.seq;
+    }
+    const message = data.message || data.text;
+    if (message) {
+        addConsoleLine(message, 'log-level-info');
+    }
+}
+
+/**
+ * 处理连接时服务器补发的控制台历史
+ * @param {object} data - 历史消息 {lines: [{seq, message}], lastSeq, missed, reset}
+ */
+function handleConsoleHistory(data) {
+    if (data.reset) {
+        // 服务端的序列号重新开始（管理器重启），丢弃旧的续传位置
+        lastConsoleSeq = 0;
+    }
+    if (data.missed > 0) {
+        addConsoleLine(`[WARN] 断线期间有 ${data.missed} 行输出已超出历史缓冲区，无法补发`, 'log-level-warn');
+    }
+    (data.lines || []).forEach(line => {
+        if (line.seq > lastConsoleSeq) {
+            addConsoleLine(line.message, 'log-level-info');
+            lastConsoleSeq = line.seq;
+        }
+    });
+    if (data.lastSeq > lastConsoleSeq) {
+        lastConsoleSeq = data.lastSeq;
+    }
+}
+
 /**
  * 添加控制台行
  * @param {string} message - 消息内容
@@ -264,7 +323,7 @@ function sendCommand() {
     // 检查WebSocket连接状态
     if (!ws) {
         addConsoleLine('[ERROR] WebSocket未初始化，正在尝试重新连接...', 'log-level-error');
-        connectConsole(currentServer);
+        connectConsole(currentServer, true);
         return;
     }
     
@@ -275,7 +334,7 @@ function sendCommand() {
     
     if (ws.readyState !== WebSocket.OPEN) {
         addConsoleLine('[ERROR] WebSocket未连接，正在尝试重新连接...', 'log-level-error');
-        connectConsole(currentServer);
+        connectConsole(currentServer, true);
         return;
     }
 
@@ -294,7 +353,7 @@ function sendCommand() {
         
         // 如果发送失败，尝试重连
         if (ws.readyState !== WebSocket.OPEN) {
-            connectConsole(currentServer);
+            connectConsole(currentServer, true);
         }
     }
     
@@ -412,7 +471,7 @@ function setupUnloadHandler() {
                 console.log('页面重新可见，检查WebSocket连接状态');
                 if (ws.readyState === WebSocket.CLOSED) {
                     // 如果连接已关闭，尝试重连
-                    connectConsole(currentServer);
+                    connectConsole(currentServer, true);
                 }
             }
         }
@@ -0,0 +1,209 @@
+package exmo.cy.rcon;
+
+import exmo.cy.console.CommandCapture;
+import exmo.cy.console.CommandResult;
+import exmo.cy.exception.ServerOperationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * RconClient测试
+ * 在回环地址上启动一个模拟原版服务器的RCON服务端：认证、按4096字节拆分响应、
+ * 对未知类型的数据包回复 "Unknown request"，收到 drop 命令时直接断开连接。
+ */
+class RconClientTest {
+
+    private static final String PASSWORD = "secret";
+    private static final long TIMEOUT_MS = 5000;
+
+    private ServerSocket serverSocket;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final List<String> received = new CopyOnWriteArrayList<>();
+    private RconClient client;
+
+    @BeforeEach
+    void startStandIn() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    connections.incrementAndGet();
+                    Thread handler = new Thread(() -> serve(socket), "rcon-stand-in");
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }, "rcon-stand-in-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @AfterEach
+    void stopStandIn() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        serverSocket.close();
+    }
+
+    private RconClient connect(String password) throws IOException {
+        client = new RconClient("test", new InetSocketAddress(serverSocket.getInetAddress(), serverSocket.getLocalPort()),
+            password, RconEventLoop.get());
+        return client;
+    }
+
+    private static CommandResult run(RconClient client, String command) throws Exception {
+        return client.execute(command, TIMEOUT_MS).get(TIMEOUT_MS * 2, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void authenticatesAndReturnsResponse() throws Exception {
+        CommandResult result = run(connect(PASSWORD), "list");
+
+        assertEquals(List.of("ok list"), result.getLines());
+        assertTrue(result.isComplete());
+        assertEquals(CommandCapture.Mode.RCON, result.getMode());
+        assertEquals("auth:" + PASSWORD, received.get(0));
+    }
+
+    @Test
+    void wrongPasswordMarksClientUnavailable() throws Exception {
+        RconClient client = connect("wrong");
+
+        ExecutionException error = assertThrows(ExecutionException.class,
+            () -> client.execute("list", TIMEOUT_MS).get(TIMEOUT_MS * 2, TimeUnit.MILLISECONDS));
+        assertInstanceOf(RconClient.UnavailableException.class, error.getCause());
+        assertFalse(client.isAvailable());
+        assertFalse(received.contains("command:list"));
+    }
+
+    @Test
+    void joinsMultiPacketResponseUsingTerminator() throws Exception {
+        RconClient client = connect(PASSWORD);
+
+        CommandResult result = run(client, "big");
+
+        assertTrue(result.isComplete());
+        assertEquals(1, result.getLines().size());
+        assertEquals("x".repeat(10_000), result.getLines().get(0));
+        // 满长度的数据包之后发送了空的结束包，它的回复没有混入命令输出
+        assertTrue(received.contains("type:0"), "应发送结束包: " + received);
+        assertEquals(List.of("ok next"), run(client, "next").getLines());
+    }
+
+    @Test
+    void responseOfExactlyOneChunkIsNotTruncated() throws Exception {
+        CommandResult result = run(connect(PASSWORD), "exact");
+
+        assertTrue(result.isComplete());
+        assertEquals("y".repeat(4096), result.getLines().get(0));
+    }
+
+    @Test
+    void reconnectsAfterConnectionDrops() throws Exception {
+        RconClient client = connect(PASSWORD);
+        assertEquals(List.of("ok first"), run(client, "first").getLines());
+        int before = connections.get();
+
+        // 命令已发出后连接断开：不能当作未发送，以免调用方改用标准输入重复执行
+        ExecutionException error = assertThrows(ExecutionException.class,
+            () -> client.execute("drop", TIMEOUT_MS).get(TIMEOUT_MS * 2, TimeUnit.MILLISECONDS));
+        assertInstanceOf(ServerOperationException.class, error.getCause());
+        assertFalse(error.getCause() instanceof RconClient.UnavailableException);
+
+        assertEquals(List.of("ok again"), run(client, "again").getLines());
+        assertTrue(client.isAvailable());
+        assertTrue(connections.get() > before, "应重新建立连接");
+    }
+
+    /**
+     * 处理一条连接：按数据包读取请求并回复
+     */
+    private void serve(Socket socket) {
+        try (socket) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            boolean authenticated = false;
+            while (true) {
+                byte[] packet = readPacket(in);
+                ByteBuffer buffer = ByteBuffer.wrap(packet).order(ByteOrder.LITTLE_ENDIAN);
+                int id = buffer.getInt();
+                int type = buffer.getInt();
+                String body = new String(packet, 8, packet.length - 10, StandardCharsets.UTF_8);
+                if (type == RconConnection.TYPE_AUTH) {
+                    received.add("auth:" + body);
+                    authenticated = PASSWORD.equals(body);
+                    send(out, authenticated ? id : -1, RconConnection.TYPE_AUTH_RESPONSE, "");
+                } else if (!authenticated) {
+                    return;
+                } else if (type == RconConnection.TYPE_COMMAND) {
+                    received.add("command:" + body);
+                    if (body.equals("drop")) {
+                        return;
+                    }
+                    String response = body.equals("big") ? "x".repeat(10_000)
+                        : body.equals("exact") ? "y".repeat(4096) : "ok " + body;
+                    // 与原版服务器一样按4096个字符拆分成多个同ID的数据包
+                    int offset = 0;
+                    do {
+                        int end = Math.min(response.length(), offset + 4096);
+                        send(out, id, RconConnection.TYPE_RESPONSE, response.substring(offset, end));
+                        offset = end;
+                    } while (offset < response.length());
+                } else {
+                    received.add("type:" + type);
+                    send(out, id, RconConnection.TYPE_RESPONSE, "Unknown request " + Integer.toHexString(type));
+                }
+            }
+        } catch (IOException e) {
+            // 连接关闭
+        }
+    }
+
+    private static byte[] readPacket(DataInputStream in) throws IOException {
+        byte[] header = new byte[4];
+        in.readFully(header);
+        int length = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        if (length < 10) {
+            throw new EOFException("无效的数据包长度: " + length);
+        }
+        byte[] packet = new byte[length];
+        in.readFully(packet);
+        return packet;
+    }
+
+    private static void send(OutputStream out, int id, int type, String body) throws IOException {
+        byte[] payload = body.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(14 + payload.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(10 + payload.length).putInt(id).putInt(type).put(payload).put((byte) 0).put((byte) 0);
+        out.write(buffer.array());
+        out.flush();
+    }
+}
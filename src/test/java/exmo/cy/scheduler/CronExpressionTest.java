@@ -0,0 +1,105 @@
+package exmo.cy.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * CronExpression测试
+ * 每行为 {表达式, 起始时间(不包含), 期望的下一次触发时间}。
+ * 2026-10-16 是周五。
+ */
+class CronExpressionTest {
+
+    private static final String[][] NEXT_CASES = {
+        // 基本：起始时间本身不算，秒被截断
+        {"30 4 * * *", "2026-01-01T04:29", "2026-01-01T04:30"},
+        {"30 4 * * *", "2026-01-01T04:30", "2026-01-02T04:30"},
+        {"30 4 * * *", "2026-01-01T04:29:59", "2026-01-01T04:30"},
+
+        // 范围
+        {"0 9-17 * * *", "2026-03-10T08:15", "2026-03-10T09:00"},
+        {"0 9-17 * * *", "2026-03-10T17:00", "2026-03-11T09:00"},
+
+        // 步长
+        {"*/15 * * * *", "2026-03-10T10:07", "2026-03-10T10:15"},
+        {"*/15 * * * *", "2026-03-10T10:45", "2026-03-10T11:00"},
+        {"5/20 * * * *", "2026-03-10T10:25", "2026-03-10T10:45"},
+        {"5/20 * * * *", "2026-03-10T10:45", "2026-03-10T11:05"},
+        {"0 8-18/4 * * *", "2026-03-10T12:00", "2026-03-10T16:00"},
+        {"0 8-18/4 * * *", "2026-03-10T16:00", "2026-03-11T08:00"},
+
+        // 列表和名称
+        {"0,30 6,18 * * *", "2026-03-10T06:30", "2026-03-10T18:00"},
+        {"0,30 6,18 * * *", "2026-03-10T18:30", "2026-03-11T06:00"},
+        {"0 0 1 JAN,JUL *", "2026-03-10T00:00", "2026-07-01T00:00"},
+
+        // 星期：0和7都是周日
+        {"30 4 * * 1-5", "2026-10-16T05:00", "2026-10-19T04:30"},
+        {"0 12 * * 0", "2026-10-16T00:00", "2026-10-18T12:00"},
+        {"0 12 * * 7", "2026-10-16T00:00", "2026-10-18T12:00"},
+        {"0 12 * * SUN", "2026-10-16T00:00", "2026-10-18T12:00"},
+
+        // 日和周同时限制时满足其一即可
+        {"0 0 13 * FRI", "2026-10-10T00:00", "2026-10-13T00:00"},
+        {"0 0 13 * FRI", "2026-10-13T00:00", "2026-10-16T00:00"},
+        // 只限制其中一个时另一个不参与
+        {"0 0 13 * *", "2026-10-14T00:00", "2026-11-13T00:00"},
+        {"0 0 * * FRI", "2026-10-14T00:00", "2026-10-16T00:00"},
+        // 以 * 开头的日期字段视为未限制，此时两者需同时满足
+        {"0 0 */10 * MON", "2026-10-01T00:00", "2026-12-21T00:00"},
+
+        // 月末：跳过没有该日期的月份
+        {"0 0 31 * *", "2026-01-31T00:00", "2026-03-31T00:00"},
+        {"0 0 31 * *", "2026-04-01T00:00", "2026-05-31T00:00"},
+        {"59 23 30 * *", "2026-01-30T23:59", "2026-03-30T23:59"},
+        {"0 0 * * *", "2026-12-31T23:59", "2027-01-01T00:00"},
+        {"0 0 1 1 *", "2026-01-01T00:00", "2027-01-01T00:00"},
+
+        // 闰年
+        {"0 0 29 2 *", "2026-10-16T00:00", "2028-02-29T00:00"},
+        {"0 0 29 2 *", "2028-02-29T00:00", "2032-02-29T00:00"},
+        {"0 0 28-29 2 *", "2027-02-28T00:00", "2028-02-28T00:00"},
+        {"0 0 29 2 *", "2099-03-01T00:00", "2104-02-29T00:00"},  // 2100年不是闰年
+
+        // 简写
+        {"@weekly", "2026-10-16T00:00", "2026-10-18T00:00"},
+        {"@monthly", "2026-10-16T00:00", "2026-11-01T00:00"},
+        {"@hourly", "2026-10-16T23:30", "2026-10-17T00:00"},
+    };
+
+    @Test
+    void nextMatchesTable() {
+        for (String[] row : NEXT_CASES) {
+            CronExpression cron = CronExpression.parse(row[0]);
+            LocalDateTime actual = cron.next(LocalDateTime.parse(row[1]));
+            assertEquals(LocalDateTime.parse(row[2]), actual, row[0] + " 在 " + row[1] + " 之后");
+        }
+    }
+
+    @Test
+    void rejectsInvalidExpressions() {
+        String[] invalid = {
+            "",
+            "* * * *",
+            "60 * * * *",
+            "* 24 * * *",
+            "* * 0 * *",
+            "* * * 13 *",
+            "* * * * 8",
+            "5-1 * * * *",
+            "*/0 * * * *",
+            "1,,2 * * * *",
+            "* * * FOO *",
+            "0 0 30 2 *",  // 永远不会触发
+        };
+        for (String expression : invalid) {
+            assertThrows(IllegalArgumentException.class, () -> CronExpression.parse(expression), expression);
+            assertFalse(CronExpression.isValid(expression), expression);
+        }
+    }
+}